@@ -0,0 +1,49 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.cache;
+
+import com.vmware.connectors.common.json.JsonDocument;
+import org.apache.commons.lang3.math.NumberUtils;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * An access token, along with how long it is good for.
+ */
+public final class AccessToken {
+
+    private final String value;
+    private final Duration expiresIn;
+
+    public AccessToken(String value, Duration expiresIn) {
+        this.value = value;
+        this.expiresIn = expiresIn;
+    }
+
+    /**
+     * Reads the token out of a standard OAuth2 token response. A token without an
+     * "expires_in" is treated as one that can not be reused.
+     *
+     * @param response the token endpoint response
+     * @return the access token
+     */
+    public static AccessToken fromOAuth2Response(JsonDocument response) {
+        Object expiresIn = response.read("$.expires_in");
+        long seconds = expiresIn instanceof Number
+                ? ((Number) expiresIn).longValue()
+                : NumberUtils.toLong(Objects.toString(expiresIn, null));
+        return new AccessToken(response.read("$.access_token"), Duration.ofSeconds(seconds));
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public Duration getExpiresIn() {
+        return expiresIn;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vmware.connectors.common.utils.SingleFlight;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caches access tokens obtained with a credential (e.g. a service account), so that
+ * connectors don't have to go to the token endpoint on every request.
+ * <p>
+ * Tokens are keyed by a SHA-256 of the credential, the credential itself is never kept.
+ * <ul>
+ * <li>A token is used until 90% of its lifetime has passed. Once 75% has passed, the
+ * next request also starts fetching a new token in the background.</li>
+ * <li>Concurrent requests for the same credential share a single call to the token
+ * endpoint.</li>
+ * <li>A credential that is turned down by the token endpoint (401 or 403) is failed
+ * straight away for a while, rather than going back to the token endpoint each time.</li>
+ * </ul>
+ */
+public class AccessTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessTokenCache.class);
+
+    private final boolean enabled;
+    private final Cache<String, Entry> tokens;
+    private final Cache<String, Throwable> failures;
+    private final SingleFlight<String, String> fetches = new SingleFlight<>();
+
+    public AccessTokenCache(boolean enabled, long maxEntries, Duration failureTtl) {
+        this.enabled = enabled;
+        this.tokens = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .build();
+        this.failures = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(failureTtl.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    /**
+     * Returns a token for the credential, going to the token endpoint only if there is
+     * no usable token for it yet.
+     *
+     * @param credential everything that identifies the token, e.g. the token URL and the service account credential
+     * @param fetcher gets a new token from the token endpoint
+     * @return the access token value
+     */
+    public Mono<String> getToken(String credential, Supplier<Mono<AccessToken>> fetcher) {
+        if (!enabled) {
+            return fetcher.get().map(AccessToken::getValue);
+        }
+
+        return Mono.defer(() -> {
+            String key = DigestUtils.sha256Hex(credential);
+
+            Throwable failure = failures.getIfPresent(key);
+            if (failure != null) {
+                logger.debug("Token request recently failed for this credential, failing without retrying");
+                return Mono.error(failure);
+            }
+
+            Entry entry = tokens.getIfPresent(key);
+            long now = System.nanoTime();
+            if (entry != null && now - entry.expiresAt < 0) {
+                if (now - entry.refreshAt >= 0) {
+                    logger.debug("Token is nearing expiry, refreshing it in the background");
+                    // With the caller's context, like the calls that aren't in the background
+                    return Mono.subscriberContext()
+                            .doOnNext(context -> fetch(key, fetcher)
+                                    .subscriberContext(context)
+                                    .subscribe(
+                                            token -> logger.debug("Refreshed the token in the background"),
+                                            error -> logger.warn("Failed to refresh the token in the background", error)
+                                    ))
+                            .thenReturn(entry.value);
+                }
+                return Mono.just(entry.value);
+            }
+
+            return fetch(key, fetcher);
+        });
+    }
+
+    /**
+     * Forgets all the tokens and failures.
+     */
+    public void invalidateAll() {
+        tokens.invalidateAll();
+        failures.invalidateAll();
+    }
+
+    private Mono<String> fetch(String key, Supplier<Mono<AccessToken>> fetcher) {
+        return fetches.execute(key, () -> {
+            long start = System.nanoTime();
+            return fetcher.get()
+                    .doOnNext(token -> store(key, token, start))
+                    .doOnError(error -> {
+                        if (isCredentialFailure(error)) {
+                            failures.put(key, error);
+                        }
+                    })
+                    .map(AccessToken::getValue)
+                    .switchIfEmpty(Mono.defer(() -> Mono.error(new IllegalStateException("No access token was returned"))));
+        });
+    }
+
+    private void store(String key, AccessToken token, long start) {
+        long lifetime = token.getExpiresIn().toNanos();
+        if (lifetime > 0) {
+            tokens.put(key, new Entry(token.getValue(), start + lifetime / 4 * 3, start + lifetime / 10 * 9));
+        } else {
+            tokens.invalidate(key);
+        }
+    }
+
+    private static boolean isCredentialFailure(Throwable error) {
+        if (error instanceof WebClientResponseException) {
+            HttpStatus status = ((WebClientResponseException) error).getStatusCode();
+            return status == HttpStatus.UNAUTHORIZED || status == HttpStatus.FORBIDDEN;
+        }
+        return false;
+    }
+
+    private static final class Entry {
+        private final String value;
+        private final long refreshAt;
+        private final long expiresAt;
+
+        private Entry(String value, long refreshAt, long expiresAt) {
+            this.value = value;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
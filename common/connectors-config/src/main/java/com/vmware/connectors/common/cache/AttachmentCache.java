@@ -0,0 +1,390 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.cache;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Serves attachments (receipts, expense report PDFs, etc.) that connectors proxy from
+ * their backend, keeping copies on disk so that re-opening one doesn't download it again.
+ * <p>
+ * Copies are keyed by the tenant (usually the backend base URL), the attachment id and
+ * the backend's ETag, and the least recently used ones are deleted once the store is over
+ * its size limit. Only attachments the backend gives an ETag for are stored.
+ * <ul>
+ * <li>The backend is always asked for the attachment, with If-None-Match set to the ETag
+ * of the stored copy if there is one, so that the backend still decides who may see what
+ * and whether the copy is current.</li>
+ * <li>A stored copy is written to the client with zero-copy file transfer when the server
+ * supports it, and honours single Range requests and If-None-Match.</li>
+ * <li>On a miss the backend body is streamed to the client as it arrives, and written to
+ * disk on the way.</li>
+ * </ul>
+ * Connectors must check that the user may see the attachment before calling
+ * {@link #serve}. The store is disabled when its size limit is zero.
+ * <p>
+ * The directory must not be shared with other instances: the store's index is kept in
+ * memory, and whatever the directory holds from a previous run is deleted on startup.
+ */
+public class AttachmentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(AttachmentCache.class);
+
+    private static final String FILE_SUFFIX = ".attachment";
+    private static final String PART_SUFFIX = ".part";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Path directory;
+    private final long maxBytes;
+    private final Object lock = new Object();
+
+    // Access ordered, so the eldest is the least recently used
+    private final Map<List<String>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    /**
+     * @param directory where to keep the attachments, or null for a new temporary directory
+     * @param maxBytes the size limit of the store
+     */
+    public AttachmentCache(Path directory, long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.directory = maxBytes > 0 ? prepare(directory) : directory;
+    }
+
+    private static Path prepare(Path directory) {
+        try {
+            if (directory == null) {
+                return Files.createTempDirectory("connectors-attachments");
+            }
+            Files.createDirectories(directory);
+            deleteAll(directory);
+            return directory;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to prepare the attachment cache directory " + directory, e);
+        }
+    }
+
+    private static void deleteAll(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*{" + FILE_SUFFIX + "," + PART_SUFFIX + "}")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    /**
+     * Deletes all the stored attachments.
+     */
+    public void clear() {
+        if (isEnabled()) {
+            synchronized (lock) {
+                entries.clear();
+                totalBytes = 0;
+            }
+            try {
+                deleteAll(directory);
+            } catch (IOException e) {
+                logger.warn("Unable to delete the stored attachments in {}", directory, e);
+            }
+        }
+    }
+
+    /**
+     * Writes the attachment to the response, from the stored copy if the backend says it
+     * is still current, otherwise from the backend.
+     *
+     * @param exchange the exchange to write the attachment to
+     * @param tenant the backend the attachment belongs to, usually its base URL
+     * @param id the attachment id
+     * @param fetcher gets the attachment from the backend, given the ETag to send as If-None-Match (or null)
+     * @param headers adds the connector's own headers (e.g. Content-Disposition) to a successful response
+     * @param errorHandler turns an unsuccessful backend response into the response to send
+     * @return completes once the response is written
+     */
+    public Mono<Void> serve(
+            ServerWebExchange exchange,
+            String tenant,
+            String id,
+            Function<String, Mono<ClientResponse>> fetcher,
+            Consumer<HttpHeaders> headers,
+            Function<ClientResponse, ResponseEntity<Flux<DataBuffer>>> errorHandler
+    ) {
+        List<String> key = List.of(tenant, id);
+        // Looked up on subscription, after whatever checks the connector chains before it
+        return Mono.defer(() -> {
+            Entry cached = get(key);
+            return fetcher.apply(cached == null ? null : cached.etag)
+                    .flatMap(response -> {
+                        if (cached != null && response.statusCode() == HttpStatus.NOT_MODIFIED) {
+                            logger.debug("Serving stored attachment: tenant={}, id={}", tenant, id);
+                            return response.bodyToMono(Void.class)
+                                    .then(writeStored(exchange, cached, headers));
+                        }
+                        if (response.statusCode().is2xxSuccessful()) {
+                            return writeDownload(exchange, key, response, headers);
+                        }
+                        return write(exchange, errorHandler.apply(response));
+                    });
+        });
+    }
+
+    private Entry get(List<String> key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (lock) {
+            Entry entry = entries.get(key);
+            if (entry != null && !Files.exists(entry.path)) {
+                remove(key);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private Mono<Void> writeStored(ServerWebExchange exchange, Entry entry, Consumer<HttpHeaders> headers) {
+        ServerHttpResponse response = exchange.getResponse();
+        setHeaders(response, headers, entry.contentType);
+        response.getHeaders().set(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        if (exchange.checkNotModified(entry.etag)) {
+            return response.setComplete();
+        }
+
+        HttpRange range = singleRange(exchange, entry.etag);
+        if (range == null) {
+            response.getHeaders().setContentLength(entry.length);
+            return writeFile(response, entry.path, 0, entry.length);
+        }
+        return writeRange(response, entry, range);
+    }
+
+    private static Mono<Void> writeRange(ServerHttpResponse response, Entry entry, HttpRange range) {
+        long start = range.getRangeStart(entry.length);
+        if (start >= entry.length) {
+            response.setStatusCode(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+            response.getHeaders().set(HttpHeaders.CONTENT_RANGE, "bytes */" + entry.length);
+            return response.setComplete();
+        }
+
+        long end = range.getRangeEnd(entry.length);
+        response.setStatusCode(HttpStatus.PARTIAL_CONTENT);
+        response.getHeaders().set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + entry.length);
+        response.getHeaders().setContentLength(end - start + 1);
+        return writeFile(response, entry.path, start, end - start + 1);
+    }
+
+    private static void setHeaders(ServerHttpResponse response, Consumer<HttpHeaders> headers, MediaType contentType) {
+        headers.accept(response.getHeaders());
+        if (contentType != null) {
+            response.getHeaders().setContentType(contentType);
+        }
+    }
+
+    private static HttpRange singleRange(ServerWebExchange exchange, String etag) {
+        HttpHeaders requestHeaders = exchange.getRequest().getHeaders();
+        String ifRange = requestHeaders.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange != null && !ifRange.equals(etag)) {
+            return null;
+        }
+        try {
+            // Several ranges are answered with the whole attachment, which HTTP allows
+            List<HttpRange> ranges = requestHeaders.getRange();
+            return ranges.size() == 1 ? ranges.get(0) : null;
+        } catch (IllegalArgumentException e) {
+            logger.debug("Ignoring an invalid Range header", e);
+            return null;
+        }
+    }
+
+    private static Mono<Void> writeFile(ServerHttpResponse response, Path path, long position, long count) {
+        if (response instanceof ZeroCopyHttpOutputMessage) {
+            return ((ZeroCopyHttpOutputMessage) response).writeWith(path, position, count);
+        }
+        Flux<DataBuffer> body = DataBufferUtils.readAsynchronousFileChannel(
+                () -> AsynchronousFileChannel.open(path, StandardOpenOption.READ),
+                position,
+                response.bufferFactory(),
+                BUFFER_SIZE
+        );
+        return response.writeWith(DataBufferUtils.takeUntilByteCount(body, count));
+    }
+
+    private Mono<Void> writeDownload(ServerWebExchange exchange, List<String> key, ClientResponse download, Consumer<HttpHeaders> headers) {
+        ServerHttpResponse response = exchange.getResponse();
+        HttpHeaders downloadHeaders = download.headers().asHttpHeaders();
+        String etag = downloadHeaders.getETag();
+        MediaType contentType = downloadHeaders.getContentType();
+        setHeaders(response, headers, contentType);
+
+        if (etag != null && exchange.checkNotModified(etag)) {
+            return download.bodyToMono(Void.class)
+                    .then(response.setComplete());
+        }
+
+        if (downloadHeaders.getContentLength() >= 0) {
+            response.getHeaders().setContentLength(downloadHeaders.getContentLength());
+        }
+
+        Flux<DataBuffer> body = download.body(BodyExtractors.toDataBuffers());
+        if (etag == null || !isEnabled()) {
+            return response.writeWith(body);
+        }
+        return response.writeWith(store(key, etag, contentType, body));
+    }
+
+    private Flux<DataBuffer> store(List<String> key, String etag, MediaType contentType, Flux<DataBuffer> body) {
+        Path part;
+        AsynchronousFileChannel channel;
+        try {
+            part = Files.createTempFile(directory, null, PART_SUFFIX);
+            channel = AsynchronousFileChannel.open(part, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            logger.warn("Unable to store an attachment, serving it without storing it", e);
+            return body;
+        }
+
+        AtomicLong length = new AtomicLong();
+        return DataBufferUtils.write(body, channel)
+                .doOnNext(buffer -> length.addAndGet(buffer.readableByteCount()))
+                .doFinally(signal -> {
+                    close(channel);
+                    if (signal == SignalType.ON_COMPLETE) {
+                        commit(key, part, new Entry(etag, contentType, length.get(), path(key, etag)));
+                    } else {
+                        delete(part);
+                    }
+                });
+    }
+
+    private void commit(List<String> key, Path part, Entry entry) {
+        if (entry.length > maxBytes) {
+            delete(part);
+        } else if (moveIntoPlace(part, entry.path)) {
+            index(key, entry);
+        }
+    }
+
+    private static boolean moveIntoPlace(Path part, Path path) {
+        try {
+            Files.move(part, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            logger.warn("Unable to store an attachment", e);
+            delete(part);
+            return false;
+        }
+    }
+
+    private void index(List<String> key, Entry entry) {
+        synchronized (lock) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                totalBytes -= previous.length;
+                if (!previous.path.equals(entry.path)) {
+                    delete(previous.path);
+                }
+            }
+            totalBytes += entry.length;
+            evict();
+        }
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<List<String>, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Entry entry = eldest.next().getValue();
+            eldest.remove();
+            totalBytes -= entry.length;
+            delete(entry.path);
+        }
+    }
+
+    private void remove(List<String> key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.length;
+        }
+    }
+
+    private Path path(List<String> key, String etag) {
+        return directory.resolve(DigestUtils.sha256Hex(String.join("\n", key)) + "-" + DigestUtils.sha256Hex(etag) + FILE_SUFFIX);
+    }
+
+    private static Mono<Void> write(ServerWebExchange exchange, ResponseEntity<Flux<DataBuffer>> entity) {
+        ServerHttpResponse response = exchange.getResponse();
+        response.setStatusCode(entity.getStatusCode());
+        response.getHeaders().putAll(entity.getHeaders());
+        return entity.hasBody() ? response.writeWith(entity.getBody()) : response.setComplete();
+    }
+
+    private static void close(AsynchronousFileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close a stored attachment", e);
+        }
+    }
+
+    private static void delete(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Unable to delete a stored attachment {}", path, e);
+        }
+    }
+
+    private static final class Entry {
+        private final String etag;
+        private final MediaType contentType;
+        private final long length;
+        private final Path path;
+
+        private Entry(String etag, MediaType contentType, long length, Path path) {
+            this.etag = etag;
+            this.contentType = contentType;
+            this.length = length;
+            this.path = path;
+        }
+    }
+}
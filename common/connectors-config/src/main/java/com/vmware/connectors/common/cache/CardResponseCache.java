@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vmware.connectors.common.payloads.response.Card;
+import com.vmware.connectors.common.payloads.response.Cards;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Short lived, per-user cache of the cards returned from /cards/requests.
+ * <p>
+ * The hub clients poll for cards constantly, and building them usually means several
+ * calls to the backend. Repeated polls within the TTL are answered from memory instead.
+ * Entries are keyed by the backend base URL and the user, plus whatever else the cards
+ * depend on (the locale, the connector credentials, the connector config, etc.). The
+ * credentials are part of the key so that a cached response is never handed to a
+ * request that would have been turned down by the backend.
+ * <p>
+ * Once an entry is older than the TTL the cards are fetched again. Any new card whose
+ * hash matches one of the previous cards is swapped for the previous card, so the hub
+ * sees the same card (id and creation date included) until its content really changes.
+ * <p>
+ * Connectors should call {@link #invalidate(String, String)} when an action changes what
+ * the user's cards would be (e.g. a successful approve or reject).
+ * <p>
+ * The cache is disabled when the TTL is zero.
+ */
+public class CardResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CardResponseCache.class);
+
+    // How many TTLs an idle user's cards are kept around to revalidate against
+    private static final int RETENTION_FACTOR = 10;
+
+    private final long ttlNanos;
+    private final Cache<List<String>, ConcurrentMap<List<?>, Entry>> cache;
+
+    public CardResponseCache(Duration ttl, long maxUsers) {
+        this.ttlNanos = ttl.toNanos();
+        this.cache = buildCache(ttlNanos, maxUsers);
+    }
+
+    private static <K, V> Cache<K, V> buildCache(long ttlNanos, long maxUsers) {
+        if (ttlNanos <= 0) {
+            return null;
+        }
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxUsers)
+                .expireAfterAccess(ttlNanos * RETENTION_FACTOR, TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return cache != null;
+    }
+
+    /**
+     * Returns the user's cards from the cache if they are fresh, otherwise loads them.
+     * Errors are passed along and never cached.
+     *
+     * @param baseUrl the backend base URL
+     * @param user the user principal (usually the email from the JWT)
+     * @param variant everything else the cards depend on, e.g. the locale and connector credentials
+     * @param loader builds the cards from the backend
+     * @return the cards
+     */
+    public Mono<Cards> getCards(String baseUrl, String user, List<?> variant, Supplier<Mono<Cards>> loader) {
+        if (cache == null) {
+            return loader.get();
+        }
+
+        ConcurrentMap<List<?>, Entry> entries = cache.asMap().computeIfAbsent(userKey(baseUrl, user), key -> new ConcurrentHashMap<>());
+        Entry previous = entries.get(variant);
+        long now = System.nanoTime();
+        if (previous != null && now - previous.loadedAt < ttlNanos) {
+            logger.debug("Returning cached cards: baseUrl={}, user={}", baseUrl, user);
+            return Mono.just(previous.cards);
+        }
+
+        return loader.get()
+                .map(cards -> revalidate(cards, previous))
+                .doOnNext(cards -> entries.put(variant, new Entry(cards, now)));
+    }
+
+    /**
+     * Drops all the cached cards of the user. Loads that are in flight when this is
+     * called will not repopulate the cache.
+     *
+     * @param baseUrl the backend base URL
+     * @param user the user principal
+     */
+    public void invalidate(String baseUrl, String user) {
+        if (cache != null) {
+            logger.debug("Invalidating cached cards: baseUrl={}, user={}", baseUrl, user);
+            cache.invalidate(userKey(baseUrl, user));
+        }
+    }
+
+    private static List<String> userKey(String baseUrl, String user) {
+        return Arrays.asList(baseUrl, user);
+    }
+
+    private static Cards revalidate(Cards loaded, Entry previous) {
+        if (previous == null) {
+            return loaded;
+        }
+
+        Map<String, Card> previousCards = previous.cards.getCards()
+                .stream()
+                .collect(Collectors.toMap(Card::getHash, Function.identity(), (first, second) -> first));
+
+        Cards cards = new Cards();
+        for (Card card : loaded.getCards()) {
+            cards.getCards().add(previousCards.getOrDefault(card.getHash(), card));
+        }
+        return cards;
+    }
+
+    private static final class Entry {
+        private final Cards cards;
+        private final long loadedAt;
+
+        private Entry(Cards cards, long loadedAt) {
+            this.cards = cards;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
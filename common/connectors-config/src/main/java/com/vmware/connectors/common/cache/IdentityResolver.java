@@ -0,0 +1,132 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.cache;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vmware.connectors.common.utils.SingleFlight;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Caches what a user is in the backend (e.g. the ServiceNow sys_id of the email in the
+ * JWT), so that connectors don't have to look it up at the start of every request.
+ * <p>
+ * Identities are keyed by the connector, the backend base URL, a SHA-256 of the
+ * credential the lookup was made with and the email. The credential is part of the key
+ * so that an identity is never handed to a request that would have been turned down by
+ * the backend; the credential itself is never kept.
+ * <ul>
+ * <li>Concurrent lookups of the same identity share a single call to the backend.</li>
+ * <li>A user the backend doesn't know (the lookup completes empty) is remembered for a
+ * shorter while, so that unknown users don't go to the backend on every request.</li>
+ * <li>Errors are passed along and never cached.</li>
+ * </ul>
+ * The cache is disabled when the TTL is zero.
+ */
+public class IdentityResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(IdentityResolver.class);
+
+    private final Cache<List<String>, Optional<Object>> identities;
+    private final Cache<List<String>, Optional<Object>> unknown;
+    private final SingleFlight<List<String>, Optional<Object>> lookups = new SingleFlight<>();
+
+    public IdentityResolver(Duration ttl, Duration negativeTtl, long maxEntries) {
+        this(ttl, negativeTtl, maxEntries, Ticker.systemTicker());
+    }
+
+    IdentityResolver(Duration ttl, Duration negativeTtl, long maxEntries, Ticker ticker) {
+        this.identities = buildCache(ttl, maxEntries, ticker);
+        this.unknown = buildCache(negativeTtl, maxEntries, ticker);
+    }
+
+    private static <K, V> Cache<K, V> buildCache(Duration ttl, long maxEntries, Ticker ticker) {
+        if (ttl.isZero() || ttl.isNegative()) {
+            return null;
+        }
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    public boolean isEnabled() {
+        return identities != null;
+    }
+
+    /**
+     * Returns the user's identity from the cache, otherwise looks it up.
+     *
+     * @param connector the connector, so that identities of different connectors never mix
+     * @param baseUrl the backend base URL
+     * @param credential the credential the lookup is made with
+     * @param email the user's email, or null when the credential alone identifies the user
+     * @param lookup looks the identity up in the backend, completing empty if the user is unknown
+     * @param <T> the type of the identity
+     * @return the identity, or empty if the backend doesn't know the user
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> resolve(String connector, String baseUrl, String credential, String email, Supplier<Mono<T>> lookup) {
+        if (identities == null) {
+            return lookup.get();
+        }
+
+        return Mono.defer(() -> {
+            List<String> key = List.of(connector, baseUrl, DigestUtils.sha256Hex(StringUtils.defaultString(credential)), StringUtils.defaultString(email));
+
+            Optional<Object> cached = identities.getIfPresent(key);
+            if (cached == null && unknown != null) {
+                cached = unknown.getIfPresent(key);
+            }
+            if (cached != null) {
+                logger.debug("Returning cached identity: connector={}, baseUrl={}, email={}", connector, baseUrl, email);
+                return Mono.justOrEmpty((Optional<T>) cached);
+            }
+
+            return load(key, lookup)
+                    .flatMap(identity -> Mono.justOrEmpty((Optional<T>) identity));
+        });
+    }
+
+    /**
+     * Forgets all the identities.
+     */
+    public void invalidateAll() {
+        if (identities != null) {
+            identities.invalidateAll();
+        }
+        if (unknown != null) {
+            unknown.invalidateAll();
+        }
+    }
+
+    private <T> Mono<Optional<Object>> load(List<String> key, Supplier<Mono<T>> lookup) {
+        return lookups.execute(key, () -> lookup.get()
+                .map(identity -> {
+                    Optional<Object> found = Optional.of(identity);
+                    identities.put(key, found);
+                    return found;
+                })
+                .switchIfEmpty(Mono.fromSupplier(() -> {
+                    if (unknown != null) {
+                        unknown.put(key, Optional.empty());
+                    }
+                    return Optional.empty();
+                })));
+    }
+}
@@ -5,14 +5,31 @@
 
 package com.vmware.connectors.common.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vmware.connectors.common.cache.AccessTokenCache;
+import com.vmware.connectors.common.cache.AttachmentCache;
+import com.vmware.connectors.common.cache.CardResponseCache;
+import com.vmware.connectors.common.cache.IdentityResolver;
 import com.vmware.connectors.common.json.JsonDocumentDecoder;
+import com.vmware.connectors.common.metrics.BackendMetricsFilter;
+import com.vmware.connectors.common.metrics.CardRequestMetricsWebFilter;
+import com.vmware.connectors.common.metrics.CardsMetricsEncoder;
+import com.vmware.connectors.common.payloads.response.CardHashMode;
+import com.vmware.connectors.common.utils.CapabilityTokens;
 import com.vmware.connectors.common.utils.CardTextAccessor;
 import com.vmware.connectors.common.web.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.netty.channel.ChannelOption;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.autoconfigure.web.reactive.function.client.ClientHttpConnectorAutoConfiguration;
 import org.springframework.boot.web.codec.CodecCustomizer;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
@@ -22,17 +39,25 @@ import org.springframework.context.support.ResourceBundleMessageSource;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.core.io.Resource;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.server.WebFilter;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.time.Duration;
 
 
 /**
  * Created by Rob Worsnop on 11/29/16.
  */
 @Configuration
+@AutoConfigureBefore(ClientHttpConnectorAutoConfiguration.class)
 @Import({ExceptionHandlers.class, ConnectorRootController.class})
 public class ConnectorsAutoConfiguration {
 
@@ -48,6 +73,11 @@ public class ConnectorsAutoConfiguration {
         return new SecurityContextWebFilter();
     }
 
+    @Bean
+    public WebFilter mdcContextFilter() {
+        return new MdcContextWebFilter();
+    }
+
     @Bean
     public WebFilter formFilter() {
         return new FormWebFilter();
@@ -60,6 +90,11 @@ public class ConnectorsAutoConfiguration {
     }
 
 
+    @Bean
+    public WebFilter cardRequestMetricsFilter(ObjectProvider<MeterRegistry> meterRegistry) {
+        return new CardRequestMetricsWebFilter(registry(meterRegistry));
+    }
+
     @Bean
     public MessageSource messageSource() {
         ResourceBundleMessageSource ret = new ResourceBundleMessageSource();
@@ -74,13 +109,131 @@ public class ConnectorsAutoConfiguration {
     }
 
     @Bean
-    public WebClient webClient(WebClient.Builder builder) {
-        return builder.build();
+    public WebClient webClient(
+            WebClient.Builder builder,
+            ObjectProvider<MeterRegistry> meterRegistry,
+            ConnectionPoolFilter connectionPoolFilter,
+            @Value("${connectors.webclient.coalesce-requests:false}") boolean coalesceRequests,
+            @Value("${connectors.webclient.coalesce-max-size-kb:256}") long coalesceMaxSizeKb,
+            @Value("${connectors.webclient.response-timeout-seconds:60}") long responseTimeoutSeconds
+    ) {
+        // Filters run in the order they are added, the metrics only see the requests that are sent
+        if (coalesceRequests) {
+            builder.filter(new CoalescingExchangeFilter(registry(meterRegistry), coalesceMaxSizeKb * 1024));
+        }
+        builder.filter(new BackendMetricsFilter(registry(meterRegistry)));
+        Duration responseTimeout = Duration.ofSeconds(responseTimeoutSeconds);
+        return builder
+                .filter(connectionPoolFilter)
+                .filter((request, next) -> next.exchange(request).timeout(responseTimeout))
+                .build();
+    }
+
+    @Bean
+    public ConnectionPoolFilter connectionPoolFilter(
+            ObjectProvider<MeterRegistry> meterRegistry,
+            @Value("${connectors.webclient.pool.max-pending-per-host:500}") int maxPendingPerHost,
+            @Value("${connectors.webclient.pool.max-idle-seconds:60}") long maxIdleSeconds,
+            @Value("${connectors.webclient.pool.max-life-seconds:600}") long maxLifeSeconds,
+            @Value("${connectors.webclient.read-timeout-seconds:30}") long readTimeoutSeconds,
+            @Value("${connectors.webclient.write-timeout-seconds:30}") long writeTimeoutSeconds
+    ) {
+        return new ConnectionPoolFilter(
+                registry(meterRegistry),
+                maxPendingPerHost,
+                Duration.ofSeconds(maxIdleSeconds),
+                Duration.ofSeconds(maxLifeSeconds),
+                Duration.ofSeconds(readTimeoutSeconds),
+                Duration.ofSeconds(writeTimeoutSeconds)
+        );
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider connectorsConnectionProvider(
+            @Value("${connectors.webclient.pool.max-connections-per-host:100}") int maxConnectionsPerHost,
+            @Value("${connectors.webclient.pool.acquire-timeout-seconds:10}") long acquireTimeoutSeconds
+    ) {
+        // Reactor Netty keeps a pool per remote address, each with at most the max connections.
+        // Requests wait up to the acquire timeout for a connection, a max of -1 makes the pools elastic.
+        return ConnectionProvider.fixed("connectors", maxConnectionsPerHost, Duration.ofSeconds(acquireTimeoutSeconds).toMillis());
+    }
+
+    @Bean
+    public ReactorClientHttpConnector connectorsClientHttpConnector(
+            ConnectionProvider connectorsConnectionProvider,
+            ConnectionPoolFilter connectionPoolFilter,
+            @Value("${connectors.webclient.connect-timeout-seconds:10}") long connectTimeoutSeconds
+    ) {
+        int connectTimeoutMillis = Math.toIntExact(Duration.ofSeconds(connectTimeoutSeconds).toMillis());
+        HttpClient httpClient = HttpClient.create(connectorsConnectionProvider)
+                .tcpConfiguration(tcp -> tcp.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMillis));
+        return new ReactorClientHttpConnector(connectionPoolFilter.apply(httpClient));
+    }
+
+    @Bean
+    public CodecCustomizer codecCustomizer(
+            @Value("${connectors.json-decoder.streaming:true}") boolean streaming,
+            @Value("${connectors.json-decoder.max-in-memory-size:-1}") int maxInMemorySize
+    ) {
+        return configurer -> configurer.customCodecs().decoder(new JsonDocumentDecoder(streaming, maxInMemorySize));
+    }
+
+    @Bean
+    public CodecCustomizer cardsMetricsCodecCustomizer(ObjectMapper objectMapper, ObjectProvider<MeterRegistry> meterRegistry) {
+        // Runs after Boot's Jackson customizer, so this encoder is the one that's used
+        CardsMetricsEncoder encoder = new CardsMetricsEncoder(objectMapper, registry(meterRegistry));
+        return configurer -> configurer.defaultCodecs().jackson2JsonEncoder(encoder);
+    }
+
+    @Bean
+    public CardResponseCache cardResponseCache(
+            @Value("${connectors.card-cache.ttl-seconds:0}") long ttlSeconds,
+            @Value("${connectors.card-cache.max-users:10000}") long maxUsers
+    ) {
+        return new CardResponseCache(Duration.ofSeconds(ttlSeconds), maxUsers);
+    }
+
+    @Bean
+    public AccessTokenCache accessTokenCache(
+            @Value("${connectors.token-cache.enabled:true}") boolean enabled,
+            @Value("${connectors.token-cache.max-entries:1000}") long maxEntries,
+            @Value("${connectors.token-cache.failure-ttl-seconds:30}") long failureTtlSeconds
+    ) {
+        return new AccessTokenCache(enabled, maxEntries, Duration.ofSeconds(failureTtlSeconds));
+    }
+
+    @Bean(destroyMethod = "clear")
+    public AttachmentCache attachmentCache(
+            @Value("${connectors.attachment-cache.directory:}") String directory,
+            @Value("${connectors.attachment-cache.max-size-mb:256}") long maxSizeMb
+    ) {
+        // A new temporary directory unless one is configured
+        Path path = StringUtils.isBlank(directory) ? null : Paths.get(directory);
+        return new AttachmentCache(path, maxSizeMb * 1024 * 1024);
+    }
+
+    @Bean
+    public CapabilityTokens capabilityTokens(
+            @Value("${connectors.capability-token.secret:}") String secret,
+            @Value("${connectors.capability-token.ttl-seconds:3600}") long ttlSeconds
+    ) {
+        // Disabled unless a secret, shared by all the instances, is configured
+        return new CapabilityTokens(secret, Duration.ofSeconds(ttlSeconds), Clock.systemUTC());
     }
 
     @Bean
-    public CodecCustomizer codecCustomizer() {
-        return configurer -> configurer.customCodecs().decoder(new JsonDocumentDecoder());
+    public CardHashMode cardHashMode(@Value("${connectors.card-hash.legacy:false}") boolean legacy) {
+        // Keep the old card hash values while a new version rolls out, if asked to
+        return legacy ? CardHashMode.LEGACY : CardHashMode.STREAMED;
+    }
+
+    @Bean
+    public IdentityResolver identityResolver(
+            @Value("${connectors.identity-cache.ttl-seconds:300}") long ttlSeconds,
+            @Value("${connectors.identity-cache.negative-ttl-seconds:60}") long negativeTtlSeconds,
+            @Value("${connectors.identity-cache.max-entries:10000}") long maxEntries
+    ) {
+        return new IdentityResolver(Duration.ofSeconds(ttlSeconds), Duration.ofSeconds(negativeTtlSeconds), maxEntries);
     }
 
     @Bean
@@ -88,4 +241,8 @@ public class ConnectorsAutoConfiguration {
     public String connectorMetadata() throws IOException {
         return IOUtils.toString(metadataHalResource.getInputStream(), Charset.defaultCharset());
     }
+
+    private static MeterRegistry registry(ObjectProvider<MeterRegistry> meterRegistry) {
+        return meterRegistry.getIfAvailable(() -> Metrics.globalRegistry);
+    }
 }
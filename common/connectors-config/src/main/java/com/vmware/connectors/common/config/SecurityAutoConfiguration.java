@@ -62,9 +62,17 @@ public class SecurityAutoConfiguration {
 
 
     @Bean
-    SecurityWebFilterChain springSecurityFilterChain(ServerHttpSecurity http, RSAPublicKey publicKey) {
-        http.authorizeExchange().pathMatchers(HttpMethod.GET, "/health", "/templates/**", "/images/**", "/").permitAll()
-        .and().csrf().disable()
+    SecurityWebFilterChain springSecurityFilterChain(
+            ServerHttpSecurity http,
+            RSAPublicKey publicKey,
+            @Value("${connectors.metrics.public:false}") boolean publicMetrics
+    ) {
+        http.authorizeExchange().pathMatchers(HttpMethod.GET, "/health", "/templates/**", "/images/**", "/").permitAll();
+        if (publicMetrics) {
+            // For scrapers that can't present a JWT; the metrics name the backend hosts
+            http.authorizeExchange().pathMatchers(HttpMethod.GET, "/prometheus").permitAll();
+        }
+        http.csrf().disable()
         .authorizeExchange().anyExchange().access(new AudienceAuthorizationManager())
         .and()
         .oauth2ResourceServer()
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Records every call the connector makes to a backend.
+ * <ul>
+ * <li>"connectors.backend.requests" times the calls, until the response status and headers
+ * are received. It publishes a histogram so percentiles can be aggregated.</li>
+ * <li>"connectors.backend.response.size" records the size of the response bodies, in bytes.</li>
+ * </ul>
+ * Both are tagged with the backend host, the method, the URI and the response status. The
+ * URI is the path of the template the request was made with if there is one (e.g.
+ * "/api/now/table/{table}/{sysId}"), otherwise the request path. Either way, segments that
+ * look like IDs or emails are replaced with "{id}", so that the number of tag values
+ * stays bounded.
+ * <p>
+ * The time also counts towards the backend time of the /cards/requests call it was made
+ * for, if any (see {@link CardRequestMetricsWebFilter}). Requests that join another's
+ * in-flight request are not sent, so they are neither recorded here nor counted towards
+ * their own card request's backend time.
+ */
+public class BackendMetricsFilter implements ExchangeFilterFunction {
+
+    private static final String URI_TEMPLATE_ATTRIBUTE = WebClient.class.getName() + ".uriTemplate";
+
+    private static final Pattern ID_SEGMENT = Pattern.compile(
+            "[0-9]+|[0-9a-fA-F-]{16,}|[^/]*@[^/]*|(?=[^/]*[0-9])[A-Za-z0-9_.~%-]{15,}");
+
+    private static final Pattern ABSOLUTE_URL_PREFIX = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*://[^/]*");
+
+    private final MeterRegistry meterRegistry;
+
+    public BackendMetricsFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.subscriberContext().flatMap(context -> {
+            CardRequestTimings timings = context.getOrDefault(CardRequestTimings.class, null);
+            if (timings != null) {
+                timings.backendCallStarted();
+            }
+            long start = System.nanoTime();
+            return next.exchange(request)
+                    .doOnSuccess(response -> {
+                        if (response != null) {
+                            record(request, String.valueOf(response.rawStatusCode()), start);
+                        }
+                    })
+                    .doOnError(error -> record(request, error.getClass().getSimpleName(), start))
+                    .map(response -> countBody(request, response))
+                    .doFinally(signal -> {
+                        if (timings != null) {
+                            timings.backendCallEnded();
+                        }
+                    });
+        });
+    }
+
+    private void record(ClientRequest request, String status, long start) {
+        Timer.builder("connectors.backend.requests")
+                .tags(tags(request).and("status", status))
+                .publishPercentileHistogram()
+                .register(meterRegistry)
+                .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private ClientResponse countBody(ClientRequest request, ClientResponse response) {
+        DistributionSummary size = DistributionSummary.builder("connectors.backend.response.size")
+                .baseUnit("bytes")
+                .tags(tags(request).and("status", String.valueOf(response.rawStatusCode())))
+                .register(meterRegistry);
+        AtomicLong bytes = new AtomicLong();
+        return ClientResponse.from(response)
+                .body(response.body(BodyExtractors.toDataBuffers())
+                        .doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+                        .doOnComplete(() -> size.record(bytes.get())))
+                .build();
+    }
+
+    private static Tags tags(ClientRequest request) {
+        return Tags.of(
+                "host", String.valueOf(request.url().getHost()),
+                "method", request.method().name(),
+                "uri", uri(request)
+        );
+    }
+
+    private static String uri(ClientRequest request) {
+        String path = request.attribute(URI_TEMPLATE_ATTRIBUTE)
+                .map(template -> templatePath((String) template))
+                .orElseGet(() -> request.url().getRawPath());
+        return normalize(path);
+    }
+
+    private static String templatePath(String template) {
+        String path = ABSOLUTE_URL_PREFIX.matcher(template).replaceFirst("");
+        int query = path.indexOf('?');
+        return query < 0 ? path : path.substring(0, query);
+    }
+
+    // Templates are often built by concatenation, so they get the same treatment as paths
+    private static String normalize(String path) {
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        String[] segments = path.split("/", -1);
+        StringBuilder normalized = new StringBuilder(path.length());
+        for (int i = 0; i < segments.length; i++) {
+            if (i > 0) {
+                normalized.append('/');
+            }
+            normalized.append(ID_SEGMENT.matcher(segments[i]).matches() ? "{id}" : segments[i]);
+        }
+        return normalized.toString();
+    }
+}
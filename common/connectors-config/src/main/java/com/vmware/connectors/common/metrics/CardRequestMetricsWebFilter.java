@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the /cards/requests calls, split between the time spent waiting on the backend and
+ * the time spent assembling the cards.
+ * <ul>
+ * <li>"connectors.cards.requests" is the time of the whole call.</li>
+ * <li>"connectors.cards.backend" is the time during which at least one backend call was in
+ * progress (see {@link BackendMetricsFilter}).</li>
+ * <li>"connectors.cards.assembly" is the rest.</li>
+ * </ul>
+ * All three are tagged with the response status.
+ */
+public class CardRequestMetricsWebFilter implements WebFilter {
+
+    private static final String CARDS_REQUESTS_PATH = "/cards/requests";
+
+    private final MeterRegistry meterRegistry;
+
+    public CardRequestMetricsWebFilter(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        if (exchange.getRequest().getMethod() != HttpMethod.POST
+                || !CARDS_REQUESTS_PATH.equals(exchange.getRequest().getPath().pathWithinApplication().value())) {
+            return chain.filter(exchange);
+        }
+
+        CardRequestTimings timings = new CardRequestTimings();
+        return chain.filter(exchange)
+                .doFinally(signal -> record(exchange, timings))
+                .subscriberContext(Context.of(CardRequestTimings.class, timings));
+    }
+
+    private void record(ServerWebExchange exchange, CardRequestTimings timings) {
+        long total = System.nanoTime() - timings.getStart();
+        long backend = Math.min(timings.getBackendNanos(), total);
+        Tags tags = Tags.of("status", Optional.ofNullable(exchange.getResponse().getStatusCode())
+                .map(HttpStatus::value)
+                .map(String::valueOf)
+                .orElse("200"));
+
+        timer("connectors.cards.requests", tags).record(total, TimeUnit.NANOSECONDS);
+        timer("connectors.cards.backend", tags).record(backend, TimeUnit.NANOSECONDS);
+        timer("connectors.cards.assembly", tags).record(total - backend, TimeUnit.NANOSECONDS);
+    }
+
+    private Timer timer(String name, Tags tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.metrics;
+
+/**
+ * Keeps track of how much of a /cards/requests call was spent waiting on the backend.
+ * Backend calls often run concurrently, so this is the time during which at least one
+ * backend call was in progress, not the sum of the calls.
+ */
+class CardRequestTimings {
+
+    private final long start = System.nanoTime();
+    private final Object lock = new Object();
+
+    private int inProgress;
+    private long busySince;
+    private long backendNanos;
+
+    void backendCallStarted() {
+        synchronized (lock) {
+            if (inProgress == 0) {
+                busySince = System.nanoTime();
+            }
+            inProgress++;
+        }
+    }
+
+    void backendCallEnded() {
+        synchronized (lock) {
+            inProgress--;
+            if (inProgress == 0) {
+                backendNanos += System.nanoTime() - busySince;
+            }
+        }
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getBackendNanos() {
+        synchronized (lock) {
+            long nanos = backendNanos;
+            if (inProgress > 0) {
+                nanos += System.nanoTime() - busySince;
+            }
+            return nanos;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vmware.connectors.common.payloads.response.Cards;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.util.MimeType;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * The default JSON encoder, which also records how many cards each response carries in
+ * the "connectors.cards.produced" summary.
+ */
+public class CardsMetricsEncoder extends Jackson2JsonEncoder {
+
+    private final DistributionSummary cardsProduced;
+
+    public CardsMetricsEncoder(ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        super(objectMapper);
+        this.cardsProduced = DistributionSummary.builder("connectors.cards.produced")
+                .description("Number of cards in each response")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Flux<DataBuffer> encode(
+            Publisher<?> inputStream,
+            DataBufferFactory bufferFactory,
+            ResolvableType elementType,
+            MimeType mimeType,
+            Map<String, Object> hints
+    ) {
+        // A Mono is encoded as a single value, anything else as an array
+        Publisher<?> counted = inputStream instanceof Mono
+                ? Mono.from(inputStream).doOnNext(this::count)
+                : Flux.from(inputStream).doOnNext(this::count);
+        return super.encode(counted, bufferFactory, elementType, mimeType, hints);
+    }
+
+    private void count(Object value) {
+        if (value instanceof Cards) {
+            cardsProduced.record(((Cards) value).getCards().size());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.web;
+
+import com.vmware.connectors.common.utils.SingleFlight;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Sends a single request when identical GETs are made at the same time (e.g. several users
+ * of the same tenant looking up the same record), and hands the response to all of them.
+ * <p>
+ * Requests are identical when they have the same URL and the same headers, the headers
+ * (credentials included) are only kept as a SHA-256. Only GETs that accept JSON are
+ * coalesced, and not the ones with the {@link #PASS_THROUGH_ATTRIBUTE} attribute set (e.g.
+ * attachment downloads). Other requests are passed straight through.
+ * <p>
+ * The response has to be read into memory to be shared, so it is only shared if it is JSON
+ * and has a Content-Length of at most the max size. Otherwise the connection is let go
+ * without reading the body, and every caller sends its own request. The shared call keeps
+ * running when its callers cancel, so it never holds on to a response nobody will read.
+ * <p>
+ * Each caller gets its own copy of the body, so every caller can read and release its
+ * DataBuffers without affecting the others.
+ * <p>
+ * The "connectors.webclient.coalescing" counter is tagged with result=sent for the requests
+ * that went to the backend and result=joined for the ones that shared another's response.
+ */
+public class CoalescingExchangeFilter implements ExchangeFilterFunction {
+
+    /**
+     * Set to true on a request that must never be coalesced.
+     */
+    public static final String PASS_THROUGH_ATTRIBUTE = CoalescingExchangeFilter.class.getName() + ".passThrough";
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingExchangeFilter.class);
+
+    private static final String METRIC_NAME = "connectors.webclient.coalescing";
+
+    private static final DefaultDataBufferFactory BUFFER_FACTORY = new DefaultDataBufferFactory();
+
+    private final Exchanges exchanges;
+    private final Counter sent;
+    private final long maxSize;
+
+    public CoalescingExchangeFilter(MeterRegistry meterRegistry, long maxSize) {
+        this.exchanges = new Exchanges(meterRegistry.counter(METRIC_NAME, "result", "joined"));
+        this.sent = meterRegistry.counter(METRIC_NAME, "result", "sent");
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (!isCoalescable(request)) {
+            return next.exchange(request);
+        }
+
+        return exchanges.execute(key(request), () -> send(request, next)
+                .flatMap(this::read)
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new IllegalStateException("No response was received"))))
+        ).flatMap(shared -> {
+            if (shared.isBuffered()) {
+                return Mono.just(shared.toClientResponse());
+            }
+            logger.debug("Response can't be shared, sending the request again: {} {}", request.method(), request.url());
+            return send(request, next);
+        });
+    }
+
+    private Mono<ClientResponse> send(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            sent.increment();
+            return next.exchange(request);
+        });
+    }
+
+    private static boolean isCoalescable(ClientRequest request) {
+        return request.method() == HttpMethod.GET
+                && !request.attribute(PASS_THROUGH_ATTRIBUTE).map(Boolean.TRUE::equals).orElse(false)
+                && request.headers().getAccept()
+                        .stream()
+                        .anyMatch(type -> !type.isWildcardType() && type.isCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    private boolean isShareable(ClientResponse response) {
+        long contentLength = response.headers().contentLength().orElse(-1);
+        return contentLength >= 0
+                && contentLength <= maxSize
+                && response.headers().contentType()
+                        .map(type -> type.isCompatibleWith(MediaType.APPLICATION_JSON))
+                        .orElse(false);
+    }
+
+    private Mono<SharedResponse> read(ClientResponse response) {
+        if (!isShareable(response)) {
+            // Cancelling the body releases the connection, rather than reading all of it
+            return response.body(BodyExtractors.toDataBuffers())
+                    .take(0)
+                    .then(Mono.just(SharedResponse.NOT_SHAREABLE));
+        }
+        return DataBufferUtils.join(response.body(BodyExtractors.toDataBuffers()))
+                .defaultIfEmpty(BUFFER_FACTORY.allocateBuffer(0))
+                .map(buffer -> {
+                    try {
+                        byte[] body = new byte[buffer.readableByteCount()];
+                        buffer.read(body);
+                        return new SharedResponse(response, body);
+                    } finally {
+                        DataBufferUtils.release(buffer);
+                    }
+                });
+    }
+
+    private static String key(ClientRequest request) {
+        return request.method() + " " + request.url() + " " + DigestUtils.sha256Hex(request.headers().toString());
+    }
+
+    private static final class Exchanges extends SingleFlight<String, SharedResponse> {
+        private final Counter joinedCounter;
+
+        private Exchanges(Counter joinedCounter) {
+            this.joinedCounter = joinedCounter;
+        }
+
+        @Override
+        protected void joined(String key) {
+            logger.debug("Joining in-flight request: {}", key);
+            joinedCounter.increment();
+        }
+    }
+
+    private static final class SharedResponse {
+        private static final SharedResponse NOT_SHAREABLE = new SharedResponse(null, null);
+
+        private final ClientResponse response;
+        private final byte[] body;
+
+        private SharedResponse(ClientResponse response, byte[] body) {
+            this.response = response;
+            this.body = body;
+        }
+
+        private boolean isBuffered() {
+            return body != null;
+        }
+
+        private ClientResponse toClientResponse() {
+            Flux<DataBuffer> copy = body.length == 0
+                    ? Flux.empty()
+                    : Flux.defer(() -> Flux.just(BUFFER_FACTORY.wrap(body)));
+            return ClientResponse.from(response)
+                    .body(copy)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.web;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.handler.timeout.WriteTimeoutHandler;
+import io.netty.util.AttributeKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+import reactor.netty.Connection;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.channel.BootstrapHandlers;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientRequest;
+import reactor.util.context.Context;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+
+/**
+ * Looks after the pooled connections of the shared HTTP client.
+ * <p>
+ * As a WebClient filter, it limits how many requests can be waiting for a connection to
+ * each backend host. Once the limit is reached, new requests fail straight away with a 503
+ * rather than queueing up behind requests that are already likely to time out.
+ * <p>
+ * {@link #apply(HttpClient)} adds the rest to the HTTP client:
+ * <ul>
+ * <li>Connections that have been idle for longer than the max idle time are closed.</li>
+ * <li>Connections that are older than the max life are closed once their current request is done.</li>
+ * <li>Read and write timeouts, for as long as a request is using the connection.</li>
+ * </ul>
+ * The pool is reported under "connectors.webclient.pool": the number of open, active, idle
+ * and pending connections, and a timer of how long requests wait to get a connection.
+ */
+public class ConnectionPoolFilter implements ExchangeFilterFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPoolFilter.class);
+
+    private static final String METRIC_PREFIX = "connectors.webclient.pool.";
+
+    private static final AttributeKey<Long> CREATED_AT = AttributeKey.valueOf("connectors.createdAt");
+
+    private final int maxPendingPerHost;
+    private final Duration maxIdle;
+    private final long maxLifeNanos;
+    private final Duration readTimeout;
+    private final Duration writeTimeout;
+
+    private final ConcurrentMap<String, AtomicInteger> pendingByHost = new ConcurrentHashMap<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger open = new AtomicInteger();
+    private final Set<Channel> active = ConcurrentHashMap.newKeySet();
+    private final Timer acquireTimer;
+
+    public ConnectionPoolFilter(
+            MeterRegistry meterRegistry,
+            int maxPendingPerHost,
+            Duration maxIdle,
+            Duration maxLife,
+            Duration readTimeout,
+            Duration writeTimeout
+    ) {
+        this.maxPendingPerHost = maxPendingPerHost;
+        this.maxIdle = maxIdle;
+        this.maxLifeNanos = maxLife.toNanos();
+        this.readTimeout = readTimeout;
+        this.writeTimeout = writeTimeout;
+
+        Gauge.builder(METRIC_PREFIX + "open", open, AtomicInteger::get).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "active", active, Set::size).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "idle", this, ConnectionPoolFilter::idle).register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + "pending", pending, AtomicInteger::get).register(meterRegistry);
+        this.acquireTimer = Timer.builder(METRIC_PREFIX + "acquire")
+                .description("Time spent waiting for a connection")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        return Mono.defer(() -> {
+            String host = host(request.url());
+            AtomicInteger hostPending = pendingByHost.computeIfAbsent(host, key -> new AtomicInteger());
+            if (hostPending.incrementAndGet() > maxPendingPerHost) {
+                hostPending.decrementAndGet();
+                logger.warn("Too many requests waiting for a connection to {}", host);
+                return Mono.error(new ResponseStatusException(SERVICE_UNAVAILABLE, "Too many requests waiting for a connection to " + host));
+            }
+
+            Acquisition acquisition = new Acquisition(hostPending);
+            return next.exchange(request)
+                    .doFinally(signal -> acquisition.done())
+                    .subscriberContext(Context.of(Acquisition.class, acquisition));
+        });
+    }
+
+    /**
+     * Adds the connection eviction, timeouts and metrics to the HTTP client.
+     */
+    public HttpClient apply(HttpClient httpClient) {
+        return httpClient
+                .tcpConfiguration(tcp -> tcp.bootstrap(bootstrap -> BootstrapHandlers.updateConfiguration(
+                        bootstrap, "connectors.pool", (observer, channel) -> onCreated(channel))))
+                .doOnRequest(this::onRequest)
+                .observe(this::onStateChange);
+    }
+
+    private void onCreated(Channel channel) {
+        channel.attr(CREATED_AT).set(System.nanoTime());
+        channel.pipeline().addFirst("connectors.idle", new IdleConnectionHandler(maxIdle));
+        open.incrementAndGet();
+        channel.closeFuture().addListener(future -> {
+            open.decrementAndGet();
+            active.remove(channel);
+        });
+    }
+
+    private void onRequest(HttpClientRequest request, Connection connection) {
+        request.currentContext()
+                .<Acquisition>getOrEmpty(Acquisition.class)
+                .ifPresent(Acquisition::acquired);
+
+        Long createdAt = connection.channel().attr(CREATED_AT).get();
+        if (createdAt != null && System.nanoTime() - createdAt >= maxLifeNanos) {
+            logger.debug("Connection has reached its max life, closing it after this request: {}", connection.channel());
+            connection.markPersistent(false);
+        }
+
+        // Handlers added through the connection are removed when it goes back to the pool
+        connection
+                .addHandlerLast("connectors.readTimeout", new ReadTimeoutHandler(readTimeout.toMillis(), TimeUnit.MILLISECONDS))
+                .addHandlerLast("connectors.writeTimeout", new WriteTimeoutHandler(writeTimeout.toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    private void onStateChange(Connection connection, ConnectionObserver.State state) {
+        if (state == ConnectionObserver.State.CONFIGURED) {
+            active.add(connection.channel());
+        } else if (state == ConnectionObserver.State.RELEASED || state == ConnectionObserver.State.DISCONNECTING) {
+            active.remove(connection.channel());
+        }
+    }
+
+    private double idle() {
+        return Math.max(0, open.get() - active.size());
+    }
+
+    private static String host(URI url) {
+        return url.getHost() + ":" + url.getPort();
+    }
+
+    private final class Acquisition {
+        private final AtomicInteger hostPending;
+        private final long start = System.nanoTime();
+        private final AtomicBoolean waiting = new AtomicBoolean(true);
+
+        private Acquisition(AtomicInteger hostPending) {
+            this.hostPending = hostPending;
+            pending.incrementAndGet();
+        }
+
+        private void acquired() {
+            if (stopWaiting()) {
+                acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void done() {
+            stopWaiting();
+        }
+
+        // Redirects acquire more than once, only the first counts
+        private boolean stopWaiting() {
+            if (waiting.compareAndSet(true, false)) {
+                hostPending.decrementAndGet();
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class IdleConnectionHandler extends IdleStateHandler {
+
+        private IdleConnectionHandler(Duration maxIdle) {
+            super(0, 0, maxIdle.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        protected void channelIdle(ChannelHandlerContext ctx, IdleStateEvent event) {
+            logger.debug("Closing idle connection: {}", ctx.channel());
+            ctx.close();
+        }
+    }
+}
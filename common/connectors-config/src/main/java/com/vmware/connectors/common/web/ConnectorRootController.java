@@ -7,7 +7,9 @@ package com.vmware.connectors.common.web;
 
 
 import com.vmware.connectors.common.utils.CommonUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -16,20 +18,23 @@ import org.springframework.http.server.reactive.ServerHttpRequest;
 
 /**
  * Created by harshas on 8/8/18.
+ * <p>
+ * The connectorMetadata bean is looked up on every request, so that a connector whose
+ * metadata changes at runtime can declare it as a prototype bean.
  */
 @RestController
 public class ConnectorRootController {
 
-    private final String connectorMetadata;
+    private final ObjectProvider<String> connectorMetadata;
 
     @Autowired
-    public ConnectorRootController(String connectorMetadata) {
+    public ConnectorRootController(@Qualifier("connectorMetadata") ObjectProvider<String> connectorMetadata) {
         this.connectorMetadata = connectorMetadata;
     }
 
     @GetMapping(path = "/")
     public ResponseEntity<String> getMetadata(ServerHttpRequest request) {
         return ResponseEntity.ok()
-                .body(this.connectorMetadata.replace("${CONNECTOR_HOST}", CommonUtils.buildConnectorUrl(request, null)));
+                .body(this.connectorMetadata.getObject().replace("${CONNECTOR_HOST}", CommonUtils.buildConnectorUrl(request, null)));
     }
 }
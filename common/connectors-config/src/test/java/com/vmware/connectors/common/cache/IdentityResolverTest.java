@@ -0,0 +1,139 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.cache;
+
+import com.google.common.base.Ticker;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdentityResolverTest {
+
+    private static final String BASE_URL = "https://backend.example.com";
+
+    private static final Duration TTL = Duration.ofMinutes(10);
+
+    private static final Duration NEGATIVE_TTL = Duration.ofMinutes(1);
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos.get();
+        }
+    };
+
+    private final IdentityResolver resolver = new IdentityResolver(TTL, NEGATIVE_TTL, 100, ticker);
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void identitiesAreCachedForTheTtl() {
+        assertThat(resolve("Bearer a", "jdoe@example.com", lookup("sys-1")), is("sys-1"));
+        advance(TTL.minusSeconds(1));
+        assertThat(resolve("Bearer a", "jdoe@example.com", lookup("sys-1")), is("sys-1"));
+        assertThat(calls.get(), is(1));
+
+        advance(Duration.ofSeconds(1));
+        assertThat(resolve("Bearer a", "jdoe@example.com", lookup("sys-2")), is("sys-2"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void unknownUsersAreCachedForTheNegativeTtl() {
+        assertThat(resolve("Bearer a", "nobody@example.com", lookup(null)), is(nullValue()));
+        advance(NEGATIVE_TTL.minusSeconds(1));
+        assertThat(resolve("Bearer a", "nobody@example.com", lookup(null)), is(nullValue()));
+        assertThat(calls.get(), is(1));
+
+        // Well within the TTL of known users, but the unknown user is asked for again
+        advance(Duration.ofSeconds(1));
+        assertThat(resolve("Bearer a", "nobody@example.com", lookup("sys-1")), is("sys-1"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void errorsAreNotCached() {
+        Supplier<Mono<String>> failing = () -> {
+            calls.incrementAndGet();
+            return Mono.error(new IllegalStateException("Connection reset"));
+        };
+
+        assertThrows(IllegalStateException.class, () -> resolve("Bearer a", "jdoe@example.com", failing));
+        assertThat(resolve("Bearer a", "jdoe@example.com", lookup("sys-1")), is("sys-1"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void concurrentLookupsShareOneCall() {
+        MonoProcessor<String> backend = MonoProcessor.create();
+        Supplier<Mono<String>> slow = () -> {
+            calls.incrementAndGet();
+            return backend;
+        };
+
+        MonoProcessor<String> first = resolver.resolve("test", BASE_URL, "Bearer a", "jdoe@example.com", slow).toProcessor();
+        MonoProcessor<String> second = resolver.resolve("test", BASE_URL, "Bearer a", "jdoe@example.com", slow).toProcessor();
+        backend.onNext("sys-1");
+
+        assertThat(first.block(), is("sys-1"));
+        assertThat(second.block(), is("sys-1"));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void theCredentialIsPartOfTheKey() {
+        assertThat(resolve("Bearer a", "jdoe@example.com", lookup("sys-1")), is("sys-1"));
+        assertThat(resolve("Bearer b", "jdoe@example.com", lookup("sys-1")), is("sys-1"));
+        assertThat(resolve("Bearer a", "jdoe@example.com", lookup("sys-1")), is("sys-1"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void theConnectorBaseUrlAndEmailArePartOfTheKey() {
+        resolver.resolve("test", BASE_URL, "Bearer a", "jdoe@example.com", lookup("sys-1")).block();
+        resolver.resolve("other", BASE_URL, "Bearer a", "jdoe@example.com", lookup("sys-1")).block();
+        resolver.resolve("test", "https://other.example.com", "Bearer a", "jdoe@example.com", lookup("sys-1")).block();
+        resolver.resolve("test", BASE_URL, "Bearer a", "asmith@example.com", lookup("sys-2")).block();
+        assertThat(calls.get(), is(4));
+    }
+
+    @Test
+    void aZeroTtlDisablesTheCache() {
+        IdentityResolver disabled = new IdentityResolver(Duration.ZERO, NEGATIVE_TTL, 100, ticker);
+
+        assertThat(disabled.isEnabled(), is(false));
+        disabled.resolve("test", BASE_URL, "Bearer a", "jdoe@example.com", lookup("sys-1")).block();
+        disabled.resolve("test", BASE_URL, "Bearer a", "jdoe@example.com", lookup("sys-1")).block();
+        assertThat(calls.get(), is(2));
+    }
+
+    private String resolve(String credential, String email, Supplier<Mono<String>> lookup) {
+        return resolver.resolve("test", BASE_URL, credential, email, lookup).block();
+    }
+
+    private Supplier<Mono<String>> lookup(String identity) {
+        return () -> {
+            calls.incrementAndGet();
+            return Mono.justOrEmpty(identity);
+        };
+    }
+
+    private void advance(Duration duration) {
+        nanos.addAndGet(duration.toNanos());
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class BackendMetricsFilterTest {
+
+    private static final String URI_TEMPLATE_ATTRIBUTE = WebClient.class.getName() + ".uriTemplate";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final BackendMetricsFilter filter = new BackendMetricsFilter(meterRegistry);
+
+    private final ExchangeFunction next = request -> Mono.just(ClientResponse.create(HttpStatus.OK).body("{}").build());
+
+    @ParameterizedTest
+    @CsvSource({
+            "/api/now/table/sys_user, /api/now/table/sys_user",
+            "/api/now/table/sys_user/12345, /api/now/table/sys_user/{id}",
+            "/api/now/table/sys_user/0a1b2c3d4e5f60718293a4b5c6d7e8f9, /api/now/table/sys_user/{id}",
+            "/api/users/jdoe@example.com/approvals, /api/users/{id}/approvals",
+            "/services/data/v44.0/sobjects/Account/0011U00000OXAKZQA5, /services/data/v44.0/sobjects/Account/{id}",
+            "/, /"
+    })
+    void pathsAreNormalized(String path, String uri) {
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("https://backend.example.com" + path)).build();
+
+        filter.filter(request, next).block();
+
+        assertThat(meterRegistry.get("connectors.backend.requests").tag("uri", uri).timer().count(), is(1L));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "https://backend.example.com/api/now/table/{table}/{sysId}?sysparm_limit=1, /api/now/table/{table}/{sysId}",
+            "/api/users/{userId}/approvals, /api/users/{userId}/approvals",
+            "/api/users/jdoe@example.com/approvals?page={page}, /api/users/{id}/approvals"
+    })
+    void templatesAreUsedInsteadOfPaths(String template, String uri) {
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("https://backend.example.com/api/users/12345/approvals"))
+                .attribute(URI_TEMPLATE_ATTRIBUTE, template)
+                .build();
+
+        filter.filter(request, next).block();
+
+        assertThat(meterRegistry.get("connectors.backend.requests").tag("uri", uri).timer().count(), is(1L));
+    }
+
+    @Test
+    void requestsAreTaggedWithHostMethodAndStatus() {
+        ClientRequest request = ClientRequest.create(HttpMethod.POST, URI.create("https://backend.example.com/api/approvals")).build();
+
+        filter.filter(request, next).block();
+
+        assertThat(meterRegistry.get("connectors.backend.requests")
+                .tag("host", "backend.example.com")
+                .tag("method", "POST")
+                .tag("status", "200")
+                .timer()
+                .count(), is(1L));
+    }
+
+    @Test
+    void responseSizeIsRecordedOnceTheBodyIsRead() {
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("https://backend.example.com/api/approvals")).build();
+
+        String body = filter.filter(request, next)
+                .flatMap(response -> response.bodyToMono(String.class))
+                .block();
+
+        assertThat(body, is("{}"));
+        assertThat(meterRegistry.get("connectors.backend.response.size").summary().totalAmount(), is(2.0));
+    }
+}
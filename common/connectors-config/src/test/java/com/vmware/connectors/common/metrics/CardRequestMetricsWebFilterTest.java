@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class CardRequestMetricsWebFilterTest {
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CardRequestMetricsWebFilter filter = new CardRequestMetricsWebFilter(meterRegistry);
+
+    private final BackendMetricsFilter backendMetrics = new BackendMetricsFilter(meterRegistry);
+
+    @Test
+    void backendCallsAddUpToTheBackendTime() {
+        WebFilterChain chain = exchange -> backendCall(100).then(backendCall(100)).then();
+
+        filter.filter(cardsRequest(), chain).block();
+
+        double total = timer("connectors.cards.requests").totalTime(TimeUnit.MILLISECONDS);
+        double backend = timer("connectors.cards.backend").totalTime(TimeUnit.MILLISECONDS);
+        double assembly = timer("connectors.cards.assembly").totalTime(TimeUnit.MILLISECONDS);
+        assertThat(backend, greaterThanOrEqualTo(200.0));
+        assertThat(backend, lessThanOrEqualTo(total));
+        assertThat(backend + assembly, closeTo(total, 0.001));
+    }
+
+    @Test
+    void concurrentBackendCallsAreCountedOnce() {
+        WebFilterChain chain = exchange -> Mono.when(backendCall(200), backendCall(200));
+
+        filter.filter(cardsRequest(), chain).block();
+
+        double backend = timer("connectors.cards.backend").totalTime(TimeUnit.MILLISECONDS);
+        assertThat(backend, greaterThanOrEqualTo(200.0));
+        assertThat(backend, lessThan(400.0));
+    }
+
+    @Test
+    void timeWithoutBackendCallsIsAssembly() {
+        WebFilterChain chain = exchange -> Mono.delay(Duration.ofMillis(50)).then();
+
+        filter.filter(cardsRequest(), chain).block();
+
+        assertThat(timer("connectors.cards.backend").totalTime(TimeUnit.MILLISECONDS), is(0.0));
+        assertThat(timer("connectors.cards.assembly").totalTime(TimeUnit.MILLISECONDS), greaterThanOrEqualTo(50.0));
+    }
+
+    @Test
+    void otherRequestsAreNotTimed() {
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.get("/health"));
+
+        filter.filter(exchange, ex -> backendCall(10).then()).block();
+
+        assertThat(meterRegistry.find("connectors.cards.requests").timer(), is(nullValue()));
+    }
+
+    private Mono<ClientResponse> backendCall(long millis) {
+        ClientRequest request = ClientRequest.create(HttpMethod.GET, URI.create("https://backend.example.com/api/approvals")).build();
+        ExchangeFunction next = r -> Mono.delay(Duration.ofMillis(millis))
+                .thenReturn(ClientResponse.create(HttpStatus.OK).build());
+        return backendMetrics.filter(request, next);
+    }
+
+    private static MockServerWebExchange cardsRequest() {
+        return MockServerWebExchange.from(MockServerHttpRequest.post("/cards/requests"));
+    }
+
+    private Timer timer(String name) {
+        return meterRegistry.get(name).tag("status", "200").timer();
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.vmware.connectors.common.payloads.response.Card;
+import com.vmware.connectors.common.payloads.response.Cards;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class CardsMetricsEncoderTest {
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CardsMetricsEncoder encoder = new CardsMetricsEncoder(objectMapper, meterRegistry);
+
+    @Test
+    void cardsAreEncodedAndCounted() throws IOException {
+        Cards cards = new Cards();
+        cards.getCards().add(new Card.Builder().setName("first").setHeader("First").build());
+        cards.getCards().add(new Card.Builder().setName("second").setHeader("Second").build());
+
+        JsonNode json = objectMapper.readTree(encode(Mono.just(cards), Cards.class));
+
+        assertThat(json.get("objects").size(), is(2));
+        assertThat(json.get("objects").get(0).get("name").asText(), is("first"));
+        assertThat(produced().count(), is(1L));
+        assertThat(produced().totalAmount(), is(2.0));
+    }
+
+    @Test
+    void emptyCardsAreCounted() throws IOException {
+        JsonNode json = objectMapper.readTree(encode(Mono.just(new Cards()), Cards.class));
+
+        assertThat(json.get("objects").size(), is(0));
+        assertThat(produced().count(), is(1L));
+        assertThat(produced().totalAmount(), is(0.0));
+    }
+
+    @Test
+    void eachCardsOfAFluxIsCounted() throws IOException {
+        Cards cards = new Cards();
+        cards.getCards().add(new Card.Builder().setName("only").setHeader("Only").build());
+
+        JsonNode json = objectMapper.readTree(encode(Flux.just(cards, new Cards()), Cards.class));
+
+        assertThat(json.size(), is(2));
+        assertThat(produced().count(), is(2L));
+        assertThat(produced().totalAmount(), is(1.0));
+    }
+
+    @Test
+    void otherValuesAreEncodedButNotCounted() throws IOException {
+        JsonNode json = objectMapper.readTree(encode(Mono.just(Map.of("status", "ok")), Map.class));
+
+        assertThat(json.get("status").asText(), is("ok"));
+        assertThat(produced().count(), is(0L));
+    }
+
+    private String encode(Publisher<?> input, Class<?> type) {
+        DataBuffer buffer = DataBufferUtils.join(encoder.encode(
+                input,
+                new DefaultDataBufferFactory(),
+                ResolvableType.forClass(type),
+                MediaType.APPLICATION_JSON,
+                Map.of()
+        )).block();
+        byte[] bytes = new byte[buffer.readableByteCount()];
+        buffer.read(bytes);
+        DataBufferUtils.release(buffer);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private DistributionSummary produced() {
+        return meterRegistry.get("connectors.cards.produced").summary();
+    }
+}
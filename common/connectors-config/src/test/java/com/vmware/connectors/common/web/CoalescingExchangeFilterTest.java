@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.http.HttpHeaders.*;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_PDF_VALUE;
+
+class CoalescingExchangeFilterTest {
+
+    private static final String URL = "https://backend.example.com/api/records/1";
+
+    private static final String BODY = "{\"id\":1}";
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CoalescingExchangeFilter filter = new CoalescingExchangeFilter(meterRegistry, 1024);
+
+    private final MonoProcessor<String> backend = MonoProcessor.create();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void concurrentIdenticalGetsShareOneRequest() {
+        MonoProcessor<ClientResponse> first = exchange(request("Bearer a"), APPLICATION_JSON_VALUE);
+        MonoProcessor<ClientResponse> second = exchange(request("Bearer a"), APPLICATION_JSON_VALUE);
+        backend.onNext(BODY);
+
+        assertThat(body(first), is(BODY));
+        assertThat(body(second), is(BODY));
+        assertThat(calls.get(), is(1));
+        assertThat(count("sent"), is(1.0));
+        assertThat(count("joined"), is(1.0));
+    }
+
+    @Test
+    void cancellingLeavesTheRequestRunningForOthers() {
+        Disposable first = filter.filter(request("Bearer a"), next(APPLICATION_JSON_VALUE)).subscribe();
+        MonoProcessor<ClientResponse> second = exchange(request("Bearer a"), APPLICATION_JSON_VALUE);
+        first.dispose();
+        backend.onNext(BODY);
+
+        assertThat(body(second), is(BODY));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void errorsGoToAllCallers() {
+        MonoProcessor<ClientResponse> first = exchange(request("Bearer a"), APPLICATION_JSON_VALUE);
+        MonoProcessor<ClientResponse> second = exchange(request("Bearer a"), APPLICATION_JSON_VALUE);
+        backend.onError(new IllegalStateException("Connection reset"));
+
+        assertThrows(IllegalStateException.class, first::block);
+        assertThrows(IllegalStateException.class, second::block);
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void differentCredentialsAreDifferentRequests() {
+        MonoProcessor<ClientResponse> first = exchange(request("Bearer a"), APPLICATION_JSON_VALUE);
+        MonoProcessor<ClientResponse> second = exchange(request("Bearer b"), APPLICATION_JSON_VALUE);
+        backend.onNext(BODY);
+
+        assertThat(body(first), is(BODY));
+        assertThat(body(second), is(BODY));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void differentHeadersAreDifferentRequests() {
+        ClientRequest english = ClientRequest.from(request("Bearer a")).header(ACCEPT_LANGUAGE, "en").build();
+        ClientRequest french = ClientRequest.from(request("Bearer a")).header(ACCEPT_LANGUAGE, "fr").build();
+
+        exchange(english, APPLICATION_JSON_VALUE);
+        exchange(french, APPLICATION_JSON_VALUE);
+        backend.onNext(BODY);
+
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void attachmentRequestsArePassedThrough() {
+        ClientRequest attachment = ClientRequest.from(request("Bearer a"))
+                .attribute(CoalescingExchangeFilter.PASS_THROUGH_ATTRIBUTE, true)
+                .build();
+
+        MonoProcessor<ClientResponse> first = exchange(attachment, APPLICATION_PDF_VALUE);
+        MonoProcessor<ClientResponse> second = exchange(attachment, APPLICATION_PDF_VALUE);
+        backend.onNext("%PDF-1.4");
+
+        assertThat(body(first), is("%PDF-1.4"));
+        assertThat(body(second), is("%PDF-1.4"));
+        assertThat(calls.get(), is(2));
+        assertThat(count("joined"), is(0.0));
+    }
+
+    @Test
+    void responsesThatAreNotJsonArePassedThrough() {
+        MonoProcessor<ClientResponse> first = exchange(request("Bearer a"), APPLICATION_PDF_VALUE);
+        MonoProcessor<ClientResponse> second = exchange(request("Bearer a"), APPLICATION_PDF_VALUE);
+        backend.onNext("%PDF-1.4");
+
+        assertThat(body(first), is("%PDF-1.4"));
+        assertThat(body(second), is("%PDF-1.4"));
+        // The shared response is let go, and each caller sends its own request
+        assertThat(calls.get(), is(3));
+    }
+
+    @Test
+    void responsesOverTheMaxSizeArePassedThrough() {
+        String large = "{\"data\":\"" + "x".repeat(2048) + "\"}";
+
+        MonoProcessor<ClientResponse> first = exchange(request("Bearer a"), APPLICATION_JSON_VALUE);
+        MonoProcessor<ClientResponse> second = exchange(request("Bearer a"), APPLICATION_JSON_VALUE);
+        backend.onNext(large);
+
+        assertThat(body(first), is(large));
+        assertThat(body(second), is(large));
+        assertThat(calls.get(), is(3));
+    }
+
+    @Test
+    void unshareableResponsesAreLetGoWhenAllCallersHaveCancelled() {
+        AtomicBoolean bodyCancelled = new AtomicBoolean();
+        ExchangeFunction next = request -> {
+            calls.incrementAndGet();
+            return backend.map(body -> ClientResponse.create(HttpStatus.OK)
+                    .header(CONTENT_TYPE, APPLICATION_PDF_VALUE)
+                    .body(Flux.<DataBuffer>never().doOnCancel(() -> bodyCancelled.set(true)))
+                    .build());
+        };
+
+        Disposable first = filter.filter(request("Bearer a"), next).subscribe();
+        Disposable second = filter.filter(request("Bearer a"), next).subscribe();
+        first.dispose();
+        second.dispose();
+        backend.onNext("%PDF-1.4");
+
+        assertThat(bodyCancelled.get(), is(true));
+        assertThat(calls.get(), is(1));
+    }
+
+    private MonoProcessor<ClientResponse> exchange(ClientRequest request, String contentType) {
+        return filter.filter(request, next(contentType)).toProcessor();
+    }
+
+    private ExchangeFunction next(String contentType) {
+        return request -> {
+            calls.incrementAndGet();
+            return backend.map(body -> response(body, contentType));
+        };
+    }
+
+    private static ClientRequest request(String authorization) {
+        return ClientRequest.create(HttpMethod.GET, URI.create(URL))
+                .header(ACCEPT, APPLICATION_JSON_VALUE)
+                .header(AUTHORIZATION, authorization)
+                .build();
+    }
+
+    private static ClientResponse response(String body, String contentType) {
+        return ClientResponse.create(HttpStatus.OK)
+                .header(CONTENT_TYPE, contentType)
+                .header(CONTENT_LENGTH, String.valueOf(body.getBytes(StandardCharsets.UTF_8).length))
+                .body(body)
+                .build();
+    }
+
+    private static String body(Mono<ClientResponse> response) {
+        return response.flatMap(r -> r.bodyToMono(String.class)).block();
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("connectors.webclient.coalescing", "result", result).count();
+    }
+}
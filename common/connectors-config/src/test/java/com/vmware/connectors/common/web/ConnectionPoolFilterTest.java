@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.web;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.Disposable;
+import reactor.core.publisher.MonoProcessor;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConnectionPoolFilterTest {
+
+    private static final URI URL = URI.create("https://backend.example.com/api/records");
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ConnectionPoolFilter filter = new ConnectionPoolFilter(
+            meterRegistry,
+            1,
+            Duration.ofSeconds(60),
+            Duration.ofSeconds(600),
+            Duration.ofSeconds(30),
+            Duration.ofSeconds(30)
+    );
+
+    private final MonoProcessor<ClientResponse> backend = MonoProcessor.create();
+
+    private final ExchangeFunction next = request -> backend;
+
+    private MockWebServer server;
+
+    private ConnectionProvider connectionProvider;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = new MockWebServer();
+        server.start();
+        connectionProvider = ConnectionProvider.fixed("test", 1);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connectionProvider.dispose();
+        server.shutdown();
+    }
+
+    @Test
+    void requestsOverThePendingLimitFailWith503() {
+        Disposable first = filter.filter(request(), next).subscribe();
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> filter.filter(request(), next).block());
+        assertThat(e.getStatus(), is(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(gauge("pending"), is(1.0));
+
+        first.dispose();
+    }
+
+    @Test
+    void pendingRequestsAreCountedUntilTheyAreDone() {
+        MonoProcessor<ClientResponse> first = filter.filter(request(), next).toProcessor();
+        assertThat(gauge("pending"), is(1.0));
+
+        backend.onNext(ClientResponse.create(HttpStatus.OK).build());
+
+        assertThat(first.block().statusCode(), is(HttpStatus.OK));
+        assertThat(gauge("pending"), is(0.0));
+        // The limit is per request waiting, so the next one goes through
+        MonoProcessor<ClientResponse> second = filter.filter(request(), next).toProcessor();
+        assertThat(second.block().statusCode(), is(HttpStatus.OK));
+    }
+
+    @Test
+    void connectionsAndAcquireTimeAreRecorded() {
+        server.enqueue(new MockResponse().setBody("ok"));
+        HttpClient httpClient = filter.apply(HttpClient.create(connectionProvider));
+        WebClient webClient = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(filter)
+                .build();
+
+        String body = webClient.get()
+                .uri(server.url("/api/records").uri())
+                .retrieve()
+                .bodyToMono(String.class)
+                .block();
+
+        assertThat(body, is("ok"));
+        assertThat(meterRegistry.get("connectors.webclient.pool.acquire").timer().count(), is(1L));
+        assertThat(gauge("open"), is(1.0));
+        assertThat(gauge("pending"), is(0.0));
+    }
+
+    private static ClientRequest request() {
+        return ClientRequest.create(HttpMethod.GET, URL).build();
+    }
+
+    private double gauge(String name) {
+        return meterRegistry.get("connectors.webclient.pool." + name).gauge().value();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.json;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jayway.jsonpath.JsonPath;
+import com.jayway.jsonpath.Predicate;
+
+/**
+ * A JsonPath expression that has been compiled once and can be read against
+ * any number of JsonDocuments.
+ * <p>
+ * Paths without filters are shared through a bounded cache, so a path that is
+ * built on the fly (e.g. "$.records[3].Name") only gets parsed the first time
+ * it is seen. Paths that never change are best held in a constant.
+ */
+public final class CompiledPath {
+
+    private static final int MAX_CACHED_PATHS = 4096;
+
+    private static final Cache<String, CompiledPath> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_PATHS)
+            .build();
+
+    private final JsonPath jsonPath;
+
+    private CompiledPath(JsonPath jsonPath) {
+        this.jsonPath = jsonPath;
+    }
+
+    /**
+     * Returns the compiled form of the path, compiling and caching it if it has not been seen before.
+     *
+     * @param path the JsonPath expression
+     * @return the compiled path
+     * @throws com.jayway.jsonpath.InvalidPathException if the path can not be compiled
+     */
+    public static CompiledPath compile(String path) {
+        CompiledPath compiledPath = CACHE.getIfPresent(path);
+        if (compiledPath == null) {
+            compiledPath = new CompiledPath(JsonPath.compile(path));
+            CACHE.put(path, compiledPath);
+        }
+        return compiledPath;
+    }
+
+    /**
+     * Compiles a path that uses filter placeholders. Filtered paths are not cached,
+     * since the predicates are part of the compiled form.
+     *
+     * @param path the JsonPath expression
+     * @param filters the predicates for the [?] placeholders in the path
+     * @return the compiled path
+     */
+    public static CompiledPath compile(String path, Predicate... filters) {
+        if (filters.length == 0) {
+            return compile(path);
+        }
+        return new CompiledPath(JsonPath.compile(path, filters));
+    }
+
+    JsonPath getJsonPath() {
+        return jsonPath;
+    }
+
+    @Override
+    public String toString() {
+        return jsonPath.getPath();
+    }
+}
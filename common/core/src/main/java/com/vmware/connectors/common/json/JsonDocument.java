@@ -5,25 +5,99 @@
 
 package com.vmware.connectors.common.json;
 
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
 import com.jayway.jsonpath.Predicate;
+import com.jayway.jsonpath.ReadContext;
+
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Created by Rob Worsnop on 10/19/16.
  */
 public class JsonDocument {
+    private static final Configuration CONFIGURATION = Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS);
+
+    private static final ObjectMapper PROJECTION_MAPPER = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
     private final Object document;
-    private final Configuration configuration;
+    private final ReadContext readContext;
 
     public JsonDocument(Object document) {
         this.document = document;
-        configuration = Configuration.defaultConfiguration().addOptions(Option.SUPPRESS_EXCEPTIONS);
+        this.readContext = JsonPath.using(CONFIGURATION).parse(document);
     }
 
     public <T> T read(String jsonPath, Predicate... filters) {
-        return JsonPath.using(configuration).parse(document).read(jsonPath, filters);
+        return read(CompiledPath.compile(jsonPath, filters));
+    }
+
+    public <T> T read(CompiledPath jsonPath) {
+        return readContext.read(jsonPath.getJsonPath());
+    }
+
+    /**
+     * Resolves the path once and returns a view of the document rooted at the result,
+     * so that the fields beneath it can be read without walking down from the root again.
+     *
+     * @param jsonPath the path to the new root
+     * @return the sub-document, or null if nothing is found at the path
+     */
+    public JsonDocument view(String jsonPath) {
+        return view(CompiledPath.compile(jsonPath));
+    }
+
+    public JsonDocument view(CompiledPath jsonPath) {
+        Object node = read(jsonPath);
+        return node == null ? null : new JsonDocument(node);
+    }
+
+    /**
+     * Hands a view of each element of the array found at the path to the consumer.
+     * Nothing is done if the path does not resolve to an array.
+     *
+     * @param arrayPath the path to the array (or an indefinite path)
+     * @param consumer called with each non-null element, in order
+     */
+    public void forEach(String arrayPath, Consumer<JsonDocument> consumer) {
+        forEach(CompiledPath.compile(arrayPath), consumer);
+    }
+
+    public void forEach(CompiledPath arrayPath, Consumer<JsonDocument> consumer) {
+        Object node = read(arrayPath);
+        if (node instanceof List) {
+            for (Object element : (List<?>) node) {
+                if (element != null) {
+                    consumer.accept(new JsonDocument(element));
+                }
+            }
+        }
+    }
+
+    /**
+     * Binds the object found at the path to the given type in a single pass.
+     * Properties are matched the way Jackson matches them (so @JsonProperty can be
+     * used to map names like "StageName") and unknown properties are ignored.
+     *
+     * @param prefix the path to the object to bind
+     * @param type the type to bind to
+     * @param <T> the type to bind to
+     * @return the bound object, or null if nothing is found at the path
+     */
+    public <T> T project(String prefix, Class<T> type) {
+        return project(CompiledPath.compile(prefix), type);
+    }
+
+    public <T> T project(CompiledPath prefix, Class<T> type) {
+        Object node = read(prefix);
+        return node == null ? null : PROJECTION_MAPPER.convertValue(node, type);
     }
 
     @Override
@@ -5,12 +5,15 @@
 
 package com.vmware.connectors.common.json;
 
+import com.fasterxml.jackson.core.JsonFactory;
 import com.jayway.jsonpath.Configuration;
 import com.jayway.jsonpath.spi.json.JsonProvider;
 import org.apache.commons.io.IOUtils;
 import org.reactivestreams.Publisher;
 import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
 import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.MediaType;
 import org.springframework.http.codec.HttpMessageDecoder;
 import org.springframework.http.server.reactive.ServerHttpRequest;
@@ -22,15 +25,48 @@ import reactor.core.publisher.Mono;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON;
 
+/**
+ * Decodes JSON responses into a {@link JsonDocument}.
+ * <p>
+ * By default the incoming buffers are fed straight into a non-blocking parser and the
+ * document tree is built as they arrive, with each buffer released as soon as it has
+ * been consumed. The older mode that aggregates the whole body into a String first is
+ * still available, and is always used for bodies that declare a non UTF-8 charset.
+ */
 public class JsonDocumentDecoder implements HttpMessageDecoder<JsonDocument> {
+
+    /**
+     * Value for maxInMemorySize that places no limit on the size of the body.
+     */
+    public static final int UNLIMITED = -1;
+
     private final JsonProvider jsonProvider = Configuration.defaultConfiguration().jsonProvider();
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final boolean streaming;
+    private final int maxInMemorySize;
+
+    public JsonDocumentDecoder() {
+        this(true, UNLIMITED);
+    }
+
+    /**
+     * @param streaming true to build the document incrementally from the buffers, false to
+     *                  aggregate the body into a String before parsing it
+     * @param maxInMemorySize the maximum number of body bytes to accept, or {@link #UNLIMITED}
+     */
+    public JsonDocumentDecoder(boolean streaming, int maxInMemorySize) {
+        this.streaming = streaming;
+        this.maxInMemorySize = maxInMemorySize;
+    }
 
     @Override
     public Map<String, Object> getDecodeHints(ResolvableType actualType, ResolvableType elementType, ServerHttpRequest request, ServerHttpResponse response) {
@@ -50,11 +86,19 @@ public class JsonDocumentDecoder implements HttpMessageDecoder<JsonDocument> {
 
     @Override
     public Mono<JsonDocument> decodeToMono(Publisher<DataBuffer> inputStream, ResolvableType elementType, MimeType mimeType, Map<String, Object> hints) {
-        return Flux.from(inputStream)
-                .flatMap(buffer -> toString(buffer, mimeType.getCharset()))
-                .collect(StringBuilder::new, StringBuilder::append)
-                .map(StringBuilder::toString)
-                .map(message -> new JsonDocument(jsonProvider.parse(message)));
+        Charset charset = getCharset(mimeType);
+        if (streaming && StandardCharsets.UTF_8.equals(charset)) {
+            return decodeStreaming(inputStream);
+        }
+        return Mono.defer(() -> {
+            AtomicLong byteCount = new AtomicLong();
+            return Flux.from(inputStream)
+                    .map(buffer -> checkLimit(buffer, byteCount.addAndGet(buffer.readableByteCount())))
+                    .flatMap(buffer -> toString(buffer, charset))
+                    .collect(StringBuilder::new, StringBuilder::append)
+                    .map(StringBuilder::toString)
+                    .map(message -> new JsonDocument(jsonProvider.parse(message)));
+        });
     }
 
     @Override
@@ -62,6 +106,31 @@ public class JsonDocumentDecoder implements HttpMessageDecoder<JsonDocument> {
         return Arrays.asList(APPLICATION_JSON, MediaType.valueOf("application/hal+json"));
     }
 
+    private Mono<JsonDocument> decodeStreaming(Publisher<DataBuffer> inputStream) {
+        return Mono.using(
+                () -> new JsonTreeBuilder(jsonFactory, jsonProvider, maxInMemorySize),
+                builder -> Flux.from(inputStream)
+                        .doOnNext(builder::feed)
+                        .then(Mono.fromCallable(builder::finish)),
+                JsonTreeBuilder::close
+        );
+    }
+
+    private DataBuffer checkLimit(DataBuffer buffer, long byteCount) {
+        if (maxInMemorySize != UNLIMITED && byteCount > maxInMemorySize) {
+            DataBufferUtils.release(buffer);
+            throw new DecodingException("Exceeded limit on max bytes to buffer : " + maxInMemorySize);
+        }
+        return buffer;
+    }
+
+    private static Charset getCharset(MimeType mimeType) {
+        if (mimeType == null || mimeType.getCharset() == null) {
+            return StandardCharsets.UTF_8;
+        }
+        return mimeType.getCharset();
+    }
+
     private static Flux<String> toString(DataBuffer buffer, Charset charset) {
         try (InputStream is = buffer.asInputStream(true)) {
             return Flux.just(IOUtils.toString(is, charset));
@@ -0,0 +1,168 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import com.jayway.jsonpath.spi.json.JsonProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Builds a json-path document tree incrementally from a stream of DataBuffers
+ * using Jackson's non-blocking parser, so the response never has to be turned
+ * into a String first.
+ * <p>
+ * The containers and scalar types produced match what the default json-smart
+ * provider would have produced when parsing the same text.
+ * <p>
+ * Not thread-safe; one instance per decoded response.
+ */
+class JsonTreeBuilder implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JsonTreeBuilder.class);
+
+    // json-smart switches from Double to BigDecimal beyond this many characters
+    private static final int MAX_DOUBLE_LENGTH = 18;
+
+    private final JsonProvider jsonProvider;
+    private final JsonParser parser;
+    private final ByteArrayFeeder feeder;
+    private final int maxInMemorySize;
+
+    private final Deque<Object> containers = new ArrayDeque<>();
+    private String fieldName;
+    private Object root;
+    private boolean complete;
+    private long byteCount;
+    private byte[] chunk = new byte[0];
+
+    JsonTreeBuilder(JsonFactory jsonFactory, JsonProvider jsonProvider, int maxInMemorySize) {
+        this.jsonProvider = jsonProvider;
+        this.maxInMemorySize = maxInMemorySize;
+        try {
+            this.parser = jsonFactory.createNonBlockingByteArrayParser();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create non-blocking JSON parser", e);
+        }
+        this.feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Feeds a buffer into the parser and releases it once its bytes have been consumed.
+     */
+    void feed(DataBuffer buffer) {
+        try {
+            int length = buffer.readableByteCount();
+            byteCount += length;
+            if (maxInMemorySize != JsonDocumentDecoder.UNLIMITED && byteCount > maxInMemorySize) {
+                throw new DecodingException("Exceeded limit on max bytes to buffer : " + maxInMemorySize);
+            }
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            buffer.read(chunk, 0, length);
+            feeder.feedInput(chunk, 0, length);
+            drain();
+        } catch (IOException e) {
+            throw new DecodingException("JSON decoding error: " + e.getMessage(), e);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    /**
+     * Signals the end of the input and returns the completed document.
+     */
+    JsonDocument finish() {
+        try {
+            feeder.endOfInput();
+            drain();
+        } catch (IOException e) {
+            throw new DecodingException("JSON decoding error: " + e.getMessage(), e);
+        }
+        if (root == null) {
+            // An empty body, or a JSON null, gets the empty document the String-based parser hands back for an empty body
+            return new JsonDocument(jsonProvider.parse(""));
+        }
+        if (!complete) {
+            throw new DecodingException("JSON decoding error: unexpected end of input");
+        }
+        return new JsonDocument(root);
+    }
+
+    @Override
+    public void close() {
+        try {
+            parser.close();
+        } catch (IOException e) {
+            logger.debug("Failed to close JSON parser", e);
+        }
+    }
+
+    private void drain() throws IOException {
+        JsonToken token = parser.nextToken();
+        while (token != null && token != JsonToken.NOT_AVAILABLE) {
+            onToken(token);
+            token = parser.nextToken();
+        }
+    }
+
+    private void onToken(JsonToken token) throws IOException {
+        if (token.isScalarValue()) {
+            addValue(scalarValue(token));
+            complete = containers.isEmpty();
+        } else if (token == JsonToken.FIELD_NAME) {
+            fieldName = parser.getCurrentName();
+        } else if (token.isStructStart()) {
+            Object container = token == JsonToken.START_OBJECT ? jsonProvider.createMap() : jsonProvider.createArray();
+            addValue(container);
+            containers.push(container);
+        } else {
+            containers.pop();
+            complete = containers.isEmpty();
+        }
+    }
+
+    private Object scalarValue(JsonToken token) throws IOException {
+        switch (token) {
+            case VALUE_STRING:
+                return parser.getText();
+            case VALUE_NUMBER_INT:
+                return parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT:
+                String text = parser.getText();
+                return text.length() > MAX_DOUBLE_LENGTH ? new BigDecimal(text) : Double.valueOf(text);
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    private void addValue(Object value) {
+        Object parent = containers.peek();
+        if (parent == null) {
+            root = value;
+        } else if (jsonProvider.isArray(parent)) {
+            jsonProvider.setArrayIndex(parent, jsonProvider.length(parent), value);
+        } else {
+            jsonProvider.setProperty(parent, fieldName, value);
+        }
+    }
+}
@@ -7,6 +7,7 @@ package com.vmware.connectors.common.payloads.response;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.vmware.connectors.common.utils.CardHasher;
 import com.vmware.connectors.common.utils.HashUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.util.CollectionUtils;
@@ -198,6 +199,19 @@ public class Card {
         return this.hash;
     }
 
+    // The id and dates change on every request, so they are left out of the hash.
+    private void writeHash(CardHasher hasher) {
+        hasher.put("name", name)
+                .put("backend_id", backendId)
+                .put("template", template == null ? null : template.getHref())
+                .put("header", header, CardHeader::writeHash)
+                .put("body", body, CardBody::writeHash)
+                .putUnordered("actions", actions, CardAction::writeHash)
+                .put("image", image == null ? null : image.getHref())
+                .put("importance", importance)
+                .putUnordered("tags", tags);
+    }
+
     /**
      * This class allows the construction of Card objects. To use, create a Builder instance, call its methods
      * to populate the Card, and call build() to receive the completed Card and reset the builder.
@@ -207,12 +221,24 @@ public class Card {
      */
     public static class Builder {
 
+        private final CardHashMode hashMode;
+
         private Card card;
 
         /**
          * Create a new Builder instance.
          */
         public Builder() {
+            this(CardHashMode.STREAMED);
+        }
+
+        /**
+         * Create a new Builder instance.
+         *
+         * @param hashMode how to compute the hash of a card whose hash isn't set
+         */
+        public Builder(CardHashMode hashMode) {
+            this.hashMode = hashMode;
             this.card = new Card();
         }
 
@@ -419,19 +445,26 @@ public class Card {
         }
 
         public String computeHash() {
+            if (hashMode == CardHashMode.LEGACY) {
+                return computeLegacyHash();
+            }
+            return CardHasher.hash(card, Card::writeHash);
+        }
+
+        private String computeLegacyHash() {
             final String templateUrl = card.template == null ? null : card.template.getHref();
             final String imageUrl = card.image == null ? null : card.image.getHref();
 
             final List<String> actionHashList = new ArrayList<>();
             if (!CollectionUtils.isEmpty(card.actions)) {
                 card.actions.forEach(cardAction ->
-                        actionHashList.add(cardAction == null ? StringUtils.SPACE : cardAction.hash())
+                        actionHashList.add(cardAction == null ? StringUtils.SPACE : cardAction.legacyHash())
                 );
             }
 
             final List<String> tagList = CollectionUtils.isEmpty(card.tags) ? Collections.EMPTY_LIST : new ArrayList<>(card.tags);
-            final String headerHash = card.header == null ? null : card.header.hash();
-            final String bodyHash = card.body == null ? null : card.body.hash();
+            final String headerHash = card.header == null ? null : card.header.legacyHash();
+            final String bodyHash = card.body == null ? null : card.body.legacyHash();
 
             return HashUtil.hash(
                     "name: ", card.name,
@@ -7,6 +7,7 @@ package com.vmware.connectors.common.payloads.response;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.vmware.connectors.common.utils.CardHasher;
 import com.vmware.connectors.common.utils.HashUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -405,12 +406,30 @@ public class CardAction {
     }
 
     public String hash() {
+        return CardHasher.hash(this, CardAction::writeHash);
+    }
+
+    void writeHash(CardHasher hasher) {
+        hasher.put("primary", primary)
+                .put("label", label)
+                .put("url", url == null ? null : url.getHref())
+                .put("type", type == null ? null : type.name())
+                .put("action_key", actionKey)
+                .put("remove_card_on_completion", removeCardOnCompletion)
+                .putUnordered("request", request)
+                .putUnordered("user_input", userInput, CardActionInputField::writeHash)
+                .put("completed_label", completedLabel)
+                .put("allow_repeated", allowRepeated)
+                .put("mutually_exclusive_set_id", mutuallyExclusiveSetId);
+    }
+
+    String legacyHash() {
         final String url = this.url == null ? null : this.url.getHref();
 
         final List<String> userInputHashList = new ArrayList<>();
         if (!CollectionUtils.isEmpty(userInput)) {
             userInput.forEach(actionInput ->
-                    userInputHashList.add(actionInput == null ? StringUtils.SPACE : actionInput.hash())
+                    userInputHashList.add(actionInput == null ? StringUtils.SPACE : actionInput.legacyHash())
             );
         }
 
@@ -8,6 +8,7 @@ package com.vmware.connectors.common.payloads.response;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.collect.ImmutableMap;
+import com.vmware.connectors.common.utils.CardHasher;
 import com.vmware.connectors.common.utils.HashUtil;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
@@ -246,6 +247,19 @@ public class CardActionInputField {
     }
 
     public String hash() {
+        return CardHasher.hash(this, CardActionInputField::writeHash);
+    }
+
+    void writeHash(CardHasher hasher) {
+        hasher.put("id", id)
+                .put("label", label)
+                .put("format", format)
+                .putUnordered("options", options)
+                .put("minLength", minLength)
+                .put("maxLength", maxLength);
+    }
+
+    String legacyHash() {
         return HashUtil.hash(
                 "id: ", this.id,
                 "label: ", this.label,
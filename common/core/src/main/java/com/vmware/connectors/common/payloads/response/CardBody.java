@@ -7,6 +7,7 @@ package com.vmware.connectors.common.payloads.response;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.vmware.connectors.common.utils.CardHasher;
 import com.vmware.connectors.common.utils.HashUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -125,9 +126,18 @@ public class CardBody {
     }
 
     public String hash() {
+        return CardHasher.hash(this, CardBody::writeHash);
+    }
+
+    void writeHash(CardHasher hasher) {
+        hasher.put("description", description)
+                .putUnordered("fields", fields, CardBodyField::writeHash);
+    }
+
+    String legacyHash() {
         final List<String> fieldsHashList = new ArrayList<>();
         if (!CollectionUtils.isEmpty(fields)) {
-            fields.forEach(cardBodyField -> fieldsHashList.add(cardBodyField == null ? StringUtils.SPACE : cardBodyField.hash()));
+            fields.forEach(cardBodyField -> fieldsHashList.add(cardBodyField == null ? StringUtils.SPACE : cardBodyField.legacyHash()));
         }
 
         return HashUtil.hash(
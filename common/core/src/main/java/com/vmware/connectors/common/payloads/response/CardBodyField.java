@@ -7,6 +7,7 @@ package com.vmware.connectors.common.payloads.response;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.vmware.connectors.common.utils.CardHasher;
 import com.vmware.connectors.common.utils.HashUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -233,6 +234,19 @@ public class CardBodyField {
     }
 
     public String hash() {
+        return CardHasher.hash(this, CardBodyField::writeHash);
+    }
+
+    void writeHash(CardHasher hasher) {
+        hasher.put("type", type)
+                .put("title", title)
+                .put("subtitle", subtitle)
+                .put("description", description)
+                .putUnordered("content", content, (item, itemHasher) -> itemHasher.putUnordered("entries", item))
+                .putUnordered("items", items, CardBodyFieldItem::writeHash);
+    }
+
+    String legacyHash() {
         final List<String> contentList = new ArrayList<>();
         if (!CollectionUtils.isEmpty(content)) {
             for (Map<String, String> item : content) {
@@ -243,7 +257,7 @@ public class CardBodyField {
         final List<String> itemList = new ArrayList<>();
         if (!CollectionUtils.isEmpty(items)) {
             items.forEach(item -> {
-                itemList.add(item == null ? StringUtils.SPACE : item.hash());
+                itemList.add(item == null ? StringUtils.SPACE : item.legacyHash());
             });
         }
 
@@ -7,6 +7,7 @@ package com.vmware.connectors.common.payloads.response;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.vmware.connectors.common.utils.CardHasher;
 import com.vmware.connectors.common.utils.HashUtil;
 import org.springframework.http.HttpMethod;
 
@@ -319,6 +320,21 @@ public class CardBodyFieldItem {
      * 3. updated_at - since timestamp fields are not reliable for hash calculation.
      */
     public String hash() {
+        return CardHasher.hash(this, CardBodyFieldItem::writeHash);
+    }
+
+    void writeHash(CardHasher hasher) {
+        hasher.put("type", type == null ? null : type.name())
+                .put("title", title)
+                .put("description", description)
+                .put("attachmentName", attachmentName)
+                .put("contentType", attachmentContentType)
+                .put("contentLength", attachmentContentLength)
+                .put("action_url", attachmentUrl)
+                .put("action_type", attachmentMethod == null ? null : attachmentMethod.name());
+    }
+
+    String legacyHash() {
         return HashUtil.hash(
                 "type:", this.type.name(),
                 "title:", this.title,
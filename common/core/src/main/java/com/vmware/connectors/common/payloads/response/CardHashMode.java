@@ -0,0 +1,22 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.payloads.response;
+
+/**
+ * How {@link Card.Builder} computes the hash of a card the connector hasn't set one for.
+ */
+public enum CardHashMode {
+
+    /**
+     * All the fields of the card are streamed into one SHA-1 digest by CardHasher.
+     */
+    STREAMED,
+
+    /**
+     * The HashUtil values of earlier versions, kept while a new version rolls out.
+     */
+    LEGACY
+}
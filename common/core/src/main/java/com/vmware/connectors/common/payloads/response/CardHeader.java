@@ -8,6 +8,7 @@ package com.vmware.connectors.common.payloads.response;
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.vmware.connectors.common.utils.CardHasher;
 import com.vmware.connectors.common.utils.HashUtil;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 
@@ -65,10 +66,20 @@ public class CardHeader {
     }
 
     public String hash() {
+        return CardHasher.hash(this, CardHeader::writeHash);
+    }
+
+    void writeHash(CardHasher hasher) {
+        hasher.put("title", title)
+                .putUnordered("subtitle", subtitle)
+                .put("links", links, CardHeaderLinks::writeHash);
+    }
+
+    String legacyHash() {
         return HashUtil.hash(
                 "title: ", this.title,
                 "subtitle: ", HashUtil.hashList(subtitle),
-                "links: ", links == null ? null : links.hash()
+                "links: ", links == null ? null : links.legacyHash()
         );
     }
 }
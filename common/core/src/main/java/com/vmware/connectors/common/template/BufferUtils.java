@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.template;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A per-thread pool of the buffers templates are rendered into, so that a render only
+ * allocates the resulting string. A buffer is taken out of the pool while it is in
+ * use, so rendering one template while building the value of another is fine.
+ * <p>
+ * Buffers that have grown past {@link #MAX_POOLED_CAPACITY} are left to the garbage
+ * collector instead of being kept around for the life of the thread.
+ */
+final class BufferUtils {
+
+    private static final int INITIAL_CAPACITY = 512;
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private static final ThreadLocal<Deque<StringBuilder>> POOL = ThreadLocal.withInitial(ArrayDeque::new);
+
+    private BufferUtils() {
+        // Utility class
+    }
+
+    static StringBuilder acquire() {
+        StringBuilder buffer = POOL.get().poll();
+        return buffer == null ? new StringBuilder(INITIAL_CAPACITY) : buffer;
+    }
+
+    /**
+     * Returns the buffer to the pool.
+     *
+     * @return what was written to the buffer
+     */
+    static String release(StringBuilder buffer) {
+        String value = buffer.toString();
+        recycle(buffer);
+        return value;
+    }
+
+    /**
+     * Returns the buffer to the pool, dropping what was written to it.
+     */
+    static void recycle(StringBuilder buffer) {
+        Deque<StringBuilder> pool = POOL.get();
+        if (buffer.capacity() <= MAX_POOLED_CAPACITY && pool.size() < MAX_POOLED_BUFFERS) {
+            buffer.setLength(0);
+            pool.push(buffer);
+        }
+    }
+}
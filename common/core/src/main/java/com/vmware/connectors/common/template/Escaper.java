@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.template;
+
+/**
+ * Writes a value into a rendered template, escaping whatever the target language
+ * would otherwise interpret. Escapers append straight to the output buffer, so
+ * escaping a value doesn't build a copy of it first.
+ */
+@FunctionalInterface
+public interface Escaper {
+
+    /**
+     * Writes values as they are.
+     */
+    Escaper NONE = StringBuilder::append;
+
+    /**
+     * Escapes the characters that are markup in XML (and HTML) text and attribute values.
+     */
+    Escaper XML = (out, value) -> {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '"':
+                    out.append("&quot;");
+                    break;
+                case '\'':
+                    out.append("&#39;");
+                    break;
+                default:
+                    out.append(c);
+                    break;
+            }
+        }
+    };
+
+    /**
+     * Appends the value to the buffer, escaped.
+     *
+     * @param out the buffer the template is rendered into
+     * @param value the value to write, never null
+     */
+    void append(StringBuilder out, String value);
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.template;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A Salesforce SOQL query with ${name} placeholders, compiled once into a {@link Template}.
+ * Values are bound by type, so that each one is written the way SOQL needs it:
+ * <ul>
+ * <li>{@link Builder#string} writes a quoted, escaped string literal.</li>
+ * <li>{@link Builder#strings} writes a list of them, for an IN (...) clause.</li>
+ * <li>{@link Builder#field} writes a field name, which is checked instead of escaped.</li>
+ * </ul>
+ * The query text doesn't quote the placeholders: "WHERE Id IN (${ids})", not "IN ('${ids}')".
+ * <p>
+ * Queries are sent in the URL of a GET, and Salesforce turns down URIs longer than 16,384
+ * bytes, so a long IN list can make a query fail. {@link Builder#buildAll(int)} splits the
+ * list over as few queries as it can while keeping each one's URL-encoded length under a
+ * limit.
+ */
+public final class SoqlQuery {
+
+    /**
+     * The URL-encoded length queries are kept under by default. It leaves room in the
+     * URI for the base URL and the query path.
+     */
+    public static final int DEFAULT_MAX_LENGTH = 15_000;
+
+    /**
+     * Writes values as the inside of a SOQL string literal, escaping the characters that
+     * could otherwise end the literal early:
+     *
+     * https://developer.salesforce.com/page/Secure_Coding_SQL_Injection
+     * https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_quotedstringescapes.htm
+     * https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_reservedcharacters.htm
+     */
+    public static final Escaper ESCAPER = (out, value) -> {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '\'') {
+                out.append('\\');
+            }
+            out.append(c);
+        }
+    };
+
+    private static final Pattern FIELD_NAME = Pattern.compile("[A-Za-z0-9_]+(\\.[A-Za-z0-9_]+)*");
+    private static final String LIST_SEPARATOR = ", ";
+    private static final int ENCODED_BYTE_LENGTH = 3;
+    private static final char MAX_ONE_BYTE_CHAR = 0x7f;
+    private static final char MAX_TWO_BYTE_CHAR = 0x7ff;
+
+    private final Template template;
+
+    private SoqlQuery(Template template) {
+        this.template = template;
+    }
+
+    /**
+     * @param soql the query, with unquoted ${name} placeholders
+     * @return the compiled query
+     */
+    public static SoqlQuery compile(String soql) {
+        return new SoqlQuery(Template.compile(soql, Escaper.NONE));
+    }
+
+    /**
+     * @return a builder for the values of one query
+     */
+    public Builder bind() {
+        return new Builder();
+    }
+
+    @Override
+    public String toString() {
+        return template.toString();
+    }
+
+    /**
+     * @return the value, escaped to go between the quotes of a SOQL string literal
+     */
+    public static String escape(String value) {
+        StringBuilder out = BufferUtils.acquire();
+        ESCAPER.append(out, value);
+        return BufferUtils.release(out);
+    }
+
+    /**
+     * A conservative estimate of how long a string is once it has been URL-encoded as a
+     * query parameter: every character that isn't unreserved is counted as encoded.
+     */
+    static int encodedLength(CharSequence value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (isUnreserved(c)) {
+                length++;
+            } else if (c <= MAX_ONE_BYTE_CHAR) {
+                length += ENCODED_BYTE_LENGTH;
+            } else if (c <= MAX_TWO_BYTE_CHAR || Character.isSurrogate(c)) {
+                // A surrogate pair is 4 UTF-8 bytes, counted 2 per half
+                length += 2 * ENCODED_BYTE_LENGTH;
+            } else {
+                length += 3 * ENCODED_BYTE_LENGTH;
+            }
+        }
+        return length;
+    }
+
+    private static boolean isUnreserved(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                || c == '-' || c == '.' || c == '_' || c == '~';
+    }
+
+    private static void appendLiteral(StringBuilder out, String value) {
+        out.append('\'');
+        ESCAPER.append(out, value);
+        out.append('\'');
+    }
+
+    private static int literalLength(String value) {
+        StringBuilder literal = BufferUtils.acquire();
+        appendLiteral(literal, value);
+        int length = encodedLength(literal);
+        BufferUtils.recycle(literal);
+        return length;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void appendValue(StringBuilder out, Object value) {
+        if (value instanceof FieldName) {
+            out.append(((FieldName) value).name);
+        } else if (value instanceof List) {
+            List<String> values = (List<String>) value;
+            for (int i = 0; i < values.size(); i++) {
+                if (i > 0) {
+                    out.append(LIST_SEPARATOR);
+                }
+                appendLiteral(out, values.get(i));
+            }
+        } else {
+            appendLiteral(out, (String) value);
+        }
+    }
+
+    private String render(Map<String, Object> values) {
+        StringBuilder out = BufferUtils.acquire();
+        for (int i = 0; i < template.size(); i++) {
+            out.append(template.literal(i));
+            Object value = values.get(template.name(i));
+            if (value == null) {
+                throw new IllegalArgumentException("No value for placeholder ${" + template.name(i) + "}");
+            }
+            appendValue(out, value);
+        }
+        out.append(template.literal(template.size()));
+        return BufferUtils.release(out);
+    }
+
+    private static final class FieldName {
+
+        private final String name;
+
+        FieldName(String name) {
+            this.name = name;
+        }
+    }
+
+    /**
+     * Collects the values of one query. A builder is not thread-safe.
+     */
+    public final class Builder {
+
+        private final Map<String, Object> values = new HashMap<>();
+        private String listName;
+
+        private Builder() {
+            // Use SoqlQuery.bind()
+        }
+
+        /**
+         * Binds a string literal, e.g. an email or an id.
+         */
+        public Builder string(String name, String value) {
+            values.put(name, value);
+            return this;
+        }
+
+        /**
+         * Binds a comma separated list of string literals, for an IN (...) clause. Only
+         * one placeholder of a query can be bound to a list.
+         */
+        public Builder strings(String name, Collection<String> list) {
+            if (listName != null && !listName.equals(name)) {
+                throw new IllegalStateException("Only one list can be bound, ${" + listName + "} already is");
+            }
+            values.put(name, Collections.unmodifiableList(new ArrayList<>(list)));
+            this.listName = name;
+            return this;
+        }
+
+        /**
+         * Binds a field name, e.g. the API name of a custom field that comes from the
+         * connector configuration.
+         *
+         * @throws IllegalArgumentException if the value is not a field name (or a path of them)
+         */
+        public Builder field(String name, String value) {
+            if (value == null || !FIELD_NAME.matcher(value).matches()) {
+                throw new IllegalArgumentException("Not a SOQL field name: " + value);
+            }
+            values.put(name, new FieldName(value));
+            return this;
+        }
+
+        /**
+         * @return the query, with all the values of the list in a single IN clause
+         * @throws IllegalArgumentException if a placeholder has no value
+         */
+        public String build() {
+            return render(values);
+        }
+
+        /**
+         * Splits the values of the list over as few queries as it can, keeping each one's
+         * URL-encoded length under the limit. A single value that is too long on its own
+         * still gets a query of its own.
+         *
+         * @param maxLength the longest a query can be once it is URL-encoded
+         * @return the queries, in the order of the values; none if the list is empty
+         * @throws IllegalArgumentException if a placeholder has no value
+         */
+        public List<String> buildAll(int maxLength) {
+            if (listName == null) {
+                return List.of(build());
+            }
+
+            @SuppressWarnings("unchecked")
+            List<String> list = (List<String>) values.get(listName);
+            if (list.isEmpty()) {
+                return List.of();
+            }
+            Map<String, Object> batchValues = new HashMap<>(values);
+            batchValues.put(listName, List.of());
+            int fixedLength = encodedLength(render(batchValues));
+
+            List<String> queries = new ArrayList<>();
+            for (List<String> batch : split(list, maxLength - fixedLength)) {
+                batchValues.put(listName, batch);
+                queries.add(render(batchValues));
+            }
+            return queries;
+        }
+
+        // Every item is counted with a separator, and the budget has one to spare for the last one
+        private List<List<String>> split(List<String> list, int maxListLength) {
+            int separatorLength = encodedLength(LIST_SEPARATOR);
+            int budget = maxListLength + separatorLength;
+            List<List<String>> batches = new ArrayList<>();
+            int from = 0;
+            int length = 0;
+            for (int i = 0; i < list.size(); i++) {
+                int itemLength = literalLength(list.get(i)) + separatorLength;
+                if (i > from && length + itemLength > budget) {
+                    batches.add(list.subList(from, i));
+                    from = i;
+                    length = 0;
+                }
+                length += itemLength;
+            }
+            batches.add(list.subList(from, list.size()));
+            return batches;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.template;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A text template with ${name} placeholders, e.g. the XML body of a request to a backend.
+ * <p>
+ * The text is parsed once, when the template is compiled, into the literal segments
+ * between the placeholders and the placeholder names. Rendering appends the segments and
+ * the escaped values to a pooled buffer, so it doesn't re-read the text or build a new
+ * string per placeholder like a chain of String.replace calls does. Templates are
+ * immutable and are best compiled at startup and held in a field.
+ * <p>
+ * Every placeholder must be given a value; a missing one is an error rather than a
+ * placeholder left in the output.
+ */
+public final class Template {
+
+    private static final String OPEN = "${";
+    private static final char CLOSE = '}';
+
+    private final String[] literals;
+    private final String[] names;
+    private final Set<String> nameSet;
+    private final Escaper escaper;
+
+    private Template(List<String> literals, List<String> names, Escaper escaper) {
+        this.literals = literals.toArray(new String[0]);
+        this.names = names.toArray(new String[0]);
+        this.nameSet = Collections.unmodifiableSet(new LinkedHashSet<>(names));
+        this.escaper = escaper;
+    }
+
+    /**
+     * @param text the template text
+     * @param escaper escapes the values of the placeholders
+     * @return the compiled template
+     * @throws IllegalArgumentException if a placeholder is not closed or has no name
+     */
+    public static Template compile(String text, Escaper escaper) {
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int from = 0;
+        int open = text.indexOf(OPEN);
+        while (open >= 0) {
+            int close = findClose(text, open);
+            literals.add(text.substring(from, open));
+            names.add(text.substring(open + OPEN.length(), close));
+            from = close + 1;
+            open = text.indexOf(OPEN, from);
+        }
+        literals.add(text.substring(from));
+        return new Template(literals, names, escaper);
+    }
+
+    private static int findClose(String text, int open) {
+        int close = text.indexOf(CLOSE, open + OPEN.length());
+        if (close < 0) {
+            throw new IllegalArgumentException("Unterminated placeholder at index " + open + " of template: " + text);
+        }
+        if (close == open + OPEN.length()) {
+            throw new IllegalArgumentException("Empty placeholder at index " + open + " of template: " + text);
+        }
+        return close;
+    }
+
+    /**
+     * Reads a UTF-8 template, e.g. from the classpath, and compiles it.
+     *
+     * @throws UncheckedIOException if the resource can not be read
+     */
+    public static Template load(Resource resource, Escaper escaper) {
+        try (InputStream in = resource.getInputStream()) {
+            return compile(IOUtils.toString(in, StandardCharsets.UTF_8), escaper);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read template " + resource.getDescription(), e);
+        }
+    }
+
+    /**
+     * @return the names of the placeholders, in the order they first appear
+     */
+    public Set<String> getNames() {
+        return nameSet;
+    }
+
+    /**
+     * @param values the value of each placeholder, by name
+     * @return the rendered template
+     * @throws IllegalArgumentException if a placeholder has no value
+     */
+    public String render(Map<String, String> values) {
+        StringBuilder out = BufferUtils.acquire();
+        for (int i = 0; i < names.length; i++) {
+            out.append(literals[i]);
+            String value = values.get(names[i]);
+            if (value == null) {
+                throw new IllegalArgumentException("No value for placeholder ${" + names[i] + "}");
+            }
+            escaper.append(out, value);
+        }
+        out.append(literals[names.length]);
+        return BufferUtils.release(out);
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    String literal(int index) {
+        return literals[index];
+    }
+
+    String name(int index) {
+        return names[index];
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < names.length; i++) {
+            text.append(literals[i]).append(OPEN).append(names[i]).append(CLOSE);
+        }
+        return text.append(literals[names.length]).toString();
+    }
+}
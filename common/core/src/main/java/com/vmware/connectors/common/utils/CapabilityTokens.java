@@ -0,0 +1,161 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.utils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Mints and verifies short-lived HMAC-SHA256 tokens that are put in the action and
+ * attachment URLs of a card when it is built. A valid token proves that the card was made
+ * for this user and object, so the endpoint behind the URL can go straight to the backend
+ * call instead of looking the user and their approvals up again to prove ownership.
+ * <p>
+ * A token binds the user, the backend base URL, the action, the object ids and an expiry.
+ * It looks like {@code <expiry epoch seconds>.<base64url HMAC>}.
+ * <p>
+ * The expiry is rounded up to the end of the next TTL window, so a token is valid for
+ * between one and two TTLs, and is the same for every card built in a window. The card
+ * hashes therefore only change when the window does.
+ * <p>
+ * Tokens are only minted when a secret is configured. The secret must be the same on all
+ * the instances of a connector. A missing, expired or invalid token is not an error: the
+ * endpoint validates ownership against the backend as it would without tokens.
+ */
+public class CapabilityTokens {
+
+    /**
+     * The query parameter that carries the token.
+     */
+    public static final String PARAM = "capability";
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String VERSION = "v1";
+    private static final int MIN_SECRET_LENGTH = 32;
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final Clock clock;
+
+    /**
+     * @param secret the HMAC secret, at least 32 bytes; blank disables tokens
+     * @param ttl how long a token is valid for, at least
+     * @param clock the clock expiries are computed and checked with
+     */
+    public CapabilityTokens(String secret, Duration ttl, Clock clock) {
+        if (ttl.getSeconds() <= 0) {
+            throw new IllegalArgumentException("The capability token TTL must be at least a second");
+        }
+        this.key = buildKey(secret);
+        this.ttlSeconds = ttl.getSeconds();
+        this.clock = clock;
+    }
+
+    private static SecretKeySpec buildKey(String secret) {
+        if (StringUtils.isBlank(secret)) {
+            return null;
+        }
+        byte[] bytes = secret.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < MIN_SECRET_LENGTH) {
+            throw new IllegalArgumentException("The capability token secret must be at least " + MIN_SECRET_LENGTH + " bytes long");
+        }
+        return new SecretKeySpec(bytes, ALGORITHM);
+    }
+
+    public boolean isEnabled() {
+        return key != null;
+    }
+
+    /**
+     * Adds a token to a URL.
+     *
+     * @param url the URL to add the token to
+     * @param user the user the card is built for
+     * @param tenant the backend base URL
+     * @param action what the URL does (e.g. "approve", "attachment")
+     * @param objectIds the ids of the objects the URL acts on
+     * @return the URL with a {@value #PARAM} query parameter, or the URL as it is if tokens are disabled
+     */
+    public String sign(String url, String user, String tenant, String action, String... objectIds) {
+        if (!isEnabled()) {
+            return url;
+        }
+        return UriComponentsBuilder.fromUriString(url)
+                .queryParam(PARAM, mint(user, tenant, action, objectIds))
+                .toUriString();
+    }
+
+    /**
+     * @return a token for the given user, tenant, action and object ids
+     * @throws IllegalStateException if tokens are disabled
+     */
+    public String mint(String user, String tenant, String action, String... objectIds) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Capability tokens are disabled");
+        }
+        long now = clock.instant().getEpochSecond();
+        long expiry = (now / ttlSeconds + 2) * ttlSeconds;
+        return expiry + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(mac(expiry, user, tenant, action, objectIds));
+    }
+
+    /**
+     * @return true if the token was minted for the given user, tenant, action and object ids,
+     * and has not expired; false otherwise, including when tokens are disabled
+     */
+    public boolean verify(String token, String user, String tenant, String action, String... objectIds) {
+        if (!isEnabled() || StringUtils.isBlank(token)) {
+            return false;
+        }
+        long expiry = NumberUtils.toLong(StringUtils.substringBefore(token, "."), 0);
+        if (expiry <= clock.instant().getEpochSecond()) {
+            return false;
+        }
+        byte[] signature;
+        try {
+            signature = Base64.getUrlDecoder().decode(StringUtils.substringAfter(token, "."));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return MessageDigest.isEqual(signature, mac(expiry, user, tenant, action, objectIds));
+    }
+
+    private byte[] mac(long expiry, String user, String tenant, String action, String... objectIds) {
+        Mac mac;
+        try {
+            mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to compute a capability token", e);
+        }
+        update(mac, VERSION);
+        update(mac, Long.toString(expiry));
+        update(mac, user);
+        update(mac, tenant);
+        update(mac, action);
+        for (String objectId : objectIds) {
+            update(mac, objectId);
+        }
+        return mac.doFinal();
+    }
+
+    // Length prefixed, so that ("ab", "c") and ("a", "bc") are never signed the same way
+    private static void update(Mac mac, String value) {
+        byte[] bytes = StringUtils.defaultString(value).getBytes(StandardCharsets.UTF_8);
+        mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(bytes.length).array());
+        mac.update(bytes);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.utils;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Computes card hashes by streaming every field into one SHA-1 digest, instead of
+ * hashing each field to a hex string and then hashing the sorted strings again.
+ * <p>
+ * Each value is written with a type tag and a length prefix, so ["a,b"] and ["a", "b"]
+ * can never produce the same input. The elements of a collection are treated as
+ * unordered (as they always have been for card hashes): each element is digested
+ * separately and the digests are added together, which gives the same result in any
+ * order without sorting anything.
+ * <p>
+ * Digests and scratch buffers are kept per thread and reused, one per nesting level.
+ * <p>
+ * The values are different from the ones {@link HashUtil} produces. While a new
+ * version is rolling out, a Card.Builder made with CardHashMode.LEGACY keeps
+ * computing the HashUtil values.
+ */
+public final class CardHasher {
+
+    private static final int DIGEST_LENGTH = 20;
+    private static final int SCRATCH_LENGTH = 256;
+
+    private static final byte NULL_TAG = 0;
+    private static final byte VALUE_TAG = 1;
+    private static final byte OBJECT_TAG = 2;
+    private static final byte END_TAG = 3;
+    private static final byte COLLECTION_TAG = 4;
+
+    private static final ThreadLocal<CardHasher> HASHERS = ThreadLocal.withInitial(CardHasher::new);
+
+    private final List<MessageDigest> digests = new ArrayList<>();
+    private final List<byte[]> sums = new ArrayList<>();
+    private final byte[] elementDigest = new byte[DIGEST_LENGTH];
+    private final byte[] scratch = new byte[SCRATCH_LENGTH];
+    private int depth = -1;
+
+    private CardHasher() {
+        // Use hash()
+    }
+
+    /**
+     * Hashes an object using the given writer to feed its fields.
+     *
+     * @param value the object to hash
+     * @param writer feeds the fields of the object into the hasher
+     * @param <T> the object type
+     * @return the SHA-1 of the object, as 40 hex digits
+     */
+    public static <T> String hash(T value, BiConsumer<T, CardHasher> writer) {
+        CardHasher hasher = HASHERS.get();
+        hasher.push();
+        try {
+            hasher.put("root", value, writer);
+            return Hex.encodeHexString(hasher.current().digest());
+        } finally {
+            hasher.pop();
+        }
+    }
+
+    /**
+     * Writes a named scalar value. Anything other than a String is written as its toString().
+     */
+    public CardHasher put(String name, Object value) {
+        writeString(name);
+        if (value == null) {
+            current().update(NULL_TAG);
+        } else {
+            current().update(VALUE_TAG);
+            writeString(value instanceof String ? (String) value : value.toString());
+        }
+        return this;
+    }
+
+    /**
+     * Writes a named nested object.
+     */
+    public <T> CardHasher put(String name, T value, BiConsumer<T, CardHasher> writer) {
+        writeString(name);
+        if (value == null) {
+            current().update(NULL_TAG);
+        } else {
+            current().update(OBJECT_TAG);
+            writer.accept(value, this);
+            current().update(END_TAG);
+        }
+        return this;
+    }
+
+    /**
+     * Writes a named collection of strings, ignoring their order.
+     */
+    public CardHasher putUnordered(String name, Collection<String> values) {
+        return putUnordered(name, values, (value, hasher) -> hasher.put("value", value));
+    }
+
+    /**
+     * Writes a named map of strings, ignoring the order of its entries.
+     */
+    public CardHasher putUnordered(String name, Map<String, String> values) {
+        return putUnordered(name, values == null ? null : values.entrySet(), (entry, hasher) -> hasher
+                .put("key", entry.getKey())
+                .put("value", entry.getValue()));
+    }
+
+    /**
+     * Writes a named collection of objects, ignoring their order.
+     */
+    public <T> CardHasher putUnordered(String name, Collection<? extends T> values, BiConsumer<T, CardHasher> writer) {
+        writeString(name);
+        if (values == null) {
+            current().update(NULL_TAG);
+            return this;
+        }
+
+        byte[] sum = sums.get(depth);
+        Arrays.fill(sum, (byte) 0);
+        for (T value : values) {
+            add(sum, digestElement(value, writer));
+        }
+
+        MessageDigest digest = current();
+        digest.update(COLLECTION_TAG);
+        writeInt(values.size());
+        digest.update(sum);
+        return this;
+    }
+
+    private <T> byte[] digestElement(T value, BiConsumer<T, CardHasher> writer) {
+        push();
+        try {
+            put("element", value, writer);
+            current().digest(elementDigest, 0, DIGEST_LENGTH);
+            return elementDigest;
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            pop();
+        }
+    }
+
+    private MessageDigest current() {
+        return digests.get(depth);
+    }
+
+    private void push() {
+        depth++;
+        if (depth == digests.size()) {
+            digests.add(DigestUtils.getSha1Digest());
+            sums.add(new byte[DIGEST_LENGTH]);
+        }
+        current().reset();
+    }
+
+    private void pop() {
+        depth--;
+    }
+
+    private void writeString(String value) {
+        int length = value.length();
+        writeInt(length);
+        int position = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            scratch[position++] = (byte) (c >> 8);
+            scratch[position++] = (byte) c;
+            if (position == SCRATCH_LENGTH) {
+                current().update(scratch, 0, position);
+                position = 0;
+            }
+        }
+        current().update(scratch, 0, position);
+    }
+
+    private void writeInt(int value) {
+        scratch[0] = (byte) (value >> 24);
+        scratch[1] = (byte) (value >> 16);
+        scratch[2] = (byte) (value >> 8);
+        scratch[3] = (byte) value;
+        current().update(scratch, 0, 4);
+    }
+
+    // Adds the addend into the sum as unsigned big-endian integers, modulo 2^160.
+    private static void add(byte[] sum, byte[] addend) {
+        int carry = 0;
+        for (int i = DIGEST_LENGTH - 1; i >= 0; i--) {
+            int total = (sum[i] & 0xff) + (addend[i] & 0xff) + carry;
+            sum[i] = (byte) total;
+            carry = total >> 8;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.utils;
+
+import org.slf4j.MDC;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.web.server.ServerWebExchange;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * The MDC values of a request (the principal and the request ID), worked out once per
+ * request and kept in the Reactor context, so that they can be put on whatever thread
+ * ends up handling the request.
+ * <p>
+ * The values are read from the exchange the first time they're needed, by which time the
+ * security context has been stored on the exchange.
+ */
+public final class MdcSnapshot {
+
+    private static final String[] NO_VALUES = new String[0];
+
+    private final ServerWebExchange exchange;
+
+    // Keys and values alternate
+    private final AtomicReference<String[]> entries = new AtomicReference<>();
+
+    private MdcSnapshot(ServerWebExchange exchange) {
+        this.exchange = exchange;
+    }
+
+    public static MdcSnapshot from(ServerWebExchange exchange) {
+        return new MdcSnapshot(exchange);
+    }
+
+    /**
+     * Calls the supplier with the MDC values set, then puts back whatever values those keys
+     * had before. Other MDC keys are left alone.
+     */
+    <R> R call(Supplier<R> supplier) {
+        String[] snapshot = values();
+        if (snapshot.length == 0) {
+            return supplier.get();
+        }
+
+        String[] previous = new String[snapshot.length / 2];
+        for (int i = 0; i < snapshot.length; i += 2) {
+            previous[i / 2] = MDC.get(snapshot[i]);
+            MDC.put(snapshot[i], snapshot[i + 1]);
+        }
+        try {
+            return supplier.get();
+        } finally {
+            for (int i = 0; i < snapshot.length; i += 2) {
+                restore(snapshot[i], previous[i / 2]);
+            }
+        }
+    }
+
+    private String[] values() {
+        // Working them out twice in a race is harmless
+        String[] snapshot = entries.get();
+        if (snapshot == null) {
+            snapshot = read(exchange);
+            entries.set(snapshot);
+        }
+        return snapshot;
+    }
+
+    private static String[] read(ServerWebExchange exchange) {
+        List<String> snapshot = new ArrayList<>(4);
+
+        String principal = principal(exchange);
+        if (principal != null) {
+            snapshot.add("principal");
+            snapshot.add(principal);
+        }
+
+        String requestId = exchange.getRequest().getHeaders().getFirst("X-Request-Id");
+        if (requestId != null) {
+            snapshot.add("requestId");
+            snapshot.add(requestId);
+        }
+
+        return snapshot.isEmpty() ? NO_VALUES : snapshot.toArray(NO_VALUES);
+    }
+
+    private static String principal(ServerWebExchange exchange) {
+        SecurityContext securityContext = exchange.getAttribute("securityContext");
+        if (securityContext != null) {
+            Authentication authentication = securityContext.getAuthentication();
+            if (authentication != null && authentication.getPrincipal() != null) {
+                return authentication.getPrincipal().toString();
+            }
+        }
+        return null;
+    }
+
+    private static void restore(String key, String value) {
+        if (value == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+}
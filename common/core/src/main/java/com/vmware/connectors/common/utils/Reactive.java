@@ -6,10 +6,7 @@
 package com.vmware.connectors.common.utils;
 
 import org.reactivestreams.Publisher;
-import org.slf4j.MDC;
 import org.springframework.http.HttpStatus;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContext;
 import org.springframework.util.MimeType;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
@@ -21,7 +18,7 @@ import reactor.util.context.Context;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
+import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -56,6 +53,23 @@ public final class Reactive {
         };
     }
 
+    /**
+     * Same as {@link #wrapForItem(Consumer)}, but does nothing at all unless the
+     * condition holds, e.g. {@code wrapForItem(logger::isTraceEnabled, item -> logger.trace(...))}.
+     * @param enabled checked on each item before anything else is done
+     * @param consumer the action to be performed on the emitted item
+     * @param <R> The item type
+     * @return a signal consumer to be passed to Flux.doOnEach
+     */
+    public static <R> Consumer<Signal<R>> wrapForItem(BooleanSupplier enabled, Consumer<R> consumer) {
+        Consumer<Signal<R>> wrapped = wrapForItem(consumer);
+        return signal -> {
+            if (enabled.getAsBoolean()) {
+                wrapped.accept(signal);
+            }
+        };
+    }
+
     /**
      * Allows mapping methods to assume that MDC is set on the thread.
      * Replace .map(foo) with .flatMap(Reactive.wrapMapper(foo))
@@ -145,38 +159,11 @@ public final class Reactive {
     }
 
     private static <R> R wrapCall(Context context, Supplier<R> supplier) {
-        Map<String, String> savedContextMap = MDC.getCopyOfContextMap();
-        if (context.hasKey(ServerWebExchange.class)) {
-            ServerWebExchange exchange = context.get(ServerWebExchange.class);
-            setPrincipal(exchange);
-            setRequestId(exchange);
-        }
-
-        try {
-            return supplier.get();
-        } finally {
-            if (savedContextMap == null) {
-                MDC.clear();
-            } else {
-                MDC.setContextMap(savedContextMap);
-            }
-        }
-    }
-
-    private static void setPrincipal(ServerWebExchange exchange) {
-        SecurityContext securityContext = exchange.getAttribute("securityContext");
-        if (securityContext != null) {
-            Authentication authentication = securityContext.getAuthentication();
-            if (authentication != null && authentication.getPrincipal() != null) {
-                MDC.put("principal", authentication.getPrincipal().toString());
-            }
-        }
-    }
-
-    private static void setRequestId(ServerWebExchange exchange) {
-        String requestId = exchange.getRequest().getHeaders().getFirst("X-Request-Id");
-        if (requestId != null) {
-            MDC.put("requestId", requestId);
+        MdcSnapshot snapshot = context.getOrDefault(MdcSnapshot.class, null);
+        if (snapshot == null && context.hasKey(ServerWebExchange.class)) {
+            // No MdcContextWebFilter in front of this request, read the exchange every time
+            snapshot = MdcSnapshot.from(context.get(ServerWebExchange.class));
         }
+        return snapshot == null ? supplier.get() : snapshot.call(supplier);
     }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.utils;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.util.context.Context;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Makes a single call at a time per key: subscribers that come while the call for their
+ * key is in flight share its result, rather than making a call of their own.
+ * <p>
+ * The call runs with the Reactor context of the subscriber that started it, so that its
+ * MDC snapshot and card request timings carry over, but it isn't tied to that subscriber.
+ * The subscribers that join get the result with their own context, the call's time counts
+ * towards the first subscriber only. A subscriber that cancels leaves the call running for
+ * the others. Subscribers can join until the call is done, the next one after that starts
+ * a new call. A call that completes empty completes all its subscribers empty.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param key the calls with equal keys are the same call
+     * @param call makes the call, only if there is none in flight for the key
+     * @return the result of the call
+     */
+    public Mono<V> execute(K key, Supplier<Mono<V>> call) {
+        return Mono.create(sink -> {
+            CompletableFuture<V> started = new CompletableFuture<>();
+            CompletableFuture<V> flight = inFlight.computeIfAbsent(key, k -> started);
+            if (flight.equals(started)) {
+                start(key, flight, call, sink.currentContext());
+            } else {
+                joined(key);
+            }
+            await(flight, sink);
+        });
+    }
+
+    /**
+     * Called when a subscriber joins a call that is already in flight.
+     */
+    protected void joined(K key) {
+        // Nothing to do by default
+    }
+
+    private void start(K key, CompletableFuture<V> flight, Supplier<Mono<V>> call, Context context) {
+        // Once the flight is out of the map, the next subscriber starts a new call
+        Mono.defer(call)
+                .subscriberContext(context)
+                .doFinally(signal -> inFlight.remove(key, flight))
+                .subscribe(
+                        flight::complete,
+                        flight::completeExceptionally,
+                        () -> flight.complete(null)
+                );
+    }
+
+    private static <V> void await(CompletableFuture<V> flight, MonoSink<V> sink) {
+        // The sink drops the result if the subscriber has cancelled by then
+        flight.whenComplete((result, error) -> {
+            if (error != null) {
+                sink.error(error);
+            } else {
+                sink.success(result);
+            }
+        });
+    }
+}
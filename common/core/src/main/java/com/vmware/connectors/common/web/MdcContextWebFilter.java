@@ -0,0 +1,23 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.web;
+
+import com.vmware.connectors.common.utils.MdcSnapshot;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * Puts the request's {@link MdcSnapshot} in the Reactor context, for the Reactive wrappers.
+ */
+public class MdcContextWebFilter implements WebFilter {
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        return chain.filter(exchange)
+                .subscriberContext(context -> context.put(MdcSnapshot.class, MdcSnapshot.from(exchange)));
+    }
+}
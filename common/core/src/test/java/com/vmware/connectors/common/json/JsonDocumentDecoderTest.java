@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.json;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.DecodingException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_JSON_UTF8;
+
+class JsonDocumentDecoderTest {
+
+    private static final String JSON = "{\"records\":[{\"Id\":\"0061\",\"Name\":\"Café déjà vu\",\"Amount\":1234.5,"
+            + "\"Count\":7,\"Big\":12345678901,\"Huge\":123456789012345678901234,\"Closed\":false,\"Owner\":null,"
+            + "\"Tags\":[\"a\",[1,2],{}]}],\"totalSize\":1,\"done\":true}";
+
+    private final DataBufferFactory bufferFactory = new DefaultDataBufferFactory();
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 7, 64, 4096})
+    void streamingMatchesStringParsing(int chunkSize) {
+        JsonDocument expected = decode(new JsonDocumentDecoder(false, JsonDocumentDecoder.UNLIMITED), JSON, 1 << 16);
+        JsonDocument actual = decode(new JsonDocumentDecoder(), JSON, chunkSize);
+
+        Object expectedRoot = expected.read("$");
+        Object actualRoot = actual.read("$");
+        assertEquals(expectedRoot, actualRoot);
+        assertEquals(expectedRoot.getClass(), actualRoot.getClass());
+        assertEquals(expected.<Object>read("$.records").getClass(), actual.<Object>read("$.records").getClass());
+        assertThat(actual.read("$.records[0].Big"), instanceOf(Long.class));
+        assertThat(actual.read("$.records[0].Amount"), instanceOf(Double.class));
+        assertThat(actual.read("$.records[0].Name"), is("Café déjà vu"));
+    }
+
+    @Test
+    void emptyBody() {
+        JsonDocument document = new JsonDocumentDecoder()
+                .decodeToMono(Flux.empty(), ResolvableType.forClass(JsonDocument.class), APPLICATION_JSON, Map.of())
+                .block();
+        assertThat(document.toString(), is(""));
+    }
+
+    @Test
+    void nullBody() {
+        JsonDocument document = decode(new JsonDocumentDecoder(), "null", 4);
+        assertThat(document.toString(), is(""));
+    }
+
+    @Test
+    void truncatedBody() {
+        JsonDocumentDecoder decoder = new JsonDocumentDecoder();
+        assertThrows(DecodingException.class, () -> decode(decoder, "{\"a\":[1,2", 4));
+    }
+
+    @Test
+    void maxInMemorySize() {
+        JsonDocumentDecoder decoder = new JsonDocumentDecoder(true, 64);
+        assertThrows(DecodingException.class, () -> decode(decoder, JSON, 16));
+    }
+
+    @Test
+    void maxInMemorySizeWithoutStreaming() {
+        JsonDocumentDecoder decoder = new JsonDocumentDecoder(false, 64);
+        assertThrows(DecodingException.class, () -> decode(decoder, JSON, 16));
+    }
+
+    @Test
+    void buffersAreReleased() {
+        List<DataBuffer> buffers = toBuffers(new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT), JSON, 10);
+        decode(new JsonDocumentDecoder(), Flux.fromIterable(buffers));
+        buffers.forEach(buffer -> assertEquals(0, ((NettyDataBuffer) buffer).getNativeBuffer().refCnt()));
+    }
+
+    private JsonDocument decode(JsonDocumentDecoder decoder, String json, int chunkSize) {
+        return decode(decoder, Flux.fromIterable(toBuffers(json, chunkSize)));
+    }
+
+    private JsonDocument decode(JsonDocumentDecoder decoder, Flux<DataBuffer> buffers) {
+        return decoder.decodeToMono(buffers, ResolvableType.forClass(JsonDocument.class), APPLICATION_JSON_UTF8, Map.of())
+                .block();
+    }
+
+    private List<DataBuffer> toBuffers(String json, int chunkSize) {
+        return toBuffers(bufferFactory, json, chunkSize);
+    }
+
+    private List<DataBuffer> toBuffers(DataBufferFactory bufferFactory, String json, int chunkSize) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<DataBuffer> buffers = new ArrayList<>();
+        for (int offset = 0; offset < bytes.length; offset += chunkSize) {
+            int length = Math.min(chunkSize, bytes.length - offset);
+            buffers.add(bufferFactory.allocateBuffer(length).write(bytes, offset, length));
+        }
+        return buffers;
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.json;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.jayway.jsonpath.Configuration;
+import com.jayway.jsonpath.Criteria;
+import com.jayway.jsonpath.Filter;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class JsonDocumentTest {
+
+    private static final CompiledPath FIRST_NAME = CompiledPath.compile("$.records[0].Name");
+
+    private final JsonDocument document = new JsonDocument(Configuration.defaultConfiguration().jsonProvider().parse(
+            "{\"records\":[{\"Name\":\"Acme\",\"Amount\":10,\"Account\":{\"Name\":\"Acme Corp\"}},"
+                    + "{\"Name\":\"Initech\",\"Amount\":20,\"StageName\":\"Closed Won\"}]}"
+    ));
+
+    @Test
+    void readCompiledPath() {
+        assertThat(document.read(FIRST_NAME), is("Acme"));
+        assertThat(document.read(CompiledPath.compile("$.records[1].Name")), is("Initech"));
+    }
+
+    @Test
+    void readStringPath() {
+        assertThat(document.read("$.records[0].Name"), is("Acme"));
+        List<String> names = document.read("$.records[*].Name");
+        assertThat(names, is(List.of("Acme", "Initech")));
+    }
+
+    @Test
+    void missingPathIsSuppressed() {
+        assertThat(document.read("$.records[0].Missing"), is(nullValue()));
+        assertThat(document.read(CompiledPath.compile("$.nothing.here")), is(nullValue()));
+    }
+
+    @Test
+    void readWithFilter() {
+        List<String> names = document.read("$.records[?].Name", Filter.filter(Criteria.where("Amount").gt(15)));
+        assertThat(names, is(List.of("Initech")));
+    }
+
+    @Test
+    void compiledPathsAreShared() {
+        assertThat(CompiledPath.compile("$.records[0].Name"), is(sameInstance(FIRST_NAME)));
+        assertThat(FIRST_NAME.toString(), is("$['records'][0]['Name']"));
+    }
+
+    @Test
+    void view() {
+        JsonDocument first = document.view("$.records[0]");
+        assertThat(first.read("$.Name"), is("Acme"));
+        assertThat(first.read("$.Account.Name"), is("Acme Corp"));
+        assertThat(document.view("$.records[5]"), is(nullValue()));
+    }
+
+    @Test
+    void forEach() {
+        List<String> names = new ArrayList<>();
+        document.forEach("$.records", record -> names.add(record.read("$.Name")));
+        assertThat(names, is(List.of("Acme", "Initech")));
+
+        List<String> accountNames = new ArrayList<>();
+        document.forEach("$.records[*].Account", account -> accountNames.add(account.read("$.Name")));
+        assertThat(accountNames, is(List.of("Acme Corp")));
+
+        document.forEach("$.records[0].Name", record -> fail("Not an array"));
+        document.forEach("$.missing", record -> fail("Not an array"));
+    }
+
+    @Test
+    void project() {
+        Opportunity opportunity = document.project("$.records[1]", Opportunity.class);
+        assertThat(opportunity.name, is("Initech"));
+        assertThat(opportunity.stage, is("Closed Won"));
+        assertThat(opportunity.amount, is(20));
+        assertThat(document.project("$.records[5]", Opportunity.class), is(nullValue()));
+    }
+
+    static class Opportunity {
+        @JsonProperty("Name")
+        String name;
+
+        @JsonProperty("StageName")
+        String stage;
+
+        @JsonProperty("Amount")
+        int amount;
+    }
+}
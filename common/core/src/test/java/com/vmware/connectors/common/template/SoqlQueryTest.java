@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.template;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SoqlQueryTest {
+
+    private static final SoqlQuery CONTACT = SoqlQuery.compile(
+            "SELECT name FROM contact WHERE email = ${email} AND account.owner.email = ${email}");
+
+    private static final SoqlQuery OPPORTUNITIES = SoqlQuery.compile(
+            "SELECT Id, ${field} FROM opportunity WHERE Id IN (${ids})");
+
+    @Test
+    void quotesAndEscapesStrings() {
+        String soql = CONTACT.bind()
+                .string("email", "o'neil\\@acme.com")
+                .build();
+
+        assertEquals("SELECT name FROM contact WHERE email = 'o\\'neil\\\\@acme.com' " +
+                "AND account.owner.email = 'o\\'neil\\\\@acme.com'", soql);
+    }
+
+    @Test
+    void writesListsAndFields() {
+        String soql = OPPORTUNITIES.bind()
+                .field("field", "Discount_Percentage__c")
+                .strings("ids", List.of("1", "2'"))
+                .build();
+
+        assertEquals("SELECT Id, Discount_Percentage__c FROM opportunity WHERE Id IN ('1', '2\\'')", soql);
+    }
+
+    @Test
+    void rejectsFieldsThatAreNotFieldNames() {
+        SoqlQuery.Builder builder = OPPORTUNITIES.bind();
+
+        assertThrows(IllegalArgumentException.class, () -> builder.field("field", "Name FROM user --"));
+        assertThrows(IllegalArgumentException.class, () -> builder.field("field", null));
+    }
+
+    @Test
+    void failsOnAMissingValue() {
+        SoqlQuery.Builder builder = OPPORTUNITIES.bind().strings("ids", List.of("1"));
+
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+
+    @Test
+    void onlyBindsOneList() {
+        SoqlQuery.Builder builder = OPPORTUNITIES.bind().strings("ids", List.of("1"));
+
+        assertThrows(IllegalStateException.class, () -> builder.strings("field", List.of("2")));
+    }
+
+    @Test
+    void keepsAShortListInOneQuery() {
+        List<String> queries = OPPORTUNITIES.bind()
+                .field("field", "Name")
+                .strings("ids", List.of("1", "2", "3"))
+                .buildAll(SoqlQuery.DEFAULT_MAX_LENGTH);
+
+        assertEquals(List.of("SELECT Id, Name FROM opportunity WHERE Id IN ('1', '2', '3')"), queries);
+    }
+
+    @Test
+    void buildsNoQueryForAnEmptyList() {
+        List<String> queries = OPPORTUNITIES.bind()
+                .field("field", "Name")
+                .strings("ids", List.of())
+                .buildAll(SoqlQuery.DEFAULT_MAX_LENGTH);
+
+        assertTrue(queries.isEmpty());
+    }
+
+    @Test
+    void splitsALongListUnderTheEncodedLength() {
+        List<String> ids = IntStream.range(0, 2000)
+                .mapToObj(i -> String.format("0064100000%08dAAT", i))
+                .collect(Collectors.toList());
+        int maxLength = 4000;
+
+        List<String> queries = OPPORTUNITIES.bind()
+                .field("field", "Name")
+                .strings("ids", ids)
+                .buildAll(maxLength);
+
+        assertTrue(queries.size() > 1);
+        List<String> found = new ArrayList<>();
+        for (String soql : queries) {
+            String encoded = UriComponentsBuilder.newInstance().queryParam("q", soql).encode().build().getQuery();
+            assertTrue(encoded.length() - 2 <= maxLength, "Too long: " + encoded.length());
+            String list = soql.substring(soql.indexOf('(') + 1, soql.length() - 1);
+            for (String id : list.split(", ")) {
+                found.add(id.substring(1, id.length() - 1));
+            }
+        }
+        assertEquals(ids, found);
+    }
+
+    @Test
+    void givesAValueThatIsTooLongAQueryOfItsOwn() {
+        String longId = "x".repeat(200);
+
+        List<String> queries = OPPORTUNITIES.bind()
+                .field("field", "Name")
+                .strings("ids", List.of("1", longId, "2"))
+                .buildAll(100);
+
+        assertEquals(3, queries.size());
+        assertTrue(queries.get(1).contains(longId));
+    }
+
+    @Test
+    void countsEncodedCharacters() {
+        assertEquals(3, SoqlQuery.encodedLength("a-_"));
+        assertEquals(3, SoqlQuery.encodedLength(" "));
+        assertEquals(6, SoqlQuery.encodedLength("é"));
+        assertEquals(9, SoqlQuery.encodedLength("€"));
+        assertEquals(12, SoqlQuery.encodedLength("😀"));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.template;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TemplateTest {
+
+    @Test
+    void rendersEveryPlaceholder() {
+        Template template = Template.compile("${a}-${b}-${a}.", Escaper.NONE);
+
+        assertEquals("1-2-1.", template.render(Map.of("a", "1", "b", "2")));
+        assertEquals(List.of("a", "b"), List.copyOf(template.getNames()));
+    }
+
+    @Test
+    void rendersATemplateWithoutPlaceholders() {
+        assertEquals("no placeholders", Template.compile("no placeholders", Escaper.NONE).render(Map.of()));
+    }
+
+    @Test
+    void escapesTheValues() {
+        Template template = Template.compile("<Comment>${comment}</Comment>", Escaper.XML);
+
+        assertEquals("<Comment>&lt;/Comment&gt; &amp; &quot;done&quot; &#39;ok&#39;</Comment>",
+                template.render(Map.of("comment", "</Comment> & \"done\" 'ok'")));
+    }
+
+    @Test
+    void failsOnAMissingValue() {
+        Template template = Template.compile("<Action>${action}</Action>", Escaper.XML);
+
+        assertThrows(IllegalArgumentException.class, () -> template.render(Map.of("comment", "Done")));
+    }
+
+    @Test
+    void failsOnABadPlaceholder() {
+        assertThrows(IllegalArgumentException.class, () -> Template.compile("${action", Escaper.NONE));
+        assertThrows(IllegalArgumentException.class, () -> Template.compile("${}", Escaper.NONE));
+    }
+
+    @Test
+    void loadsAResource() {
+        ByteArrayResource resource = new ByteArrayResource("<Action>${action}</Action>".getBytes(StandardCharsets.UTF_8));
+
+        Template template = Template.load(resource, Escaper.XML);
+
+        assertEquals("<Action>Approve</Action>", template.render(Map.of("action", "Approve")));
+        assertEquals("<Action>${action}</Action>", template.toString());
+    }
+
+    @Test
+    void rendersATemplateWhileRenderingAnother() {
+        Template inner = Template.compile("<${tag}/>", Escaper.NONE);
+        Template outer = Template.compile("[${value}]", Escaper.XML);
+
+        Map<String, String> values = Map.of("tag", "br");
+        String rendered = outer.render(Map.of("value", inner.render(values)));
+
+        assertEquals("[&lt;br/&gt;]", rendered);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CapabilityTokensTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+    private static final Duration TTL = Duration.ofHours(1);
+    private static final Instant NOW = Instant.parse("2019-06-01T10:15:00Z");
+
+    private final CapabilityTokens tokens = new CapabilityTokens(SECRET, TTL, Clock.fixed(NOW, ZoneOffset.UTC));
+
+    @Test
+    void verifiesTheTokenItMinted() {
+        String token = tokens.mint("jdoe@acme.com", "https://acme.example", "approve", "42", "7");
+
+        assertTrue(tokens.verify(token, "jdoe@acme.com", "https://acme.example", "approve", "42", "7"));
+    }
+
+    @Test
+    void rejectsATokenForSomethingElse() {
+        String token = tokens.mint("jdoe@acme.com", "https://acme.example", "approve", "42", "7");
+
+        assertFalse(tokens.verify(token, "other@acme.com", "https://acme.example", "approve", "42", "7"));
+        assertFalse(tokens.verify(token, "jdoe@acme.com", "https://other.example", "approve", "42", "7"));
+        assertFalse(tokens.verify(token, "jdoe@acme.com", "https://acme.example", "decline", "42", "7"));
+        assertFalse(tokens.verify(token, "jdoe@acme.com", "https://acme.example", "approve", "43", "7"));
+        assertFalse(tokens.verify(token, "jdoe@acme.com", "https://acme.example", "approve", "4", "27"));
+        assertFalse(tokens.verify(token, "jdoe@acme.com", "https://acme.example", "approve", "42"));
+    }
+
+    @Test
+    void rejectsATamperedToken() {
+        String token = tokens.mint("jdoe@acme.com", "https://acme.example", "approve", "42");
+        long expiry = Long.parseLong(token.substring(0, token.indexOf('.')));
+        String extended = (expiry + 3600) + token.substring(token.indexOf('.'));
+
+        assertFalse(tokens.verify(extended, "jdoe@acme.com", "https://acme.example", "approve", "42"));
+        assertFalse(tokens.verify(token + "x", "jdoe@acme.com", "https://acme.example", "approve", "42"));
+        assertFalse(tokens.verify("garbage", "jdoe@acme.com", "https://acme.example", "approve", "42"));
+        assertFalse(tokens.verify(null, "jdoe@acme.com", "https://acme.example", "approve", "42"));
+    }
+
+    @Test
+    void rejectsATokenOfAnotherSecret() {
+        CapabilityTokens other = new CapabilityTokens(SECRET.toUpperCase(), TTL, Clock.fixed(NOW, ZoneOffset.UTC));
+        String token = other.mint("jdoe@acme.com", "https://acme.example", "approve", "42");
+
+        assertFalse(tokens.verify(token, "jdoe@acme.com", "https://acme.example", "approve", "42"));
+    }
+
+    @Test
+    void expiresAtTheEndOfTheNextWindow() {
+        String token = tokens.mint("jdoe@acme.com", "https://acme.example", "approve", "42");
+
+        // Minted at 10:15, so valid until 12:00
+        assertEquals(Instant.parse("2019-06-01T12:00:00Z").getEpochSecond() + ".", token.substring(0, token.indexOf('.') + 1));
+        assertEquals(token, tokens.mint("jdoe@acme.com", "https://acme.example", "approve", "42"));
+
+        CapabilityTokens later = new CapabilityTokens(SECRET, TTL, Clock.fixed(Instant.parse("2019-06-01T12:00:00Z"), ZoneOffset.UTC));
+        assertFalse(later.verify(token, "jdoe@acme.com", "https://acme.example", "approve", "42"));
+    }
+
+    @Test
+    void signsUrlsOnlyWhenEnabled() {
+        String url = "https://hero/connectors/coupa/api/approve/42?approval_id=7";
+        String signed = tokens.sign(url, "jdoe@acme.com", "https://acme.example", "approve", "42", "7");
+        assertTrue(signed.startsWith(url + "&capability="));
+
+        CapabilityTokens disabled = new CapabilityTokens("", TTL, Clock.systemUTC());
+        assertFalse(disabled.isEnabled());
+        assertEquals(url, disabled.sign(url, "jdoe@acme.com", "https://acme.example", "approve", "42", "7"));
+        assertFalse(disabled.verify(signed.substring(signed.indexOf("capability=") + 11), "jdoe@acme.com", "https://acme.example", "approve", "42", "7"));
+    }
+
+    @Test
+    void rejectsAShortSecret() {
+        assertThrows(IllegalArgumentException.class, () -> new CapabilityTokens("too-short", TTL, Clock.systemUTC()));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.utils;
+
+import com.vmware.connectors.common.payloads.response.Card;
+import com.vmware.connectors.common.payloads.response.CardBody;
+import com.vmware.connectors.common.payloads.response.CardBodyField;
+import com.vmware.connectors.common.payloads.response.CardHashMode;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class CardHasherTest {
+
+    @Test
+    void unorderedCollectionsIgnoreOrder() {
+        assertEquals(hashStrings(List.of("a", "b", "c")), hashStrings(List.of("c", "a", "b")));
+        assertNotEquals(hashStrings(List.of("a", "b", "c")), hashStrings(List.of("a", "b")));
+        assertNotEquals(hashStrings(List.of("a", "a", "b")), hashStrings(List.of("a", "b", "b")));
+    }
+
+    @Test
+    void valuesAreDelimited() {
+        assertNotEquals(hashStrings(List.of("a,b", "c")), hashStrings(List.of("a", "b", "c")));
+        assertNotEquals(hashStrings(List.of("", "")), hashStrings(List.of("", "", "")));
+        assertNotEquals(hashStrings(null), hashStrings(List.of()));
+        assertNotEquals(
+                CardHasher.hash("x", (value, hasher) -> hasher.put("a", "bc").put("d", null)),
+                CardHasher.hash("x", (value, hasher) -> hasher.put("a", "b").put("cd", null))
+        );
+    }
+
+    @Test
+    void nestedCollectionsAreKeptApart() {
+        CardBody body1 = new CardBody.Builder()
+                .addField(field("one", Map.of("k", "1")))
+                .addField(field("two", Map.of("k", "2")))
+                .build();
+        CardBody body2 = new CardBody.Builder()
+                .addField(field("one", Map.of("k", "2")))
+                .addField(field("two", Map.of("k", "1")))
+                .build();
+        CardBody body3 = new CardBody.Builder()
+                .addField(field("two", Map.of("k", "2")))
+                .addField(field("one", Map.of("k", "1")))
+                .build();
+
+        assertThat(body1.hash(), is(not(body2.hash())));
+        assertThat(body1.hash(), is(body3.hash()));
+        assertThat(body1.hash().length(), is(40));
+    }
+
+    @Test
+    void legacyModeKeepsHashUtilValues() {
+        String bodyHash = HashUtil.hash(
+                "description: ", "description",
+                "fields: ", HashUtil.hashList(List.of())
+        );
+        String legacyHash = HashUtil.hash(
+                "name: ", "name",
+                "backend_id: ", null,
+                "template: ", null,
+                "header: ", null,
+                "body: ", bodyHash,
+                "actions: ", HashUtil.hashList(List.of()),
+                "image: ", null,
+                "importance: ", null,
+                "tags: ", HashUtil.hashList(List.of())
+        );
+
+        assertThat(new Card.Builder().setName("name").setBody("description").build().getHash(), is(not(legacyHash)));
+        assertThat(new Card.Builder(CardHashMode.LEGACY).setName("name").setBody("description").build().getHash(), is(legacyHash));
+    }
+
+    private static String hashStrings(List<String> values) {
+        return CardHasher.hash(values, (list, hasher) -> hasher.putUnordered("values", list));
+    }
+
+    private static CardBodyField field(String title, Map<String, String> content) {
+        return new CardBodyField.Builder()
+                .setTitle(title)
+                .addContent(content)
+                .build();
+    }
+}
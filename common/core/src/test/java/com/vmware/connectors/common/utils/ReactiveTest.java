@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextImpl;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ReactiveTest {
+
+    @AfterEach
+    void clearMdc() {
+        MDC.clear();
+    }
+
+    @Test
+    void wrapForItemSetsMdcFromSnapshot() {
+        MDC.put("requestId", "outer");
+        List<String> seen = new ArrayList<>();
+
+        Flux.just("a", "b")
+                .doOnEach(Reactive.wrapForItem(item -> seen.add(item + ":" + MDC.get("requestId") + ":" + MDC.get("principal"))))
+                .subscriberContext(Context.of(MdcSnapshot.class, MdcSnapshot.from(exchange())))
+                .blockLast();
+
+        assertThat(seen, is(List.of("a:request-1:jdoe", "b:request-1:jdoe")));
+        assertThat(MDC.get("requestId"), is("outer"));
+        assertThat(MDC.get("principal"), is(nullValue()));
+    }
+
+    @Test
+    void wrapForItemFallsBackToExchange() {
+        List<String> seen = new ArrayList<>();
+
+        Flux.just("a")
+                .doOnEach(Reactive.wrapForItem(item -> seen.add(MDC.get("requestId"))))
+                .subscriberContext(Context.of(ServerWebExchange.class, exchange()))
+                .blockLast();
+
+        assertThat(seen, is(List.of("request-1")));
+        assertThat(MDC.get("requestId"), is(nullValue()));
+    }
+
+    @Test
+    void wrapForItemSkipsWhenDisabled() {
+        List<String> seen = new ArrayList<>();
+
+        Flux.just("a")
+                .doOnEach(Reactive.wrapForItem(() -> false, seen::add))
+                .doOnEach(Reactive.wrapForItem(() -> true, seen::add))
+                .blockLast();
+
+        assertThat(seen, is(List.of("a")));
+    }
+
+    private static ServerWebExchange exchange() {
+        ServerWebExchange exchange = MockServerWebExchange.from(
+                MockServerHttpRequest.get("/cards/requests").header("X-Request-Id", "request-1"));
+        exchange.getAttributes().put("securityContext", new SecurityContextImpl(new TestingAuthenticationToken("jdoe", null)));
+        return exchange;
+    }
+}
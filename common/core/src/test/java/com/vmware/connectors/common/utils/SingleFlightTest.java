@@ -0,0 +1,118 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.common.utils;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+import reactor.util.context.Context;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void concurrentSubscribersShareOneCall() {
+        MonoProcessor<String> backend = MonoProcessor.create();
+
+        MonoProcessor<String> first = flights.execute("key", () -> call(backend)).toProcessor();
+        MonoProcessor<String> second = flights.execute("key", () -> call(backend)).toProcessor();
+        backend.onNext("result");
+
+        assertThat(first.block(), is("result"));
+        assertThat(second.block(), is("result"));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void differentKeysAreDifferentCalls() {
+        assertThat(flights.execute("a", () -> call(Mono.just("a"))).block(), is("a"));
+        assertThat(flights.execute("b", () -> call(Mono.just("b"))).block(), is("b"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void callIsMadeAgainOnceDone() {
+        flights.execute("key", () -> call(Mono.just("first"))).block();
+
+        assertThat(flights.execute("key", () -> call(Mono.just("second"))).block(), is("second"));
+        assertThat(calls.get(), is(2));
+    }
+
+    @Test
+    void cancellingLeavesTheCallRunningForOthers() {
+        MonoProcessor<String> backend = MonoProcessor.create();
+
+        Disposable first = flights.execute("key", () -> call(backend)).subscribe();
+        MonoProcessor<String> second = flights.execute("key", () -> call(backend)).toProcessor();
+        first.dispose();
+        backend.onNext("result");
+
+        assertThat(second.block(), is("result"));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    void errorsGoToAllSubscribers() {
+        MonoProcessor<String> backend = MonoProcessor.create();
+
+        MonoProcessor<String> first = flights.execute("key", () -> call(backend)).toProcessor();
+        MonoProcessor<String> second = flights.execute("key", () -> call(backend)).toProcessor();
+        backend.onError(new IllegalStateException("backend down"));
+
+        assertThrows(IllegalStateException.class, first::block);
+        assertThrows(IllegalStateException.class, second::block);
+    }
+
+    @Test
+    void emptyCallCompletesEmpty() {
+        assertThat(flights.execute("key", () -> call(Mono.empty())).block(), is(nullValue()));
+    }
+
+    @Test
+    void callRunsWithTheContextOfTheFirstSubscriber() {
+        String result = flights.execute("key", () -> Mono.subscriberContext().map(context -> context.get("requestId")))
+                .subscriberContext(Context.of("requestId", "request-1"))
+                .block();
+
+        assertThat(result, is("request-1"));
+    }
+
+    @Test
+    void joiningSubscribersAreCounted() {
+        AtomicInteger joined = new AtomicInteger();
+        SingleFlight<String, String> counting = new SingleFlight<>() {
+            @Override
+            protected void joined(String key) {
+                joined.incrementAndGet();
+            }
+        };
+        MonoProcessor<String> backend = MonoProcessor.create();
+
+        MonoProcessor<String> first = counting.execute("key", () -> call(backend)).toProcessor();
+        MonoProcessor<String> second = counting.execute("key", () -> call(backend)).toProcessor();
+        backend.onNext("result");
+
+        assertThat(first.block(), is("result"));
+        assertThat(second.block(), is("result"));
+        assertThat(joined.get(), is(1));
+    }
+
+    private Mono<String> call(Mono<String> backend) {
+        calls.incrementAndGet();
+        return backend;
+    }
+}
@@ -71,16 +71,19 @@ public class AirWatchController {
 
     private final CardTextAccessor cardTextAccessor;
 
+    private final CardHashMode cardHashMode;
+
     private final AppConfigService appConfig;
 
     private final URI gbBaseUri;
 
     @Autowired
-    public AirWatchController(WebClient rest, CardTextAccessor cardTextAccessor,
+    public AirWatchController(WebClient rest, CardTextAccessor cardTextAccessor, CardHashMode cardHashMode,
                               AppConfigService appConfig,
                               URI gbBaseUri) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
         this.appConfig = appConfig;
         this.gbBaseUri = gbBaseUri;
     }
@@ -203,7 +206,7 @@ public class AirWatchController {
             return Mono.empty();
         }
         // Create card for app install
-        Card.Builder cardBuilder = new Card.Builder();
+        Card.Builder cardBuilder = new Card.Builder(cardHashMode);
         CardBody.Builder cardBodyBuilder = new CardBody.Builder()
                 .setDescription(cardTextAccessor.getBody(locale));
 
@@ -246,13 +249,13 @@ public class AirWatchController {
                 .bodyToMono(JsonDocument.class)
                 .map(body -> body.read("$.eucToken"))
                 .cast(String.class)
-                .doOnEach(Reactive.wrapForItem(token -> logger.trace("Install app. Got EUC token: {}", token)));
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, token -> logger.trace("Install app. Got EUC token: {}", token)));
     }
 
     private Mono<GreenBoxConnection> getGbConnection(URI gbBaseUri, String eucToken) {
         return getCsrfToken(gbBaseUri, eucToken)
                 .map(csrfToken -> new GreenBoxConnection(gbBaseUri, eucToken, csrfToken))
-                .doOnEach(Reactive.wrapForItem(gbc -> logger.trace("Install app. Got GB connection: {}", gbc)));
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, gbc -> logger.trace("Install app. Got GB connection: {}", gbc)));
     }
 
     private Mono<String> installGbAppByName(
@@ -274,7 +277,7 @@ public class AirWatchController {
                 .retrieve()
                 .bodyToMono(JsonDocument.class)
                 .map(document -> toGreenBoxApp(document, appName))
-                .doOnEach(Reactive.wrapForItem(gba -> logger.trace("Found GB app {} for {}", gba, appName)));
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, gba -> logger.trace("Found GB app {} for {}", gba, appName)));
     }
 
     private GreenBoxApp toGreenBoxApp(JsonDocument document, String appName) {
@@ -310,7 +313,7 @@ public class AirWatchController {
                 .bodyToMono(JsonDocument.class)
                 .map(body -> body.read("$.status"))
                 .cast(String.class)
-                .doOnEach(Reactive.wrapForItem(status ->
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, status ->
                         logger.trace("Install action status: {} for {}", status, gbApp)));
     }
 
@@ -8,24 +8,24 @@ package com.vmware.connectors.airwatch;
 import com.vmware.connectors.airwatch.config.AppConfigurations;
 import com.vmware.connectors.airwatch.exceptions.ConfigException;
 import com.vmware.connectors.airwatch.service.AppConfigService;
+import com.vmware.connectors.airwatch.service.ManagedAppsReloader;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Scope;
 import org.springframework.core.env.Environment;
 import org.springframework.core.io.Resource;
 
-import javax.validation.ConstraintViolation;
-import javax.validation.Validation;
-import javax.validation.Validator;
 import java.io.IOException;
 import java.net.URI;
 import java.nio.charset.Charset;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.nio.file.Paths;
 
 import static org.springframework.web.util.UriComponentsBuilder.fromUriString;
 
@@ -39,27 +39,21 @@ public class ConnConfiguration {
 
     private final AppConfigurations appConfigurations;
 
-    private final Resource metadataHalResource;
+    private final String metadataTemplate;
 
     private final Environment environment;
 
     @Autowired
     public ConnConfiguration(AppConfigurations appConfigurations,
                              Environment environment,
-                             @Value("classpath:static/discovery/metadata.json") Resource metadataHalResource) {
+                             @Value("classpath:static/discovery/metadata.json") Resource metadataHalResource) throws IOException {
 
         // Validate managed-apps.yml configurations.
-        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
-        Set<ConstraintViolation<AppConfigurations>> violations = validator.validate(appConfigurations);
-        violations
-                .forEach(v -> logger.error("{} Check {} in managed-apps configuration.", v.getMessage(), v.getPropertyPath().toString()));
-        if (!violations.isEmpty()) {
-            throw new ConfigException("Invalid configurations for managed-apps.");
-        }
+        AppConfigService.validate(appConfigurations);
 
         this.appConfigurations = appConfigurations;
         this.environment = environment;
-        this.metadataHalResource = metadataHalResource;
+        this.metadataTemplate = IOUtils.toString(metadataHalResource.getInputStream(), Charset.defaultCharset());
     }
 
     @Bean
@@ -68,18 +62,19 @@ public class ConnConfiguration {
     }
 
     /*
-     * Make a set of app keywords and build regex for the connector.
-     * Replace regex place holder in the connector metadata file.
+     * Replace regex place holder in the connector metadata file with the regex of the app keywords.
+     * The regex changes when the managed apps are reloaded, so the metadata is made again for every use.
      */
     @Bean
-    public String connectorMetadata() throws IOException {
-
-        final String connectorRegex = "(?i)" + appConfigurations.getApps().stream()
-                .flatMap(appConfiguration -> appConfiguration.getKeywords().stream())
-                .collect(Collectors.joining("\\\\b|\\\\b", "\\\\b", "\\\\b"));
+    @Scope(ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+    public String connectorMetadata() {
+        return metadataTemplate.replace("CONNECTOR_REGEX", appConfigService().getConnectorRegex());
+    }
 
-        String metaData = IOUtils.toString(metadataHalResource.getInputStream(), Charset.defaultCharset());
-        return metaData.replace("CONNECTOR_REGEX", connectorRegex);
+    @Bean
+    @ConditionalOnProperty("managed-apps.file")
+    public ManagedAppsReloader managedAppsReloader(@Value("${managed-apps.file}") String managedAppsFile) {
+        return new ManagedAppsReloader(appConfigService(), Paths.get(managedAppsFile));
     }
 
     @Bean
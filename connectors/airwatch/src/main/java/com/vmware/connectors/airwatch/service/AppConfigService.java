@@ -5,42 +5,65 @@
 
 package com.vmware.connectors.airwatch.service;
 
-import com.vmware.connectors.airwatch.config.AppConfiguration;
 import com.vmware.connectors.airwatch.config.AppConfigurations;
 import com.vmware.connectors.airwatch.config.ManagedApp;
+import com.vmware.connectors.airwatch.exceptions.ConfigException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Created by harshas on 9/19/17.
+ * <p>
+ * Managed apps are looked up in a {@link ManagedAppIndex} of the current managed-apps
+ * configuration, which {@link #reload} replaces in one step.
  */
 public class AppConfigService {
 
     private static final Logger logger = LoggerFactory.getLogger(AppConfigService.class);
 
-    private final AppConfigurations appConfigurations;
+    private final AtomicReference<ManagedAppIndex> index;
 
     public AppConfigService(AppConfigurations appConfigurations) {
-        this.appConfigurations = appConfigurations;
+        this.index = new AtomicReference<>(ManagedAppIndex.build(appConfigurations.getApps()));
     }
 
     public Optional<ManagedApp> findManagedApp(String keyword, String platform) {
-        for (AppConfiguration appConfiguration : appConfigurations.getApps()) {
-            ManagedApp app = appConfiguration.getApp(platform);
-
-            if (app == null) {
-                logger.warn("{} app is not configured for {} platform.", appConfiguration.getApp(), platform);
-                continue;
-            }
-
-            // If the keyword matches to the app's name or its configured keywords.
-            if (app.getName().equalsIgnoreCase(keyword) ||
-                    appConfiguration.getKeywords().stream().anyMatch(keyword::equalsIgnoreCase)) {
-                return Optional.of(app);
-            }
+        return index.get().find(keyword, platform);
+    }
+
+    /**
+     * @return the regex, for the connector metadata, that matches the keywords of the managed apps
+     */
+    public String getConnectorRegex() {
+        return index.get().getConnectorRegex();
+    }
+
+    /**
+     * Replaces the managed apps, if the new configuration is valid.
+     */
+    public void reload(AppConfigurations appConfigurations) {
+        validate(appConfigurations);
+        index.set(ManagedAppIndex.build(appConfigurations.getApps()));
+        logger.info("Reloaded {} managed apps.", appConfigurations.getApps().size());
+    }
+
+    /**
+     * Logs what is wrong with the managed-apps configuration and throws a ConfigException, if anything is.
+     */
+    public static void validate(AppConfigurations appConfigurations) {
+        Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+        Set<ConstraintViolation<AppConfigurations>> violations = validator.validate(appConfigurations);
+        violations
+                .forEach(v -> logger.error("{} Check {} in managed-apps configuration.", v.getMessage(), v.getPropertyPath().toString()));
+        if (!violations.isEmpty()) {
+            throw new ConfigException("Invalid configurations for managed-apps.");
         }
-        return Optional.empty();
     }
 }
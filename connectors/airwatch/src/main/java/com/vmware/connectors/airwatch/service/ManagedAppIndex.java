@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.airwatch.service;
+
+import com.vmware.connectors.airwatch.config.AppConfiguration;
+import com.vmware.connectors.airwatch.config.ManagedApp;
+import com.vmware.connectors.airwatch.exceptions.UnsupportedPlatform;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * The managed apps of one managed-apps configuration, by platform, and then by lower
+ * cased app name and keyword.
+ * <p>
+ * When a name or keyword belongs to more than one app, the app that comes first in the
+ * configuration wins. Apps that aren't configured for a platform can't be found for it.
+ * Indexes are immutable.
+ */
+final class ManagedAppIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManagedAppIndex.class);
+
+    private static final List<String> PLATFORMS = List.of("android", "ios");
+
+    private final Map<String, Map<String, ManagedApp>> appsByPlatform;
+
+    private final String connectorRegex;
+
+    private ManagedAppIndex(List<AppConfiguration> appConfigurations) {
+        this.appsByPlatform = PLATFORMS.stream()
+                .collect(Collectors.toUnmodifiableMap(platform -> platform, platform -> index(appConfigurations, platform)));
+
+        this.connectorRegex = "(?i)" + appConfigurations.stream()
+                .flatMap(appConfiguration -> keywords(appConfiguration).stream())
+                .collect(Collectors.joining("\\\\b|\\\\b", "\\\\b", "\\\\b"));
+    }
+
+    /**
+     * @param appConfigurations the apps, in the order of the configuration; empty entries are left out
+     */
+    static ManagedAppIndex build(List<AppConfiguration> appConfigurations) {
+        return new ManagedAppIndex(Objects.requireNonNullElse(appConfigurations, List.<AppConfiguration>of()).stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
+
+    private static Map<String, ManagedApp> index(List<AppConfiguration> appConfigurations, String platform) {
+        Map<String, ManagedApp> apps = new HashMap<>();
+        for (AppConfiguration appConfiguration : appConfigurations) {
+            ManagedApp app = appConfiguration.getApp(platform);
+
+            if (app == null) {
+                logger.info("{} app is not configured for {} platform.", appConfiguration.getApp(), platform);
+                continue;
+            }
+
+            apps.putIfAbsent(fold(app.getName()), app);
+            keywords(appConfiguration).forEach(keyword -> apps.putIfAbsent(fold(keyword), app));
+        }
+        return Map.copyOf(apps);
+    }
+
+    /**
+     * @return the app whose name or keyword is the keyword, ignoring case
+     */
+    Optional<ManagedApp> find(String keyword, String platform) {
+        Map<String, ManagedApp> apps = appsByPlatform.get(fold(platform));
+        if (apps == null) {
+            throw new UnsupportedPlatform(platform + " is not supported. It should be either android or ios.");
+        }
+        return Optional.ofNullable(apps.get(fold(keyword)));
+    }
+
+    /**
+     * @return a case insensitive regex that matches any of the keywords, as whole words
+     */
+    String getConnectorRegex() {
+        return connectorRegex;
+    }
+
+    private static List<String> keywords(AppConfiguration appConfiguration) {
+        return Objects.requireNonNullElse(appConfiguration.getKeywords(), List.of());
+    }
+
+    private static String fold(String text) {
+        return StringUtils.defaultString(text).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.airwatch.service;
+
+import com.vmware.connectors.airwatch.config.AppConfigurations;
+import com.vmware.connectors.airwatch.exceptions.ConfigException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.context.properties.source.ConfigurationPropertySources;
+import org.springframework.boot.env.YamlPropertySourceLoader;
+import org.springframework.core.env.PropertySource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+/**
+ * Reloads the managed apps when the managed-apps YML file changes, so that apps can be
+ * added without a restart. A file that can't be read or isn't valid is logged, and the
+ * apps from before stay in use until the file changes again.
+ */
+public class ManagedAppsReloader {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManagedAppsReloader.class);
+
+    private final AppConfigService appConfigService;
+
+    private final Path managedAppsFile;
+
+    // Only touched by the scheduler, one run at a time
+    private FileTime loadedVersion;
+
+    /**
+     * @param managedAppsFile the file the managed apps were loaded from at startup
+     */
+    public ManagedAppsReloader(AppConfigService appConfigService, Path managedAppsFile) {
+        this.appConfigService = appConfigService;
+        this.managedAppsFile = managedAppsFile;
+        this.loadedVersion = lastModified();
+    }
+
+    // The YAML parser and the binder have exceptions of their own, all of which should keep the apps from before
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    @Scheduled(fixedDelayString = "#{${managed-apps.reload-seconds:30} * 1000}")
+    public void reloadIfChanged() {
+        FileTime version = lastModified();
+        if (version == null || version.equals(loadedVersion)) {
+            return;
+        }
+        loadedVersion = version;
+
+        try {
+            appConfigService.reload(read());
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to reload managed apps from {}. Keeping the ones from before: {}", managedAppsFile, e.toString());
+        }
+    }
+
+    private AppConfigurations read() throws IOException {
+        List<PropertySource<?>> sources = new YamlPropertySourceLoader()
+                .load(managedAppsFile.toString(), new FileSystemResource(managedAppsFile));
+
+        return new Binder(ConfigurationPropertySources.from(sources))
+                .bind("airwatch", AppConfigurations.class)
+                .orElseThrow(() -> new ConfigException("No airwatch apps in " + managedAppsFile));
+    }
+
+    private FileTime lastModified() {
+        try {
+            return Files.getLastModifiedTime(managedAppsFile);
+        } catch (IOException e) {
+            logger.warn("Can't read the last modified time of {}: {}", managedAppsFile, e.toString());
+            return null;
+        }
+    }
+}
@@ -9,4 +9,5 @@ source $install_path/jvm.conf
 /usr/bin/java $JVM_OPTS \
     -server \
     -jar $install_path/${connector_name}-connector.jar \
-    --spring.config.additional-location=file:$install_path/application.properties,file:$etc_path/application.properties,file:$etc_path/managed-apps.yml
+    --spring.config.additional-location=file:$install_path/application.properties,file:$etc_path/application.properties,file:$etc_path/managed-apps.yml \
+    --managed-apps.file=$etc_path/managed-apps.yml
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.airwatch.service;
+
+import com.vmware.connectors.airwatch.config.AppConfiguration;
+import com.vmware.connectors.airwatch.config.AppConfigurations;
+import com.vmware.connectors.airwatch.config.ManagedApp;
+import com.vmware.connectors.airwatch.exceptions.ConfigException;
+import com.vmware.connectors.airwatch.exceptions.UnsupportedPlatform;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AppConfigServiceTest {
+
+    private final AppConfigService service = new AppConfigService(configurations(
+            app("Boxer", "VMware Boxer", "com.boxer", "VMware Boxer", "com.air-watch.boxer", "boxer", "Email App"),
+            app("Concur", "Concur", "com.concur.breeze", null, null, "concur", "email app"),
+            app("Browser", null, null, "Browser", "com.air-watch.secure.browser", "browser")
+    ));
+
+    @Test
+    void testFindByNameOrKeywordIgnoringCase() {
+        assertThat(service.findManagedApp("vmware BOXER", "android").map(ManagedApp::getId), is(Optional.of("com.boxer")));
+        assertThat(service.findManagedApp("Concur", "Android").map(ManagedApp::getId), is(Optional.of("com.concur.breeze")));
+        assertThat(service.findManagedApp("BROWSER", "ios").map(ManagedApp::getId), is(Optional.of("com.air-watch.secure.browser")));
+    }
+
+    @Test
+    void testFirstAppWins() {
+        assertThat(service.findManagedApp("email app", "android").map(ManagedApp::getId), is(Optional.of("com.boxer")));
+    }
+
+    @Test
+    void testAppsNotConfiguredForThePlatform() {
+        assertThat(service.findManagedApp("browser", "android"), is(Optional.empty()));
+        assertThat(service.findManagedApp("concur", "ios"), is(Optional.empty()));
+        assertThat(service.findManagedApp("unknown", "ios"), is(Optional.empty()));
+    }
+
+    @Test
+    void testUnsupportedPlatform() {
+        assertThrows(UnsupportedPlatform.class, () -> service.findManagedApp("boxer", "windows"));
+    }
+
+    @Test
+    void testConnectorRegex() {
+        assertThat(service.getConnectorRegex(),
+                is("(?i)\\\\bboxer\\\\b|\\\\bEmail App\\\\b|\\\\bconcur\\\\b|\\\\bemail app\\\\b|\\\\bbrowser\\\\b"));
+    }
+
+    @Test
+    void testReload() {
+        service.reload(configurations(app("Zendesk", "Zendesk Support", "com.zendesk.android", null, null, "support")));
+
+        assertThat(service.findManagedApp("boxer", "android"), is(Optional.empty()));
+        assertThat(service.findManagedApp("support", "android").map(ManagedApp::getId), is(Optional.of("com.zendesk.android")));
+        assertThat(service.getConnectorRegex(), is("(?i)\\\\bsupport\\\\b"));
+    }
+
+    @Test
+    void testInvalidReloadKeepsApps() {
+        // The app id is missing
+        AppConfigurations invalid = configurations(app("Zendesk", "Zendesk Support", null, null, null, "support"));
+        assertThrows(ConfigException.class, () -> service.reload(invalid));
+
+        assertThat(service.findManagedApp("boxer", "android").map(ManagedApp::getId), is(Optional.of("com.boxer")));
+    }
+
+    @Test
+    void testReloaderLoadsChangedFile() throws IOException {
+        Path file = Files.createTempFile("managed-apps", ".yml");
+        try {
+            write(file, "airwatch:\n  apps:\n    - app: Boxer\n      android:\n        name: VMware Boxer\n        id: com.boxer\n      keywords:\n        - boxer\n", 1);
+            ManagedAppsReloader reloader = new ManagedAppsReloader(service, file);
+
+            // Unchanged since the reloader was made
+            reloader.reloadIfChanged();
+            assertThat(service.findManagedApp("concur", "android").isPresent(), is(true));
+
+            write(file, "airwatch:\n  apps:\n    - app: Concur\n      android:\n        name: Concur\n        id: com.concur.breeze\n      keywords:\n        - expenses\n", 2);
+            reloader.reloadIfChanged();
+            assertThat(service.findManagedApp("boxer", "android"), is(Optional.empty()));
+            assertThat(service.findManagedApp("expenses", "android").map(ManagedApp::getId), is(Optional.of("com.concur.breeze")));
+
+            // A broken file keeps the apps from before
+            write(file, "airwatch:\n  apps:\n    - app: Concur\n      android:\n        name: Concur\n", 3);
+            reloader.reloadIfChanged();
+            assertThat(service.findManagedApp("expenses", "android").map(ManagedApp::getId), is(Optional.of("com.concur.breeze")));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    // Sets the modification time explicitly, as the file system's clock may be too coarse to tell the writes apart
+    private static void write(Path file, String content, long version) throws IOException {
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(file, FileTime.from(Instant.ofEpochSecond(1_500_000_000L + version)));
+    }
+
+    private static AppConfigurations configurations(AppConfiguration... apps) {
+        AppConfigurations configurations = new AppConfigurations();
+        configurations.setApps(List.of(apps));
+        return configurations;
+    }
+
+    private static AppConfiguration app(String app, String androidName, String androidId,
+                                        String iosName, String iosId, String... keywords) {
+        AppConfiguration configuration = new AppConfiguration();
+        configuration.setApp(app);
+        configuration.setAndroid(managedApp(androidName, androidId));
+        configuration.setIos(managedApp(iosName, iosId));
+        configuration.setKeywords(List.of(keywords));
+        return configuration;
+    }
+
+    private static ManagedApp managedApp(String name, String id) {
+        if (name == null) {
+            return null;
+        }
+        ManagedApp managedApp = new ManagedApp();
+        managedApp.setName(name);
+        managedApp.setId(id);
+        return managedApp;
+    }
+}
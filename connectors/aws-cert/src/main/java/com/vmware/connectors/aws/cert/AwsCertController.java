@@ -57,18 +57,21 @@ public class AwsCertController {
     private final String certificateApprovalPath;
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
+    private final CardHashMode cardHashMode;
 
     @Autowired
     public AwsCertController(
             @Value("${aws.certificate.connector.approval.host}") String certificateApprovalHost,
             @Value("${aws.certificate.connector.approval.path}") String certificateApprovalPath,
             WebClient rest,
-            CardTextAccessor cardTextAccessor
+            CardTextAccessor cardTextAccessor,
+            CardHashMode cardHashMode
     ) {
         this.certificateApprovalHost = certificateApprovalHost.toLowerCase(Locale.US);
         this.certificateApprovalPath = certificateApprovalPath;
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
     }
 
     @PostMapping(
@@ -267,7 +270,7 @@ public class AwsCertController {
 
         info.getFormParams().forEach(approveAction::addRequestParam);
 
-        final Card.Builder card = new Card.Builder()
+        final Card.Builder card = new Card.Builder(cardHashMode)
                 .setName("AwsCert") // TODO - remove this in APF-536
                 .setCreationDate(OffsetDateTime.now())
                 /*
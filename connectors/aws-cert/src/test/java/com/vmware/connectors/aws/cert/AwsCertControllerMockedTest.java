@@ -7,6 +7,7 @@ package com.vmware.connectors.aws.cert;
 
 import com.google.common.collect.ImmutableSet;
 import com.vmware.connectors.common.payloads.request.CardRequest;
+import com.vmware.connectors.common.payloads.response.CardHashMode;
 import com.vmware.connectors.common.payloads.response.Cards;
 import com.vmware.connectors.common.utils.CardTextAccessor;
 import com.vmware.connectors.test.ControllerTestsBase;
@@ -74,7 +75,8 @@ class AwsCertControllerMockedTest {
                 "certificates.Fake-Amazon.com",
                 "/approvals",
                 WebClient.builder().clientConnector(mockClientHttpConnector).build(),
-                new CardTextAccessor(messageSource));
+                new CardTextAccessor(messageSource),
+                CardHashMode.STREAMED);
     }
 
     @ParameterizedTest
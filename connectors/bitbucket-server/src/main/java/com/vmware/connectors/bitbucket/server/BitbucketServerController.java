@@ -55,11 +55,13 @@ public class BitbucketServerController {
 
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
+    private final CardHashMode cardHashMode;
 
     @Autowired
-    public BitbucketServerController(WebClient rest, CardTextAccessor cardTextAccessor) {
+    public BitbucketServerController(WebClient rest, CardTextAccessor cardTextAccessor, CardHashMode cardHashMode) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
     }
 
     @GetMapping("/test-auth")
@@ -192,7 +194,7 @@ public class BitbucketServerController {
             Locale locale,
             ServerHttpRequest request
     ) {
-        Card.Builder card = new Card.Builder()
+        Card.Builder card = new Card.Builder(cardHashMode)
                 .setHeader(
                         cardTextAccessor.getHeader(locale,
                                 pullRequest.getPullRequestId(),
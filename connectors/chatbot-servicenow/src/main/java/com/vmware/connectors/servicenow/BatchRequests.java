@@ -0,0 +1,196 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.Configuration;
+import com.vmware.connectors.common.json.JsonDocument;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * Sends several ServiceNow REST requests in a single round trip, through the Batch API
+ * (/api/now/v1/batch). ServiceNow runs them one after the other, in order, so a request
+ * can rely on the changes of the ones before it, but not on their responses.
+ * <p>
+ * Batching is off unless snow.batch-requests is set. Instances without the Batch API are
+ * remembered, and {@link #send} comes back empty for them, so that the caller can make the
+ * requests one at a time instead.
+ */
+@Component
+class BatchRequests {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchRequests.class);
+
+    private static final String SNOW_BATCH_ENDPOINT = "/api/now/v1/batch";
+
+    private static final List<Map<String, String>> JSON_HEADERS = List.of(
+            Map.of("name", HttpHeaders.CONTENT_TYPE, "value", APPLICATION_JSON_VALUE),
+            Map.of("name", HttpHeaders.ACCEPT, "value", APPLICATION_JSON_VALUE)
+    );
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final WebClient rest;
+    private final boolean enabled;
+
+    // Instances that answered that they have no Batch API
+    private final Set<String> unsupported = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    BatchRequests(
+            WebClient rest,
+            @Value("${snow.batch-requests:false}") boolean enabled
+    ) {
+        this.rest = rest;
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param requests the requests, in the order they should run in
+     * @return the responses of the requests ServiceNow got to, in order, or empty if the
+     * instance can't take batches
+     */
+    Mono<List<Response>> send(URI baseUri, String auth, List<Request> requests) {
+        String instance = CatalogIdCache.instance(baseUri);
+        if (!enabled || unsupported.contains(instance)) {
+            return Mono.empty();
+        }
+
+        List<Map<String, Object>> restRequests = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            restRequests.add(requests.get(i).toRestRequest(String.valueOf(i), objectMapper));
+        }
+
+        return rest.post()
+                .uri(UriComponentsBuilder.fromUriString(instance)
+                        .path(SNOW_BATCH_ENDPOINT)
+                        .build()
+                        .toUri())
+                .header(AUTHORIZATION, auth)
+                .contentType(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .syncBody(Map.of("batch_request_id", "1", "rest_requests", restRequests))
+                .retrieve()
+                .bodyToMono(JsonDocument.class)
+                .map(response -> toResponses(response, requests.size()))
+                .onErrorResume(WebClientResponseException.class, e -> {
+                    if (e.getStatusCode() != HttpStatus.NOT_FOUND && e.getStatusCode() != HttpStatus.METHOD_NOT_ALLOWED) {
+                        return Mono.error(e);
+                    }
+                    logger.info("No batch API at {}, sending requests one at a time", instance);
+                    unsupported.add(instance);
+                    return Mono.empty();
+                });
+    }
+
+    // Serviced responses come back in any order; the list stops at the first request that wasn't serviced
+    private static List<Response> toResponses(JsonDocument batchResponse, int count) {
+        Map<String, Response> byId = new HashMap<>();
+        batchResponse.forEach("$.serviced_requests[*]", serviced -> byId.put(
+                serviced.read("$.id"),
+                new Response(serviced.read("$.status_code"), serviced.read("$.body"))
+        ));
+
+        List<Response> responses = new ArrayList<>(count);
+        for (int i = 0; i < count && byId.containsKey(String.valueOf(i)); i++) {
+            responses.add(byId.get(String.valueOf(i)));
+        }
+        return responses;
+    }
+
+    static final class Request {
+
+        private final HttpMethod method;
+        private final String url;
+        private final Object body;
+
+        /**
+         * @param url the path and query of the request, starting at the root of the instance
+         * @param body the JSON body of the request, or null
+         */
+        Request(HttpMethod method, String url, Object body) {
+            this.method = method;
+            this.url = url;
+            this.body = body;
+        }
+
+        private Map<String, Object> toRestRequest(String id, ObjectMapper objectMapper) {
+            Map<String, Object> restRequest = new HashMap<>();
+            restRequest.put("id", id);
+            restRequest.put("method", method.name());
+            restRequest.put("url", url);
+            restRequest.put("headers", JSON_HEADERS);
+            restRequest.put("exclude_response_headers", true);
+            if (body != null) {
+                try {
+                    restRequest.put("body", Base64.getEncoder().encodeToString(objectMapper.writeValueAsBytes(body)));
+                } catch (JsonProcessingException e) {
+                    throw new IllegalArgumentException("Can't write the body of " + url, e);
+                }
+            }
+            return restRequest;
+        }
+    }
+
+    static final class Response {
+
+        private final int status;
+        private final String body;
+
+        private Response(int status, String base64Body) {
+            this.status = status;
+            this.body = StringUtils.isEmpty(base64Body)
+                    ? ""
+                    : new String(Base64.getDecoder().decode(base64Body), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Throws a WebClientResponseException if the request failed, like the request on its own would have.
+         */
+        void checkStatus() {
+            // Not HttpStatus.valueOf(), which throws for codes it does not know
+            if (status >= 400) {
+                throw WebClientResponseException.create(status, "Batched request failed", HttpHeaders.EMPTY,
+                        body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            }
+        }
+
+        /**
+         * @return the JSON body of a successful response
+         */
+        JsonDocument toJson() {
+            checkStatus();
+            return new JsonDocument(Configuration.defaultConfiguration().jsonProvider().parse(body));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How long catalog and category ids are kept, and the tenants to load them for ahead of
+ * the first request.
+ */
+@ConfigurationProperties(prefix = "snow.catalog-cache")
+@Component
+public class CatalogCacheProperties {
+
+    /**
+     * Ids older than this are reloaded in the background, while the old ones are still served.
+     */
+    private long refreshSeconds = 3600;
+
+    /**
+     * Ids older than this are not served anymore. Zero turns the cache off.
+     */
+    private long maxStaleSeconds = 86_400;
+
+    /**
+     * Tenants whose ids are loaded at startup and on every refresh, with a credential of their own.
+     */
+    private List<Tenant> prefetch = new ArrayList<>();
+
+    public long getRefreshSeconds() {
+        return refreshSeconds;
+    }
+
+    public void setRefreshSeconds(long refreshSeconds) {
+        this.refreshSeconds = refreshSeconds;
+    }
+
+    public long getMaxStaleSeconds() {
+        return maxStaleSeconds;
+    }
+
+    public void setMaxStaleSeconds(long maxStaleSeconds) {
+        this.maxStaleSeconds = maxStaleSeconds;
+    }
+
+    public List<Tenant> getPrefetch() {
+        return prefetch;
+    }
+
+    public void setPrefetch(List<Tenant> prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    public static class Tenant {
+
+        private String baseUrl;
+
+        private String authorization;
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public void setBaseUrl(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getAuthorization() {
+            return authorization;
+        }
+
+        public void setAuthorization(String authorization) {
+            this.authorization = authorization;
+        }
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import com.vmware.connectors.common.json.JsonDocument;
+import com.vmware.connectors.servicenow.exception.CatalogReadException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+
+/**
+ * Keeps the sys_ids of the service catalogs of each ServiceNow instance, and of the
+ * categories of each catalog, by title. They hardly ever change, and finding them used
+ * to take two calls ahead of every catalog item search.
+ * <ul>
+ * <li>Ids are loaded on first use with the credential of the request, one catalog's
+ * categories at a time, and kept per instance.</li>
+ * <li>Ids older than the refresh interval are still served while they are reloaded in
+ * the background, with the credential of the request that found them old. Ids older
+ * than the max staleness are loaded again before they are served.</li>
+ * <li>The tenants configured for prefetching, each with a credential of its own, are
+ * loaded at startup and reloaded on every refresh interval.</li>
+ * </ul>
+ * A title is found by an exact, case insensitive match first, then by being the only
+ * title that ends with it. Errors are never kept.
+ */
+@Component
+public class CatalogIdCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogIdCache.class);
+
+    private static final String SNOW_CATALOG_ENDPOINT = "/api/sn_sc/servicecatalog/catalogs";
+
+    private static final String SNOW_CATALOG_CATEGORY_ENDPOINT = "/api/sn_sc/servicecatalog/catalogs/{catalog_id}";
+
+    private final WebClient rest;
+    private final CatalogCacheProperties properties;
+
+    // Keys are [instance] for the catalogs, and [instance, catalog sys_id] for the categories of a catalog
+    private final ConcurrentMap<List<String>, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CatalogIdCache(WebClient rest, CatalogCacheProperties properties) {
+        this.rest = rest;
+        this.properties = properties;
+    }
+
+    /**
+     * @return the sys_id of the catalog, or a CatalogReadException if no single catalog has the title
+     */
+    public Mono<String> getCatalogId(String catalogTitle, String auth, URI baseUri) {
+        String instance = instance(baseUri);
+        return get(List.of(instance), () -> loadCatalogIds(instance, auth))
+                .flatMap(ids -> find(ids, catalogTitle, instance));
+    }
+
+    /**
+     * @return the sys_id of the category, or a CatalogReadException if no single category of the catalog has the title
+     */
+    public Mono<String> getCategoryId(String categoryTitle, String catalogId, String auth, URI baseUri) {
+        String instance = instance(baseUri);
+        return get(List.of(instance, catalogId), () -> loadCategoryIds(instance, catalogId, auth))
+                .flatMap(ids -> find(ids, categoryTitle, instance));
+    }
+
+    /**
+     * Loads the ids of the configured tenants: at startup, and then every refresh interval.
+     */
+    @Scheduled(fixedDelayString = "#{${snow.catalog-cache.refresh-seconds:3600} * 1000}")
+    public void refreshPrefetched() {
+        if (!isEnabled() || properties.getPrefetch().isEmpty()) {
+            return;
+        }
+
+        Flux.fromIterable(properties.getPrefetch())
+                .flatMap(tenant -> prefetch(instance(URI.create(tenant.getBaseUrl())), tenant.getAuthorization()))
+                .then()
+                .block();
+    }
+
+    private Mono<Void> prefetch(String instance, String auth) {
+        logger.debug("Loading catalog and category ids of {}", instance);
+        return loadCatalogIds(instance, auth)
+                .doOnNext(catalogIds -> put(List.of(instance), catalogIds))
+                .flatMapIterable(Map::values)
+                .flatMap(catalogId -> loadCategoryIds(instance, catalogId, auth)
+                        .doOnNext(categoryIds -> put(List.of(instance, catalogId), categoryIds)))
+                .onErrorResume(e -> {
+                    logger.warn("Failed to load catalog and category ids of {}: {}", instance, e.toString());
+                    return Mono.empty();
+                })
+                .then();
+    }
+
+    private boolean isEnabled() {
+        return properties.getMaxStaleSeconds() > 0;
+    }
+
+    private Mono<Map<String, String>> get(List<String> key, Supplier<Mono<Map<String, String>>> loader) {
+        if (!isEnabled()) {
+            return loader.get();
+        }
+
+        return Mono.defer(() -> {
+            Entry entry = entries.compute(key, (k, existing) ->
+                    existing == null || existing.isOlderThan(properties.getMaxStaleSeconds()) ? new Entry(loader.get().cache()) : existing);
+
+            if (entry.isOlderThan(properties.getRefreshSeconds()) && entry.refreshing.compareAndSet(false, true)) {
+                loader.get().subscribe(
+                        ids -> put(key, ids),
+                        e -> {
+                            logger.warn("Failed to refresh ids for {}: {}", key, e.toString());
+                            entry.refreshing.set(false);
+                        }
+                );
+            }
+
+            // A failed load is forgotten, so that the next request tries again
+            return entry.ids.doOnError(e -> entries.remove(key, entry));
+        });
+    }
+
+    private void put(List<String> key, Map<String, String> ids) {
+        entries.put(key, new Entry(Mono.just(ids)));
+    }
+
+    private Mono<Map<String, String>> loadCatalogIds(String instance, String auth) {
+        return rest.get()
+                .uri(UriComponentsBuilder.fromUriString(instance)
+                        .path(SNOW_CATALOG_ENDPOINT)
+                        .build()
+                        .toUri())
+                .header(AUTHORIZATION, auth)
+                .retrieve()
+                .bodyToMono(JsonDocument.class)
+                .map(doc -> toIds(doc, "$.result[*]"));
+    }
+
+    private Mono<Map<String, String>> loadCategoryIds(String instance, String catalogId, String auth) {
+        return rest.get()
+                .uri(UriComponentsBuilder.fromUriString(instance)
+                        .path(SNOW_CATALOG_CATEGORY_ENDPOINT)
+                        .buildAndExpand(Map.of("catalog_id", catalogId))
+                        .encode()
+                        .toUri())
+                .header(AUTHORIZATION, auth)
+                .retrieve()
+                .bodyToMono(JsonDocument.class)
+                .map(doc -> toIds(doc, "$.result.categories[*]"));
+    }
+
+    // Titles are kept lower case, in the order ServiceNow lists them
+    private static Map<String, String> toIds(JsonDocument doc, String itemsPath) {
+        Map<String, String> ids = new LinkedHashMap<>();
+        doc.forEach(itemsPath, item -> {
+            String title = item.read("$.title");
+            if (title != null) {
+                ids.putIfAbsent(title.toLowerCase(Locale.ROOT), item.read("$.sys_id"));
+            }
+        });
+        return Collections.unmodifiableMap(ids);
+    }
+
+    private static Mono<String> find(Map<String, String> ids, String title, String instance) {
+        String key = title.toLowerCase(Locale.ROOT);
+        String id = ids.get(key);
+        if (id != null) {
+            return Mono.just(id);
+        }
+
+        Iterator<String> matches = ids.entrySet().stream()
+                .filter(entry -> entry.getKey().endsWith(key))
+                .map(Map.Entry::getValue)
+                .iterator();
+        if (matches.hasNext()) {
+            String match = matches.next();
+            if (!matches.hasNext()) {
+                return Mono.just(match);
+            }
+        }
+
+        logger.debug("Couldn't find the sys_id for title:{}, baseUrl:{}", title, instance);
+        return Mono.error(new CatalogReadException("Can't find " + title));
+    }
+
+    // The scheme, host and port of the instance, which is all the connector uses of the base URL
+    static String instance(URI baseUri) {
+        return UriComponentsBuilder.newInstance()
+                .scheme(baseUri.getScheme())
+                .host(baseUri.getHost())
+                .port(baseUri.getPort())
+                .toUriString();
+    }
+
+    private static final class Entry {
+
+        private final Mono<Map<String, String>> ids;
+        private final long loadedAt = System.nanoTime();
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(Mono<Map<String, String>> ids) {
+            this.ids = ids;
+        }
+
+        boolean isOlderThan(long seconds) {
+            return System.nanoTime() - loadedAt > Duration.ofSeconds(seconds).toNanos();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import com.vmware.connectors.servicenow.domain.snow.CatalogItem;
+import org.apache.commons.lang3.StringUtils;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * An in-memory search index over the items of one catalog category.
+ * <p>
+ * The names and short descriptions of the items are split into words, which are lower
+ * cased and stripped of accents. The distinct words are kept in one sorted array, with
+ * the items of each word as a sorted int array, so that all the words that start with a
+ * prefix are a single range found by binary search. An item matches a query when each
+ * word of the query is the prefix of one of the item's words; matches come back in the
+ * order ServiceNow listed the items.
+ * <p>
+ * Only the fields the chatbot shows are kept for each item. Indexes are immutable.
+ */
+final class CatalogItemIndex {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final CatalogItem[] items;
+    private final String[] words;
+    private final int[][] postings;
+
+    private CatalogItemIndex(List<CatalogItem> catalogItems) {
+        this.items = catalogItems.stream().map(CatalogItemIndex::slim).toArray(CatalogItem[]::new);
+
+        Map<String, List<Integer>> itemsByWord = itemsByWord(catalogItems);
+        this.words = itemsByWord.keySet().toArray(new String[0]);
+        this.postings = new int[words.length][];
+        for (int w = 0; w < words.length; w++) {
+            postings[w] = itemsByWord.get(words[w]).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * @param catalogItems the items of the category, in the order they should be listed in
+     */
+    static CatalogItemIndex build(List<CatalogItem> catalogItems) {
+        return new CatalogItemIndex(catalogItems);
+    }
+
+    // The positions of the items each word is in, by word in sorted order
+    private static Map<String, List<Integer>> itemsByWord(List<CatalogItem> catalogItems) {
+        Map<String, List<Integer>> itemsByWord = new TreeMap<>();
+        for (int i = 0; i < catalogItems.size(); i++) {
+            CatalogItem item = catalogItems.get(i);
+            for (String word : tokenize(item.getName() + ' ' + StringUtils.defaultString(item.getShortDescription()))) {
+                List<Integer> wordItems = itemsByWord.computeIfAbsent(word, w -> new ArrayList<>());
+                if (wordItems.isEmpty() || wordItems.get(wordItems.size() - 1) != i) {
+                    wordItems.add(i);
+                }
+            }
+        }
+        return itemsByWord;
+    }
+
+    /**
+     * @param text the words to look for; all the items match when there are none
+     * @param limit the most items to return
+     * @param offset the matching items to skip
+     * @return the matching items, in order
+     */
+    List<CatalogItem> search(String text, int limit, int offset) {
+        BitSet matches = new BitSet(items.length);
+        matches.set(0, items.length);
+        for (String prefix : tokenize(text)) {
+            matches.and(itemsOfPrefix(prefix));
+        }
+
+        List<CatalogItem> found = new ArrayList<>(Math.min(limit, items.length));
+        int skipped = 0;
+        for (int i = matches.nextSetBit(0); i >= 0 && found.size() < limit; i = matches.nextSetBit(i + 1)) {
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                found.add(items[i]);
+            }
+        }
+        return found;
+    }
+
+    int size() {
+        return items.length;
+    }
+
+    private BitSet itemsOfPrefix(String prefix) {
+        BitSet found = new BitSet(items.length);
+        int from = lowerBound(prefix);
+        for (int w = from; w < words.length && words[w].startsWith(prefix); w++) {
+            for (int item : postings[w]) {
+                found.set(item);
+            }
+        }
+        return found;
+    }
+
+    // The first word that isn't before the prefix
+    private int lowerBound(String prefix) {
+        int index = Arrays.binarySearch(words, prefix);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    static List<String> tokenize(String text) {
+        if (StringUtils.isBlank(text)) {
+            return List.of();
+        }
+        String plain = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        List<String> tokens = new ArrayList<>();
+        for (String token : NON_WORD.split(plain.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) {
+                tokens.add(token);
+            }
+        }
+        return tokens;
+    }
+
+    // The long HTML description isn't shown by the chatbot, so it isn't kept
+    private static CatalogItem slim(CatalogItem item) {
+        CatalogItem slim = new CatalogItem();
+        slim.setId(item.getId());
+        slim.setName(item.getName());
+        slim.setShortDescription(item.getShortDescription());
+        slim.setPicture(item.getPicture());
+        slim.setLocalizedPrice(item.getLocalizedPrice());
+        return slim;
+    }
+}
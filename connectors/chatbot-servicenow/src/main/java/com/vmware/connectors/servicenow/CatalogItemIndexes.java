@@ -0,0 +1,199 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import com.vmware.connectors.servicenow.domain.snow.CatalogItem;
+import com.vmware.connectors.servicenow.domain.snow.CatalogItemResults;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+
+/**
+ * Serves catalog item searches from a {@link CatalogItemIndex} per instance and category,
+ * instead of ServiceNow's item search.
+ * <ul>
+ * <li>An index is built by reading all the items of the category, a page at a time.</li>
+ * <li>A search is only served from an index younger than the max age. Otherwise the
+ * caller falls back to ServiceNow's search, while the index is rebuilt in the background
+ * with the caller's credential.</li>
+ * <li>The indexes of the instances configured for prefetching (snow.catalog-cache.prefetch)
+ * are rebuilt on a schedule with their own credential, so that they don't go stale.</li>
+ * </ul>
+ * An index is shared by all the users of an instance, so it should only be turned on for
+ * instances where every user can order the same items. It is off by default.
+ */
+@Component
+public class CatalogItemIndexes {
+
+    private static final Logger logger = LoggerFactory.getLogger(CatalogItemIndexes.class);
+
+    private static final String SNOW_ITEMS_ENDPOINT = "/api/sn_sc/servicecatalog/items";
+
+    private final WebClient rest;
+    private final CatalogCacheProperties catalogCacheProperties;
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final int pageSize;
+    private final int maxItems;
+
+    // Keys are [instance, category sys_id]
+    private final ConcurrentMap<List<String>, Entry> indexes = new ConcurrentHashMap<>();
+    private final Set<List<String>> building = ConcurrentHashMap.newKeySet();
+
+    @Autowired
+    public CatalogItemIndexes(
+            WebClient rest,
+            CatalogCacheProperties catalogCacheProperties,
+            @Value("${snow.item-index.enabled:false}") boolean enabled,
+            @Value("${snow.item-index.max-age-seconds:900}") long maxAgeSeconds,
+            @Value("${snow.item-index.page-size:100}") int pageSize,
+            @Value("${snow.item-index.max-items:5000}") int maxItems
+    ) {
+        this.rest = rest;
+        this.catalogCacheProperties = catalogCacheProperties;
+        this.enabled = enabled;
+        this.maxAge = Duration.ofSeconds(maxAgeSeconds);
+        this.pageSize = pageSize;
+        this.maxItems = maxItems;
+    }
+
+    /**
+     * @return the matching items, or empty if there is no fresh index to search, in which
+     * case ServiceNow should be asked
+     */
+    public Optional<List<CatalogItem>> search(URI baseUri, String categoryId, String auth,
+                                              String text, String limit, String offset) {
+        if (!enabled || !NumberUtils.isDigits(limit) || !NumberUtils.isDigits(offset)) {
+            return Optional.empty();
+        }
+
+        String instance = CatalogIdCache.instance(baseUri);
+        List<String> key = List.of(instance, categoryId);
+        Entry entry = indexes.get(key);
+        if (entry != null && entry.isFresh()) {
+            logger.trace("Searching index of {} items, categoryId:{}, baseUrl:{}", entry.index.size(), categoryId, instance);
+            return Optional.of(entry.index.search(text, Integer.parseInt(limit), Integer.parseInt(offset)));
+        }
+
+        build(key, auth).subscribe();
+        return Optional.empty();
+    }
+
+    /**
+     * Rebuilds the indexes of the prefetched instances well before they get stale.
+     */
+    @Scheduled(
+            initialDelayString = "#{${snow.item-index.max-age-seconds:900} * 500}",
+            fixedDelayString = "#{${snow.item-index.max-age-seconds:900} * 500}"
+    )
+    public void refreshPrefetched() {
+        if (!enabled) {
+            return;
+        }
+
+        Map<String, String> credentials = catalogCacheProperties.getPrefetch().stream()
+                .collect(Collectors.toMap(
+                        tenant -> CatalogIdCache.instance(URI.create(tenant.getBaseUrl())),
+                        CatalogCacheProperties.Tenant::getAuthorization,
+                        (first, second) -> first
+                ));
+
+        Flux.fromIterable(new ArrayList<>(indexes.keySet()))
+                .filter(key -> credentials.containsKey(key.get(0)))
+                .flatMap(key -> build(key, credentials.get(key.get(0))))
+                .then()
+                .block();
+    }
+
+    // Builds one index at a time per category; failures leave the previous index in place
+    private Mono<Void> build(List<String> key, String auth) {
+        if (!building.add(key)) {
+            return Mono.empty();
+        }
+
+        return Mono.defer(() -> readPage(key, auth, 0)
+                .expand(page -> page.items.size() < pageSize || page.offset + pageSize >= maxItems
+                        ? Mono.empty()
+                        : readPage(key, auth, page.offset + pageSize))
+                .concatMapIterable(page -> page.items)
+                .take(maxItems)
+                .collectList()
+                .doOnNext(items -> {
+                    logger.debug("Indexed {} items, categoryId:{}, baseUrl:{}", items.size(), key.get(1), key.get(0));
+                    indexes.put(key, new Entry(CatalogItemIndex.build(items)));
+                })
+                .onErrorResume(e -> {
+                    logger.warn("Failed to index items, categoryId:{}, baseUrl:{}: {}", key.get(1), key.get(0), e.toString());
+                    return Mono.empty();
+                })
+                .doFinally(signal -> building.remove(key))
+                .then());
+    }
+
+    private Mono<Page> readPage(List<String> key, String auth, int offset) {
+        URI uri = UriComponentsBuilder.fromUriString(key.get(0))
+                .path(SNOW_ITEMS_ENDPOINT)
+                .queryParam("sysparm_category", key.get(1))
+                .queryParam("sysparm_limit", pageSize)
+                .queryParam("sysparm_offset", offset)
+                .encode()
+                .build()
+                .toUri();
+
+        return rest.get()
+                .uri(uri)
+                .header(AUTHORIZATION, auth)
+                .retrieve()
+                .bodyToMono(CatalogItemResults.class)
+                .map(results -> new Page(offset, results.getResult() == null ? List.of() : results.getResult()));
+    }
+
+    private static final class Page {
+
+        private final int offset;
+        private final List<CatalogItem> items;
+
+        Page(int offset, List<CatalogItem> items) {
+            this.offset = offset;
+            this.items = items;
+        }
+    }
+
+    private final class Entry {
+
+        private final CatalogItemIndex index;
+        private final long builtAt = System.nanoTime();
+
+        Entry(CatalogItemIndex index) {
+            this.index = index;
+        }
+
+        boolean isFresh() {
+            return System.nanoTime() - builtAt < maxAge.toNanos();
+        }
+    }
+}
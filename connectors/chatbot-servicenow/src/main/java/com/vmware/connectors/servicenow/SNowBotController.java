@@ -58,10 +58,6 @@ public class SNowBotController {
     private static final String ROUTING_PREFIX = "x-routing-prefix";
     private static final String ROUTING_PREFIX_TEMPLATE = "X-Routing-Template";
 
-    private static final String SNOW_CATALOG_ENDPOINT = "/api/sn_sc/servicecatalog/catalogs";
-
-    private static final String SNOW_CATALOG_CATEGORY_ENDPOINT = "/api/sn_sc/servicecatalog/catalogs/{catalog_id}";
-
     private static final String SNOW_ADD_TO_CART_ENDPOINT = "/api/sn_sc/servicecatalog/items/{item_id}/add_to_cart";
 
     private static final String SNOW_CHECKOUT_ENDPOINT = "/api/sn_sc/servicecatalog/cart/checkout";
@@ -70,6 +66,8 @@ public class SNowBotController {
 
     private static final String SNOW_DELETE_CART_ENDPOINT = "/api/sn_sc/servicecatalog/cart/{cart_id}/empty";
 
+    private static final String SNOW_CART_ENDPOINT = "/api/sn_sc/servicecatalog/cart";
+
     private static final String SNOW_DELETE_TASK_ENDPOINT = "/api/now/table/task/{task_id}";
 
 
@@ -116,14 +114,26 @@ public class SNowBotController {
 
     private final WebClient rest;
     private final BotTextAccessor botTextAccessor;
+    private final CatalogIdCache catalogIdCache;
+    private final CatalogItemIndexes catalogItemIndexes;
+    private final BatchRequests batchRequests;
+    private final UserStateCache userStateCache;
 
     @Autowired
     public SNowBotController(
             WebClient rest,
-            BotTextAccessor botTextAccessor
+            BotTextAccessor botTextAccessor,
+            CatalogIdCache catalogIdCache,
+            CatalogItemIndexes catalogItemIndexes,
+            BatchRequests batchRequests,
+            UserStateCache userStateCache
     ) {
         this.rest = rest;
         this.botTextAccessor = botTextAccessor;
+        this.catalogIdCache = catalogIdCache;
+        this.catalogItemIndexes = catalogItemIndexes;
+        this.batchRequests = batchRequests;
+        this.userStateCache = userStateCache;
     }
 
     @PostMapping(
@@ -148,61 +158,16 @@ public class SNowBotController {
 
         logger.trace("getItems for catalog: {}, category: {}, searchText: {}", catalogName, categoryName, searchText);
         URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
-        return getCatalogId(catalogName, auth, baseUri)
-                .flatMap(catalogId -> getCategoryId(categoryName, catalogId, auth, baseUri))
-                .flatMap(categoryId -> getItems(searchText, categoryId,
-                        auth, baseUri,
-                        limit, offset))
+        return catalogIdCache.getCatalogId(catalogName, auth, baseUri)
+                .flatMap(catalogId -> catalogIdCache.getCategoryId(categoryName, catalogId, auth, baseUri))
+                .flatMap(categoryId -> catalogItemIndexes.search(baseUri, categoryId, auth, searchText, limit, offset)
+                        .map(Mono::just)
+                        .orElseGet(() -> getItems(searchText, categoryId,
+                                auth, baseUri,
+                                limit, offset)))
                 .map(itemList -> toCatalogBotObj(baseUrl, itemList, routingPrefix, contextId, locale));
     }
 
-    private Mono<String> getCatalogId(String catalogTitle, String auth, URI baseUri) {
-        return rest.get()
-                .uri(uriBuilder -> uriBuilder
-                        .scheme(baseUri.getScheme())
-                        .host(baseUri.getHost())
-                        .port(baseUri.getPort())
-                        .path(SNOW_CATALOG_ENDPOINT)
-                        .build())
-                .header(AUTHORIZATION, auth)
-                .retrieve()
-                .bodyToMono(JsonDocument.class)
-                .flatMap(doc -> {
-                    List<String> sysIds = doc.read(String.format("$.result[?(@.title=~/.*%s/i)].sys_id", catalogTitle));
-                    if (sysIds != null && sysIds.size() == 1) {
-                        return Mono.just(sysIds.get(0));
-                    }
-
-                    logger.debug("Couldn't find the sys_id for title:{}, endpoint:{}, baseUrl:{}",
-                            catalogTitle, SNOW_CATALOG_ENDPOINT, baseUri);
-                    return Mono.error(new CatalogReadException("Can't find " + catalogTitle));
-                });
-    }
-
-    private Mono<String> getCategoryId(String categoryTitle, String catalogId, String auth, URI baseUri) {
-        return rest.get()
-                .uri(uriBuilder -> uriBuilder
-                        .scheme(baseUri.getScheme())
-                        .host(baseUri.getHost())
-                        .port(baseUri.getPort())
-                        .path(SNOW_CATALOG_CATEGORY_ENDPOINT)
-                        .build(Map.of("catalog_id", catalogId))
-                )
-                .header(AUTHORIZATION, auth)
-                .retrieve()
-                .bodyToMono(JsonDocument.class)
-                .flatMap(doc -> {
-                    List<String> sysIds = doc.read(String.format("$.result.categories[?(@.title=~/.*%s/i)].sys_id", categoryTitle));
-                    if (sysIds != null && sysIds.size() == 1) {
-                        return Mono.just(sysIds.get(0));
-                    }
-
-                    logger.debug("Couldn't find the sys_id for title:{}, endpoint:{}, category_id:{}, baseUrl:{}",
-                            categoryTitle, SNOW_CATALOG_CATEGORY_ENDPOINT, catalogId, baseUri);
-                    return Mono.error(new CatalogReadException("Can't find " + categoryTitle));
-                });
-    }
-
     // ToDo: If it can filter, don't ask much from SNow. Go only with those needed for chatbot.
     private Mono<List<CatalogItem>> getItems(String searchText, String categoryId, String auth, URI baseUri,
                                              String limit, String offset) {
@@ -275,6 +240,7 @@ public class SNowBotController {
                 )
                 .header(AUTHORIZATION, auth)
                 .exchange()
+                .transform(delete -> invalidatingAfter(delete, () -> userStateCache.invalidateTickets(baseUri, auth)))
                 .flatMap(this::toDeleteItemResponse);
     }
 
@@ -307,16 +273,18 @@ public class SNowBotController {
         logger.trace("getTasks for type={}, baseUrl={}, userEmail={}, ticketsLimit={}, routingTemplate={}",
                 taskType, baseUrl, userEmail, ticketsLimit, routingPrefixTemplate);
 
-        URI taskUri;
+        Mono<List<Task>> tasks;
         if (StringUtils.isBlank(taskNumber)) {
-            taskUri = buildTaskUriReadUserTickets(taskType, userEmail, baseUrl, ticketsLimit);
+            URI taskUri = buildTaskUriReadUserTickets(taskType, userEmail, baseUrl, ticketsLimit);
+            URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
+            tasks = userStateCache.tickets(baseUri, auth, userEmail, () -> retrieveTasks(taskUri, auth));
         } else {
-            taskUri = buildTaskUriReadByNumber(taskType, taskNumber, baseUrl);
+            tasks = retrieveTasks(buildTaskUriReadByNumber(taskType, taskNumber, baseUrl), auth);
         }
 
         String routingPrefix = routingPrefixTemplate.replace(INSERT_OBJECT_TYPE, OBJECT_TYPE_BOT_DISCOVERY);
 
-        return retrieveTasks(taskUri, auth)
+        return tasks
                 .map(taskList -> toTaskBotObj(taskList, routingPrefix, baseUrl, "status", locale));
     }
 
@@ -402,7 +370,8 @@ public class SNowBotController {
 
         String contextId = cardRequest.getTokenSingleValue(CONTEXT_ID);
 
-        return retrieveUserCart(baseUrl, auth)
+        URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
+        return userStateCache.cart(baseUri, auth, () -> retrieveUserCart(baseUrl, auth))
                 .map(cartDocument -> toCartBotObj(baseUrl, cartDocument, routingPrefix, contextId, locale));
     }
 
@@ -414,7 +383,7 @@ public class SNowBotController {
                         .scheme(baseUri.getScheme())
                         .host(baseUri.getHost())
                         .port(baseUri.getPort())
-                        .path("/api/sn_sc/servicecatalog/cart")
+                        .path(SNOW_CART_ENDPOINT)
                         .build()
                 )
                 .header(AUTHORIZATION, auth)
@@ -683,12 +652,12 @@ public class SNowBotController {
 
         URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
         return this.createTask(taskType, shortDescription, userEmail, baseUri, auth)
-                .map(taskNumber -> buildTaskUriReadByNumber(taskType, taskNumber, baseUrl))
-                .flatMap(readTaskUri -> retrieveTasks(readTaskUri, auth))
-                .map(retrieved -> toTaskBotObj(retrieved, routingPrefix, baseUrl, "confirmation", locale));
+                .transform(create -> invalidatingAfter(create, () -> userStateCache.invalidateTickets(baseUri, auth)))
+                .map(created -> toTaskBotObj(List.of(created), routingPrefix, baseUrl, "confirmation", locale));
     }
 
-    private Mono<String> createTask(String taskType, String shortDescription, String callerEmailId,
+    // The inserted record comes back with display values, just as reading it by number would have returned it
+    private Mono<Task> createTask(String taskType, String shortDescription, String callerEmailId,
                                     URI baseUri, String auth) {
         return rest.post()
                 .uri(uriBuilder -> uriBuilder
@@ -697,6 +666,7 @@ public class SNowBotController {
                         .port(baseUri.getPort())
                         .path("/api/now/table/")
                         .path(taskType)
+                        .queryParam("sysparm_display_value", true)
                         .build()
                 )
                 .header(AUTHORIZATION, auth)
@@ -706,7 +676,7 @@ public class SNowBotController {
                         "caller_id", callerEmailId))
                 .retrieve()
                 .bodyToMono(JsonDocument.class)
-                .map(doc -> doc.read("$.result.number"));
+                .map(doc -> doc.project("$.result", Task.class));
     }
 
     @PutMapping(
@@ -729,7 +699,8 @@ public class SNowBotController {
         String routingPrefix = routingPrefixTemplate.replace(INSERT_OBJECT_TYPE, OBJECT_TYPE_CART);
 
         URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
-        return rest.post()
+        Map<String, Object> body = Map.of(SNOW_SYS_PARAM_QUAN, itemCount);
+        Mono<Void> serialAdd = rest.post()
                 .uri(uriBuilder -> uriBuilder
                         .scheme(baseUri.getScheme())
                         .host(baseUri.getHost())
@@ -738,10 +709,17 @@ public class SNowBotController {
                         .build(Map.of("item_id", itemId))
                 )
                 .header(AUTHORIZATION, auth)
-                .syncBody(Map.of(SNOW_SYS_PARAM_QUAN, itemCount))
+                .syncBody(body)
                 .retrieve()
-                .bodyToMono(Void.class)
-                .then(this.lookupCart(auth, baseUrl, routingPrefix, locale, new CardRequest(null, null)));
+                .bodyToMono(Void.class);
+
+        BatchRequests.Request add = new BatchRequests.Request(HttpMethod.POST, UriComponentsBuilder.fromPath(SNOW_ADD_TO_CART_ENDPOINT)
+                .buildAndExpand(Map.of("item_id", itemId))
+                .encode()
+                .toUriString(), body);
+
+        return changeCartThenRead(baseUrl, auth, add, serialAdd, true)
+                .map(cartDocument -> toCartBotObj(baseUrl, cartDocument, routingPrefix, null, locale));
     }
 
     @DeleteMapping(
@@ -753,13 +731,45 @@ public class SNowBotController {
             @RequestHeader(BASE_URL_HEADER) String baseUrl) {
         logger.trace("emptyCart baseUrl={}", baseUrl);
 
-        return retrieveUserCart(baseUrl, auth)
+        URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
+        return userStateCache.cart(baseUri, auth, () -> retrieveUserCart(baseUrl, auth))
                 .map(cartDocument -> cartDocument.read("$.result.cart_id"))
-                .flatMap(cartId -> deleteCart(baseUrl, auth, (String) cartId))
+                .flatMap(cartId -> invalidatingAfter(deleteCart(baseUrl, auth, (String) cartId),
+                        () -> userStateCache.invalidateCart(baseUri, auth)))
                 .flatMap(this::toDeleteItemResponse);
 
     }
 
+    // Makes the change and reads the cart back in one batch when the instance takes batches, one after the other otherwise
+    private Mono<JsonDocument> changeCartThenRead(String baseUrl, String auth, BatchRequests.Request change,
+                                                  Mono<?> serialChange, boolean failOnError) {
+        URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
+        Mono<JsonDocument> serial = serialChange.then(retrieveUserCart(baseUrl, auth));
+
+        return batchRequests.send(baseUri, auth, List.of(change, new BatchRequests.Request(HttpMethod.GET, SNOW_CART_ENDPOINT, null)))
+                .flatMap(responses -> {
+                    if (responses.isEmpty()) {
+                        // ServiceNow didn't get to the change
+                        return serial;
+                    }
+                    if (failOnError) {
+                        responses.get(0).checkStatus();
+                    }
+                    return responses.size() > 1 ? Mono.just(responses.get(1).toJson()) : retrieveUserCart(baseUrl, auth);
+                })
+                .switchIfEmpty(serial)
+                .doOnNext(cart -> userStateCache.putCart(baseUri, auth, cart))
+                .doOnError(e -> userStateCache.invalidateCart(baseUri, auth));
+    }
+
+    // Drops the cached state before the result of the change goes downstream, where it may be read again
+    private static <T> Mono<T> invalidatingAfter(Mono<T> change, Runnable invalidate) {
+        return change
+                .doOnSuccess(result -> invalidate.run())
+                .doOnError(e -> invalidate.run())
+                .doOnCancel(invalidate);
+    }
+
     private Mono<ClientResponse> deleteCart(String baseUrl, String auth, String cartId) {
         URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
 
@@ -790,7 +800,7 @@ public class SNowBotController {
 
         String routingPrefix = routingPrefixTemplate.replace(INSERT_OBJECT_TYPE, OBJECT_TYPE_CART);
         URI baseUri = UriComponentsBuilder.fromUriString(baseUrl).build().toUri();
-        return rest.delete()
+        Mono<ClientResponse> serialDelete = rest.delete()
                 .uri(uriBuilder -> uriBuilder
                         .scheme(baseUri.getScheme())
                         .host(baseUri.getHost())
@@ -799,8 +809,16 @@ public class SNowBotController {
                         .build(Map.of("cart_item_id", cartItemId))
                 )
                 .header(AUTHORIZATION, auth)
-                .exchange()
-                .then(this.lookupCart(auth, baseUrl, routingPrefix, locale, new CardRequest(null, null)));
+                .exchange();
+
+        BatchRequests.Request delete = new BatchRequests.Request(HttpMethod.DELETE, UriComponentsBuilder.fromPath(SNOW_DELETE_FROM_CART_ENDPOINT)
+                .buildAndExpand(Map.of("cart_item_id", cartItemId))
+                .encode()
+                .toUriString(), null);
+
+        // As before, the cart is shown whether or not the item could be removed
+        return changeCartThenRead(baseUrl, auth, delete, serialDelete, false)
+                .map(cartDocument -> toCartBotObj(baseUrl, cartDocument, routingPrefix, null, locale));
     }
 
     private Mono<ResponseEntity<Map<String, Object>>> toDeleteItemResponse(ClientResponse sNowResponse) {
@@ -847,6 +865,10 @@ public class SNowBotController {
                 .header(AUTHORIZATION, auth)
                 .retrieve()
                 .bodyToMono(JsonDocument.class)
+                .transform(checkout -> invalidatingAfter(checkout, () -> {
+                    userStateCache.invalidateCart(baseUri, auth);
+                    userStateCache.invalidateTickets(baseUri, auth);
+                }))
                 .map(doc -> doc.<String>read("$.result.request_number"))
                 .doOnSuccess(no -> logger.debug("Ticket created {}", no))
                 .map(ViewTaskForm::new)
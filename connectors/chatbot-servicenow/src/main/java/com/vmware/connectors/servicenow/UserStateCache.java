@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vmware.connectors.common.json.JsonDocument;
+import com.vmware.connectors.servicenow.domain.snow.Task;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers, for a short while, each user's open tickets and cart, so that asking for
+ * them again in the same conversation doesn't go back to ServiceNow.
+ * <p>
+ * State is scoped to the instance and to a SHA-256 of the credential it was read with;
+ * tickets are also scoped to the email they were looked up for. The connector's own
+ * actions keep it current: a cart that was read back after a change replaces the cached
+ * one, and the other changes drop what they make stale. Changes made elsewhere show up
+ * once the TTL runs out. The cache is disabled when the TTL is zero.
+ */
+@Component
+class UserStateCache {
+
+    // Keys are [instance, credential hash, user email]
+    private final Cache<List<String>, List<Task>> ticketsByUser;
+
+    // Keys are [instance, credential hash]
+    private final Cache<List<String>, JsonDocument> cartsByUser;
+
+    @Autowired
+    UserStateCache(
+            @Value("${snow.user-state-cache.ttl-seconds:30}") long ttlSeconds,
+            @Value("${snow.user-state-cache.max-entries:10000}") long maxEntries
+    ) {
+        this.ticketsByUser = buildCache(ttlSeconds, maxEntries);
+        this.cartsByUser = buildCache(ttlSeconds, maxEntries);
+    }
+
+    private static <K, V> Cache<K, V> buildCache(long ttlSeconds, long maxEntries) {
+        if (ttlSeconds <= 0) {
+            return null;
+        }
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    /**
+     * @param lookup reads the user's open tickets
+     */
+    Mono<List<Task>> tickets(URI baseUri, String auth, String userEmail, Supplier<Mono<List<Task>>> lookup) {
+        return get(ticketsByUser, List.of(CatalogIdCache.instance(baseUri), hash(auth), userEmail.toLowerCase(Locale.ROOT)),
+                () -> lookup.get().map(List::copyOf));
+    }
+
+    /**
+     * @param lookup reads the user's cart
+     */
+    Mono<JsonDocument> cart(URI baseUri, String auth, Supplier<Mono<JsonDocument>> lookup) {
+        return get(cartsByUser, List.of(CatalogIdCache.instance(baseUri), hash(auth)), lookup);
+    }
+
+    /**
+     * Replaces the cached cart with one that was just read.
+     */
+    void putCart(URI baseUri, String auth, JsonDocument cart) {
+        if (cartsByUser != null) {
+            cartsByUser.put(List.of(CatalogIdCache.instance(baseUri), hash(auth)), cart);
+        }
+    }
+
+    void invalidateCart(URI baseUri, String auth) {
+        if (cartsByUser != null) {
+            cartsByUser.invalidate(List.of(CatalogIdCache.instance(baseUri), hash(auth)));
+        }
+    }
+
+    /**
+     * Drops the tickets read with the credential, whichever email they were looked up for.
+     */
+    void invalidateTickets(URI baseUri, String auth) {
+        if (ticketsByUser != null) {
+            List<String> scope = List.of(CatalogIdCache.instance(baseUri), hash(auth));
+            ticketsByUser.asMap().keySet().removeIf(key -> key.subList(0, 2).equals(scope));
+        }
+    }
+
+    private static <T> Mono<T> get(Cache<List<String>, T> cache, List<String> key, Supplier<Mono<T>> lookup) {
+        if (cache == null) {
+            return lookup.get();
+        }
+
+        return Mono.defer(() -> {
+            T cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return lookup.get()
+                    .doOnNext(result -> cache.put(key, result));
+        });
+    }
+
+    private static String hash(String auth) {
+        return DigestUtils.sha256Hex(StringUtils.defaultString(auth));
+    }
+}
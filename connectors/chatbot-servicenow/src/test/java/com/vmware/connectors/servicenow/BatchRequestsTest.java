@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import com.vmware.connectors.test.ControllerTestsBase;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpMethod.DELETE;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.HttpMethod.POST;
+import static org.springframework.http.HttpMethod.PUT;
+import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.NO_CONTENT;
+import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.client.ExpectedCount.twice;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+@TestPropertySource(properties = "snow.batch-requests=true")
+class BatchRequestsTest extends ControllerTestsBase {
+
+    private static final String SNOW_AUTH_TOKEN = "test-GOOD-auth-token";
+
+    private static final String MAC_ITEM_ID = "2ab7077237153000158bbfc8bcbe5da9";
+    private static final String MOUSE_CART_ITEM_ID = "88faa613db113300ea92eb41ca961950";
+
+    @Test
+    void testAddToCartInOneBatch() throws IOException {
+        mockBackend.expect(requestTo("/api/now/v1/batch"))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(POST))
+                .andExpect(jsonPath("$.rest_requests[0].method").value("POST"))
+                .andExpect(jsonPath("$.rest_requests[0].url").value("/api/sn_sc/servicecatalog/items/" + MAC_ITEM_ID + "/add_to_cart"))
+                .andExpect(jsonPath("$.rest_requests[0].body").value(base64("{\"sysparm_quantity\":1}")))
+                .andExpect(jsonPath("$.rest_requests[1].method").value("GET"))
+                .andExpect(jsonPath("$.rest_requests[1].url").value("/api/sn_sc/servicecatalog/cart"))
+                .andRespond(withSuccess(batchResponse(
+                        serviced("0", 200, fromFile("/botflows/servicenow/response/add_mac_to_cart.json")),
+                        serviced("1", 200, fromFile("/botflows/servicenow/response/cart.json"))
+                ), APPLICATION_JSON));
+
+        MultiValueMap<String, String> actionFormData = new LinkedMultiValueMap<>();
+        actionFormData.set("itemId", MAC_ITEM_ID);
+        actionFormData.set("itemCount", "1");
+
+        performAction(PUT, "/api/v1/cart", actionFormData)
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.objects[0].workflowId").isEqualTo("ViewCart")
+                .jsonPath("$.objects[0].children").isNotEmpty();
+    }
+
+    @Test
+    void testFailedChangeFailsTheBatch() throws IOException {
+        mockBackend.expect(requestTo("/api/now/v1/batch"))
+                .andExpect(method(POST))
+                .andRespond(withSuccess(batchResponse(
+                        serviced("0", 400, "{\"error\":{\"message\":\"Invalid quantity\"}}"),
+                        serviced("1", 200, fromFile("/botflows/servicenow/response/cart.json"))
+                ), APPLICATION_JSON));
+
+        MultiValueMap<String, String> actionFormData = new LinkedMultiValueMap<>();
+        actionFormData.set("itemId", MAC_ITEM_ID);
+        actionFormData.set("itemCount", "1");
+
+        performAction(PUT, "/api/v1/cart", actionFormData)
+                .expectStatus().is5xxServerError();
+    }
+
+    @Test
+    void testUnservicedReadIsMadeAlone() throws IOException {
+        mockBackend.expect(requestTo("/api/now/v1/batch"))
+                .andExpect(method(POST))
+                .andRespond(withSuccess(batchResponse(serviced("0", 204, "")), APPLICATION_JSON));
+
+        mockBackend.expect(requestTo("/api/sn_sc/servicecatalog/cart"))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/cart.json"), APPLICATION_JSON));
+
+        performAction(DELETE, "/api/v1/cart/" + MOUSE_CART_ITEM_ID, null)
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.objects[0].workflowId").isEqualTo("ViewCart");
+    }
+
+    @Test
+    void testFallsBackToSerialRequestsWithoutBatchApi() throws IOException {
+        // The batch API is only tried once per instance
+        mockBackend.expect(requestTo("/api/now/v1/batch"))
+                .andExpect(method(POST))
+                .andRespond(withStatus(NOT_FOUND));
+
+        mockBackend.expect(twice(), requestTo("/api/sn_sc/servicecatalog/cart/" + MOUSE_CART_ITEM_ID))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(DELETE))
+                .andRespond(withStatus(NO_CONTENT));
+
+        mockBackend.expect(twice(), requestTo("/api/sn_sc/servicecatalog/cart"))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/cart.json"), APPLICATION_JSON));
+
+        for (int i = 0; i < 2; i++) {
+            performAction(DELETE, "/api/v1/cart/" + MOUSE_CART_ITEM_ID, null)
+                    .expectStatus().is2xxSuccessful()
+                    .expectBody()
+                    .jsonPath("$.objects[0].workflowId").isEqualTo("ViewCart");
+        }
+    }
+
+    private static String batchResponse(String... serviced) {
+        return "{\"batch_request_id\":\"1\",\"serviced_requests\":[" + String.join(",", serviced) + "],\"unserviced_requests\":[]}";
+    }
+
+    private static String serviced(String id, int status, String body) {
+        return String.format("{\"id\":\"%s\",\"status_code\":%d,\"body\":\"%s\"}", id, status, base64(body));
+    }
+
+    private static String base64(String body) {
+        return Base64.getEncoder().encodeToString(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private WebTestClient.ResponseSpec performAction(HttpMethod method, String actionPath,
+                                                     MultiValueMap<String, String> formData) {
+        WebTestClient.RequestBodySpec requestSpec = webClient.method(method)
+                .uri(actionPath)
+                .accept(APPLICATION_JSON)
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header(X_AUTH_HEADER, "Bearer " + SNOW_AUTH_TOKEN)
+                .header("x-routing-template", "https://mf/connectors/abc123/INSERT_OBJECT_TYPE/")
+                .headers(headers -> headers(headers, actionPath));
+
+        if (formData != null) {
+            requestSpec.contentType(APPLICATION_FORM_URLENCODED)
+                    .syncBody(formData);
+        }
+
+        return requestSpec.exchange();
+    }
+}
@@ -38,6 +38,7 @@ import static org.springframework.http.HttpMethod.PUT;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
 import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.client.ExpectedCount.twice;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
@@ -92,7 +93,6 @@ class BotFlowTest extends ControllerTestsBase {
     }
 
     @Test
-    @Disabled
     void testCatalogItemsObject() throws Exception {
 
         // Find out the id of the requested Catalog.
@@ -135,7 +135,6 @@ class BotFlowTest extends ControllerTestsBase {
     }
 
     @Test
-    @Disabled
     void testCatalogItemsObjError() throws Exception {
 
         mockBackend.expect(requestTo("/api/sn_sc/servicecatalog/catalogs"))
@@ -155,6 +154,34 @@ class BotFlowTest extends ControllerTestsBase {
                 .expectStatus().isBadRequest();
     }
 
+    @Test
+    void testCatalogIdsAreCached() throws Exception {
+        // Catalog and category ids are looked up once.
+        mockBackend.expect(requestTo("/api/sn_sc/servicecatalog/catalogs"))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/catalogs.json"), APPLICATION_JSON));
+
+        String catalogId = "e0d08b13c3330100c8b837659bba8fb4";
+        mockBackend.expect(requestToUriTemplate("/api/sn_sc/servicecatalog/catalogs/{catalogId}", catalogId))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/service_catalog.json"), APPLICATION_JSON));
+
+        // Items are searched every time.
+        mockBackend.expect(twice(), requestToUriTemplate("/api/sn_sc/servicecatalog/items" +
+                        "?sysparm_text={searchText}" +
+                        "&sysparm_category={categoryId}" +
+                        "&sysparm_limit=10&sysparm_offset=0",
+                "laptop", "d258b953c611227a0146101fb1be7c31"))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/laptop_items.json"), APPLICATION_JSON));
+
+        for (int i = 0; i < 2; i++) {
+            requestObjects("/api/v1/catalog-items", SNOW_AUTH_TOKEN, "/botflows/connector/request/laptops.json",
+                    OBJ_TYPE_CATALOG_ITEM, null)
+                    .expectStatus().is2xxSuccessful();
+        }
+    }
+
     @Test
     void testViewMyTasksAction() throws Exception {
         String userEmailId = "admin@acme.com";
@@ -256,17 +283,13 @@ class BotFlowTest extends ControllerTestsBase {
     @Test
     void testCreateTaskAction() throws IOException {
         String taskType = "ticket";
-        mockBackend.expect(requestToUriTemplate("/api/now/table/{taskType}", taskType))
+        // The created task object comes from the response of the insert.
+        mockBackend.expect(requestToUriTemplate("/api/now/table/{taskType}?sysparm_display_value=true", taskType))
                 .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
                 .andExpect(method(POST))
                 .andExpect(content().json(fromFile("/botflows/servicenow/request/create_ticket.json")))
                 .andRespond(withSuccess(fromFile("/botflows/servicenow/response/create_ticket.json"), APPLICATION_JSON));
 
-        // For creating task object.
-        String taskNumber = "TKT0010006";
-
-        expectTaskReqByNumber(taskType, taskNumber, "/botflows/servicenow/response/ticket_mouse_not_working.json");
-
         MultiValueMap<String, String> actionFormData = new LinkedMultiValueMap<>();
         actionFormData.set("type", taskType);
         actionFormData.set("shortDescription", "My mouse is not working.");
@@ -0,0 +1,79 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import com.vmware.connectors.servicenow.domain.snow.CatalogItem;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+class CatalogItemIndexTest {
+
+    private final CatalogItemIndex index = CatalogItemIndex.build(List.of(
+            item("1", "Apple MacBook Pro 15\"", "Apple MacBook Pro"),
+            item("2", "Dell XPS 13", "Corporate standard laptop"),
+            item("3", "Développeur Laptop", "Lenovo ThinkPad"),
+            item("4", "Apple Watch", null)
+    ));
+
+    @Test
+    void testPrefixes() {
+        assertThat(ids(index.search("mac", 10, 0)), contains("1"));
+        assertThat(ids(index.search("LAP", 10, 0)), contains("2", "3"));
+        assertThat(ids(index.search("apple", 10, 0)), contains("1", "4"));
+    }
+
+    @Test
+    void testAllWordsMustMatch() {
+        assertThat(ids(index.search("apple pro", 10, 0)), contains("1"));
+        assertThat(index.search("apple laptop", 10, 0), is(empty()));
+    }
+
+    @Test
+    void testAccentsAndPunctuation() {
+        assertThat(ids(index.search("developpeur", 10, 0)), contains("3"));
+        assertThat(ids(index.search("lenovo,think", 10, 0)), contains("3"));
+        assertThat(ids(index.search("15\"", 10, 0)), contains("1"));
+    }
+
+    @Test
+    void testBlankMatchesAll() {
+        assertThat(ids(index.search("", 10, 0)), contains("1", "2", "3", "4"));
+        assertThat(ids(index.search(null, 10, 0)), contains("1", "2", "3", "4"));
+    }
+
+    @Test
+    void testLimitAndOffset() {
+        assertThat(ids(index.search("", 2, 0)), contains("1", "2"));
+        assertThat(ids(index.search("", 2, 2)), contains("3", "4"));
+        assertThat(index.search("", 2, 4), is(empty()));
+    }
+
+    @Test
+    void testDescriptionIsNotKept() {
+        assertThat(index.search("dell", 1, 0).get(0).getDescription(), is(nullValue()));
+    }
+
+    private static CatalogItem item(String id, String name, String shortDescription) {
+        CatalogItem item = new CatalogItem();
+        item.setId(id);
+        item.setName(name);
+        item.setShortDescription(shortDescription);
+        item.setDescription("<p>" + name + "</p>");
+        return item;
+    }
+
+    private static List<String> ids(List<CatalogItem> items) {
+        return items.stream().map(CatalogItem::getId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.servicenow;
+
+import com.vmware.connectors.test.ControllerTestsBase;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.io.IOException;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpMethod.DELETE;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.HttpMethod.POST;
+import static org.springframework.http.HttpStatus.NO_CONTENT;
+import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.ExpectedCount.twice;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class UserStateCacheTest extends ControllerTestsBase {
+
+    private static final String SNOW_AUTH_TOKEN = "test-GOOD-auth-token";
+
+    private static final String USER_TICKETS_URI = "/api/now/table/task?sysparm_display_value=true&sysparm_limit=5&sysparm_offset=0" +
+            "&opened_by.email=admin@acme.com&active=true&sysparm_query=ORDERBYDESCsys_created_on";
+
+    private static final String MOUSE_CART_ITEM_ID = "88faa613db113300ea92eb41ca961950";
+
+    @Test
+    void testOpenTicketsAreCached() throws IOException {
+        expectUserTickets(once());
+
+        for (int i = 0; i < 2; i++) {
+            viewMyTasks();
+        }
+    }
+
+    @Test
+    void testCreateTaskInvalidatesTickets() throws IOException {
+        expectUserTickets(twice());
+
+        mockBackend.expect(requestTo("/api/now/table/ticket?sysparm_display_value=true"))
+                .andExpect(method(POST))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/create_ticket.json"), APPLICATION_JSON));
+
+        viewMyTasks();
+
+        MultiValueMap<String, String> actionFormData = new LinkedMultiValueMap<>();
+        actionFormData.set("type", "ticket");
+        actionFormData.set("shortDescription", "My mouse is not working.");
+        performAction(POST, "/api/v1/task/create", actionFormData)
+                .expectStatus().is2xxSuccessful();
+
+        viewMyTasks();
+    }
+
+    @Test
+    void testCartIsReplacedAfterChange() throws IOException {
+        // Once for the first look, and once when the cart is read back after the change
+        mockBackend.expect(twice(), requestTo("/api/sn_sc/servicecatalog/cart"))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/cart.json"), APPLICATION_JSON));
+
+        mockBackend.expect(requestTo("/api/sn_sc/servicecatalog/cart/" + MOUSE_CART_ITEM_ID))
+                .andExpect(method(DELETE))
+                .andRespond(withStatus(NO_CONTENT));
+
+        lookupCart();
+
+        performAction(DELETE, "/api/v1/cart/" + MOUSE_CART_ITEM_ID, null)
+                .expectStatus().is2xxSuccessful();
+
+        lookupCart();
+    }
+
+    @Test
+    void testEmptyCartInvalidatesCart() throws IOException {
+        mockBackend.expect(twice(), requestTo("/api/sn_sc/servicecatalog/cart"))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/cart.json"), APPLICATION_JSON));
+
+        mockBackend.expect(requestTo("/api/sn_sc/servicecatalog/cart/6a27ad02db113300ea92eb41ca961933/empty"))
+                .andExpect(method(DELETE))
+                .andRespond(withStatus(NO_CONTENT));
+
+        // The cart is only read once for the look and the cart id
+        lookupCart();
+
+        performAction(DELETE, "/api/v1/cart", null)
+                .expectStatus().isNoContent();
+
+        lookupCart();
+    }
+
+    private void expectUserTickets(ExpectedCount count) throws IOException {
+        mockBackend.expect(count, requestTo(USER_TICKETS_URI))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/botflows/servicenow/response/task_ticket.json"), APPLICATION_JSON));
+    }
+
+    private void viewMyTasks() {
+        performAction(POST, "/api/v1/tasks", new LinkedMultiValueMap<>())
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.objects[0].itemDetails.workflowId").isEqualTo("vmw_GET_TICKET_STATUS");
+    }
+
+    private void lookupCart() throws IOException {
+        webClient.post()
+                .uri("/api/v1/cart")
+                .contentType(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header(X_AUTH_HEADER, "Bearer " + SNOW_AUTH_TOKEN)
+                .header("x-routing-prefix", "https://mf/connectors/abc123/cart/")
+                .headers(headers -> headers(headers, "/api/v1/cart"))
+                .syncBody(fromFile("/botflows/connector/request/cart.json"))
+                .exchange()
+                .expectStatus().is2xxSuccessful()
+                .expectBody()
+                .jsonPath("$.objects[0].workflowId").isEqualTo("ViewCart");
+    }
+
+    private WebTestClient.ResponseSpec performAction(HttpMethod method, String actionPath,
+                                                     MultiValueMap<String, String> formData) {
+        WebTestClient.RequestBodySpec requestSpec = webClient.method(method)
+                .uri(actionPath)
+                .accept(APPLICATION_JSON)
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header(X_AUTH_HEADER, "Bearer " + SNOW_AUTH_TOKEN)
+                .header("x-routing-template", "https://mf/connectors/abc123/INSERT_OBJECT_TYPE/")
+                .headers(headers -> headers(headers, actionPath));
+
+        if (formData != null) {
+            requestSpec.contentType(APPLICATION_FORM_URLENCODED)
+                    .syncBody(formData);
+        }
+
+        return requestSpec.exchange();
+    }
+}
@@ -61,8 +61,8 @@ public final class ConcurConstants {
         public final static String APPROVE = "Approve";
         public final static String REJECT = "Send Back to Employee";
 
-        public final static String ACTION_PLACEHOLDER = "${action}";
-        public final static String COMMENT_PLACEHOLDER = "${comment}";
+        public final static String ACTION_PLACEHOLDER = "action";
+        public final static String COMMENT_PLACEHOLDER = "comment";
 
         private ConcurRequestActions() {
         }
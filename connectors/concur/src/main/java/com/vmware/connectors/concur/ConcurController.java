@@ -5,13 +5,16 @@
 
 package com.vmware.connectors.concur;
 
+import com.vmware.connectors.common.cache.AccessToken;
+import com.vmware.connectors.common.cache.AccessTokenCache;
 import com.vmware.connectors.common.json.JsonDocument;
 import com.vmware.connectors.common.payloads.request.CardRequest;
 import com.vmware.connectors.common.payloads.response.*;
+import com.vmware.connectors.common.template.Escaper;
+import com.vmware.connectors.common.template.Template;
 import com.vmware.connectors.common.utils.CardTextAccessor;
 import com.vmware.connectors.common.utils.CommonUtils;
 import com.vmware.connectors.common.utils.Reactive;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,7 +33,6 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
-import org.springframework.web.util.HtmlUtils;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -60,7 +62,9 @@ public class ConcurController {
 
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
-    private final Resource concurrRequestTemplate;
+    private final CardHashMode cardHashMode;
+    private final Template concurRequestTemplate;
+    private final AccessTokenCache accessTokenCache;
 
     private final String clientId;
     private final String clientSecret;
@@ -78,16 +82,20 @@ public class ConcurController {
     @Autowired
     public ConcurController(WebClient rest,
                             CardTextAccessor cardTextAccessor,
+                            CardHashMode cardHashMode,
+                            AccessTokenCache accessTokenCache,
                             @Value("${concur.client-id}") final String clientId,
                             @Value("${concur.client-secret}") final String clientSecret,
                             @Value("${concur.oauth-instance-url}") final String oauthTokenUrl,
                             @Value("classpath:static/templates/concur-request-template.xml") Resource concurRequestTemplate) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
         this.clientId = clientId;
         this.clientSecret = clientSecret;
         this.oauthTokenUrl = oauthTokenUrl;
-        this.concurrRequestTemplate = concurRequestTemplate;
+        this.concurRequestTemplate = Template.load(concurRequestTemplate, Escaper.XML);
+        this.accessTokenCache = accessTokenCache;
     }
 
     @GetMapping("/test-auth")
@@ -152,13 +160,14 @@ public class ConcurController {
 
         final MultiValueMap<String, String> body = getBody(clientId, clientSecret, userName, password);
 
-        return rest.post()
-                .uri(UriComponentsBuilder.fromUriString(oauthTokenUrl).path("/oauth2/v0/token").toUriString())
-                .contentType(APPLICATION_FORM_URLENCODED)
-                .body(BodyInserters.fromFormData(body))
-                .retrieve()
-                .bodyToMono(JsonDocument.class)
-                .map(jsonDocument -> BEARER + jsonDocument.read("$.access_token"))
+        return accessTokenCache.getToken(String.join(":", oauthTokenUrl, clientId, clientSecret, authValue), () -> rest.post()
+                        .uri(UriComponentsBuilder.fromUriString(oauthTokenUrl).path("/oauth2/v0/token").toUriString())
+                        .contentType(APPLICATION_FORM_URLENCODED)
+                        .body(BodyInserters.fromFormData(body))
+                        .retrieve()
+                        .bodyToMono(JsonDocument.class)
+                        .map(AccessToken::fromOAuth2Response))
+                .map(accessToken -> BEARER + accessToken)
                 .onErrorMap(WebClientResponseException.class, e -> handleForbiddenError(e));
     }
 
@@ -227,7 +236,7 @@ public class ConcurController {
                                                  final String reason,
                                                  final String reportID,
                                                  final String authHeader,
-                                                 final String concurAction) throws IOException {
+                                                 final String concurAction) {
         // Replace the placeholder in concur request template with appropriate action and comment.
         final String concurRequestTemplate = getConcurRequestTemplate(reason, concurAction);
 
@@ -244,11 +253,11 @@ public class ConcurController {
     }
 
     private String getConcurRequestTemplate(final String reason,
-                                            final String concurAction) throws IOException {
-        String concurRequestTemplate = IOUtils.toString(this.concurrRequestTemplate.getInputStream(), StandardCharsets.UTF_8);
-        concurRequestTemplate = concurRequestTemplate.replace(ACTION_PLACEHOLDER, concurAction);
-        concurRequestTemplate = concurRequestTemplate.replace(COMMENT_PLACEHOLDER, HtmlUtils.htmlEscape(reason));
-        return concurRequestTemplate;
+                                            final String concurAction) {
+        return concurRequestTemplate.render(Map.of(
+                ACTION_PLACEHOLDER, concurAction,
+                COMMENT_PLACEHOLDER, reason
+        ));
     }
 
     private Mono<Card> getCardForExpenseReport(final String id,
@@ -294,7 +303,7 @@ public class ConcurController {
         final JsonDocument response = entity.getBody();
         final String approvalStatus = response.read("$.ApprovalStatusName");
 
-        final Card.Builder cardBuilder = new Card.Builder()
+        final Card.Builder cardBuilder = new Card.Builder(cardHashMode)
                 .setName("Concur")
                 .setTemplate(routingPrefix + "templates/generic.hbs")
                 .setHeader(cardTextAccessor.getMessage("concur.title", locale))
@@ -5,6 +5,7 @@
 
 package com.vmware.connectors.concur;
 
+import com.vmware.connectors.common.cache.AccessTokenCache;
 import com.vmware.connectors.mock.MockWebServerWrapper;
 import com.vmware.connectors.test.ControllerTestsBase;
 import com.vmware.connectors.test.JsonNormalizer;
@@ -14,6 +15,7 @@ import org.junit.jupiter.api.*;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
@@ -70,9 +72,13 @@ class ConcurControllerTest extends ControllerTestsBase {
         mockConcurServer = new MockWebServerWrapper(new MockWebServer());
     }
 
+    @Autowired
+    private AccessTokenCache accessTokenCache;
+
     @BeforeEach
     void resetConcurServer() {
         mockConcurServer.reset();
+        accessTokenCache.invalidateAll();
     }
 
     @AfterEach
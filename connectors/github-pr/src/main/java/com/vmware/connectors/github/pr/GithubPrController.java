@@ -7,6 +7,7 @@ package com.vmware.connectors.github.pr;
 
 import com.google.common.collect.ImmutableMap;
 import com.jayway.jsonpath.Configuration;
+import com.vmware.connectors.common.cache.IdentityResolver;
 import com.vmware.connectors.common.json.JsonDocument;
 import com.vmware.connectors.common.payloads.request.CardRequest;
 import com.vmware.connectors.common.payloads.response.*;
@@ -57,14 +58,20 @@ public class GithubPrController {
 
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
+    private final CardHashMode cardHashMode;
+    private final IdentityResolver identityResolver;
 
     @Autowired
     public GithubPrController(
             WebClient rest,
-            CardTextAccessor cardTextAccessor
+            CardTextAccessor cardTextAccessor,
+            CardHashMode cardHashMode,
+            IdentityResolver identityResolver
     ) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
+        this.identityResolver = identityResolver;
     }
 
     @PostMapping(
@@ -119,13 +126,14 @@ public class GithubPrController {
             String baseUrl,
             String auth
     ) {
-        return rest.get()
+        // The credential alone says who the user is
+        return identityResolver.resolve("github", baseUrl, auth, null, () -> rest.get()
                 .uri(baseUrl + "/user")
                 .header(AUTHORIZATION, auth)
                 .retrieve()
                 .bodyToMono(String.class)
                 .map(s -> new JsonDocument(Configuration.defaultConfiguration().jsonProvider().parse(s)))
-                .map(doc -> doc.read("$.login"));
+                .map(doc -> doc.<String>read("$.login")));
     }
 
     private Flux<String> getAllOpenPrs(
@@ -225,7 +233,7 @@ public class GithubPrController {
         PullRequest pullRequest = info.getRight();
         boolean isOpen = OPEN_STATE.equalsIgnoreCase(pullRequest.getState());
 
-        Card.Builder card = new Card.Builder()
+        Card.Builder card = new Card.Builder(cardHashMode)
                 .setName("GithubPr") // TODO - remove this in APF-536
                 .setTemplate(routingPrefix + "templates/generic.hbs")
                 .setHeader(
@@ -63,16 +63,19 @@ public class GitlabPrController {
     private final boolean isEnterpriseEdition;
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
+    private final CardHashMode cardHashMode;
 
     @Autowired
     public GitlabPrController(
             @Value("${gitlab.connector.enterprise:false}") boolean isEnterpriseEdition,
             WebClient rest,
-            CardTextAccessor cardTextAccessor
+            CardTextAccessor cardTextAccessor,
+            CardHashMode cardHashMode
     ) {
         this.isEnterpriseEdition = isEnterpriseEdition;
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
     }
 
     @PostMapping(
@@ -210,7 +213,7 @@ public class GitlabPrController {
         MergeRequestId mergeRequestId = info.getLeft();
         MergeRequest mergeRequest = info.getRight();
 
-        Card.Builder card = new Card.Builder()
+        Card.Builder card = new Card.Builder(cardHashMode)
                 .setName("GitlabPr") // TODO - remove this in APF-536
                 .setTemplate(routingPrefix + "templates/generic.hbs")
                 .setHeader(
@@ -6,15 +6,22 @@
 package com.vmware.connectors.concur;
 
 import com.nimbusds.jose.util.StandardCharset;
+import com.vmware.connectors.common.cache.AccessToken;
+import com.vmware.connectors.common.cache.AccessTokenCache;
+import com.vmware.connectors.common.cache.AttachmentCache;
+import com.vmware.connectors.common.cache.CardResponseCache;
+import com.vmware.connectors.common.cache.IdentityResolver;
 import com.vmware.connectors.common.json.JsonDocument;
+import com.vmware.connectors.common.template.Escaper;
+import com.vmware.connectors.common.template.Template;
 import com.vmware.connectors.common.payloads.response.*;
 import com.vmware.connectors.common.utils.AuthUtil;
+import com.vmware.connectors.common.utils.CapabilityTokens;
 import com.vmware.connectors.common.utils.CardTextAccessor;
 import com.vmware.connectors.concur.domain.*;
 import com.vmware.connectors.concur.exception.AttachmentURLNotFoundException;
 import com.vmware.connectors.concur.exception.InvalidServiceAccountCredentialException;
 import com.vmware.connectors.concur.exception.UserNotFoundException;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,16 +42,16 @@ import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
-import org.springframework.web.util.HtmlUtils;
+import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.net.URI;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -68,6 +75,7 @@ public class HubConcurController {
 
     private static final String APPROVE = "APPROVE";
     private static final String REJECT = "Send Back to Employee";
+    private static final String ATTACHMENT = "attachment";
 
     private static final String CONNECTOR_AUTH = "X-Connector-Authorization";
 
@@ -82,23 +90,54 @@ public class HubConcurController {
 
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
-    private final Resource concurRequestTemplate;
+    private final CardHashMode cardHashMode;
+    private final Template concurRequestTemplate;
     private final String serviceAccountAuthHeader;
     private final String oauthTokenUrl;
+    private final CardResponseCache cardResponseCache;
+    private final AccessTokenCache accessTokenCache;
+    private final IdentityResolver identityResolver;
+    private final AttachmentCache attachmentCache;
+    private final CapabilityTokens capabilityTokens;
+    private final int approvalPageSize;
+    private final int approvalPagePrefetch;
+    private final int maxApprovalResults;
+    private final int reportConcurrency;
 
     @Autowired
+    @SuppressWarnings("PMD.ExcessiveParameterList")
     public HubConcurController(
             WebClient rest,
             CardTextAccessor cardTextAccessor,
+            CardHashMode cardHashMode,
+            CardResponseCache cardResponseCache,
+            AccessTokenCache accessTokenCache,
+            IdentityResolver identityResolver,
+            AttachmentCache attachmentCache,
+            CapabilityTokens capabilityTokens,
             @Value("classpath:static/templates/concur-request-template.xml") Resource concurRequestTemplate,
             @Value("${concur.service-account-auth-header:}") String serviceAccountAuthHeader,
-            @Value("${concur.oauth-instance-url}") String oauthTokenUrl
+            @Value("${concur.oauth-instance-url}") String oauthTokenUrl,
+            @Value("${concur.approvals.page-size:50}") int approvalPageSize,
+            @Value("${concur.approvals.page-prefetch:1}") int approvalPagePrefetch,
+            @Value("${concur.approvals.max-results:500}") int maxApprovalResults,
+            @Value("${concur.reports.concurrency:4}") int reportConcurrency
     ) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
-        this.concurRequestTemplate = concurRequestTemplate;
+        this.cardHashMode = cardHashMode;
+        this.concurRequestTemplate = Template.load(concurRequestTemplate, Escaper.XML);
         this.serviceAccountAuthHeader = serviceAccountAuthHeader;
         this.oauthTokenUrl = oauthTokenUrl;
+        this.cardResponseCache = cardResponseCache;
+        this.accessTokenCache = accessTokenCache;
+        this.identityResolver = identityResolver;
+        this.attachmentCache = attachmentCache;
+        this.capabilityTokens = capabilityTokens;
+        this.approvalPageSize = approvalPageSize;
+        this.approvalPagePrefetch = approvalPagePrefetch;
+        this.maxApprovalResults = maxApprovalResults;
+        this.reportConcurrency = reportConcurrency;
     }
 
     @PostMapping(
@@ -120,9 +159,10 @@ public class HubConcurController {
             return Mono.just(ResponseEntity.badRequest().build());
         }
 
-        return getAuthHeader(connectorAuth)
-                .flatMap(authHeader -> fetchCards(baseUrl, locale, routingPrefix, userEmail, authHeader)
-                        .map(ResponseEntity::ok));
+        return cardResponseCache.getCards(baseUrl, userEmail, Arrays.asList(locale, routingPrefix, connectorAuth),
+                () -> getAuthHeader(connectorAuth)
+                        .flatMap(authHeader -> fetchCards(baseUrl, locale, routingPrefix, userEmail, authHeader)))
+                .map(ResponseEntity::ok);
     }
 
     private Mono<String> getAuthHeader(final String auth) {
@@ -141,13 +181,14 @@ public class HubConcurController {
 
         final MultiValueMap<String, String> body = getBody(username, password, clientId, clientSecret);
 
-        return rest.post()
-                .uri(UriComponentsBuilder.fromUriString(oauthTokenUrl).path("/oauth2/v0/token").toUriString())
-                .header(ACCEPT, APPLICATION_JSON_VALUE)
-                .body(BodyInserters.fromFormData(body))
-                .retrieve()
-                .bodyToMono(JsonDocument.class)
-                .map(jsonDocument -> BEARER + jsonDocument.read("$.access_token"))
+        return accessTokenCache.getToken(oauthTokenUrl + ":" + connectorAuth, () -> rest.post()
+                        .uri(UriComponentsBuilder.fromUriString(oauthTokenUrl).path("/oauth2/v0/token").toUriString())
+                        .header(ACCEPT, APPLICATION_JSON_VALUE)
+                        .body(BodyInserters.fromFormData(body))
+                        .retrieve()
+                        .bodyToMono(JsonDocument.class)
+                        .map(AccessToken::fromOAuth2Response))
+                .map(accessToken -> BEARER + accessToken)
                 .onErrorMap(WebClientResponseException.class, e -> handleForbiddenException(e));
     }
 
@@ -215,12 +256,18 @@ public class HubConcurController {
     ) {
         logger.debug("fetchCards called: baseUrl={}, routingPrefix={}, userEmail={}", baseUrl, routingPrefix, userEmail);
 
+        /*
+         * Each card is built as soon as its report comes back, in whatever order they come
+         * back in. At most reportConcurrency reports are fetched at once, so that a user
+         * with a lot of approvals doesn't run into Concur's per-client throttling.
+         */
         return fetchLoginIdFromUserEmail(userEmail, baseUrl, connectorAuth)
                 .switchIfEmpty(Mono.error(new UserNotFoundException("User with email id " + userEmail + " is not found.")))
                 .flatMapMany(loginId -> fetchAllApprovals(baseUrl, loginId, connectorAuth))
-                .flatMap(expense -> fetchRequestData(baseUrl, expense.getId(), connectorAuth))
-                .map(report -> makeCards(baseUrl, routingPrefix, locale, report))
-                .reduce(new Cards(), this::addCard);
+                .flatMap(expense -> fetchRequestData(baseUrl, expense.getId(), connectorAuth), reportConcurrency)
+                .map(report -> makeCards(baseUrl, routingPrefix, locale, report, userEmail))
+                .collectList()
+                .map(this::toCards);
     }
 
     private Mono<String> fetchLoginIdFromUserEmail(
@@ -228,7 +275,7 @@ public class HubConcurController {
             String baseUrl,
             String connectorAuth
     ) {
-        return rest.get()
+        return identityResolver.resolve("concur", baseUrl, connectorAuth, userEmail, () -> rest.get()
                 .uri(baseUrl + "/api/v3.0/common/users?primaryEmail={userEmail}", userEmail)
                 .header(AUTHORIZATION, connectorAuth)
                 .accept(APPLICATION_JSON)
@@ -236,24 +283,68 @@ public class HubConcurController {
                 .bodyToMono(UserDetailsResponse.class)
                 .flatMapMany(userDetails -> Flux.fromIterable(userDetails.getItems()))
                 .next()
-                .map(UserDetailsVO::getLoginId);
+                .map(UserDetailsVO::getLoginId));
     }
 
+    /*
+     * Follows the NextPage links of the report digests. A page is only requested once the
+     * reports of the pages before it (but approvalPagePrefetch of them) have been handed
+     * out, and no more pages are requested once maxApprovalResults reports have been.
+     */
     private Flux<PendingApprovalsVO> fetchAllApprovals(
             String baseUrl,
             String userEmail,
             String connectorAuth
     ) {
-        int limit = 50;
         String userFilter = "all";
+        URI firstPage = UriComponentsBuilder.fromHttpUrl(baseUrl)
+                .path("/api/v3.0/expense/reportdigests")
+                .queryParam("approverLoginID", "{userEmail}")
+                .queryParam("limit", approvalPageSize)
+                .queryParam("user", userFilter)
+                .encode()
+                .buildAndExpand(userEmail)
+                .toUri();
+
+        return fetchApprovalPage(firstPage, connectorAuth)
+                .expand(page -> fetchNextApprovalPage(baseUrl, page, connectorAuth))
+                .flatMapIterable(PendingApprovalResponse::getPendingApprovals, approvalPagePrefetch)
+                .take(maxApprovalResults);
+    }
+
+    private Mono<PendingApprovalResponse> fetchNextApprovalPage(
+            String baseUrl,
+            PendingApprovalResponse page,
+            String connectorAuth
+    ) {
+        if (StringUtils.isBlank(page.getNextPage())) {
+            return Mono.empty();
+        }
+
+        URI nextPage = URI.create(page.getNextPage());
+        // The credential is only ever sent to the Concur instance the request is for
+        if (!isSameOrigin(URI.create(baseUrl), nextPage)) {
+            logger.warn("Not following a NextPage link to another host: baseUrl={}, nextPage={}", baseUrl, nextPage);
+            return Mono.empty();
+        }
+        return fetchApprovalPage(nextPage, connectorAuth);
+    }
+
+    private static boolean isSameOrigin(URI baseUrl, URI url) {
+        return StringUtils.equalsIgnoreCase(baseUrl.getScheme(), url.getScheme())
+                && StringUtils.equalsIgnoreCase(baseUrl.getHost(), url.getHost())
+                && baseUrl.getPort() == url.getPort();
+    }
+
+    private Mono<PendingApprovalResponse> fetchApprovalPage(URI page, String connectorAuth) {
+        logger.trace("fetchApprovalPage called: page={}", page);
+
         return rest.get()
-                .uri(baseUrl + "/api/v3.0/expense/reportdigests?approverLoginID={userEmail}&limit={limit}&user={userFilter}",
-                        userEmail, limit, userFilter)
+                .uri(page)
                 .header(AUTHORIZATION, connectorAuth)
                 .accept(APPLICATION_JSON)
                 .retrieve()
-                .bodyToMono(PendingApprovalResponse.class)
-                .flatMapMany(expenses -> Flux.fromIterable(expenses.getPendingApprovals()));
+                .bodyToMono(PendingApprovalResponse.class);
     }
 
     private Mono<ExpenseReportResponse> fetchRequestData(
@@ -275,14 +366,15 @@ public class HubConcurController {
             String baseUrl,
             String routingPrefix,
             Locale locale,
-            ExpenseReportResponse report
+            ExpenseReportResponse report,
+            String userEmail
     ) {
         String reportId = report.getReportID();
         String reportName = report.getReportName();
 
         logger.trace("makeCard called: routingPrefix={}, reportId={}, reportName={}", routingPrefix, reportId, reportName);
 
-        Card.Builder builder = new Card.Builder()
+        Card.Builder builder = new Card.Builder(cardHashMode)
                 .setName("Concur")
                 .setHeader(
                         new CardHeader(
@@ -297,12 +389,12 @@ public class HubConcurController {
                                 )
                         )
                 )
-                .setBody(buildCard(locale, report, routingPrefix))
+                .setBody(buildCard(locale, report, routingPrefix, baseUrl, userEmail))
                 .setBackendId(report.getReportID())
-                .addAction(makeAction(routingPrefix, locale, reportId,
-                        true, "hub.concur.approve", COMMENT_KEY, "hub.concur.approve.comment.label", "/approve"))
-                .addAction(makeAction(routingPrefix, locale, reportId,
-                        false, "hub.concur.decline", REASON_KEY, "hub.concur.decline.reason.label", "/decline"));
+                .addAction(makeAction(getActionUrl(routingPrefix, baseUrl, reportId, userEmail, "/approve", APPROVE), locale,
+                        true, "hub.concur.approve", COMMENT_KEY, "hub.concur.approve.comment.label"))
+                .addAction(makeAction(getActionUrl(routingPrefix, baseUrl, reportId, userEmail, "/decline", REJECT), locale,
+                        false, "hub.concur.decline", REASON_KEY, "hub.concur.decline.reason.label"));
 
         builder.setImageUrl("https://s3.amazonaws.com/vmw-mf-assets/connector-images/hub-concur.png");
 
@@ -311,7 +403,9 @@ public class HubConcurController {
 
     private CardBody buildCard(final Locale locale,
                                final ExpenseReportResponse report,
-                               final String routingPrefix) {
+                               final String routingPrefix,
+                               final String baseUrl,
+                               final String userEmail) {
         final CardBody.Builder cardBodyBuilder =  new CardBody.Builder()
                 .addField(makeGeneralField(locale, "hub.concur.report.name", report.getReportName()))
                 .addField(makeGeneralField(locale, "hub.concur.requester", report.getEmployeeName()))
@@ -323,7 +417,9 @@ public class HubConcurController {
 
             // Add expense report attachment URL.
             if (StringUtils.isNotBlank(report.getReportImageURL())) {
-                cardBodyBuilder.addField(buildAttachmentURL(routingPrefix, report.getReportID(), locale));
+                String attachmentUrl = capabilityTokens.sign(getAttachmentUrl(routingPrefix, report.getReportID()),
+                        userEmail, baseUrl, ATTACHMENT, report.getReportID());
+                cardBodyBuilder.addField(buildAttachmentURL(attachmentUrl, report.getReportID(), locale));
             }
         }
         return cardBodyBuilder.build();
@@ -407,15 +503,24 @@ public class HubConcurController {
         );
     }
 
-    private CardAction makeAction(
+    private String getActionUrl(
             String routingPrefix,
-            Locale locale,
+            String baseUrl,
             String reportId,
+            String userEmail,
+            String apiPath,
+            String action
+    ) {
+        return capabilityTokens.sign(routingPrefix + "api/expense/" + reportId + apiPath, userEmail, baseUrl, action, reportId);
+    }
+
+    private CardAction makeAction(
+            String url,
+            Locale locale,
             boolean primary,
             String buttonLabelKey,
             String textFieldId,
-            String textFieldLabelKey,
-            String apiPath
+            String textFieldLabelKey
     ) {
         return new CardAction.Builder()
                 .setActionKey(CardActionKey.USER_INPUT)
@@ -424,7 +529,7 @@ public class HubConcurController {
                 .setPrimary(primary)
                 .setMutuallyExclusiveSetId("approval-actions")
                 .setType(HttpMethod.POST)
-                .setUrl(routingPrefix + "api/expense/" + reportId + apiPath)
+                .setUrl(url)
                 .addUserInputField(
                         new CardActionInputField.Builder().setFormat("textarea")
                                 .setId(textFieldId)
@@ -434,7 +539,7 @@ public class HubConcurController {
                 .build();
     }
 
-    private CardBodyField buildAttachmentURL(final String routingPrefix,
+    private CardBodyField buildAttachmentURL(final String attachmentUrl,
                                              final String reportID,
                                              final Locale locale) {
         CardBodyField.Builder builder = new CardBodyField.Builder()
@@ -445,7 +550,7 @@ public class HubConcurController {
                         .setTitle(cardTextAccessor.getMessage("hub.concur.report.image.url", locale))
                         .setAttachmentMethod(HttpMethod.GET)
 
-                        .setAttachmentUrl(getAttachmentUrl(routingPrefix, reportID))
+                        .setAttachmentUrl(attachmentUrl)
                         .setType(CardBodyFieldType.ATTACHMENT_URL)
                         .setAttachmentContentType(APPLICATION_PDF_VALUE) // Concur always returns a PDF file. It consolidates all the attachments into a single PDF file.
                         .build());
@@ -462,11 +567,9 @@ public class HubConcurController {
                 ).toUriString();
     }
 
-    private Cards addCard(
-            Cards cards,
-            Card card
-    ) {
-        cards.getCards().add(card);
+    private Cards toCards(List<Card> cardList) {
+        Cards cards = new Cards();
+        cards.getCards().addAll(cardList);
         return cards;
     }
 
@@ -480,7 +583,8 @@ public class HubConcurController {
             @RequestHeader(X_BASE_URL_HEADER) String baseUrl,
             @RequestHeader(name = CONNECTOR_AUTH, required = false) String connectorAuth,
             @PathVariable("id") String id,
-            @Valid CommentForm form
+            @Valid CommentForm form,
+            @RequestParam(name = CapabilityTokens.PARAM, required = false) String capability
     ) {
         logger.debug("approveRequest called: baseUrl={},  id={}, comment={}", baseUrl, id, form.getComment());
 
@@ -490,8 +594,9 @@ public class HubConcurController {
 
         String userEmail = AuthUtil.extractUserEmail(authorization);
         return getAuthHeader(connectorAuth)
-                .flatMap(authHeader -> makeConcurRequest(form.getComment(), baseUrl, APPROVE, id, userEmail, authHeader)
-                        .map(ResponseEntity::ok));
+                .flatMap(authHeader -> makeConcurRequest(form.getComment(), baseUrl, APPROVE, id, userEmail, authHeader, capability)
+                        .map(ResponseEntity::ok))
+                .doOnSuccess(ignored -> cardResponseCache.invalidate(baseUrl, userEmail));
     }
 
     private Mono<String> makeConcurRequest(
@@ -500,13 +605,12 @@ public class HubConcurController {
             String action,
             String reportId,
             String userEmail,
-            String connectorAuth
+            String connectorAuth,
+            String capability
     ) {
         String concurRequestTemplate = getConcurRequestTemplate(reason, action);
 
-        return fetchLoginIdFromUserEmail(userEmail, baseUrl, connectorAuth)
-                .switchIfEmpty(Mono.error(new UserNotFoundException("User with email id " + userEmail + " is not found.")))
-                .flatMapMany(loginId -> validateUser(baseUrl, reportId, loginId, connectorAuth))
+        return validateOwnership(baseUrl, reportId, userEmail, connectorAuth, action, capability)
                 .flatMap(ignored -> fetchRequestData(baseUrl, reportId, connectorAuth))
                 .map(ExpenseReportResponse::getWorkflowActionURL)
                 .flatMap(
@@ -519,21 +623,35 @@ public class HubConcurController {
                                         .syncBody(concurRequestTemplate)
                                         .retrieve()
                                         .bodyToMono(String.class)
-                )
-                .next();
+                );
+    }
+
+    private Mono<?> validateOwnership(
+            String baseUrl,
+            String reportId,
+            String userEmail,
+            String connectorAuth,
+            String action,
+            String capability
+    ) {
+        // A token minted with the card already proves that the report is the user's
+        if (capabilityTokens.verify(capability, userEmail, baseUrl, action, reportId)) {
+            return Mono.just(reportId);
+        }
+
+        return fetchLoginIdFromUserEmail(userEmail, baseUrl, connectorAuth)
+                .switchIfEmpty(Mono.error(new UserNotFoundException("User with email id " + userEmail + " is not found.")))
+                .flatMap(loginId -> validateUser(baseUrl, reportId, loginId, connectorAuth));
     }
 
     private String getConcurRequestTemplate(
             String reason,
             String concurAction
     ) {
-        try {
-            return IOUtils.toString(concurRequestTemplate.getInputStream(), StandardCharsets.UTF_8)
-                    .replace("${action}", concurAction)
-                    .replace("${comment}", HtmlUtils.htmlEscape(reason));
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read in concur request template!", e); // NOPMD
-        }
+        return concurRequestTemplate.render(Map.of(
+                "action", concurAction,
+                "comment", reason
+        ));
     }
 
     private Mono<?> validateUser(
@@ -559,7 +677,8 @@ public class HubConcurController {
             @RequestHeader(X_BASE_URL_HEADER) String baseUrl,
             @RequestHeader(name = CONNECTOR_AUTH, required = false) String connectorAuth,
             @PathVariable("id") String id,
-            @Valid DeclineForm form
+            @Valid DeclineForm form,
+            @RequestParam(name = CapabilityTokens.PARAM, required = false) String capability
     ) {
         logger.debug("declineRequest called: baseUrl={}, id={}, reason={}", baseUrl, id, form.getReason());
 
@@ -569,53 +688,62 @@ public class HubConcurController {
 
         String userEmail = AuthUtil.extractUserEmail(authorization);
         return getAuthHeader(connectorAuth)
-                .flatMap(authHeader -> makeConcurRequest(form.getReason(), baseUrl, REJECT, id, userEmail, authHeader)
-                        .map(ResponseEntity::ok));
+                .flatMap(authHeader -> makeConcurRequest(form.getReason(), baseUrl, REJECT, id, userEmail, authHeader, capability)
+                        .map(ResponseEntity::ok))
+                .doOnSuccess(ignored -> cardResponseCache.invalidate(baseUrl, userEmail));
     }
 
     @GetMapping(
             path = "api/expense/report/{id}/attachment"
     )
-    public Mono<ResponseEntity<Flux<DataBuffer>>> fetchAttachment(
+    public Mono<Void> fetchAttachment(
             @RequestHeader(AUTHORIZATION) String authorization,
             @RequestHeader(X_BASE_URL_HEADER) String baseUrl,
             @RequestHeader(CONNECTOR_AUTH) String connectorAuth,
-            @PathVariable("id") String reportId
+            @PathVariable("id") String reportId,
+            @RequestParam(name = CapabilityTokens.PARAM, required = false) String capability,
+            ServerWebExchange exchange
     ) {
         final String userEmail = AuthUtil.extractUserEmail(authorization);
         logger.debug("fetchAttachment called: baseUrl={}, userEmail={}, reportId={}", baseUrl, userEmail, reportId);
 
         return getAuthHeader(connectorAuth)
-                .flatMap(authHeader -> fetchLoginIdFromUserEmail(userEmail, baseUrl, authHeader)
-                        .flatMap(loginID -> validateUser(baseUrl, reportId, loginID, authHeader))
+                .flatMap(authHeader -> validateOwnership(baseUrl, reportId, userEmail, authHeader, ATTACHMENT, capability)
                         .then(fetchRequestData(baseUrl, reportId, authHeader))
-                        .flatMap(expenseReportResponse -> getAttachment(expenseReportResponse, authHeader))
-                        .map(clientResponse -> handleClientResponse(clientResponse, reportId)));
+                        .flatMap(expenseReportResponse -> serveAttachment(exchange, baseUrl, reportId, expenseReportResponse, authHeader)));
     }
 
-    private Mono<ClientResponse> getAttachment(ExpenseReportResponse report, String connectorAuth) {
+    private Mono<Void> serveAttachment(ServerWebExchange exchange, String baseUrl, String reportId, ExpenseReportResponse report, String connectorAuth) {
         if (StringUtils.isBlank(report.getReportImageURL())) {
             throw new AttachmentURLNotFoundException("Concur expense report with ID " + report.getReportID() + " does not have any attachments.");
         }
 
+        // The backend's content type, if it sends one, replaces the default
+        return attachmentCache.serve(
+                exchange,
+                baseUrl,
+                reportId,
+                etag -> getAttachment(report.getReportImageURL(), connectorAuth, etag),
+                headers -> {
+                    headers.setContentType(APPLICATION_PDF);
+                    headers.set(CONTENT_DISPOSITION, String.format(CONTENT_DISPOSITION_FORMAT, reportId));
+                },
+                this::handleErrorStatus
+        );
+    }
+
+    private Mono<ClientResponse> getAttachment(String reportImageUrl, String connectorAuth, String etag) {
         return this.rest.get()
-                .uri(report.getReportImageURL())
+                .uri(reportImageUrl)
                 .header(AUTHORIZATION, connectorAuth)
+                .headers(headers -> {
+                    if (etag != null) {
+                        headers.setIfNoneMatch(etag);
+                    }
+                })
                 .exchange();
     }
 
-    private ResponseEntity<Flux<DataBuffer>> handleClientResponse(final ClientResponse response, final String reportId) {
-        if (response.statusCode().is2xxSuccessful()) {
-            return ResponseEntity.ok()
-                    .contentType(response.headers().contentType().orElse(APPLICATION_PDF))
-                    .header(CONTENT_DISPOSITION, String.format(CONTENT_DISPOSITION_FORMAT, reportId))
-                    .body(response.bodyToFlux(DataBuffer.class));
-
-        }
-
-        return handleErrorStatus(response);
-    }
-
     private ResponseEntity<Flux<DataBuffer>> handleErrorStatus(final ClientResponse response) {
         final HttpStatus status = response.statusCode();
         final String backendStatus = Integer.toString(response.rawStatusCode());
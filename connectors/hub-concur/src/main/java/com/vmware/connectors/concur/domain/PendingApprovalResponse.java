@@ -12,6 +12,7 @@ import java.util.List;
 public class PendingApprovalResponse {
 
     private List<PendingApprovalsVO> items;
+    private String nextPage;
 
     @JsonProperty("Items")
     public List<PendingApprovalsVO> getPendingApprovals() {
@@ -22,4 +23,16 @@ public class PendingApprovalResponse {
         this.items = pendingApprovals;
     }
 
+    /**
+     * @return the URL of the next page of report digests, or null if this is the last one
+     */
+    @JsonProperty("NextPage")
+    public String getNextPage() {
+        return nextPage;
+    }
+
+    public void setNextPage(String nextPage) {
+        this.nextPage = nextPage;
+    }
+
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.concur;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+
+/**
+ * Test cases with capability tokens in the card URLs.
+ */
+@TestPropertySource(
+        locations = "classpath:empty-concur-service-credential.properties",
+        properties = "connectors.capability-token.secret=test-capability-token-secret-of-32-bytes"
+)
+class HubConcurCapabilityTokenTest extends HubConcurControllerTestBase {
+
+    private static final String ROUTING_PREFIX = "https://hero/connectors/concur/";
+    private static final String REPORT_1 = "$.objects[?(@.backend_id == '1D3BD2E14D144508B05F')]";
+
+    @Test
+    void testApproveWithTokenSkipsTheOwnershipChecks() throws Exception {
+        mockOAuthToken(CALLER_SERVICE_CREDS);
+        mockConcurRequests(EXPECTED_AUTH_HEADER);
+
+        // The report is still needed for its workflow URL, but the approvals aren't downloaded again
+        mockReport1(EXPECTED_AUTH_HEADER);
+        mockReport1Action();
+
+        List<String> urls = getCardsBody().read(REPORT_1 + ".actions[0].url.href");
+        String uri = urls.get(0).substring(ROUTING_PREFIX.length() - 1);
+
+        webClient.post()
+                .uri(uri)
+                .header(AUTHORIZATION, "Bearer " + accessToken(uri))
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header(X_AUTH_HEADER, CALLER_SERVICE_CREDS)
+                .contentType(APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData("comment", "Approval Done"))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void testAttachmentWithTokenSkipsTheOwnershipChecks() throws Exception {
+        mockOAuthToken(CALLER_SERVICE_CREDS);
+        mockConcurRequests(EXPECTED_AUTH_HEADER);
+        mockReport1(EXPECTED_AUTH_HEADER);
+        mockFetchAttachment(EXPECTED_AUTH_HEADER);
+
+        List<String> urls = getCardsBody().read(REPORT_1 + "..attachment_url");
+        String uri = urls.get(0).substring(ROUTING_PREFIX.length() - 1);
+
+        webClient.get()
+                .uri(uri)
+                .header(AUTHORIZATION, "Bearer " + accessToken(uri))
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header(X_AUTH_HEADER, CALLER_SERVICE_CREDS)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void testApproveWithTokenOfAnotherReportIsValidated() throws Exception {
+        mockOAuthToken(CALLER_SERVICE_CREDS);
+        mockConcurRequests(EXPECTED_AUTH_HEADER);
+
+        // The user's approvals are downloaded again, the login id is still cached
+        mockReportsDigest(EXPECTED_AUTH_HEADER, "admin%40acme.com");
+        mockReport1(EXPECTED_AUTH_HEADER);
+        mockReport1Action();
+
+        List<String> urls = getCardsBody().read("$.objects[?(@.backend_id == '683105624FD74A1B9C13')].actions[0].url.href");
+        String uri = urls.get(0).substring(ROUTING_PREFIX.length() - 1).replace("683105624FD74A1B9C13", "1D3BD2E14D144508B05F");
+
+        webClient.post()
+                .uri(uri)
+                .header(AUTHORIZATION, "Bearer " + accessToken(uri))
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header(X_AUTH_HEADER, CALLER_SERVICE_CREDS)
+                .contentType(APPLICATION_FORM_URLENCODED)
+                .body(BodyInserters.fromFormData("comment", "Approval Done"))
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    private DocumentContext getCardsBody() throws Exception {
+        String body = cardsRequest("", CALLER_SERVICE_CREDS)
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collect(Collectors.joining())
+                .block();
+        return JsonPath.parse(body);
+    }
+
+}
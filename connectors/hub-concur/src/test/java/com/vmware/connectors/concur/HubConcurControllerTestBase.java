@@ -5,6 +5,7 @@
 
 package com.vmware.connectors.concur;
 
+import com.vmware.connectors.common.cache.AccessTokenCache;
 import com.vmware.connectors.mock.MockWebServerWrapper;
 import com.vmware.connectors.test.ControllerTestsBase;
 import com.vmware.connectors.test.JsonNormalizer;
@@ -17,11 +18,13 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationContextInitializer;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.support.TestPropertySourceUtils;
@@ -32,6 +35,7 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.function.BodyInserters;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -71,9 +75,13 @@ class HubConcurControllerTestBase extends ControllerTestsBase {
         mockConcurServer = new MockWebServerWrapper(new MockWebServer());
     }
 
+    @Autowired
+    private AccessTokenCache accessTokenCache;
+
     @BeforeEach
     void resetConcurServer() {
         mockConcurServer.reset();
+        accessTokenCache.invalidateAll();
     }
 
     @AfterEach
@@ -187,6 +195,25 @@ class HubConcurControllerTestBase extends ControllerTestsBase {
         Assert.assertArrayEquals(expected, body);
     }
 
+    void fetchAttachmentRange(String serviceCredential, String attachmentId) throws IOException {
+        byte[] body = getAttachment(serviceCredential, attachmentId)
+                .header(RANGE, "bytes=0-9")
+                .exchange().expectStatus().isEqualTo(HttpStatus.PARTIAL_CONTENT)
+                .expectHeader().contentType(APPLICATION_PDF)
+                .expectHeader().valueEquals(CONTENT_RANGE, "bytes 0-9/" + this.attachment.contentLength())
+                .expectBody(byte[].class).returnResult().getResponseBody();
+
+        byte[] expected = Arrays.copyOf(this.attachment.getInputStream().readAllBytes(), 10);
+        Assert.assertArrayEquals(expected, body);
+    }
+
+    void fetchAttachmentNotModified(String serviceCredential, String attachmentId, String etag) {
+        getAttachment(serviceCredential, attachmentId)
+                .ifNoneMatch(etag)
+                .exchange().expectStatus().isNotModified()
+                .expectHeader().valueEquals(ETAG, etag);
+    }
+
     void fetchAttachmentForInvalidDetails(String serviceCredential, String attachmentId) {
         getAttachment(serviceCredential, attachmentId)
                 .exchange().expectStatus().isNotFound();
@@ -230,6 +257,10 @@ class HubConcurControllerTestBase extends ControllerTestsBase {
 
     void mockConcurRequests(String serviceCredential) throws Exception {
         mockUserReportsDigest(serviceCredential);
+        mockReports(serviceCredential);
+    }
+
+    void mockReports(String serviceCredential) throws Exception {
         mockReport1(serviceCredential);
 
         mockBackend.expect(requestTo("/api/expense/expensereport/v2.0/report/683105624FD74A1B9C13"))
@@ -252,6 +283,23 @@ class HubConcurControllerTestBase extends ControllerTestsBase {
                 .andRespond(withSuccess(attachment, APPLICATION_PDF));
     }
 
+    void mockFetchAttachment(String serviceCredential, String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        mockBackend.expect(requestTo("/file/t0030426uvdx/C720AECBB775A1D24B70DAF086760A9C5BA3ECDE4423886FAB4A72C717A584E3DA4B78A36E0F24651A84FC091F6E434DEAD2A464F8CF60EFFAB96F456DFD3188H9AAD83239F0E2B9D554093BEAF888BF4?id=1D3BD2E14D144508B05F&e=t0030426uvdx&t=AN&s=ConcurConnect"))
+                .andExpect(method(GET))
+                .andExpect(header(AUTHORIZATION, serviceCredential))
+                .andRespond(withSuccess(attachment, APPLICATION_PDF).headers(headers));
+    }
+
+    void mockFetchAttachmentNotModified(String serviceCredential, String etag) {
+        mockBackend.expect(requestTo("/file/t0030426uvdx/C720AECBB775A1D24B70DAF086760A9C5BA3ECDE4423886FAB4A72C717A584E3DA4B78A36E0F24651A84FC091F6E434DEAD2A464F8CF60EFFAB96F456DFD3188H9AAD83239F0E2B9D554093BEAF888BF4?id=1D3BD2E14D144508B05F&e=t0030426uvdx&t=AN&s=ConcurConnect"))
+                .andExpect(method(GET))
+                .andExpect(header(AUTHORIZATION, serviceCredential))
+                .andExpect(header(IF_NONE_MATCH, etag))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+    }
+
     void mockFetchAttachmentWithUnauthorized(String serviceCredential) {
         mockBackend.expect(requestTo("/file/t0030426uvdx/C720AECBB775A1D24B70DAF086760A9C5BA3ECDE4423886FAB4A72C717A584E3DA4B78A36E0F24651A84FC091F6E434DEAD2A464F8CF60EFFAB96F456DFD3188H9AAD83239F0E2B9D554093BEAF888BF4?id=1D3BD2E14D144508B05F&e=t0030426uvdx&t=AN&s=ConcurConnect"))
                 .andExpect(method(GET))
@@ -269,6 +317,10 @@ class HubConcurControllerTestBase extends ControllerTestsBase {
     void mockEmptyReportsDigest(String expectedServiceCredential) throws Exception {
         mockUserDetailReport(expectedServiceCredential, "/fake/user-details.json");
 
+        mockEmptyReportsDigestOfKnownUser(expectedServiceCredential);
+    }
+
+    void mockEmptyReportsDigestOfKnownUser(String expectedServiceCredential) throws Exception {
         mockBackend.expect(requestTo("/api/v3.0/expense/reportdigests?approverLoginID=admin%40acme.com&limit=50&user=all"))
                 .andExpect(method(GET))
                 .andExpect(header(ACCEPT, APPLICATION_JSON_VALUE))
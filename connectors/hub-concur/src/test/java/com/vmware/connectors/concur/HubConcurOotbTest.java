@@ -88,6 +88,24 @@ class HubConcurOotbTest extends HubConcurControllerTestBase {
         fetchAttachment(CALLER_SERVICE_CREDS, "1D3BD2E14D144508B05F");
     }
 
+    @Test
+    void testStoredAttachmentIsRevalidated() throws Exception {
+        mockOAuthToken(CALLER_SERVICE_CREDS);
+        mockUserDetailReport(EXPECTED_AUTH_HEADER, "/fake/user-details.json");
+        for (int i = 0; i < 3; i++) {
+            mockReportsDigest(EXPECTED_AUTH_HEADER, "admin%40acme.com");
+            mockReport1(EXPECTED_AUTH_HEADER);
+        }
+        mockFetchAttachment(EXPECTED_AUTH_HEADER, "\"v1\"");
+        mockFetchAttachmentNotModified(EXPECTED_AUTH_HEADER, "\"v1\"");
+        mockFetchAttachmentNotModified(EXPECTED_AUTH_HEADER, "\"v1\"");
+
+        // Only the first request downloads the attachment, the others are served from disk
+        fetchAttachment(CALLER_SERVICE_CREDS, "1D3BD2E14D144508B05F");
+        fetchAttachmentRange(CALLER_SERVICE_CREDS, "1D3BD2E14D144508B05F");
+        fetchAttachmentNotModified(CALLER_SERVICE_CREDS, "1D3BD2E14D144508B05F", "\"v1\"");
+    }
+
     @Test
     void fetchAttachmentForInvalidUserLoginID() throws Exception {
         // Invalid user tries to fetch an expense report attachment.
@@ -223,4 +241,29 @@ class HubConcurOotbTest extends HubConcurControllerTestBase {
                 .expectStatus().isBadRequest()
                 .expectHeader().valueEquals(BACKEND_STATUS, "401");
     }
+
+    @Test
+    void testAccessTokenIsReused() throws Exception {
+        mockOAuthToken(CALLER_SERVICE_CREDS);
+        mockEmptyReportsDigest(EXPECTED_AUTH_HEADER);
+        mockEmptyReportsDigestOfKnownUser(EXPECTED_AUTH_HEADER);
+
+        // Only the first request goes to the token endpoint and looks the user up
+        for (int i = 0; i < 2; i++) {
+            cardsRequest("", CALLER_SERVICE_CREDS)
+                    .expectStatus().isOk()
+                    .expectBody().json(fromFile("connector/responses/empty_response.json"));
+        }
+    }
+
+    @Test
+    void testForbiddenCredentialIsNotRetried() throws Exception {
+        mockOAuthForbiddenException(CALLER_SERVICE_CREDS);
+
+        for (int i = 0; i < 2; i++) {
+            cardsRequest("", CALLER_SERVICE_CREDS)
+                    .expectStatus().isBadRequest()
+                    .expectHeader().valueEquals(BACKEND_STATUS, "401");
+        }
+    }
 }
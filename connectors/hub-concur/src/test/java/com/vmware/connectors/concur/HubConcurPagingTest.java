@@ -0,0 +1,62 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.concur;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.springframework.http.HttpHeaders.ACCEPT;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+@TestPropertySource(
+        locations = "classpath:empty-concur-service-credential.properties",
+        properties = "concur.approvals.page-size=2"
+)
+class HubConcurPagingTest extends HubConcurControllerTestBase {
+
+    private static final String REPORT_DIGESTS_PATH = "/api/v3.0/expense/reportdigests?approverLoginID=admin%40acme.com&limit=2&user=all";
+
+    @Test
+    void testReportDigestsArePaged() throws Exception {
+        mockOAuthToken(CALLER_SERVICE_CREDS);
+        mockUserDetailReport(EXPECTED_AUTH_HEADER, "/fake/user-details.json");
+        mockDigestPage(REPORT_DIGESTS_PATH, "/fake/report-digests-page-1.json", mockBackend.url(""));
+        mockDigestPage(REPORT_DIGESTS_PATH + "&offset=gWqmsMpq5JYsYDsraMCReV8KRoyEzGo0Uegx5J3D", "/fake/report-digests-page-2.json", mockBackend.url(""));
+        mockReports(EXPECTED_AUTH_HEADER);
+
+        cardsRequest("", "success.json", CALLER_SERVICE_CREDS);
+    }
+
+    @Test
+    void testNextPageOnAnotherHostIsNotFollowed() throws Exception {
+        mockOAuthToken(CALLER_SERVICE_CREDS);
+        mockUserDetailReport(EXPECTED_AUTH_HEADER, "/fake/user-details.json");
+        mockDigestPage(REPORT_DIGESTS_PATH, "/fake/report-digests-page-1.json", "https://concur.example.com/");
+        mockReport1(EXPECTED_AUTH_HEADER);
+        mockBackend.expect(requestTo("/api/expense/expensereport/v2.0/report/683105624FD74A1B9C13"))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/fake/report-2.json").replace("${concur_host}", mockBackend.url("")), APPLICATION_JSON));
+
+        cardsRequest("", CALLER_SERVICE_CREDS)
+                .expectStatus().isOk()
+                .expectBody().jsonPath("$.objects.length()").isEqualTo(2);
+    }
+
+    private void mockDigestPage(String path, String page, String nextPageHost) throws Exception {
+        mockBackend.expect(requestTo(path))
+                .andExpect(method(GET))
+                .andExpect(header(ACCEPT, APPLICATION_JSON_VALUE))
+                .andExpect(header(AUTHORIZATION, EXPECTED_AUTH_HEADER))
+                .andRespond(withSuccess(fromFile(page).replace("${concur_host}/", nextPageHost), APPLICATION_JSON));
+    }
+}
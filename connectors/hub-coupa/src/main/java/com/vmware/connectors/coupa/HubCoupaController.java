@@ -6,9 +6,14 @@
 package com.vmware.connectors.coupa;
 
 import com.nimbusds.jose.util.StandardCharset;
+import com.vmware.connectors.common.cache.AttachmentCache;
+import com.vmware.connectors.common.cache.CardResponseCache;
+import com.vmware.connectors.common.cache.IdentityResolver;
 import com.vmware.connectors.common.payloads.response.*;
 import com.vmware.connectors.common.utils.AuthUtil;
+import com.vmware.connectors.common.utils.CapabilityTokens;
 import com.vmware.connectors.common.utils.CardTextAccessor;
+import com.vmware.connectors.common.web.CoalescingExchangeFilter;
 import com.vmware.connectors.common.web.InvalidUserActionException;
 import com.vmware.connectors.common.web.UserException;
 import com.vmware.connectors.common.web.UserNotFoundException;
@@ -28,6 +33,7 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.util.UriComponentsBuilder;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -41,6 +47,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -62,6 +69,10 @@ public class HubCoupaController {
     private static final String X_BASE_URL_HEADER = "X-Connector-Base-Url";
 
     private static final String CONNECTOR_AUTH = "X-Connector-Authorization";
+    private static final String APPROVAL_ID = "approval_id";
+    private static final String APPROVE = "approve";
+    private static final String REJECT = "reject";
+    private static final String ATTACHMENT = "attachment";
     private static final String CONTENT_DISPOSITION_FORMAT = "Content-Disposition: inline; filename=\"%s\"";
 
     private static final String UNAUTHORIZED_ATTACHMENT_ACCESS = "User with approvable ID: %s is trying to fetch an attachment with ID: %s which does not belong to them.";
@@ -70,17 +81,32 @@ public class HubCoupaController {
 
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
+    private final CardHashMode cardHashMode;
     private final String apiKey;
+    private final CardResponseCache cardResponseCache;
+    private final IdentityResolver identityResolver;
+    private final AttachmentCache attachmentCache;
+    private final CapabilityTokens capabilityTokens;
 
     @Autowired
     public HubCoupaController(
             WebClient rest,
             CardTextAccessor cardTextAccessor,
+            CardHashMode cardHashMode,
+            CardResponseCache cardResponseCache,
+            IdentityResolver identityResolver,
+            AttachmentCache attachmentCache,
+            CapabilityTokens capabilityTokens,
             @Value("${coupa.api-key:}") String apiKey
     ) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
         this.apiKey = apiKey;
+        this.cardResponseCache = cardResponseCache;
+        this.identityResolver = identityResolver;
+        this.attachmentCache = attachmentCache;
+        this.capabilityTokens = capabilityTokens;
     }
 
     @PostMapping(
@@ -104,7 +130,8 @@ public class HubCoupaController {
             return Mono.just(ResponseEntity.badRequest().build());
         }
 
-        return getPendingApprovals(userEmail, baseUrl, routingPrefix, getAuthHeader(connectorAuth), locale)
+        return cardResponseCache.getCards(baseUrl, userEmail, Arrays.asList(locale, routingPrefix, connectorAuth),
+                () -> getPendingApprovals(userEmail, baseUrl, routingPrefix, getAuthHeader(connectorAuth), locale))
                 .map(ResponseEntity::ok);
     }
 
@@ -143,19 +170,20 @@ public class HubCoupaController {
 
         return getUserDetails(userEmail, baseUrl, connectorAuth)
                 .switchIfEmpty(Mono.error(new UserNotFoundException(String.format(USER_NOT_FOUND, userEmail))))
-                .flatMap(user -> getApprovalDetails(baseUrl, user.getId(), connectorAuth)
+                .flatMapMany(user -> getApprovalDetails(baseUrl, user.getId(), connectorAuth)
                         .flatMap(ad -> fetchAndFilterRequisitionDetails(baseUrl, ad.getApprovableId(), userEmail, connectorAuth))
-                        .map(req -> makeCards(baseUrl, routingPrefix, locale, req, user.getId())))
+                        .map(req -> makeCards(baseUrl, routingPrefix, locale, req, user.getId(), userEmail)))
                 .reduce(new Cards(), this::addCard);
     }
 
-    private Flux<UserDetails> getUserDetails(String userEmail, String baseUrl, String connectorAuth) {
-        return rest.get()
+    private Mono<UserDetails> getUserDetails(String userEmail, String baseUrl, String connectorAuth) {
+        return identityResolver.resolve("coupa", baseUrl, connectorAuth, userEmail, () -> rest.get()
                 .uri(baseUrl + "/api/users?email={userEmail}", userEmail)
                 .accept(APPLICATION_JSON)
                 .header(AUTHORIZATION_HEADER_NAME, connectorAuth)
                 .retrieve()
-                .bodyToFlux(UserDetails.class);
+                .bodyToFlux(UserDetails.class)
+                .next());
     }
 
     private Flux<ApprovalDetails> getApprovalDetails(
@@ -201,7 +229,8 @@ public class HubCoupaController {
             String routingPrefix,
             Locale locale,
             RequisitionDetails requestDetails,
-            String userId
+            String userId,
+            String userEmail
     ) {
         String requestId = requestDetails.getId();
         String reportName = requestDetails.getRequisitionLinesList().get(0).getDescription();
@@ -209,7 +238,7 @@ public class HubCoupaController {
         logger.trace("makeCard called: routingPrefix={}, requestId={}, reportName={}",
                 routingPrefix, requestId, reportName);
 
-        Card.Builder builder = new Card.Builder()
+        Card.Builder builder = new Card.Builder(cardHashMode)
                 .setName("Coupa")
                 .setHeader(
                         new CardHeader(
@@ -224,21 +253,23 @@ public class HubCoupaController {
                                 )
                         )
                 )
-                .setBody(buildCardBody(routingPrefix, requestDetails, userId, locale))
+                .setBody(buildCardBody(baseUrl, routingPrefix, requestDetails, userId, userEmail, locale))
                 .setBackendId(requestId)
-                .addAction(makeApprovalAction(routingPrefix, requestId, locale,
-                        true, "api/approve/", "hub.coupa.approve", "hub.coupa.approve.comment.label"))
-                .addAction(makeApprovalAction(routingPrefix, requestId, locale,
-                        false, "api/decline/", "hub.coupa.decline", "hub.coupa.decline.reason.label"));
+                .addAction(makeApprovalAction(getActionUrl(baseUrl, routingPrefix + "api/approve/", requestDetails, userEmail, APPROVE), locale,
+                        true, "hub.coupa.approve", "hub.coupa.approve.comment.label"))
+                .addAction(makeApprovalAction(getActionUrl(baseUrl, routingPrefix + "api/decline/", requestDetails, userEmail, REJECT), locale,
+                        false, "hub.coupa.decline", "hub.coupa.decline.reason.label"));
 
         builder.setImageUrl("https://s3.amazonaws.com/vmw-mf-assets/connector-images/hub-coupa.png");
         return builder.build();
     }
 
     private CardBody buildCardBody(
+            String baseUrl,
             String routingPrefix,
             RequisitionDetails requestDetails,
             String userId,
+            String userEmail,
             Locale locale
     ) {
         final CardBody.Builder cardBodyBuilder = new CardBody.Builder()
@@ -250,7 +281,7 @@ public class HubCoupaController {
         if (!CollectionUtils.isEmpty(requestDetails.getRequisitionLinesList())) {
             buildRequisitionDetails(requestDetails, locale).forEach(cardBodyBuilder::addField);
 
-            buildAttachments(requestDetails, cardBodyBuilder, routingPrefix, userId, locale);
+            buildAttachments(requestDetails, cardBodyBuilder, baseUrl, routingPrefix, userId, userEmail, locale);
         }
 
         return cardBodyBuilder.build();
@@ -290,8 +321,10 @@ public class HubCoupaController {
 
     private void buildAttachments(final RequisitionDetails requisitionDetails,
                                   final CardBody.Builder builder,
+                                  final String baseUrl,
                                   final String routingPrefix,
                                   final String userId,
+                                  final String userEmail,
                                   final Locale locale) {
         if (CollectionUtils.isEmpty(requisitionDetails.getAttachments())) {
             logger.debug("No attachments found for coupa report with request ID: {}", requisitionDetails.getId());
@@ -304,7 +337,11 @@ public class HubCoupaController {
 
         final String approvableId = requisitionDetails.getApprovals().iterator().next().getApprovableId();
         for (Attachment attachment: requisitionDetails.getAttachments()) {
-            CardBodyFieldItem fieldItem = buildAttachmentItem(attachment, requisitionDetails.getId(), routingPrefix, userId, approvableId, locale);
+            String attachmentUrl = capabilityTokens.sign(
+                    getAttachmentUrl(routingPrefix, userId, approvableId, getFileName(attachment), attachment.getId()),
+                    userEmail, baseUrl, ATTACHMENT, userId, approvableId, getFileName(attachment), attachment.getId()
+            );
+            CardBodyFieldItem fieldItem = buildAttachmentItem(attachment, requisitionDetails.getId(), attachmentUrl, locale);
             attachmentField.addItem(fieldItem);
         }
 
@@ -313,23 +350,25 @@ public class HubCoupaController {
 
     private CardBodyFieldItem buildAttachmentItem(final Attachment attachment,
                                                   final String reportId,
-                                                  final String routingPrefix,
-                                                  final String userId,
-                                                  final String approvableId,
+                                                  final String attachmentUrl,
                                                   final Locale locale) {
-        final String fileName = StringUtils.substringAfterLast(attachment.getFile(), "/");
+        final String fileName = getFileName(attachment);
         final String contentType = getContentType(fileName, reportId, attachment.getId());
 
         return new CardBodyFieldItem.Builder()
                 .setAttachmentName(fileName)
                 .setTitle(cardTextAccessor.getMessage("hub.coupa.report.title", locale))
                 .setAttachmentMethod(HttpMethod.GET)
-                .setAttachmentUrl(getAttachmentUrl(routingPrefix, userId, approvableId, fileName, attachment.getId()))
+                .setAttachmentUrl(attachmentUrl)
                 .setType(CardBodyFieldType.ATTACHMENT_URL)
                 .setAttachmentContentType(contentType)
                 .build();
     }
 
+    private static String getFileName(Attachment attachment) {
+        return StringUtils.substringAfterLast(attachment.getFile(), "/");
+    }
+
     private String getAttachmentUrl(String routingPrefix,
                                     String userId,
                                     String approvableId,
@@ -427,12 +466,30 @@ public class HubCoupaController {
         return formatter.format(amt);
     }
 
+    private String getActionUrl(
+            String baseUrl,
+            String apiPath,
+            RequisitionDetails requestDetails,
+            String userEmail,
+            String action
+    ) {
+        String url = apiPath + requestDetails.getId();
+        if (!capabilityTokens.isEnabled()) {
+            return url;
+        }
+
+        // With a token the action goes straight to the approval, so its id comes along
+        String approvalId = requestDetails.getCurrentApproval().getId();
+        return capabilityTokens.sign(
+                UriComponentsBuilder.fromUriString(url).queryParam(APPROVAL_ID, approvalId).toUriString(),
+                userEmail, baseUrl, action, requestDetails.getId(), approvalId
+        );
+    }
+
     private CardAction makeApprovalAction(
-            String routingPrefix,
-            String requestId,
+            String url,
             Locale locale,
             boolean primary,
-            String apiPath,
             String buttonLabelKey,
             String commentLabelKey
     ) {
@@ -443,7 +500,7 @@ public class HubCoupaController {
                 .setPrimary(primary)
                 .setMutuallyExclusiveSetId("approval-actions")
                 .setType(HttpMethod.POST)
-                .setUrl(routingPrefix + apiPath + requestId)
+                .setUrl(url)
                 .addUserInputField(
                         new CardActionInputField.Builder()
                                 .setFormat("textarea")
@@ -472,7 +529,9 @@ public class HubCoupaController {
             @RequestHeader(X_BASE_URL_HEADER) String baseUrl,
             @RequestHeader(name = CONNECTOR_AUTH, required = false) String connectorAuth,
             @Valid CommentForm form,
-            @PathVariable("id") String id
+            @PathVariable("id") String id,
+            @RequestParam(name = APPROVAL_ID, required = false) String approvalId,
+            @RequestParam(name = CapabilityTokens.PARAM, required = false) String capability
     ) {
         String userEmail = AuthUtil.extractUserEmail(authorization);
         logger.debug("approveRequest called: baseUrl={},  id={}, comment={}", baseUrl, id, form.getComment());
@@ -483,8 +542,9 @@ public class HubCoupaController {
             return Mono.just(ResponseEntity.badRequest().build());
         }
 
-        return makeCoupaRequest(form.getComment(), baseUrl, "approve", id, userEmail, getAuthHeader(connectorAuth))
-                .map(ResponseEntity::ok);
+        return makeCoupaRequest(form.getComment(), baseUrl, APPROVE, id, userEmail, getAuthHeader(connectorAuth), approvalId, capability)
+                .map(ResponseEntity::ok)
+                .doOnSuccess(ignored -> cardResponseCache.invalidate(baseUrl, userEmail));
     }
 
     private Mono<String> makeCoupaRequest(
@@ -493,14 +553,20 @@ public class HubCoupaController {
             String action,
             String approvableId,
             String userEmail,
-            String connectorAuth
+            String connectorAuth,
+            String approvalId,
+            String capability
     ) {
         logger.debug("makeCoupaRequest called for user: userEmail={}, approvableId={}, action={}",
                 userEmail, approvableId, action);
 
+        if (capabilityTokens.verify(capability, userEmail, baseUrl, action, approvableId, approvalId)) {
+            return makeActionRequest(approvalId, baseUrl, action, reason, connectorAuth);
+        }
+
         return getUserDetails(userEmail, baseUrl, connectorAuth)
                 .switchIfEmpty(Mono.error(new UserNotFoundException(String.format(USER_NOT_FOUND, userEmail))))
-                .flatMap(userDetails -> fetchAndFilterRequisitionDetails(baseUrl, approvableId, userDetails.getEmail(), connectorAuth))
+                .flatMapMany(userDetails -> fetchAndFilterRequisitionDetails(baseUrl, approvableId, userDetails.getEmail(), connectorAuth))
                 .switchIfEmpty(Mono.error(new InvalidUserActionException(String.format(INVALID_USER_ACTION, userEmail, approvableId))))
                 .flatMap(requisitionDetails -> makeActionRequest(requisitionDetails.getCurrentApproval().getId(), baseUrl, action, reason, connectorAuth))
                 .next();
@@ -542,7 +608,9 @@ public class HubCoupaController {
             @RequestHeader(X_BASE_URL_HEADER) String baseUrl,
             @RequestHeader(name = CONNECTOR_AUTH, required = false) String connectorAuth,
             @Valid CommentForm form,
-            @PathVariable("id") String id
+            @PathVariable("id") String id,
+            @RequestParam(name = APPROVAL_ID, required = false) String approvalId,
+            @RequestParam(name = CapabilityTokens.PARAM, required = false) String capability
     ) {
         String userEmail = AuthUtil.extractUserEmail(authorization);
         logger.debug("declineRequest called: baseUrl={},  id={}, comment={}", baseUrl, id, form.getComment());
@@ -553,28 +621,41 @@ public class HubCoupaController {
             return Mono.just(ResponseEntity.badRequest().build());
         }
 
-        return makeCoupaRequest(form.getComment(), baseUrl, "reject", id, userEmail, getAuthHeader(connectorAuth))
-                .map(ResponseEntity::ok);
+        return makeCoupaRequest(form.getComment(), baseUrl, REJECT, id, userEmail, getAuthHeader(connectorAuth), approvalId, capability)
+                .map(ResponseEntity::ok)
+                .doOnSuccess(ignored -> cardResponseCache.invalidate(baseUrl, userEmail));
     }
 
     @GetMapping("/api/user/{user_id}/{approvable_id}/attachment/{file_name}/{attachment_id}")
-    public Mono<ResponseEntity<Flux<DataBuffer>>> fetchAttachment(@RequestHeader(AUTHORIZATION) final String authorization,
-                                            @RequestHeader(CONNECTOR_AUTH) final String connectorAuth,
-                                            @RequestHeader(X_BASE_URL_HEADER) final String baseUrl,
-                                            @PathVariable("user_id") final String userId,
-                                            @PathVariable("approvable_id") final String approvableId,
-                                            @PathVariable("file_name") final String fileName,
-                                            @PathVariable("attachment_id") final String attachmentId) {
+    public Mono<Void> fetchAttachment(@RequestHeader(AUTHORIZATION) final String authorization,
+                                      @RequestHeader(CONNECTOR_AUTH) final String connectorAuth,
+                                      @RequestHeader(X_BASE_URL_HEADER) final String baseUrl,
+                                      @PathVariable("user_id") final String userId,
+                                      @PathVariable("approvable_id") final String approvableId,
+                                      @PathVariable("file_name") final String fileName,
+                                      @PathVariable("attachment_id") final String attachmentId,
+                                      @RequestParam(name = CapabilityTokens.PARAM, required = false) final String capability,
+                                      final ServerWebExchange exchange) {
         final String userEmail = AuthUtil.extractUserEmail(authorization);
         logger.debug("fetchAttachment called: baseUrl={}, userEmail={}, userId={}, attachmentId={}", baseUrl, userEmail, userEmail, attachmentId);
 
         validateEmailAddress(userEmail);
 
         final String authHeader = getAuthHeader(connectorAuth);
-        return validateUserAttachmentInfo(baseUrl, authHeader, userEmail, userId, approvableId, attachmentId)
-                .switchIfEmpty(Mono.error(new UserException(String.format(UNAUTHORIZED_ATTACHMENT_ACCESS, userId, attachmentId))))
-                .then(getAttachment(authHeader, getAttachmentURI(baseUrl, userId, attachmentId)))
-                .map(clientResponse -> handleClientResponse(clientResponse, fileName));
+        final URI attachmentUri = getAttachmentURI(baseUrl, userId, attachmentId);
+        final boolean trusted = capabilityTokens.verify(capability, userEmail, baseUrl, ATTACHMENT, userId, approvableId, fileName, attachmentId);
+        final Flux<Attachment> validation = trusted ? Flux.empty() : validateUserAttachmentInfo(baseUrl, authHeader, userEmail, userId, approvableId, attachmentId)
+                .switchIfEmpty(Mono.error(new UserException(String.format(UNAUTHORIZED_ATTACHMENT_ACCESS, userId, attachmentId))));
+
+        return validation
+                .then(attachmentCache.serve(
+                        exchange,
+                        baseUrl,
+                        attachmentUri.getPath(),
+                        etag -> getAttachment(authHeader, attachmentUri, etag),
+                        headers -> headers.set(CONTENT_DISPOSITION, String.format(CONTENT_DISPOSITION_FORMAT, fileName)),
+                        this::handleErrorStatus
+                ));
     }
 
     private Flux<Attachment> validateUserAttachmentInfo(final String baseUrl,
@@ -585,7 +666,7 @@ public class HubCoupaController {
                                                         final String attachmentId) {
         return getUserDetails(userEmail, baseUrl, connectorAuth)
                 .filter(userDetails -> userDetails.getId().equals(userId))
-                .flatMap(userDetails -> getApprovalDetails(baseUrl, userDetails.getId(), connectorAuth))
+                .flatMapMany(userDetails -> getApprovalDetails(baseUrl, userDetails.getId(), connectorAuth))
                 .filter(approvalDetails -> approvableId.equals(approvalDetails.getApprovableId()))
                 .flatMap(approvalDetails -> fetchAndFilterRequisitionDetails(baseUrl, approvalDetails.getApprovableId(), userEmail, connectorAuth))
                 .switchIfEmpty(Mono.error(new InvalidUserActionException(String.format(UNAUTHORIZED_ATTACHMENT_ACCESS, approvableId, attachmentId))))
@@ -597,15 +678,6 @@ public class HubCoupaController {
                 .filter(attachment -> attachment.getId().equals(attachmentId));
     }
 
-    private ResponseEntity<Flux<DataBuffer>> handleClientResponse(final ClientResponse response, final String fileName) {
-        if (response.statusCode().is2xxSuccessful()) {
-            return ResponseEntity.ok()
-                    .header(CONTENT_DISPOSITION, String.format(CONTENT_DISPOSITION_FORMAT, fileName))
-                    .body(response.bodyToFlux(DataBuffer.class));
-        }
-        return handleErrorStatus(response);
-    }
-
     private ResponseEntity<Flux<DataBuffer>> handleErrorStatus(final ClientResponse response) {
         final HttpStatus status = response.statusCode();
         final String backendStatus = Integer.toString(response.rawStatusCode());
@@ -626,11 +698,18 @@ public class HubCoupaController {
         }
     }
 
-    private Mono<ClientResponse> getAttachment(String connectorAuth, URI attachmentUri) {
+    private Mono<ClientResponse> getAttachment(String connectorAuth, URI attachmentUri, String etag) {
         return this.rest.get()
                 .uri(attachmentUri)
                 .header(AUTHORIZATION_HEADER_NAME, connectorAuth)
                 .header(ACCEPT, APPLICATION_JSON_VALUE)
+                // Streamed to the attachment cache, never read into memory to be shared
+                .attribute(CoalescingExchangeFilter.PASS_THROUGH_ATTRIBUTE, true)
+                .headers(headers -> {
+                    if (etag != null) {
+                        headers.setIfNoneMatch(etag);
+                    }
+                })
                 .exchange();
     }
 
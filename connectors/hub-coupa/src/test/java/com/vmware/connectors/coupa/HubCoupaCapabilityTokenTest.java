@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.coupa;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+
+/**
+ * Test cases with capability tokens in the card URLs.
+ */
+@TestPropertySource(
+        locations = "classpath:empty-coupa-service-credential.properties",
+        properties = "connectors.capability-token.secret=test-capability-token-secret-of-32-bytes"
+)
+class HubCoupaCapabilityTokenTest extends HubCoupaControllerTestBase {
+
+    private static final String ROUTING_PREFIX = "https://hero/connectors/coupa/";
+
+    @Test
+    void testApproveWithTokenGoesStraightToTheApproval() throws Exception {
+        mockCoupaRequest(CALLER_SERVICE_CREDS);
+        mockApproveAction(CALLER_SERVICE_CREDS);
+
+        String url = getCardsBody().read("$.objects[0].actions[0].url.href");
+        assertThat(url, containsString("approval_id=6609559&capability="));
+
+        // Nothing but the approval itself goes to Coupa
+        post(url + "&comment=Approved")
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void testApproveWithTamperedTokenIsValidated() throws Exception {
+        mockCoupaRequest(CALLER_SERVICE_CREDS);
+        mockApproveActions(CALLER_SERVICE_CREDS);
+
+        String url = getCardsBody().read("$.objects[0].actions[0].url.href");
+
+        // The requisition is looked up again, and the approval id comes from it
+        post(url.replace("approval_id=6609559", "approval_id=1") + "&comment=Approved")
+                .expectStatus().isOk();
+    }
+
+    @Test
+    void testAttachmentWithTokenSkipsTheOwnershipChecks() throws Exception {
+        mockCoupaRequest(CALLER_SERVICE_CREDS);
+        mockFetchAttachment(CALLER_SERVICE_CREDS);
+
+        List<String> urls = getCardsBody().read("$..attachment_url");
+        String uri = urls.get(0).substring(ROUTING_PREFIX.length() - 1);
+
+        webClient.get()
+                .uri(uri)
+                .header(AUTHORIZATION, "Bearer " + accessToken(uri))
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header(X_AUTH_HEADER, CALLER_SERVICE_CREDS)
+                .exchange()
+                .expectStatus().isOk();
+    }
+
+    private DocumentContext getCardsBody() {
+        String body = webClient.post()
+                .uri("/cards/requests")
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header(X_AUTH_HEADER, CALLER_SERVICE_CREDS)
+                .header("x-routing-prefix", ROUTING_PREFIX)
+                .headers(headers -> headers(headers, "/cards/requests"))
+                .contentType(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collect(Collectors.joining())
+                .block();
+        return JsonPath.parse(body);
+    }
+
+    private WebTestClient.ResponseSpec post(String url) {
+        String uri = url.substring(ROUTING_PREFIX.length() - 1);
+        return webClient.post()
+                .uri(uri)
+                .header(AUTHORIZATION, "Bearer " + accessToken(uri))
+                .header(X_AUTH_HEADER, CALLER_SERVICE_CREDS)
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .contentType(APPLICATION_FORM_URLENCODED)
+                .exchange();
+    }
+
+}
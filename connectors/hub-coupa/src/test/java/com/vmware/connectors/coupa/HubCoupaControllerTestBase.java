@@ -12,6 +12,8 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.web.client.ResponseActions;
 import org.springframework.test.web.reactive.server.WebTestClient;
 
@@ -20,6 +22,7 @@ import java.util.Arrays;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.springframework.http.HttpHeaders.*;
 import static org.springframework.http.HttpMethod.*;
 import static org.springframework.http.MediaType.*;
@@ -101,6 +104,17 @@ class HubCoupaControllerTestBase extends ControllerTestsBase {
         Arrays.equals(result, expected);
     }
 
+    void fetchAttachment(String authHeader, String etag) throws IOException {
+        byte[] result = getAttachment(authHeader)
+                .expectStatus().isOk()
+                .expectHeader().contentType(IMAGE_PNG)
+                .expectHeader().valueEquals(ETAG, etag)
+                .expectBody(byte[].class)
+                .returnResult().getResponseBody();
+
+        assertArrayEquals(this.attachment.getInputStream().readAllBytes(), result);
+    }
+
     void fetchAttachmentForInvalidDetails(String authHeader) throws IOException {
         getAttachment(authHeader)
                 .expectStatus().isUnauthorized()
@@ -281,6 +295,19 @@ class HubCoupaControllerTestBase extends ControllerTestsBase {
                 .andRespond(withSuccess(attachment, IMAGE_PNG));
     }
 
+    void mockFetchAttachment(String serviceCredential, String etag) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        mockAttachment(serviceCredential)
+                .andRespond(withSuccess(attachment, IMAGE_PNG).headers(headers));
+    }
+
+    void mockAttachmentNotModified(String serviceCredential, String etag) {
+        mockAttachment(serviceCredential)
+                .andExpect(header(IF_NONE_MATCH, etag))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED));
+    }
+
     ResponseActions mockAttachment(String serviceCredential) {
         return mockBackend.expect(requestTo("/api/users/15882/attachments/2701685"))
                 .andExpect(method(GET))
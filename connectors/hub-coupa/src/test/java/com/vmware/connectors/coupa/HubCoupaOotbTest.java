@@ -94,6 +94,22 @@ class HubCoupaOotbTest extends HubCoupaControllerTestBase {
         fetchAttachment(CALLER_SERVICE_CREDS);
     }
 
+    @Test
+    void testStoredAttachmentIsRevalidated() throws Exception {
+        mockUserDetails(CALLER_SERVICE_CREDS);
+        for (int i = 0; i < 2; i++) {
+            mockApproval(CALLER_SERVICE_CREDS);
+            mockRequisitionDetails(CALLER_SERVICE_CREDS);
+        }
+        mockFetchAttachment(CALLER_SERVICE_CREDS, "\"v1\"");
+        mockAttachmentNotModified(CALLER_SERVICE_CREDS, "\"v1\"");
+
+        // The second request is served from disk once Coupa says the attachment hasn't changed
+        for (int i = 0; i < 2; i++) {
+            fetchAttachment(CALLER_SERVICE_CREDS, "\"v1\"");
+        }
+    }
+
     @Test
     void testFetchAttachmentForInvalidDetails() throws Exception {
         mockUserDetails(CALLER_SERVICE_CREDS);
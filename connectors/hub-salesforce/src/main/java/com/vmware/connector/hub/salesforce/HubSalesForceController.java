@@ -5,9 +5,11 @@
 
 package com.vmware.connector.hub.salesforce;
 
+import com.vmware.connectors.common.cache.CardResponseCache;
 import com.vmware.connectors.common.json.JsonDocument;
 import com.vmware.connectors.common.payloads.request.CardRequest;
 import com.vmware.connectors.common.payloads.response.*;
+import com.vmware.connectors.common.template.SoqlQuery;
 import com.vmware.connectors.common.utils.AuthUtil;
 import com.vmware.connectors.common.utils.CardTextAccessor;
 import com.vmware.connectors.common.utils.Reactive;
@@ -30,10 +32,10 @@ import reactor.core.publisher.Mono;
 import javax.validation.Valid;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import static com.vmware.connectors.common.utils.CommonUtils.APPROVAL_ACTIONS;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
@@ -52,14 +54,16 @@ public class HubSalesForceController {
 
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
+    private final CardHashMode cardHashMode;
     private final String sfSoqlQueryPath;
     private final String workflowPath;
+    private final CardResponseCache cardResponseCache;
 
     private final static String REASON = "reason";
     private final static String FIELD_NAME_REGEX = "[a-zA-Z0-9_]+";
 
-    private final static String WORK_ITEMS_QUERY = "SELECT Id,TargetObjectid, Status,(select id,actor.name, actor.id, actor.email, actor.username from Workitems Where actor.email = '%s'),(SELECT Id, StepStatus, Comments,Actor.Name, Actor.Id, actor.email, actor.username FROM Steps) FROM ProcessInstance Where Status = 'Pending'";
-    private final static String OPPORTUNITY_QUERY = "SELECT Id, Name, FORMAT(ExpectedRevenue), Account.Owner.Name, %s, %s FROM opportunity WHERE Id IN ('%s')";
+    private final static SoqlQuery WORK_ITEMS_QUERY = SoqlQuery.compile("SELECT Id,TargetObjectid, Status,(select id,actor.name, actor.id, actor.email, actor.username from Workitems Where actor.email = ${email}),(SELECT Id, StepStatus, Comments,Actor.Name, Actor.Id, actor.email, actor.username FROM Steps) FROM ProcessInstance Where Status = 'Pending'");
+    private final static SoqlQuery OPPORTUNITY_QUERY = SoqlQuery.compile("SELECT Id, Name, FORMAT(ExpectedRevenue), Account.Owner.Name, ${discountField}, ${reasonField} FROM opportunity WHERE Id IN (${ids})");
 
     private final static String DISCOUNT_PERCENTAGE = "discount_percentage_field_name";
     private final static String REASON_FOR_DISCOUNT = "reason_for_discount_field_name";
@@ -67,12 +71,16 @@ public class HubSalesForceController {
     @Autowired
     public HubSalesForceController(final WebClient rest,
                                    final CardTextAccessor cardTextAccessor,
+                                   final CardHashMode cardHashMode,
+                                   final CardResponseCache cardResponseCache,
                                    @Value("${sf.soqlQueryPath}") final String sfSoqlQueryPath,
                                    @Value("${sf.workflowPath}") final String workflowPath) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
         this.sfSoqlQueryPath = sfSoqlQueryPath;
         this.workflowPath = workflowPath;
+        this.cardResponseCache = cardResponseCache;
     }
 
     @PostMapping(
@@ -99,10 +107,11 @@ public class HubSalesForceController {
         final Map<String, String> configParams = cardRequest.getConfig();
         validateAPIFieldValues(configParams);
 
-        return retrieveWorkItems(connectorAuth, baseUrl, userEmail)
-                .flatMapMany(Reactive.wrapFlatMapMany(result -> processWorkItemResult(result, baseUrl, connectorAuth, locale, routingPrefix, configParams)))
-                .collectList()
-                .map(this::toCards)
+        return cardResponseCache.getCards(baseUrl, userEmail, Arrays.asList(locale, routingPrefix, connectorAuth, configParams),
+                () -> retrieveWorkItems(connectorAuth, baseUrl, userEmail)
+                        .flatMapMany(Reactive.wrapFlatMapMany(result -> processWorkItemResult(result, baseUrl, connectorAuth, locale, routingPrefix, configParams)))
+                        .collectList()
+                        .map(this::toCards))
                 .map(ResponseEntity::ok);
     }
 
@@ -142,6 +151,7 @@ public class HubSalesForceController {
             consumes = APPLICATION_FORM_URLENCODED_VALUE
     )
     public Mono<Void> approveWorkFlow(
+            @RequestHeader(AUTHORIZATION) final String auth,
             @RequestHeader(AUTH_HEADER) final String connectorAuth,
             @RequestHeader(BASE_URL_HEADER) final String baseUrl,
             @Valid ActionForm form,
@@ -161,7 +171,8 @@ public class HubSalesForceController {
                 .contentType(APPLICATION_JSON)
                 .syncBody(requests)
                 .retrieve()
-                .bodyToMono(Void.class);
+                .bodyToMono(Void.class)
+                .doOnSuccess(ignored -> cardResponseCache.invalidate(baseUrl, AuthUtil.extractUserEmail(auth)));
     }
 
     @PostMapping(
@@ -169,6 +180,7 @@ public class HubSalesForceController {
             consumes = APPLICATION_FORM_URLENCODED_VALUE
     )
     public Mono<Void> rejectWorkFlow(
+            @RequestHeader(AUTHORIZATION) final String auth,
             @RequestHeader(AUTH_HEADER) final String connectorAuth,
             @RequestHeader(BASE_URL_HEADER) final String baseUrl,
             @Valid ActionForm form,
@@ -188,7 +200,8 @@ public class HubSalesForceController {
                 .contentType(APPLICATION_JSON)
                 .syncBody(requests)
                 .retrieve()
-                .bodyToMono(Void.class);
+                .bodyToMono(Void.class)
+                .doOnSuccess(ignored -> cardResponseCache.invalidate(baseUrl, AuthUtil.extractUserEmail(auth)));
     }
 
     private Cards toCards(final List<Card> cardList) {
@@ -217,11 +230,12 @@ public class HubSalesForceController {
                                                      final List<String> opportunityIds,
                                                      final String connectorAuth,
                                                      final Map<String, String> configParams) {
-        final String idsFormat = opportunityIds.stream()
-                .map(this::soqlEscape)
-                .collect(Collectors.joining("', '"));
-
-        final String soql = String.format(OPPORTUNITY_QUERY, soqlEscape(configParams.get(DISCOUNT_PERCENTAGE)), soqlEscape(configParams.get(REASON_FOR_DISCOUNT)), idsFormat);
+        // The cards are built by matching the records of both responses by index, so they must come in a single query
+        final String soql = OPPORTUNITY_QUERY.bind()
+                .field("discountField", configParams.get(DISCOUNT_PERCENTAGE))
+                .field("reasonField", configParams.get(REASON_FOR_DISCOUNT))
+                .strings("ids", opportunityIds)
+                .build();
         return rest.get()
                 .uri(makeSoqlQueryUri(baseUrl, soql))
                 .header(AUTHORIZATION, connectorAuth)
@@ -248,7 +262,7 @@ public class HubSalesForceController {
 
             String opportunityId = opportunityResponse.read(String.format("$.records[%s].Id", i));
 
-            final Card.Builder card = new Card.Builder()
+            final Card.Builder card = new Card.Builder(cardHashMode)
                     .setName("Salesforce for WS1 Hub")
                     .setTemplate(routingPrefix + "templates/generic.hbs")
                     .setHeader(
@@ -360,7 +374,9 @@ public class HubSalesForceController {
     private Mono<JsonDocument> retrieveWorkItems(final String connectorAuth,
                                                  final String baseUrl,
                                                  final String userEmail) {
-        final String sql = String.format(WORK_ITEMS_QUERY, soqlEscape(userEmail));
+        final String sql = WORK_ITEMS_QUERY.bind()
+                .string("email", userEmail)
+                .build();
 
         return rest.get()
                 .uri(makeSoqlQueryUri(baseUrl, sql))
@@ -381,8 +397,4 @@ public class HubSalesForceController {
                 .toUri();
     }
 
-    private String soqlEscape(String value) {
-        return value.replace("\\", "\\\\").replace("\'", "\\\'");
-    }
-
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.hub.servicenow;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import java.util.List;
+
+import static org.apache.commons.lang3.builder.ToStringStyle.SHORT_PREFIX_STYLE;
+
+class ApprovalPage {
+
+    private final int offset;
+    private final int limit;
+    private final List<ApprovalRequestWithInfo> approvalRequests;
+
+    /**
+     * @param offset The sysparm_offset the page was asked for with.
+     * @param limit The sysparm_limit the page was asked for with.
+     * @param approvalRequests The approval requests on the page.
+     */
+    ApprovalPage(
+            int offset,
+            int limit,
+            List<ApprovalRequestWithInfo> approvalRequests
+    ) {
+        this.offset = offset;
+        this.limit = limit;
+        this.approvalRequests = List.copyOf(approvalRequests);
+    }
+
+    /**
+     * @return The sysparm_offset of the page after this one.
+     */
+    int getNextOffset() {
+        return offset + approvalRequests.size();
+    }
+
+    /**
+     * @return Whether there may be more approval requests after this page:
+     * a short page is the last one.
+     */
+    boolean isFull() {
+        return approvalRequests.size() >= limit;
+    }
+
+    List<ApprovalRequestWithInfo> getApprovalRequests() {
+        return approvalRequests;
+    }
+
+    @Override
+    public String toString() {
+        return ToStringBuilder.reflectionToString(this, SHORT_PREFIX_STYLE);
+    }
+
+}
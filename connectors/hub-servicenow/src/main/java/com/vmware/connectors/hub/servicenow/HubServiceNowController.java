@@ -5,6 +5,8 @@
 
 package com.vmware.connectors.hub.servicenow;
 
+import com.vmware.connectors.common.cache.CardResponseCache;
+import com.vmware.connectors.common.cache.IdentityResolver;
 import com.vmware.connectors.common.json.JsonDocument;
 import com.vmware.connectors.common.payloads.response.*;
 import com.vmware.connectors.common.utils.AuthUtil;
@@ -15,6 +17,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
@@ -61,18 +64,48 @@ public class HubServiceNowController {
      */
     private static final String SNOW_SYS_PARAM_LIMIT = "sysparm_limit";
 
-    private static final int MAX_APPROVAL_RESULTS = 50;
+    /**
+     * The query param to specify an encoded query (ex. "requestINid1,id2")
+     * in your ServiceNow REST calls.
+     */
+    private static final String SNOW_SYS_PARAM_QUERY = "sysparm_query";
+
+    /**
+     * The query param to specify the index of the first record you want to
+     * come back in your ServiceNow REST calls.
+     */
+    private static final String SNOW_SYS_PARAM_OFFSET = "sysparm_offset";
+
+    private static final int MAX_REQUESTED_ITEM_RESULTS = 50;
 
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
+    private final CardHashMode cardHashMode;
+    private final CardResponseCache cardResponseCache;
+    private final IdentityResolver identityResolver;
+    private final int approvalPageSize;
+    private final int maxApprovalResults;
+    private final int approvalPageConcurrency;
 
     @Autowired
     public HubServiceNowController(
             WebClient rest,
-            CardTextAccessor cardTextAccessor
+            CardTextAccessor cardTextAccessor,
+            CardHashMode cardHashMode,
+            CardResponseCache cardResponseCache,
+            IdentityResolver identityResolver,
+            @Value("${servicenow.approvals.page-size:50}") int approvalPageSize,
+            @Value("${servicenow.approvals.max-results:500}") int maxApprovalResults,
+            @Value("${servicenow.approvals.page-concurrency:2}") int approvalPageConcurrency
     ) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
+        this.cardResponseCache = cardResponseCache;
+        this.identityResolver = identityResolver;
+        this.approvalPageSize = approvalPageSize;
+        this.maxApprovalResults = maxApprovalResults;
+        this.approvalPageConcurrency = approvalPageConcurrency;
     }
 
     @PostMapping(
@@ -95,21 +128,38 @@ public class HubServiceNowController {
             return Mono.just(new Cards());
         }
 
+        return cardResponseCache.getCards(baseUrl, userEmail, Arrays.asList(locale, routingPrefix, connectorAuth),
+                () -> fetchCards(baseUrl, routingPrefix, connectorAuth, userEmail, locale));
+    }
+
+    private Mono<Cards> fetchCards(
+            String baseUrl,
+            String routingPrefix,
+            String connectorAuth,
+            String userEmail,
+            Locale locale
+    ) {
+        /*
+         * Two calls per page of approvals, however many approvals are on it: the
+         * approvals (with the request number and price dot-walked in), and the items
+         * of all those requests at once.  The items of a page are fetched while the
+         * next page is, and its cards are built without waiting for the rest.
+         */
         return callForUserSysId(baseUrl, userEmail, connectorAuth)
-                .flux()
-                .doOnEach(Reactive.wrapForItem(userSysId -> logger.trace("callForApprovalRequests: baseUrl={}, userSysId={}", baseUrl, userSysId)))
-                .flatMap(userSysId -> callForApprovalRequests(baseUrl, connectorAuth, userSysId))
-                .doOnEach(Reactive.wrapForItem(approvalRequest -> logger.trace("callForRequestInfo: baseUrl={}, approvalRequest={}", baseUrl, approvalRequest)))
-                .flatMap(approvalRequest -> callForRequestInfo(baseUrl, connectorAuth, approvalRequest)
-                        .map(requestNumber -> new ApprovalRequestWithInfo(approvalRequest, requestNumber)))
-                .doOnEach(Reactive.wrapForItem(approvalRequest -> logger.trace("callForAndAggregateRequestedItems: baseUrl={}, approvalRequest={}", baseUrl, approvalRequest)))
-                .flatMap(approvalRequestWithInfo -> callForAndAggregateRequestedItems(baseUrl, connectorAuth, approvalRequestWithInfo))
-                .doOnEach(Reactive.wrapForItem(info -> logger.trace("Got items: {}", info)))
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, userSysId -> logger.trace("callForApprovalPages: baseUrl={}, userSysId={}", baseUrl, userSysId)))
+                .flatMapMany(userSysId -> callForApprovalPages(baseUrl, connectorAuth, userSysId))
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, page -> logger.trace("callForRequestedItems: baseUrl={}, page={}", baseUrl, page)))
+                .flatMapSequential(
+                        page -> callForRequestedItems(baseUrl, connectorAuth, page.getApprovalRequests())
+                                .flatMapIterable(itemsByRequest -> withItems(page.getApprovalRequests(), itemsByRequest)),
+                        approvalPageConcurrency
+                )
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, info -> logger.trace("Got items: {}", info)))
                 .reduce(
                         new Cards(),
                         (cards, info) -> appendCard(cards, info, baseUrl, routingPrefix, locale)
                 )
-                .doOnEach(Reactive.wrapForItem(cards -> logger.trace("Returning cards: {}", cards)));
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, cards -> logger.trace("Returning cards: {}", cards)));
     }
 
     private Mono<String> callForUserSysId(
@@ -119,7 +169,7 @@ public class HubServiceNowController {
     ) {
         logger.trace("callForUserSysId called: baseUrl={}", baseUrl);
 
-        return rest.get()
+        return identityResolver.resolve("servicenow", baseUrl, auth, email, () -> rest.get()
                 .uri(UriComponentsBuilder
                         .fromUriString(baseUrl)
                         .path("/api/now/table/{userTableName}")
@@ -148,17 +198,45 @@ public class HubServiceNowController {
                         logger.warn("sys_id for {} not found in {}, returning empty cards", email, baseUrl);
                     }
                     return Mono.justOrEmpty(userSysId);
-                }));
+                })));
     }
 
-    private Flux<ApprovalRequest> callForApprovalRequests(
+    private Flux<ApprovalPage> callForApprovalPages(
             String baseUrl,
             String auth,
             String userSysId
+    ) {
+        // Each page is only asked for once the one before it is known to be full
+        return callForApprovalPage(baseUrl, auth, userSysId, 0)
+                .expand(page -> page.isFull() && page.getNextOffset() < maxApprovalResults
+                        ? callForApprovalPage(baseUrl, auth, userSysId, page.getNextOffset())
+                        : Mono.empty());
+    }
+
+    private Mono<ApprovalPage> callForApprovalPage(
+            String baseUrl,
+            String auth,
+            String userSysId,
+            int offset
+    ) {
+        int limit = Math.min(approvalPageSize, maxApprovalResults - offset);
+        return callForApprovalRequests(baseUrl, auth, userSysId, offset, limit)
+                .collectList()
+                .map(approvalRequests -> new ApprovalPage(offset, limit, approvalRequests));
+    }
+
+    private Flux<ApprovalRequestWithInfo> callForApprovalRequests(
+            String baseUrl,
+            String auth,
+            String userSysId,
+            int offset,
+            int limit
     ) {
         String fields = joinFields(
                 SysApprovalApprover.Fields.SYS_ID,
                 SysApprovalApprover.Fields.SYSAPPROVAL,
+                SysApprovalApprover.Fields.SYSAPPROVAL_NUMBER,
+                SysApprovalApprover.Fields.SYSAPPROVAL_PRICE,
                 SysApprovalApprover.Fields.COMMENTS,
                 SysApprovalApprover.Fields.DUE_DATE,
                 SysApprovalApprover.Fields.SYS_CREATED_BY
@@ -168,7 +246,10 @@ public class HubServiceNowController {
                         .fromUriString(baseUrl)
                         .path("/api/now/table/{apTableName}")
                         .queryParam(SNOW_SYS_PARAM_FIELDS, fields)
-                        .queryParam(SNOW_SYS_PARAM_LIMIT, MAX_APPROVAL_RESULTS)
+                        .queryParam(SNOW_SYS_PARAM_LIMIT, limit)
+                        .queryParam(SNOW_SYS_PARAM_OFFSET, offset)
+                        // A stable order, so that the pages don't overlap
+                        .queryParam(SNOW_SYS_PARAM_QUERY, "ORDERBY" + SysApprovalApprover.Fields.SYS_ID)
                         .queryParam(SysApprovalApprover.Fields.SOURCE_TABLE.toString(), ScRequest.TABLE_NAME)
                         .queryParam(SysApprovalApprover.Fields.STATE.toString(), SysApprovalApprover.States.REQUESTED)
                         .queryParam(SysApprovalApprover.Fields.APPROVER.toString(), userSysId)
@@ -194,7 +275,7 @@ public class HubServiceNowController {
                  * microservices.
                  */
                 .flatMapMany(approvalRequests -> Flux.fromIterable(approvalRequests.<List<Map<String, Object>>>read("$.result[*]")))
-                .doOnEach(Reactive.wrapForItem(result -> logger.trace("convertJsonDocToApprovalReq called: result={}", result)))
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, result -> logger.trace("convertJsonDocToApprovalReq called: result={}", result)))
                 .map(this::convertJsonDocToApprovalReq);
 
     }
@@ -205,84 +286,71 @@ public class HubServiceNowController {
                 .collect(Collectors.joining(","));
     }
 
-    private ApprovalRequest convertJsonDocToApprovalReq(
+    private ApprovalRequestWithInfo convertJsonDocToApprovalReq(
             Map<String, Object> result
     ) {
-        return new ApprovalRequest(
+        ApprovalRequest approvalRequest = new ApprovalRequest(
                 (String) result.get(SysApprovalApprover.Fields.SYS_ID.toString()),
                 ((Map<String, String>) result.get(SysApprovalApprover.Fields.SYSAPPROVAL.toString())).get("value"),
                 (String) result.get(SysApprovalApprover.Fields.COMMENTS.toString()),
                 (String) result.get(SysApprovalApprover.Fields.DUE_DATE.toString()),
                 (String) result.get(SysApprovalApprover.Fields.SYS_CREATED_BY.toString())
         );
+        Request info = new Request(
+                (String) result.get(SysApprovalApprover.Fields.SYSAPPROVAL_NUMBER.toString()),
+                (String) result.get(SysApprovalApprover.Fields.SYSAPPROVAL_PRICE.toString())
+        );
+        return new ApprovalRequestWithInfo(approvalRequest, info);
     }
 
-    private Mono<Request> callForRequestInfo(
+    private Mono<Map<String, List<RequestedItem>>> callForRequestedItems(
             String baseUrl,
             String auth,
-            ApprovalRequest approvalRequest
+            List<ApprovalRequestWithInfo> approvalRequests
     ) {
-         String fields = joinFields(
-                ScRequest.Fields.SYS_ID,
-                ScRequest.Fields.PRICE,
-                ScRequest.Fields.NUMBER
-        );
+        if (approvalRequests.isEmpty()) {
+            return Mono.just(Map.of());
+        }
 
-        return rest.get()
-                .uri(UriComponentsBuilder
-                        .fromUriString(baseUrl)
-                        .path("/api/now/table/{scTableName}/{approvalSysId}")
-                        .queryParam(SNOW_SYS_PARAM_FIELDS, joinFields(fields))
-                        .buildAndExpand(
-                                Map.of(
-                                        "scTableName", ScRequest.TABLE_NAME,
-                                        "approvalSysId", approvalRequest.getApprovalSysId()
-                                )
-                        )
-                        .encode()
-                        .toUri())
-                .header(AUTHORIZATION, auth)
-                .retrieve()
-                .bodyToMono(JsonDocument.class)
-                .map(
-                        reqInfo ->
-                                new Request(
-                                        reqInfo.read(RESULT_PREFIX + ScRequest.Fields.NUMBER),
-                                        reqInfo.read(RESULT_PREFIX + ScRequest.Fields.PRICE)
-                                )
-                );
-    }
+        List<String> requestSysIds = approvalRequests.stream()
+                .map(ApprovalRequest::getApprovalSysId)
+                .distinct()
+                .collect(Collectors.toList());
 
-    private Mono<ApprovalRequestWithItems> callForAndAggregateRequestedItems(
-            String baseUrl,
-            String auth,
-            ApprovalRequestWithInfo approvalRequest
-    ) {
-        return callForRequestedItems(baseUrl, auth, approvalRequest)
-                .collectList()
-                .map(items -> new ApprovalRequestWithItems(approvalRequest, items));
+        return callForRequestedItems(baseUrl, auth, requestSysIds);
     }
 
-    private Flux<RequestedItem> callForRequestedItems(
+    /*
+     * Each request gets its first MAX_REQUESTED_ITEM_RESULTS items, whatever requests it is
+     * asked for with. The items come ordered by request. When the page is full, the last
+     * request in it may have lost items and the requests after it all of theirs, so those are
+     * asked for again, unless the last request already has all the items it can have. At least
+     * one request in a full page has MAX_REQUESTED_ITEM_RESULTS items, so there are fewer
+     * requests each time.
+     */
+    private Mono<Map<String, List<RequestedItem>>> callForRequestedItems(
             String baseUrl,
             String auth,
-            ApprovalRequestWithInfo approvalRequest
+            Collection<String> requestSysIds
     ) {
-         String fields = joinFields(
+        String fields = joinFields(
                 ScRequestedItem.Fields.SYS_ID,
                 ScRequestedItem.Fields.PRICE,
                 ScRequestedItem.Fields.REQUEST,
                 ScRequestedItem.Fields.SHORT_DESCRIPTION,
                 ScRequestedItem.Fields.QUANTITY
         );
+        int limit = MAX_REQUESTED_ITEM_RESULTS * requestSysIds.size();
 
         return rest.get()
                 .uri(UriComponentsBuilder
                         .fromUriString(baseUrl)
                         .path("/api/now/table/{scTableName}")
-                        .queryParam(SNOW_SYS_PARAM_FIELDS, joinFields(fields))
-                        .queryParam(SNOW_SYS_PARAM_LIMIT, MAX_APPROVAL_RESULTS)
-                        .queryParam(ScRequestedItem.Fields.REQUEST.toString(), approvalRequest.getApprovalSysId())
+                        .queryParam(SNOW_SYS_PARAM_FIELDS, fields)
+                        .queryParam(SNOW_SYS_PARAM_LIMIT, limit)
+                        .queryParam(SNOW_SYS_PARAM_QUERY, ScRequestedItem.Fields.REQUEST + "IN" + String.join(",", requestSysIds)
+                                + "^ORDERBY" + ScRequestedItem.Fields.REQUEST
+                                + "^ORDERBY" + ScRequestedItem.Fields.SYS_ID)
                         .buildAndExpand(
                                 Map.of(
                                         "scTableName", ScRequestedItem.TABLE_NAME
@@ -294,8 +362,64 @@ public class HubServiceNowController {
                 .retrieve()
                 .bodyToMono(JsonDocument.class)
                 .flatMapMany(items -> Flux.fromIterable(items.<List<Map<String, Object>>>read("$.result[*]")))
-                .doOnEach(Reactive.wrapForItem(result -> logger.trace("convertJsonDocToApprovalReq: result={}", result)))
-                .map(this::convertJsonDocToRequestedItem);
+                .doOnEach(Reactive.wrapForItem(logger::isTraceEnabled, result -> logger.trace("convertJsonDocToRequestedItem: result={}", result)))
+                .map(this::convertJsonDocToRequestedItem)
+                .collectList()
+                .flatMap(Reactive.wrapFlatMapper(items -> {
+                    Map<String, List<RequestedItem>> itemsByRequest = new LinkedHashMap<>();
+                    for (RequestedItem item : items) {
+                        List<RequestedItem> requestItems = itemsByRequest.computeIfAbsent(item.getRequestSysId(), requestSysId -> new ArrayList<>());
+                        if (requestItems.size() < MAX_REQUESTED_ITEM_RESULTS) {
+                            requestItems.add(item);
+                        }
+                    }
+
+                    if (items.size() < limit) {
+                        return Mono.just(itemsByRequest);
+                    }
+                    return callForTruncatedItems(baseUrl, auth, requestSysIds, itemsByRequest);
+                }));
+    }
+
+    private Mono<Map<String, List<RequestedItem>>> callForTruncatedItems(
+            String baseUrl,
+            String auth,
+            Collection<String> requestSysIds,
+            Map<String, List<RequestedItem>> itemsByRequest
+    ) {
+        String lastRequestSysId = null;
+        for (String requestSysId : itemsByRequest.keySet()) {
+            lastRequestSysId = requestSysId;
+        }
+        if (lastRequestSysId != null && itemsByRequest.get(lastRequestSysId).size() < MAX_REQUESTED_ITEM_RESULTS) {
+            itemsByRequest.remove(lastRequestSysId);
+        }
+
+        List<String> truncated = requestSysIds.stream()
+                .filter(requestSysId -> !itemsByRequest.containsKey(requestSysId))
+                .collect(Collectors.toList());
+        if (truncated.isEmpty()) {
+            return Mono.just(itemsByRequest);
+        }
+
+        logger.debug("Requested items were truncated, asking again for the items of: {}", truncated);
+        return callForRequestedItems(baseUrl, auth, truncated)
+                .map(moreItemsByRequest -> {
+                    itemsByRequest.putAll(moreItemsByRequest);
+                    return itemsByRequest;
+                });
+    }
+
+    private static List<ApprovalRequestWithItems> withItems(
+            List<ApprovalRequestWithInfo> approvalRequests,
+            Map<String, List<RequestedItem>> itemsByRequest
+    ) {
+        return approvalRequests.stream()
+                .map(approvalRequest -> new ApprovalRequestWithItems(
+                        approvalRequest,
+                        List.copyOf(itemsByRequest.getOrDefault(approvalRequest.getApprovalSysId(), List.of()))
+                ))
+                .collect(Collectors.toList());
     }
 
     private RequestedItem convertJsonDocToRequestedItem(
@@ -334,7 +458,7 @@ public class HubServiceNowController {
                 .queryParam("sys_id", info.getApprovalSysId())
                 .toUriString();
 
-        final Card.Builder card = new Card.Builder()
+        final Card.Builder card = new Card.Builder(cardHashMode)
                 .setName("ServiceNow") // TODO - remove this in APF-536
                 .setTemplate(routingPrefix + "templates/generic.hbs")
                 .setHeader(
@@ -447,11 +571,13 @@ public class HubServiceNowController {
             consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE
     )
     public Mono<Map<String, Object>> approve(
+            @RequestHeader(AUTHORIZATION) String authorization,
             @RequestHeader(AUTH_HEADER) String auth,
             @RequestHeader(BASE_URL_HEADER) String baseUrl,
             @PathVariable("requestSysId") String requestSysId
     ) {
-        return updateRequest(auth, baseUrl, requestSysId, SysApprovalApprover.States.APPROVED, null);
+        return updateRequest(auth, baseUrl, requestSysId, SysApprovalApprover.States.APPROVED, null)
+                .doOnSuccess(ignored -> cardResponseCache.invalidate(baseUrl, AuthUtil.extractUserEmail(authorization)));
     }
 
     private Mono<Map<String, Object>> updateRequest(
@@ -505,12 +631,14 @@ public class HubServiceNowController {
             consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE
     )
     public Mono<Map<String, Object>> reject(
+            @RequestHeader(AUTHORIZATION) String authorization,
             @RequestHeader(AUTH_HEADER) String auth,
             @RequestHeader(BASE_URL_HEADER) String baseUrl,
             @PathVariable("requestSysId") String requestSysId,
             @Valid RejectForm form
     ) {
-        return updateRequest(auth, baseUrl, requestSysId, SysApprovalApprover.States.REJECTED, form.getReason());
+        return updateRequest(auth, baseUrl, requestSysId, SysApprovalApprover.States.REJECTED, form.getReason())
+                .doOnSuccess(ignored -> cardResponseCache.invalidate(baseUrl, AuthUtil.extractUserEmail(authorization)));
     }
 
 }
@@ -42,6 +42,22 @@ final class SysApprovalApprover {
          */
         SYSAPPROVAL("sysapproval"),
 
+        /**
+         * The number of the sc_request record to be approved, dot-walked
+         * through sysapproval.
+         *
+         * Example: REQ0010001
+         */
+        SYSAPPROVAL_NUMBER("sysapproval.number"),
+
+        /**
+         * The total price of the sc_request record to be approved,
+         * dot-walked through sysapproval.
+         *
+         * Example: 100.99
+         */
+        SYSAPPROVAL_PRICE("sysapproval.price"),
+
         /**
          * The comments for an approval record.
          *
@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.hub.servicenow;
+
+import com.vmware.connectors.test.ControllerTestsBase;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.HttpMethod.PATCH;
+import static org.springframework.http.MediaType.APPLICATION_FORM_URLENCODED;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+@TestPropertySource(properties = "connectors.card-cache.ttl-seconds=600")
+class HubServiceNowCardCacheTest extends ControllerTestsBase {
+
+    private static final String SNOW_AUTH_TOKEN = "test-GOOD-auth-token";
+
+    @Test
+    void testRepeatedPollsAreCached() throws Exception {
+        trainServiceNowForUser("user-not-found.json");
+
+        String expected = fromFile("/servicenow/responses/success/cards/email-not-found.json");
+
+        // Only the first poll goes to ServiceNow
+        requestCards().expectStatus().isOk().expectBody().json(expected);
+        requestCards().expectStatus().isOk().expectBody().json(expected);
+    }
+
+    @Test
+    void testApproveInvalidatesCachedCards() throws Exception {
+        // The poll after the approval has to go back to ServiceNow, though the user is already known
+        trainServiceNowForUser("user.json");
+        trainServiceNowForApprovals();
+        mockBackend.expect(requestTo("/api/now/table/sysapproval_approver/test-ticket-id?sysparm_fields=sys_id,state,comments"))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(PATCH))
+                .andRespond(withSuccess(fromFile("/servicenow/fake/approve.json"), APPLICATION_JSON));
+        trainServiceNowForApprovals();
+
+        requestCards().expectStatus().isOk();
+
+        doPost("/api/v1/tickets/test-ticket-id/approve", APPLICATION_FORM_URLENCODED, "valid/actions/approve.form")
+                .expectStatus().isOk();
+
+        requestCards().expectStatus().isOk();
+    }
+
+    private void trainServiceNowForUser(String userFile) throws Exception {
+        mockBackend.expect(requestTo("/api/now/table/sys_user?sysparm_fields=sys_id&sysparm_limit=1&email=admin@acme.com"))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/servicenow/fake/" + userFile), APPLICATION_JSON));
+    }
+
+    private void trainServiceNowForApprovals() throws Exception {
+        mockBackend.expect(requestTo("/api/now/table/sysapproval_approver?sysparm_fields=sys_id,sysapproval,sysapproval.number,sysapproval.price,comments,due_date,sys_created_by&sysparm_limit=50&sysparm_offset=0&sysparm_query=ORDERBYsys_id&source_table=sc_request&state=requested&approver=test-user-id"))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/servicenow/fake/no-approval-requests.json"), APPLICATION_JSON));
+    }
+
+    private WebTestClient.ResponseSpec requestCards() throws Exception {
+        return doPost("/cards/requests", APPLICATION_JSON, "valid/cards/card.json");
+    }
+
+    private WebTestClient.ResponseSpec doPost(String path, MediaType contentType, String requestFile) throws Exception {
+        return webClient.post()
+                .uri(path)
+                .contentType(contentType)
+                .accept(APPLICATION_JSON)
+                .header(X_AUTH_HEADER, "Bearer " + SNOW_AUTH_TOKEN)
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header("x-routing-prefix", "https://hero/connectors/servicenow/")
+                .headers(headers -> headers(headers, path))
+                .syncBody(fromFile("/servicenow/requests/" + requestFile))
+                .exchange();
+    }
+}
@@ -177,46 +177,42 @@ class HubServiceNowControllerTest extends ControllerTestsBase {
         assertThat(body, sameJSONAs(fromFile(responseFile).replace("${SNOW_BASE_URL}", mockBackend.url(""))).allowingAnyArrayOrdering());
     }
 
-    private void trainServiceNowForCards() throws Exception {
-        mockBackend.expect(requestTo("/api/now/table/sys_user?sysparm_fields=sys_id&sysparm_limit=1&email=admin@acme.com"))
-                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
-                .andExpect(method(GET))
-                .andRespond(withSuccess(fromFile("/servicenow/fake/user.json"), APPLICATION_JSON));
-
-        mockBackend.expect(requestTo("/api/now/table/sysapproval_approver?sysparm_fields=sys_id,sysapproval,comments,due_date,sys_created_by&sysparm_limit=50&source_table=sc_request&state=requested&approver=test-user-id"))
-                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
-                .andExpect(method(GET))
-                .andRespond(withSuccess(fromFile("/servicenow/fake/approval-requests.json"), APPLICATION_JSON));
+    @Test
+    void testRequestCardsNoApprovalRequests() throws Exception {
+        trainServiceNowForUser();
 
-        mockBackend.expect(requestTo("/api/now/table/sc_request/test-sc-request-id-1?sysparm_fields=sys_id,price,number"))
+        mockBackend.expect(requestTo("/api/now/table/sysapproval_approver?sysparm_fields=sys_id,sysapproval,sysapproval.number,sysapproval.price,comments,due_date,sys_created_by&sysparm_limit=50&sysparm_offset=0&sysparm_query=ORDERBYsys_id&source_table=sc_request&state=requested&approver=test-user-id"))
                 .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
                 .andExpect(method(GET))
-                .andRespond(withSuccess(fromFile("/servicenow/fake/request-1.json"), APPLICATION_JSON));
+                .andRespond(withSuccess(fromFile("/servicenow/fake/no-approval-requests.json"), APPLICATION_JSON));
 
-        mockBackend.expect(requestTo("/api/now/table/sc_request/test-sc-request-id-2?sysparm_fields=sys_id,price,number"))
-                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
-                .andExpect(method(GET))
-                .andRespond(withSuccess(fromFile("/servicenow/fake/request-2.json"), APPLICATION_JSON));
+        // No sc_req_item call when there is nothing to approve
+        requestCards(SNOW_AUTH_TOKEN, "valid/cards/card.json")
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(APPLICATION_JSON)
+                .expectBody().json(fromFile("/servicenow/responses/success/cards/email-not-found.json"));
+    }
 
-        mockBackend.expect(requestTo("/api/now/table/sc_request/test-sc-request-id-3?sysparm_fields=sys_id,price,number"))
+    private void trainServiceNowForUser() throws Exception {
+        mockBackend.expect(requestTo("/api/now/table/sys_user?sysparm_fields=sys_id&sysparm_limit=1&email=admin@acme.com"))
                 .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
                 .andExpect(method(GET))
-                .andRespond(withSuccess(fromFile("/servicenow/fake/request-3.json"), APPLICATION_JSON));
+                .andRespond(withSuccess(fromFile("/servicenow/fake/user.json"), APPLICATION_JSON));
+    }
 
-        mockBackend.expect(requestTo("/api/now/table/sc_req_item?sysparm_fields=sys_id,price,request,short_description,quantity&sysparm_limit=50&request=test-sc-request-id-1"))
-                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
-                .andExpect(method(GET))
-                .andRespond(withSuccess(fromFile("/servicenow/fake/requested-items-1.json"), APPLICATION_JSON));
+    private void trainServiceNowForCards() throws Exception {
+        trainServiceNowForUser();
 
-        mockBackend.expect(requestTo("/api/now/table/sc_req_item?sysparm_fields=sys_id,price,request,short_description,quantity&sysparm_limit=50&request=test-sc-request-id-2"))
+        mockBackend.expect(requestTo("/api/now/table/sysapproval_approver?sysparm_fields=sys_id,sysapproval,sysapproval.number,sysapproval.price,comments,due_date,sys_created_by&sysparm_limit=50&sysparm_offset=0&sysparm_query=ORDERBYsys_id&source_table=sc_request&state=requested&approver=test-user-id"))
                 .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
                 .andExpect(method(GET))
-                .andRespond(withSuccess(fromFile("/servicenow/fake/requested-items-2.json"), APPLICATION_JSON));
+                .andRespond(withSuccess(fromFile("/servicenow/fake/approval-requests.json"), APPLICATION_JSON));
 
-        mockBackend.expect(requestTo("/api/now/table/sc_req_item?sysparm_fields=sys_id,price,request,short_description,quantity&sysparm_limit=50&request=test-sc-request-id-3"))
+        // The items of all the requests in one call
+        mockBackend.expect(requestTo("/api/now/table/sc_req_item?sysparm_fields=sys_id,price,request,short_description,quantity&sysparm_limit=150&sysparm_query=requestINtest-sc-request-id-1,test-sc-request-id-2,test-sc-request-id-3%5EORDERBYrequest%5EORDERBYsys_id"))
                 .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
                 .andExpect(method(GET))
-                .andRespond(withSuccess(fromFile("/servicenow/fake/requested-items-3.json"), APPLICATION_JSON));
+                .andRespond(withSuccess(fromFile("/servicenow/fake/requested-items.json"), APPLICATION_JSON));
     }
 
     /////////////////////////////
@@ -0,0 +1,138 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.hub.servicenow;
+
+import com.vmware.connectors.test.ControllerTestsBase;
+import com.vmware.connectors.test.JsonNormalizer;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.not;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpMethod.GET;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
+
+@TestPropertySource(properties = {
+        "servicenow.approvals.page-size=2",
+        "servicenow.approvals.max-results=4"
+})
+class HubServiceNowPagingTest extends ControllerTestsBase {
+
+    private static final String SNOW_AUTH_TOKEN = "test-GOOD-auth-token";
+
+    private static final String APPROVAL_REQUESTS_PATH = "/api/now/table/sysapproval_approver?sysparm_fields=sys_id,sysapproval,sysapproval.number,sysapproval.price,comments,due_date,sys_created_by"
+            + "&sysparm_limit=2&sysparm_offset=%d&sysparm_query=ORDERBYsys_id&source_table=sc_request&state=requested&approver=test-user-id";
+
+    private static final String REQUESTED_ITEMS_PATH = "/api/now/table/sc_req_item?sysparm_fields=sys_id,price,request,short_description,quantity&sysparm_limit=%d&sysparm_query=requestIN%s%%5EORDERBYrequest%%5EORDERBYsys_id";
+
+    @Test
+    void testApprovalRequestsArePaged() throws Exception {
+        expect("/api/now/table/sys_user?sysparm_fields=sys_id&sysparm_limit=1&email=admin@acme.com", "user.json");
+
+        // The second page is short, so there is no third
+        expect(String.format(APPROVAL_REQUESTS_PATH, 0), "approval-requests-page-1.json");
+        expect(String.format(APPROVAL_REQUESTS_PATH, 2), "approval-requests-page-2.json");
+
+        // The items of each page in one call
+        expect(String.format(REQUESTED_ITEMS_PATH, 100, "test-sc-request-id-1,test-sc-request-id-2"), "requested-items.json");
+        expect(String.format(REQUESTED_ITEMS_PATH, 50, "test-sc-request-id-3"), "requested-items.json");
+
+        String body = webClient.post()
+                .uri("/cards/requests")
+                .contentType(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .header(X_AUTH_HEADER, "Bearer " + SNOW_AUTH_TOKEN)
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header("x-routing-prefix", "https://hero/connectors/servicenow/")
+                .headers(headers -> headers(headers, "/cards/requests"))
+                .syncBody(fromFile("/servicenow/requests/valid/cards/card.json"))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collect(Collectors.joining())
+                .map(JsonNormalizer::forCards)
+                .block();
+
+        String expected = fromFile("/servicenow/responses/success/cards/card.json").replace("${SNOW_BASE_URL}", mockBackend.url(""));
+        assertThat(body, sameJSONAs(expected).allowingAnyArrayOrdering());
+    }
+
+    @Test
+    void testTruncatedRequestedItemsAreAskedForAgain() throws Exception {
+        expect("/api/now/table/sys_user?sysparm_fields=sys_id&sysparm_limit=1&email=admin@acme.com", "user.json");
+        expect(String.format(APPROVAL_REQUESTS_PATH, 0), "approval-requests-page-1.json");
+        expect(String.format(APPROVAL_REQUESTS_PATH, 2), "approval-requests-page-2.json");
+
+        // The page is full, the first request gets its first 50 items and the second, which
+        // may have been cut off, is asked for on its own
+        expectItems(String.format(REQUESTED_ITEMS_PATH, 100, "test-sc-request-id-1,test-sc-request-id-2"),
+                requestedItems("test-sc-request-id-1", 60, "Apple iPhone 6"),
+                requestedItems("test-sc-request-id-2", 40, "Truncated item"));
+        expectItems(String.format(REQUESTED_ITEMS_PATH, 50, "test-sc-request-id-2"),
+                requestedItems("test-sc-request-id-2", 45, "Truncated item"));
+        expect(String.format(REQUESTED_ITEMS_PATH, 50, "test-sc-request-id-3"), "requested-items.json");
+
+        String body = webClient.post()
+                .uri("/cards/requests")
+                .contentType(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .header(X_AUTH_HEADER, "Bearer " + SNOW_AUTH_TOKEN)
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header("x-routing-prefix", "https://hero/connectors/servicenow/")
+                .headers(headers -> headers(headers, "/cards/requests"))
+                .syncBody(fromFile("/servicenow/requests/valid/cards/card.json"))
+                .exchange()
+                .expectStatus().isOk()
+                .returnResult(String.class)
+                .getResponseBody()
+                .collect(Collectors.joining())
+                .block();
+
+        assertThat(body, containsString("Apple iPhone 6 #49."));
+        assertThat(body, not(containsString("Apple iPhone 6 #50.")));
+        assertThat(body, containsString("Truncated item #44."));
+    }
+
+    @SafeVarargs
+    private void expectItems(String path, List<String>... items) {
+        String response = Stream.of(items)
+                .flatMap(List::stream)
+                .collect(Collectors.joining(", ", "{\"result\": [", "]}"));
+        mockBackend.expect(requestTo(path))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(response, APPLICATION_JSON));
+    }
+
+    private static List<String> requestedItems(String requestSysId, int count, String description) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> String.format("{\"price\": \"1.00\", \"request\": {\"value\": \"%s\"}, "
+                        + "\"short_description\": \"%s #%d.\", \"sys_id\": \"%s-item-%03d\", \"quantity\": \"1\"}",
+                        requestSysId, description, i, requestSysId, i))
+                .collect(Collectors.toList());
+    }
+
+    private void expect(String path, String responseFile) throws Exception {
+        mockBackend.expect(requestTo(path))
+                .andExpect(header(AUTHORIZATION, "Bearer " + SNOW_AUTH_TOKEN))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(fromFile("/servicenow/fake/" + responseFile), APPLICATION_JSON));
+    }
+
+}
@@ -6,6 +6,8 @@
 package com.vmware.connectors.jira;
 
 import com.google.common.collect.ImmutableMap;
+import com.vmware.connectors.common.cache.IdentityResolver;
+import com.vmware.connectors.common.json.CompiledPath;
 import com.vmware.connectors.common.json.JsonDocument;
 import com.vmware.connectors.common.payloads.request.CardRequest;
 import com.vmware.connectors.common.payloads.response.*;
@@ -47,13 +49,33 @@ public class JiraController {
 
     private static final int COMMENTS_SIZE = 2;
 
+    private static final CompiledPath USER_NAME = CompiledPath.compile("$.name");
+    private static final CompiledPath ISSUE_ID = CompiledPath.compile("$.id");
+    private static final CompiledPath ISSUE_KEY = CompiledPath.compile("$.key");
+    private static final CompiledPath FIELDS = CompiledPath.compile("$.fields");
+
+    // Relative to FIELDS
+    private static final CompiledPath SUMMARY = CompiledPath.compile("$.summary");
+    private static final CompiledPath FIX_VERSIONS = CompiledPath.compile("$.fixVersions[*].name");
+    private static final CompiledPath COMPONENTS = CompiledPath.compile("$.components[*].name");
+    private static final CompiledPath COMMENTS = CompiledPath.compile("$.comment.comments[*]['body', 'author']");
+    private static final CompiledPath PROJECT = CompiledPath.compile("$.project.name");
+    private static final CompiledPath PRIORITY = CompiledPath.compile("$.priority.name");
+    private static final CompiledPath STATUS = CompiledPath.compile("$.status.name");
+    private static final CompiledPath RESOLUTION = CompiledPath.compile("$.resolution.name");
+    private static final CompiledPath ASSIGNEE = CompiledPath.compile("$.assignee.displayName");
+
     private final WebClient rest;
     private final CardTextAccessor cardTextAccessor;
+    private final CardHashMode cardHashMode;
+    private final IdentityResolver identityResolver;
 
     @Autowired
-    public JiraController(WebClient rest, CardTextAccessor cardTextAccessor) {
+    public JiraController(WebClient rest, CardTextAccessor cardTextAccessor, CardHashMode cardHashMode, IdentityResolver identityResolver) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
+        this.identityResolver = identityResolver;
     }
 
     @PostMapping(path = "/cards/requests", produces = APPLICATION_JSON_VALUE, consumes = APPLICATION_JSON_VALUE)
@@ -102,13 +124,19 @@ public class JiraController {
             @RequestHeader(name = JIRA_BASE_URL_HEADER) String baseUrl,
             @PathVariable String issueKey) {
         logger.debug("Adding the user to watcher list for jira issue id : {} with jira server : {}", issueKey, baseUrl);
-        return rest.get()
+        return getUserName(jiraAuth, baseUrl)
+                .flatMap(user -> addUserToWatcher(user, jiraAuth, baseUrl, issueKey))
+                .map(status -> ResponseEntity.status(status).<Void>build());
+    }
+
+    private Mono<String> getUserName(String jiraAuth, String baseUrl) {
+        // The credential alone says who the user is
+        return identityResolver.resolve("jira", baseUrl, jiraAuth, null, () -> rest.get()
                 .uri(baseUrl + "/rest/api/2/myself")
                 .header(AUTHORIZATION, jiraAuth)
                 .retrieve()
                 .bodyToMono(JsonDocument.class)
-                .flatMap(body -> addUserToWatcher(body, jiraAuth, baseUrl, issueKey))
-                .map(status -> ResponseEntity.status(status).<Void>build());
+                .map(body -> body.read(USER_NAME)));
     }
 
     @GetMapping("/test-auth")
@@ -122,9 +150,8 @@ public class JiraController {
                 .then(Mono.just(ResponseEntity.noContent().<Void>build()));
     }
 
-    private Mono<HttpStatus> addUserToWatcher(JsonDocument jiraUserDetails, String jiraAuth,
+    private Mono<HttpStatus> addUserToWatcher(String user, String jiraAuth,
                                               String baseUrl, String issueKey) {
-        String user = jiraUserDetails.read("$.name");
         return rest.post()
                 .uri(baseUrl + "/rest/api/2/issue/{issueKey}/watchers", issueKey)
                 .header(AUTHORIZATION, jiraAuth)
@@ -149,7 +176,7 @@ public class JiraController {
                         routingPrefix,
                         locale,
                         request)))
-                .doOnEach(Reactive.wrapForItem(card -> logger.debug("Created card. {} -> {}", issueId, card.getHeader().getTitle())));
+                .doOnEach(Reactive.wrapForItem(logger::isDebugEnabled, card -> logger.debug("Created card. {} -> {}", issueId, card.getHeader().getTitle())));
 
     }
 
@@ -168,11 +195,11 @@ public class JiraController {
                                         String routingPrefix,
                                         Locale locale,
                                         ServerHttpRequest request) {
-        String issueKey = jiraResponse.read("$.key");
-        String summary = jiraResponse.read("$.fields.summary");
-        List<String> fixVersions = jiraResponse.read("$.fields.fixVersions[*].name");
-        List<String> components = jiraResponse.read("$.fields.components[*].name");
-        List<Map<String, Object>> allComments = jiraResponse.read("$.fields.comment.comments[*]['body', 'author']");
+        JsonDocument fields = jiraResponse.view(FIELDS);
+        String summary = fields.read(SUMMARY);
+        List<String> fixVersions = fields.read(FIX_VERSIONS);
+        List<String> components = fields.read(COMPONENTS);
+        List<Map<String, Object>> allComments = fields.read(COMMENTS);
         Collections.reverse(allComments);
 
         CardAction.Builder commentActionBuilder = getCommentActionBuilder(jiraResponse, routingPrefix, locale);
@@ -180,20 +207,20 @@ public class JiraController {
         CardAction.Builder openInActionBuilder = getOpenInActionBuilder(baseUrl, issueId, locale);
 
         CardBody.Builder cardBodyBuilder = new CardBody.Builder()
-                .addField(buildGeneralBodyField("project", jiraResponse.read("$.fields.project.name"), locale))
+                .addField(buildGeneralBodyField("project", fields.read(PROJECT), locale))
                 .addField(buildGeneralBodyField("components", String.join(",", components), locale))
-                .addField(buildGeneralBodyField("priority", jiraResponse.read("$.fields.priority.name"), locale))
-                .addField(buildGeneralBodyField("status", jiraResponse.read("$.fields.status.name"), locale))
-                .addField(buildGeneralBodyField("resolution", jiraResponse.read("$.fields.resolution.name"), locale))
-                .addField(buildGeneralBodyField("assignee", jiraResponse.read("$.fields.assignee.displayName"), locale))
+                .addField(buildGeneralBodyField("priority", fields.read(PRIORITY), locale))
+                .addField(buildGeneralBodyField("status", fields.read(STATUS), locale))
+                .addField(buildGeneralBodyField("resolution", fields.read(RESOLUTION), locale))
+                .addField(buildGeneralBodyField("assignee", fields.read(ASSIGNEE), locale))
                 .addField(buildGeneralBodyField("fixVersions", String.join(",", fixVersions), locale));
 
         addCommentsField(cardBodyBuilder, allComments, locale);
 
-        final Card.Builder card = new Card.Builder()
+        final Card.Builder card = new Card.Builder(cardHashMode)
                 .setName("Jira")
                 .setTemplate(routingPrefix + "templates/generic.hbs")
-                .setHeader(cardTextAccessor.getHeader(locale, summary), cardTextAccessor.getMessage("subtitle", locale, issueKey))
+                .setHeader(cardTextAccessor.getHeader(locale, summary), cardTextAccessor.getMessage("subtitle", locale, jiraResponse.<String>read(ISSUE_KEY)))
                 .setBody(cardBodyBuilder.build())
                 .addAction(commentActionBuilder.build())
                 .addAction(openInActionBuilder.build())
@@ -235,7 +262,7 @@ public class JiraController {
     private CardAction.Builder getCommentActionBuilder(JsonDocument jiraResponse, String routingPrefix, Locale locale) {
         CardAction.Builder actionBuilder = new CardAction.Builder();
         CardActionInputField.Builder inputFieldBuilder = new CardActionInputField.Builder();
-        String commentLink = "api/v1/issues/" + jiraResponse.read("$.id") + "/comment";
+        String commentLink = "api/v1/issues/" + jiraResponse.read(ISSUE_ID) + "/comment";
         inputFieldBuilder.setId("body")
                 .setFormat("textarea")
                 .setLabel(cardTextAccessor.getMessage("actions.comment.prompt.label", locale));
@@ -252,7 +279,7 @@ public class JiraController {
     private CardAction.Builder getWatchActionBuilder(JsonDocument jiraResponse,
                                                      String routingPrefix, Locale locale) {
         CardAction.Builder actionBuilder = new CardAction.Builder();
-        String watchLink = "api/v1/issues/" + jiraResponse.read("$.id") + "/watchers";
+        String watchLink = "api/v1/issues/" + jiraResponse.read(ISSUE_ID) + "/watchers";
         actionBuilder.setLabel(cardTextAccessor.getActionLabel("actions.watch", locale))
                 .setCompletedLabel(cardTextAccessor.getActionCompletedLabel("actions.watch", locale))
                 .setActionKey(CardActionKey.DIRECT)
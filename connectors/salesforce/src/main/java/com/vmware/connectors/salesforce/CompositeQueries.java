@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.salesforce;
+
+import com.google.common.collect.Lists;
+import com.vmware.connectors.common.json.JsonDocument;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import org.springframework.web.util.UriUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.web.util.UriComponentsBuilder.fromUriString;
+
+/**
+ * Runs several SOQL queries in a single round trip to Salesforce.
+ * <ul>
+ * <li>{@link #composite} sends them in one /composite request. The subrequests run one
+ * after the other, in order, and are told apart by a reference id.</li>
+ * <li>{@link #batch} sends independent queries in /composite/batch requests of up to 25
+ * subrequests each, which is as many as Salesforce takes.</li>
+ * </ul>
+ * A subrequest that fails fails the whole call with a WebClientResponseException of the
+ * subrequest's status, like the query on its own would have.
+ */
+class CompositeQueries {
+
+    static final int MAX_BATCH_SIZE = 25;
+
+    private static final String SERVICES_DATA = "services/data/";
+
+    private final WebClient rest;
+    private final String soqlQueryPath;
+    private final String compositePath;
+    private final String compositeBatchPath;
+
+    /**
+     * @param soqlQueryPath the query resource, e.g. "services/data/v44.0/query"
+     * @param compositePath the composite resource, e.g. "services/data/v44.0/composite"
+     * @param compositeBatchPath the batch resource, e.g. "services/data/v44.0/composite/batch"
+     */
+    CompositeQueries(
+            WebClient rest,
+            String soqlQueryPath,
+            String compositePath,
+            String compositeBatchPath
+    ) {
+        this.rest = rest;
+        this.soqlQueryPath = StringUtils.removeStart(soqlQueryPath, "/");
+        this.compositePath = compositePath;
+        this.compositeBatchPath = compositeBatchPath;
+    }
+
+    /**
+     * @param queries the queries to run, by reference id, in the order they should run in
+     * @return the result of each query, by reference id
+     */
+    Mono<Map<String, JsonDocument>> composite(String baseUrl, String auth, Map<String, String> queries) {
+        List<Map<String, String>> subrequests = new ArrayList<>();
+        queries.forEach((referenceId, soql) -> subrequests.add(Map.of(
+                "method", "GET",
+                // Composite subrequest URLs start from the root of the instance
+                "url", "/" + soqlQueryPath + "?q=" + encode(soql),
+                "referenceId", referenceId
+        )));
+
+        return post(baseUrl, compositePath, auth, Map.of("allOrNone", false, "compositeRequest", subrequests))
+                .map(response -> {
+                    Map<String, JsonDocument> results = new LinkedHashMap<>();
+                    response.forEach("$.compositeResponse", subresponse -> results.put(
+                            subresponse.read("$.referenceId"),
+                            checkStatus(subresponse, "$.httpStatusCode", "$.body")
+                    ));
+                    return results;
+                });
+    }
+
+    /**
+     * @param queries independent queries
+     * @return the result of each query, in the order of the queries
+     */
+    Flux<JsonDocument> batch(String baseUrl, String auth, List<String> queries) {
+        // Batch subrequest URLs start from services/data, with the API version
+        String queryPath = StringUtils.removeStart(soqlQueryPath, SERVICES_DATA);
+
+        return Flux.fromIterable(Lists.partition(queries, MAX_BATCH_SIZE))
+                .flatMapSequential(batch -> {
+                    List<Map<String, String>> subrequests = new ArrayList<>();
+                    batch.forEach(soql -> subrequests.add(Map.of(
+                            "method", "GET",
+                            "url", queryPath + "?q=" + encode(soql)
+                    )));
+                    return post(baseUrl, compositeBatchPath, auth, Map.of("batchRequests", subrequests));
+                })
+                .concatMapIterable(response -> {
+                    List<JsonDocument> results = new ArrayList<>();
+                    response.forEach("$.results", result -> results.add(checkStatus(result, "$.statusCode", "$.result")));
+                    return results;
+                });
+    }
+
+    private Mono<JsonDocument> post(String baseUrl, String path, String auth, Object body) {
+        URI uri = fromUriString(baseUrl)
+                .path(path)
+                .build()
+                .toUri();
+
+        return rest.post()
+                .uri(uri)
+                .header(AUTHORIZATION, auth)
+                .contentType(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .syncBody(body)
+                .retrieve()
+                .bodyToMono(JsonDocument.class);
+    }
+
+    private static JsonDocument checkStatus(JsonDocument subresponse, String statusPath, String bodyPath) {
+        int status = subresponse.read(statusPath);
+        // Not HttpStatus.valueOf(), which throws for codes it does not know
+        if (status >= 400) {
+            String body = String.valueOf(subresponse.<Object>read(bodyPath));
+            throw WebClientResponseException.create(status, "Composite subrequest failed", HttpHeaders.EMPTY,
+                    body.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+        }
+        return subresponse.view(bodyPath);
+    }
+
+    // Everything but the unreserved characters, so that a "+" in an email is never read as a space
+    private static String encode(String soql) {
+        return UriUtils.encode(soql, StandardCharsets.UTF_8);
+    }
+}
@@ -5,11 +5,15 @@
 
 package com.vmware.connectors.salesforce;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
 
+import java.time.Duration;
+
 /**
  * Created by supriyas on 9/16/16.
  */
@@ -23,4 +27,12 @@ public class SalesForceConnectorApplication {
         SpringApplication.run(SalesForceConnectorApplication.class, args);
     }
 
+    @Bean
+    SenderCache senderCache(
+            @Value("${sf.senderCacheTtlSeconds:60}") long ttlSeconds,
+            @Value("${sf.senderCacheMaxEntries:10000}") long maxEntries
+    ) {
+        return new SenderCache(Duration.ofSeconds(ttlSeconds), maxEntries);
+    }
+
 }
@@ -11,6 +11,7 @@ import com.jayway.jsonpath.JsonPath;
 import com.vmware.connectors.common.json.JsonDocument;
 import com.vmware.connectors.common.payloads.request.CardRequest;
 import com.vmware.connectors.common.payloads.response.*;
+import com.vmware.connectors.common.template.SoqlQuery;
 import com.vmware.connectors.common.utils.CardTextAccessor;
 import com.vmware.connectors.common.utils.CommonUtils;
 import com.vmware.connectors.common.utils.Reactive;
@@ -54,25 +55,32 @@ public class SalesforceController {
     // Unfortunately, SOQL doesn't have a "SELECT DISTINCT" query, so we get back one row per Contact, not one per Account,
     //     so an Account with four Contacts will yield four results
     // We will have to eliminate duplicate Accounts and filter out those Accounts where the sender is already a Contact
-    private static final String QUERY_FMT_ACCOUNT =
-            "SELECT email, account.id, account.name FROM contact WHERE email LIKE '%%%s' AND account.owner.email = '%s'";
+    private static final SoqlQuery QUERY_ACCOUNT = SoqlQuery.compile(
+            "SELECT email, account.id, account.name FROM contact WHERE email LIKE ${domain} AND account.owner.email = ${email}");
 
     // Query format to get contact details of email sender, from contact list owned by the user.
-    private static final String QUERY_FMT_CONTACT =
-            "SELECT name, account.name, MobilePhone FROM contact WHERE email = '%s'";
+    private static final SoqlQuery QUERY_CONTACT = SoqlQuery.compile(
+            "SELECT name, account.name, MobilePhone FROM contact WHERE email = ${email}");
 
     // Find all Opportunity Ids related to sender email, based on condition.
-    private static final String QUERY_FMT_CONTACT_OPPORTUNITY = "SELECT Opportunity.Id FROM OpportunityContactRole " +
-            "WHERE contact.email = '%s' AND Opportunity.StageName NOT IN ('Closed Lost', 'Closed Won')";
+    private static final SoqlQuery QUERY_CONTACT_OPPORTUNITY = SoqlQuery.compile("SELECT Opportunity.Id FROM OpportunityContactRole " +
+            "WHERE contact.email = ${email} AND Opportunity.StageName NOT IN ('Closed Lost', 'Closed Won')");
 
     // Query everything needed for making Opportunity cards.
-    private static final String QUERY_FMT_OPPORTUNITY_INFO = "SELECT id, name, CloseDate, NextStep, StageName, " +
+    private static final SoqlQuery QUERY_OPPORTUNITY_INFO = SoqlQuery.compile("SELECT id, name, CloseDate, NextStep, StageName, " +
             "Account.name, Account.Owner.Name, FORMAT(Opportunity.amount), FORMAT(Opportunity.ExpectedRevenue), (SELECT User.Email from OpportunityTeamMembers), " +
-            "(SELECT InsertedBy.Name, Body from Feeds) FROM opportunity WHERE opportunity.id IN ('%s')";
+            "(SELECT InsertedBy.Name, Body from Feeds) FROM opportunity WHERE opportunity.id IN (${ids})");
 
-    // Query format to get list of all opportunities that are related to an account.
-    private static final String QUERY_FMT_ACCOUNT_OPPORTUNITY =
-            "SELECT id, name FROM opportunity WHERE account.id = '%s'";
+    // Everything needed for making Opportunity cards, for all the open Opportunities of the email sender, in one query.
+    private static final SoqlQuery QUERY_CONTACT_OPPORTUNITY_INFO = SoqlQuery.compile("SELECT id, name, CloseDate, NextStep, StageName, " +
+            "Account.name, Account.Owner.Name, FORMAT(Opportunity.amount), FORMAT(Opportunity.ExpectedRevenue), (SELECT User.Email from OpportunityTeamMembers), " +
+            "(SELECT InsertedBy.Name, Body from Feeds) FROM opportunity WHERE opportunity.id IN " +
+            "(SELECT OpportunityId FROM OpportunityContactRole WHERE contact.email = ${email}) " +
+            "AND StageName NOT IN ('Closed Lost', 'Closed Won')");
+
+    // Query format to get list of all opportunities that are related to any of a list of accounts.
+    private static final SoqlQuery QUERY_ACCOUNT_OPPORTUNITY = SoqlQuery.compile(
+            "SELECT id, name, AccountId FROM opportunity WHERE AccountId IN (${accountIds})");
 
     private static final String ADD_CONTACT_PATH = "accounts/{accountId}/contacts";
 
@@ -82,6 +90,14 @@ public class SalesforceController {
 
     private static final String OPPORTUNITY_ID = "opportunityId";
 
+    private static final String EMAIL_PLACEHOLDER = "email";
+    private static final String RECORDS_PATH = "$.records";
+
+    // Reference ids of the queries of a composite cards request
+    private static final String CONTACTS_REF = "contacts";
+    private static final String OPPORTUNITIES_REF = "opportunities";
+    private static final String ACCOUNTS_REF = "accounts";
+
     private final String sfSoqlQueryPath;
 
     private final String sfAddContactPath;
@@ -94,21 +110,39 @@ public class SalesforceController {
 
     private final CardTextAccessor cardTextAccessor;
 
+    private final CardHashMode cardHashMode;
+
+    private final CompositeQueries compositeQueries;
+
+    private final boolean compositeRequests;
+
+    private final SenderCache senderCache;
+
     @Autowired
+    @SuppressWarnings("PMD.ExcessiveParameterList")
     public SalesforceController(
             WebClient rest,
             CardTextAccessor cardTextAccessor,
+            CardHashMode cardHashMode,
+            SenderCache senderCache,
             @Value("${sf.soqlQueryPath}") String sfSoqlQueryPath,
             @Value("${sf.addContactPath}") String sfAddContactPath,
             @Value("${sf.opportunityContactLinkPath}") String sfOpportunityContactLinkPath,
-            @Value("${sf.opportunityFieldsUpdatePath}") final String sfOpportunityFieldsUpdatePath
+            @Value("${sf.opportunityFieldsUpdatePath}") final String sfOpportunityFieldsUpdatePath,
+            @Value("${sf.compositePath}") String sfCompositePath,
+            @Value("${sf.compositeBatchPath}") String sfCompositeBatchPath,
+            @Value("${sf.compositeRequests:false}") boolean compositeRequests
     ) {
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
         this.sfSoqlQueryPath = sfSoqlQueryPath;
         this.sfAddContactPath = sfAddContactPath;
         this.sfOpportunityContactLinkPath = sfOpportunityContactLinkPath;
         this.sfOpportunityFieldsUpdatePath = sfOpportunityFieldsUpdatePath;
+        this.compositeQueries = new CompositeQueries(rest, sfSoqlQueryPath, sfCompositePath, sfCompositeBatchPath);
+        this.compositeRequests = compositeRequests;
+        this.senderCache = senderCache;
     }
 
 
@@ -116,20 +150,6 @@ public class SalesforceController {
     // Methods common to both the cards request and the actions
     ///////////////////////////////////////////////////////////////////
 
-    /**
-     * Escape special characters to prevent user input from SOQL injection:
-     *
-     * https://developer.salesforce.com/page/Secure_Coding_SQL_Injection
-     * https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_quotedstringescapes.htm
-     * https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_reservedcharacters.htm
-     *
-     * @param value the user input to escape
-     * @return the escaped string value that should be safe to string concat into a SOQL query
-     */
-    private String soqlEscape(String value) {
-        return value.replace("\\", "\\\\").replace("\'", "\\\'");
-    }
-
     /**
      * Retrieve contact data from Salesforce.
      *
@@ -207,6 +227,12 @@ public class SalesforceController {
             return Mono.error(new MissingEmailException("Must specify both the sender and user emails"));
         }
 
+        if (compositeRequests) {
+            return getCardsInOneRoundTrip(sender, baseUrl, routingPrefix, auth, user, senderDomain, locale, request)
+                    .collectList()
+                    .map(this::toCards);
+        }
+
         return retrieveContactInfos(auth, baseUrl, sender)
                 .flatMapMany(contacts -> getCards(contacts, sender, baseUrl, routingPrefix, auth,
                         user, senderDomain, locale, request))
@@ -214,15 +240,57 @@ public class SalesforceController {
                 .map(this::toCards);
     }
 
+    /*
+     * Runs the sender's contact, their open opportunities and the accounts of their domain
+     * in one /composite request, instead of one query after the other. Only when the sender
+     * isn't a contact yet is there a second round trip, for the opportunities of the accounts.
+     */
+    private Flux<Card> getCardsInOneRoundTrip(
+            String senderEmail,
+            String baseUrl,
+            String routingPrefix,
+            String auth,
+            String userEmail,
+            String senderDomain,
+            Locale locale,
+            ServerHttpRequest request
+    ) {
+        Map<String, String> queries = new LinkedHashMap<>();
+        queries.put(CONTACTS_REF, QUERY_CONTACT.bind().string(EMAIL_PLACEHOLDER, senderEmail).build());
+        queries.put(OPPORTUNITIES_REF, QUERY_CONTACT_OPPORTUNITY_INFO.bind().string(EMAIL_PLACEHOLDER, senderEmail).build());
+        queries.put(ACCOUNTS_REF, QUERY_ACCOUNT.bind().string("domain", "%" + senderDomain).string(EMAIL_PLACEHOLDER, userEmail).build());
+
+        return compositeQueries.composite(baseUrl, auth, queries)
+                .flatMapMany(results -> {
+                    JsonDocument contactDetails = results.get(CONTACTS_REF);
+                    int contactsSize = contactDetails.read("$.totalSize");
+                    if (contactsSize > 0) {
+                        logger.debug("Salesforce account already has a contact for the email: {} ", senderEmail);
+                        return Flux.concat(
+                                Flux.just(createUserDetailsCard(contactDetails, routingPrefix, locale, request)),
+                                createOpportunityCards(results.get(OPPORTUNITIES_REF), routingPrefix, locale, request, userEmail)
+                        );
+                    }
+
+                    logger.debug("Returning accounts info for domain: {} ", senderDomain);
+                    List<Map<String, Object>> contactRecords = results.get(ACCOUNTS_REF).read(RECORDS_PATH);
+                    List<SFAccount> accounts = getUniqueAccounts(contactRecords, senderEmail);
+                    return addRelatedOpportunities(accounts, baseUrl, auth)
+                            .flatMapMany(list -> createRelatedAccountsCards(list, senderEmail, routingPrefix, locale));
+                });
+    }
+
     // Retrieve contact name, account name, and phone
     private Mono<JsonDocument> retrieveContactInfos(
             String auth,
             String baseUrl,
             String senderEmail
     ) {
-        String contactSoql = String.format(QUERY_FMT_CONTACT, soqlEscape(senderEmail));
+        String contactSoql = QUERY_CONTACT.bind()
+                .string(EMAIL_PLACEHOLDER, senderEmail)
+                .build();
 
-        return retrieveContacts(auth, baseUrl, contactSoql);
+        return senderCache.contacts(baseUrl, auth, senderEmail, () -> retrieveContacts(auth, baseUrl, contactSoql));
     }
 
 
@@ -269,7 +337,7 @@ public class SalesforceController {
             List<String> ids = oppIds.read("$.records[*].Opportunity.Id");
 
             Flux<Card> opportunityCards = retrieveOpportunities(ids, baseUrl, auth)
-                    .flatMapMany(document -> createOpportunityCards(document, routingPrefix, locale, request, userEmail));
+                    .concatMap(document -> createOpportunityCards(document, routingPrefix, locale, request, userEmail));
 
             return Flux.concat(userDetailCard, opportunityCards);
         }
@@ -280,7 +348,9 @@ public class SalesforceController {
     private Mono<JsonDocument> retrieveOppIds(String senderEmail,
                                               String baseUrl,
                                               String auth) {
-        String soql = String.format(QUERY_FMT_CONTACT_OPPORTUNITY, soqlEscape(senderEmail));
+        String soql = QUERY_CONTACT_OPPORTUNITY.bind()
+                .string(EMAIL_PLACEHOLDER, senderEmail)
+                .build();
         return rest.get()
                 .uri(makeSoqlQueryUri(baseUrl, soql))
                 .header(AUTHORIZATION, auth)
@@ -288,17 +358,18 @@ public class SalesforceController {
                 .bodyToMono(JsonDocument.class);
     }
 
-    private Mono<JsonDocument> retrieveOpportunities(List<String> oppIds, String baseUrl, String auth) {
-        String idsFormat = oppIds.stream()
-                .map(this::soqlEscape)
-                .collect(Collectors.joining("', '"));
+    // A contact with a lot of opportunities gets them over several queries, to keep each URI short enough
+    private Flux<JsonDocument> retrieveOpportunities(List<String> oppIds, String baseUrl, String auth) {
+        List<String> queries = QUERY_OPPORTUNITY_INFO.bind()
+                .strings("ids", oppIds)
+                .buildAll(SoqlQuery.DEFAULT_MAX_LENGTH);
 
-        String soql = String.format(QUERY_FMT_OPPORTUNITY_INFO, idsFormat);
-        return rest.get()
-                .uri(makeSoqlQueryUri(baseUrl, soql))
-                .header(AUTHORIZATION, auth)
-                .retrieve()
-                .bodyToMono(JsonDocument.class);
+        return Flux.fromIterable(queries)
+                .concatMap(soql -> rest.get()
+                        .uri(makeSoqlQueryUri(baseUrl, soql))
+                        .header(AUTHORIZATION, auth)
+                        .retrieve()
+                        .bodyToMono(JsonDocument.class));
     }
 
     private Flux<Card> createOpportunityCards(JsonDocument opportunities,
@@ -307,65 +378,60 @@ public class SalesforceController {
                                               ServerHttpRequest request,
                                               String userEmail) {
 
-        final int oppCount = opportunities.read("$.totalSize");
-
         List<Card> oppCards = new ArrayList<>();
-        for (int oppIndex = 0; oppIndex < oppCount; oppIndex++) {
-
-            final String prefix = String.format("$.records[%d]", oppIndex);
+        opportunities.forEach(RECORDS_PATH, opportunity -> {
 
-            final String name = opportunities.read(prefix + ".Name");
+            final String name = opportunity.read("$.Name");
 
-            final List<Object> feedComments = opportunities.read(prefix + ".Feeds.records[*]");
+            final List<Object> feedComments = opportunity.read("$.Feeds.records[*]");
 
             final CardBody.Builder cardBodyBuilder = new CardBody.Builder()
                     .setDescription(cardTextAccessor.getMessage("opportunity.description", locale))
                     .addField(buildGeneralBodyField("opportunity.account",
-                            opportunities.read(prefix + ".Account.Name"), locale))
+                            opportunity.read("$.Account.Name"), locale))
                     .addField(buildGeneralBodyField("opportunity.account.owner",
-                            opportunities.read(prefix + ".Account.Owner.Name"), locale))
+                            opportunity.read("$.Account.Owner.Name"), locale))
                     .addField(buildGeneralBodyField("opportunity.closedate",
-                            opportunities.read(prefix + ".CloseDate"), locale))
+                            opportunity.read("$.CloseDate"), locale))
                     .addField(buildGeneralBodyField("opportunity.stage",
-                            opportunities.read(prefix + ".StageName"), locale))
+                            opportunity.read("$.StageName"), locale))
                     .addField(buildGeneralBodyField("opportunity.amount",
-                            opportunities.read(prefix + ".Amount"), locale))
+                            opportunity.read("$.Amount"), locale))
                     .addField(buildGeneralBodyField("opportunity.expected.revenue",
-                            opportunities.read(prefix + ".ExpectedRevenue"), locale));
+                            opportunity.read("$.ExpectedRevenue"), locale));
 
             addCommentsField(cardBodyBuilder, feedComments, locale);
 
-            final Card.Builder card = new Card.Builder()
+            final Card.Builder card = new Card.Builder(cardHashMode)
                     .setName("Salesforce")
                     .setTemplate(routingPrefix + "templates/generic.hbs")
                     .setHeader(cardTextAccessor.getMessage("opportunity.header", locale, name))
                     .setBody(cardBodyBuilder.build());
 
             // Add card action for updating next steps and close date if user email is a part of opportunity team.
-            buildCardActions(opportunities, userEmail, prefix, routingPrefix, locale, card);
+            buildCardActions(opportunity, userEmail, routingPrefix, locale, card);
 
             // Set image url.
             CommonUtils.buildConnectorImageUrl(card, request);
             oppCards.add(card.build());
-        }
+        });
 
         return Flux.fromIterable(oppCards);
     }
 
-    private void buildCardActions(final JsonDocument opportunities,
+    private void buildCardActions(final JsonDocument opportunity,
                                   final String userEmail,
-                                  final String prefix,
                                   final String routingPrefix,
                                   final Locale locale,
                                   final Card.Builder card) {
-        final String opportunityId = opportunities.read(prefix + ".Id");
+        final String opportunityId = opportunity.read("$.Id");
         if (StringUtils.isBlank(opportunityId)) {
             logger.debug("Opportunity id is empty for the user with email: {}.", userEmail);
             return;
         }
 
         // Retrieve all the opportunity team members email id.
-        final List<String> opportunityTeamEmailIds = opportunities.read(prefix + ".OpportunityTeamMembers.records[*].User.Email");
+        final List<String> opportunityTeamEmailIds = opportunity.read("$.OpportunityTeamMembers.records[*].User.Email");
         if (CollectionUtils.isEmpty(opportunityTeamEmailIds)) {
             logger.debug("Opportunity team member email ids are empty for the opportunity with ID: {}", opportunityId);
             return;
@@ -441,9 +507,10 @@ public class SalesforceController {
             Locale locale,
             ServerHttpRequest request
     ) {
-        String contactName = contactDetails.read("$.records[0].Name");
-        String contactPhNo = contactDetails.read("$.records[0].MobilePhone");
-        String contactAccountName = contactDetails.read("$.records[0].Account.Name");
+        JsonDocument contact = contactDetails.view("$.records[0]");
+        String contactName = contact.read("$.Name");
+        String contactPhNo = contact.read("$.MobilePhone");
+        String contactAccountName = contact.read("$.Account.Name");
 
         CardBody.Builder cardBodyBuilder = new CardBody.Builder()
                 .setDescription(cardTextAccessor.getMessage("senderinfo.body", locale))
@@ -451,7 +518,7 @@ public class SalesforceController {
                 .addField(buildGeneralBodyField("senderinfo.account", contactAccountName, locale))
                 .addField(buildGeneralBodyField("senderinfo.phone", contactPhNo, locale));
 
-        final Card.Builder card = new Card.Builder()
+        final Card.Builder card = new Card.Builder(cardHashMode)
                 .setName("Salesforce") // TODO - remove this in APF-536
                 .setTemplate(routingPrefix + "templates/generic.hbs")
                 .setHeader(cardTextAccessor.getMessage("senderinfo.header", locale))
@@ -488,7 +555,7 @@ public class SalesforceController {
             Locale locale
     ) {
         return retrieveAccountDetails(auth, baseUrl, userEmail, senderDomain)
-                .map(body -> body.<List<Map<String, Object>>>read("$.records"))
+                .map(body -> body.<List<Map<String, Object>>>read(RECORDS_PATH))
                 .map(contactRecords -> getUniqueAccounts(contactRecords, senderEmail))
                 .flatMap(accounts -> addRelatedOpportunities(accounts, baseUrl, auth))
                 .flatMapMany(list -> createRelatedAccountsCards(list, senderEmail, routingPrefix, locale));
@@ -500,12 +567,15 @@ public class SalesforceController {
             String userEmail,
             String senderDomain
     ) {
-        String soql = String.format(QUERY_FMT_ACCOUNT, soqlEscape(senderDomain), soqlEscape(userEmail));
-        return rest.get()
+        String soql = QUERY_ACCOUNT.bind()
+                .string("domain", "%" + senderDomain)
+                .string(EMAIL_PLACEHOLDER, userEmail)
+                .build();
+        return senderCache.domain(baseUrl, auth, userEmail, senderDomain, () -> rest.get()
                 .uri(makeSoqlQueryUri(baseUrl, soql))
                 .header(AUTHORIZATION, auth)
                 .retrieve()
-                .bodyToMono(JsonDocument.class);
+                .bodyToMono(JsonDocument.class));
     }
 
     /**
@@ -552,48 +622,76 @@ public class SalesforceController {
             String baseUrl,
             String auth
     ) {
-        // Fetch list of opportunities related to each account. Update the account objects with the result.
-        return Flux
-                .fromIterable(uniqueAccounts)
-                .flatMap(account -> supplementAccOpportunities(account, baseUrl, auth))
-                .collectList();
-    }
-
-    private Mono<SFAccount> supplementAccOpportunities(
-            SFAccount account,
+        // Fetch the opportunities of all the accounts together, then give each account its own.
+        return retrieveAccountOpportunities(uniqueAccounts, baseUrl, auth)
+                .expand(response -> retrieveNextRecords(response, baseUrl, auth))
+                .collect(HashMap<String, List<SFOpportunity>>::new, this::addOpportunities)
+                .map(opportunitiesByAccount -> uniqueAccounts.stream()
+                        .map(account -> new SFAccount(
+                                account,
+                                opportunitiesByAccount.getOrDefault(account.getId(), List.of())
+                        ))
+                        .collect(Collectors.toList()));
+    }
+
+    /*
+     * One query for all the accounts, unless the ids make it too long for a URL. The ids are
+     * sorted so that the same accounts always make the same query.
+     */
+    private Flux<JsonDocument> retrieveAccountOpportunities(
+            List<SFAccount> accounts,
             String baseUrl,
             String auth
     ) {
-        return retrieveAccountOpportunities(auth, baseUrl, account.getId())
-                .map(body -> toAccount(body, account));
+        Set<String> accountIds = accounts.stream()
+                .map(SFAccount::getId)
+                .collect(Collectors.toCollection(TreeSet::new));
+        List<String> queries = QUERY_ACCOUNT_OPPORTUNITY.bind()
+                .strings("accountIds", accountIds)
+                .buildAll(SoqlQuery.DEFAULT_MAX_LENGTH);
+
+        if (compositeRequests) {
+            return compositeQueries.batch(baseUrl, auth, queries);
+        }
+
+        return Flux.fromIterable(queries)
+                .flatMap(soql -> rest.get()
+                        .uri(makeSoqlQueryUri(baseUrl, soql))
+                        .header(AUTHORIZATION, auth)
+                        .retrieve()
+                        .bodyToMono(JsonDocument.class));
     }
 
-    private Mono<JsonDocument> retrieveAccountOpportunities(
-            String auth,
+    /*
+     * A query response carries one batch of rows (2000 by default). With all the accounts
+     * in one query there can be more, which are fetched from nextRecordsUrl until done.
+     */
+    private Mono<JsonDocument> retrieveNextRecords(
+            JsonDocument queryResponse,
             String baseUrl,
-            String accountId
+            String auth
     ) {
-        String soql = String.format(QUERY_FMT_ACCOUNT_OPPORTUNITY, soqlEscape(accountId));
+        String nextRecordsUrl = queryResponse.read("$.nextRecordsUrl");
+        if (Boolean.TRUE.equals(queryResponse.read("$.done")) || nextRecordsUrl == null) {
+            return Mono.empty();
+        }
+
+        // The URL starts from the root of the instance, e.g. "/services/data/v44.0/query/01gD0000002HU6KIAW-2000"
         return rest.get()
-                .uri(makeSoqlQueryUri(baseUrl, soql))
+                .uri(fromUriString(baseUrl).replacePath(nextRecordsUrl).build().toUri())
                 .header(AUTHORIZATION, auth)
                 .retrieve()
                 .bodyToMono(JsonDocument.class);
-
     }
 
-    private SFAccount toAccount(
-            JsonDocument accOpportunityResponse,
-            SFAccount account
+    // Groups the opportunity rows of a response by their account, in one pass
+    private void addOpportunities(
+            Map<String, List<SFOpportunity>> opportunitiesByAccount,
+            JsonDocument accOpportunityResponse
     ) {
-        return new SFAccount(
-                account,
-                accOpportunityResponse.<List<Object>>read("$.records")
-                        .stream()
-                        .map(JsonPath::parse)
-                        .map(ctx -> new SFOpportunity(ctx.read("$.Id"), ctx.read("$.Name")))
-                        .collect(Collectors.toList())
-        );
+        accOpportunityResponse.forEach(RECORDS_PATH, record -> opportunitiesByAccount
+                .computeIfAbsent(record.read("$.AccountId"), accountId -> new ArrayList<>())
+                .add(new SFOpportunity(record.read("$.Id"), record.read("$.Name"))));
     }
 
 
@@ -607,7 +705,7 @@ public class SalesforceController {
         return Flux.fromStream(accounts
                 .stream()
                 .map(acct ->
-                        new Card.Builder()
+                        new Card.Builder(cardHashMode)
                                 .setName("Salesforce")
                                 .setTemplate(routingPrefix + "templates/generic.hbs")
                                 .setHeader(cardTextAccessor.getMessage("addcontact.header", locale))
@@ -697,6 +795,7 @@ public class SalesforceController {
          * More : https://developer.salesforce.com/docs/atlas.en-us.api_rest.meta/api_rest/dome_composite_sobject_tree_flat.htm
          */
         return addContact(auth, baseUrl, accountId, form.getContactEmail(), form.getLastName(), form.getFirstName())
+                .doOnNext(entity -> senderCache.invalidate(baseUrl, form.getContactEmail()))
                 .flatMap(entity -> linkOpportunitiesToContact(entity, form.getOpportunityIds(), baseUrl, auth))
                 .map(entity -> ResponseEntity.status(entity.getStatusCode()).build());
     }
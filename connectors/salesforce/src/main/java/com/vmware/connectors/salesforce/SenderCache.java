@@ -0,0 +1,115 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.salesforce;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.vmware.connectors.common.json.JsonDocument;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Remembers, for a short while, what Salesforce said about a sender: the contacts with
+ * the sender's email, and the contacts of the accounts of the sender's domain. The same
+ * senders write to many users in a day, and the domain query is a leading-wildcard LIKE
+ * that Salesforce can't use an index for.
+ * <p>
+ * Results are scoped to the Salesforce instance and to a SHA-256 of the credential they
+ * were read with, so that one user is never shown what only another user can see.
+ * Emails and domains are compared ignoring case, like Salesforce does. Only successful
+ * results are kept.
+ * <p>
+ * Adding a contact makes the cached results for the contact's email and domain stale, so
+ * they are dropped for every user of the instance. The cache is disabled when the TTL is
+ * zero.
+ */
+class SenderCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(SenderCache.class);
+
+    // Keys are [base URL, credential hash, sender email]
+    private final Cache<List<String>, JsonDocument> contactsByEmail;
+
+    // Keys are [base URL, credential hash, user email, sender domain]
+    private final Cache<List<String>, JsonDocument> contactsByDomain;
+
+    SenderCache(Duration ttl, long maxEntries) {
+        this.contactsByEmail = buildCache(ttl, maxEntries);
+        this.contactsByDomain = buildCache(ttl, maxEntries);
+    }
+
+    private static <K, V> Cache<K, V> buildCache(Duration ttl, long maxEntries) {
+        if (ttl.isZero() || ttl.isNegative()) {
+            return null;
+        }
+        return CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+    }
+
+    /**
+     * @param lookup queries the contacts with the sender's email
+     */
+    Mono<JsonDocument> contacts(String baseUrl, String auth, String senderEmail, Supplier<Mono<JsonDocument>> lookup) {
+        return get(contactsByEmail, List.of(baseUrl, hash(auth), normalize(senderEmail)), lookup);
+    }
+
+    /**
+     * @param lookup queries the contacts, owned by the user, of the accounts of the sender's domain
+     */
+    Mono<JsonDocument> domain(String baseUrl, String auth, String userEmail, String senderDomain, Supplier<Mono<JsonDocument>> lookup) {
+        return get(contactsByDomain, List.of(baseUrl, hash(auth), normalize(userEmail), normalize(senderDomain)), lookup);
+    }
+
+    /**
+     * Drops what is known about the email, and about its domain, for all the users of the
+     * Salesforce instance.
+     */
+    void invalidate(String baseUrl, String contactEmail) {
+        if (contactsByEmail == null) {
+            return;
+        }
+        String email = normalize(contactEmail);
+        String domain = '@' + StringUtils.substringAfterLast(email, "@");
+        logger.debug("Invalidating cached lookups for email: {} and domain: {} of Salesforce server: {}", email, domain, baseUrl);
+
+        contactsByEmail.asMap().keySet().removeIf(key -> key.get(0).equals(baseUrl) && key.get(2).equals(email));
+        contactsByDomain.asMap().keySet().removeIf(key -> key.get(0).equals(baseUrl) && key.get(3).equals(domain));
+    }
+
+    private static Mono<JsonDocument> get(Cache<List<String>, JsonDocument> cache, List<String> key, Supplier<Mono<JsonDocument>> lookup) {
+        if (cache == null) {
+            return lookup.get();
+        }
+
+        return Mono.defer(() -> {
+            JsonDocument cached = cache.getIfPresent(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            return lookup.get()
+                    .doOnNext(result -> cache.put(key, result));
+        });
+    }
+
+    private static String hash(String auth) {
+        return DigestUtils.sha256Hex(StringUtils.defaultString(auth));
+    }
+
+    private static String normalize(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2019 VMware, Inc. All Rights Reserved.
+ * SPDX-License-Identifier: BSD-2-Clause
+ */
+
+package com.vmware.connectors.salesforce;
+
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import com.vmware.connectors.test.ControllerTestsBase;
+import com.vmware.connectors.test.JsonNormalizer;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.client.ResponseCreator;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpMethod.POST;
+import static org.springframework.http.MediaType.APPLICATION_JSON;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
+
+@TestPropertySource(properties = "sf.compositeRequests=true")
+class SalesforceCompositeTest extends ControllerTestsBase {
+
+    private static final String COMPOSITE_PATH = "/services/data/v44.0/composite";
+    private static final String COMPOSITE_BATCH_PATH = "/services/data/v44.0/composite/batch";
+
+    private static final String QUERY_FMT_CONTACT =
+            "SELECT name, account.name, MobilePhone FROM contact WHERE email = '%s'";
+
+    private static final String QUERY_FMT_SENDER_OPPORTUNITY_INFO = "SELECT id, name, CloseDate, NextStep, StageName, " +
+            "Account.name, Account.Owner.Name, FORMAT(Opportunity.amount), FORMAT(Opportunity.ExpectedRevenue), (SELECT User.Email from OpportunityTeamMembers), " +
+            "(SELECT InsertedBy.Name, Body from Feeds) FROM opportunity WHERE opportunity.id IN " +
+            "(SELECT OpportunityId FROM OpportunityContactRole WHERE contact.email = '%s') " +
+            "AND StageName NOT IN ('Closed Lost', 'Closed Won')";
+
+    private static final String QUERY_FMT_ACCOUNT =
+            "SELECT email, account.id, account.name FROM contact WHERE email LIKE '%%%s' AND account.owner.email = '%s'";
+
+    private static final String QUERY_FMT_ACCOUNT_OPPORTUNITY = "SELECT id, name, AccountId FROM opportunity WHERE AccountId IN ('%s')";
+
+    @Value("classpath:salesforce/response/successContact.json")
+    private Resource sfResponseContactExists;
+
+    @Value("classpath:salesforce/response/successContactOpportunityInfo.json")
+    private Resource sfResponseContactOppInfo;
+
+    @Value("classpath:salesforce/response/zeroRecords.json")
+    private Resource sfResponseZeroRecords;
+
+    @Value("classpath:salesforce/response/successAccount.json")
+    private Resource sfResponseAccounts;
+
+    @Value("classpath:salesforce/response/accountsOpportunities.json")
+    private Resource sfResponseAccountsOpportunities;
+
+    @Test
+    void testContactCardsInOneRequest() throws Exception {
+        Map<String, Resource> results = Map.of(
+                String.format(QUERY_FMT_CONTACT, "travis@uber.com"), sfResponseContactExists,
+                String.format(QUERY_FMT_SENDER_OPPORTUNITY_INFO, "travis@uber.com"), sfResponseContactOppInfo,
+                String.format(QUERY_FMT_ACCOUNT, "@uber.com", "jjeff@vmware.com"), sfResponseAccounts
+        );
+        expectComposite(results);
+
+        testRequestCards("/connector/requests/requestUber.json", "successCardsForSender.json");
+    }
+
+    @Test
+    void testRelatedAccountsInTwoRequests() throws Exception {
+        Map<String, Resource> results = Map.of(
+                String.format(QUERY_FMT_CONTACT, "john.doe@abc.com"), sfResponseZeroRecords,
+                String.format(QUERY_FMT_SENDER_OPPORTUNITY_INFO, "john.doe@abc.com"), sfResponseZeroRecords,
+                String.format(QUERY_FMT_ACCOUNT, "@abc.com", "prabhuk@vmware.com"), sfResponseAccounts
+        );
+        expectComposite(results);
+
+        Map<String, Resource> accountResults = Map.of(
+                String.format(QUERY_FMT_ACCOUNT_OPPORTUNITY, "001Q0000012gRPoIAM', '001Q0000012gkPHIAY', '001Q0000012glcuIAA"),
+                sfResponseAccountsOpportunities
+        );
+        expectBatch(accountResults);
+
+        testRequestCards("/connector/requests/request.json", "successRelatedAccounts.json");
+    }
+
+    @Test
+    void testFailedSubrequest() throws Exception {
+        // No results, so every subrequest fails with a 401
+        expectComposite(Map.of());
+
+        requestCards("/connector/requests/request.json")
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectHeader().valueEquals("X-Backend-Status", "401");
+    }
+
+    private void expectComposite(Map<String, Resource> resultsByQuery) {
+        mockBackend.expect(requestTo(COMPOSITE_PATH))
+                .andExpect(method(POST))
+                .andExpect(header(AUTHORIZATION, "Bearer abc"))
+                .andExpect(jsonPath("$.compositeRequest[*].referenceId", contains("contacts", "opportunities", "accounts")))
+                .andRespond(respond(resultsByQuery, "$.compositeRequest", "compositeResponse", "body", "httpStatusCode"));
+    }
+
+    private void expectBatch(Map<String, Resource> resultsByQuery) {
+        mockBackend.expect(requestTo(COMPOSITE_BATCH_PATH))
+                .andExpect(method(POST))
+                .andExpect(header(AUTHORIZATION, "Bearer abc"))
+                .andRespond(respond(resultsByQuery, "$.batchRequests", "results", "result", "statusCode"));
+    }
+
+    /*
+     * Answers each subrequest with the result of its query, in the shape of a /composite or
+     * a /composite/batch response. A query that isn't expected gets a 401.
+     */
+    private ResponseCreator respond(
+            Map<String, Resource> resultsByQuery,
+            String subrequestsPath,
+            String responsesField,
+            String bodyField,
+            String statusField
+    ) {
+        return request -> {
+            DocumentContext body = JsonPath.parse(((MockClientHttpRequest) request).getBodyAsString());
+            List<Map<String, Object>> subrequests = body.read(subrequestsPath);
+            List<Map<String, Object>> subresponses = new ArrayList<>();
+            for (Map<String, Object> subrequest : subrequests) {
+                String soql = UriComponentsBuilder.fromUriString((String) subrequest.get("url")).build()
+                        .getQueryParams().getFirst("q");
+                Resource result = resultsByQuery.get(UriUtils.decode(soql, StandardCharsets.UTF_8));
+                Map<String, Object> subresponse = new LinkedHashMap<>();
+                subresponse.put(statusField, result == null ? 401 : 200);
+                subresponse.put(bodyField, result == null ? List.of() : JsonPath.parse(read(result)).json());
+                if (subrequest.containsKey("referenceId")) {
+                    subresponse.put("referenceId", subrequest.get("referenceId"));
+                }
+                subresponses.add(subresponse);
+            }
+            return withSuccess(JsonPath.parse(Map.of(responsesField, subresponses)).jsonString(), APPLICATION_JSON)
+                    .createResponse(request);
+        };
+    }
+
+    private static String read(Resource resource) {
+        try {
+            return IOUtils.toString(resource.getInputStream(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void testRequestCards(String requestFile, String responseFile) throws Exception {
+        String body = requestCards(requestFile)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(APPLICATION_JSON)
+                .returnResult(String.class)
+                .getResponseBody()
+                .collect(Collectors.joining())
+                .map(JsonNormalizer::forCards)
+                .block();
+        body = body.replaceAll("[a-z0-9]{40,}", "test-hash");
+        assertThat(body, sameJSONAs(fromFile("connector/responses/" + responseFile)).allowingAnyArrayOrdering());
+    }
+
+    private WebTestClient.RequestHeadersSpec<?> requestCards(String filePath) throws Exception {
+        String uri = "/cards/requests";
+        return webClient.post()
+                .uri(uri)
+                .contentType(APPLICATION_JSON)
+                .accept(APPLICATION_JSON)
+                .header(X_AUTH_HEADER, "Bearer abc")
+                .header(X_BASE_URL_HEADER, mockBackend.url(""))
+                .header("x-routing-prefix", "https://hero/connectors/salesforce/")
+                .headers(headers -> headers(headers, uri))
+                .syncBody(fromFile(filePath));
+    }
+}
@@ -45,6 +45,7 @@ import static org.springframework.http.HttpMethod.POST;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.MediaType.*;
 import static org.springframework.test.web.client.ExpectedCount.manyTimes;
+import static org.springframework.test.web.client.ExpectedCount.twice;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.*;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.*;
 import static uk.co.datumedge.hamcrest.json.SameJSONAs.sameJSONAs;
@@ -58,7 +59,7 @@ class SalesforceControllerTest extends ControllerTestsBase {
     private static final String QUERY_FMT_CONTACT =
             "SELECT name, account.name, MobilePhone FROM contact WHERE email = '%s'";
 
-    private static final String QUERY_FMT_ACCOUNT_OPPORTUNITY = "SELECT id, name FROM opportunity WHERE account.id = '%s'";
+    private static final String QUERY_FMT_ACCOUNT_OPPORTUNITY = "SELECT id, name, AccountId FROM opportunity WHERE AccountId IN ('%s')";
 
     private static final String QUERY_FMT_CONTACT_OPPORTUNITY = "SELECT Opportunity.Id FROM OpportunityContactRole " +
             "WHERE contact.email = '%s' AND Opportunity.StageName NOT IN ('Closed Lost', 'Closed Won')";
@@ -97,14 +98,14 @@ class SalesforceControllerTest extends ControllerTestsBase {
     @Value("classpath:salesforce/response/newContactCreated.json")
     private Resource sfResponseContactCreated;
 
-    @Value("classpath:salesforce/response/accGeorceMichaelOpportunities.json")
-    private Resource sfResponseGeorgeMichaelOpportunities;
+    @Value("classpath:salesforce/response/accountsOpportunities.json")
+    private Resource sfResponseAccountsOpportunities;
 
-    @Value("classpath:salesforce/response/accLeoDCaprioOpportunities.json")
-    private Resource sfResponseLeoDCaprioOpportunities;
+    @Value("classpath:salesforce/response/accountsOpportunitiesFirstBatch.json")
+    private Resource sfResponseAccountsOpportunitiesFirstBatch;
 
-    @Value("classpath:salesforce/response/accWordHowardOpportunities.json")
-    private Resource sfResponseWordHowardOpportunities;
+    @Value("classpath:salesforce/response/accountsOpportunitiesLastBatch.json")
+    private Resource sfResponseAccountsOpportunitiesLastBatch;
 
 
     @ParameterizedTest
@@ -248,17 +249,76 @@ class SalesforceControllerTest extends ControllerTestsBase {
         expectSalesforceRequest(getAccountRequestSoql(requestFile))
                 .andRespond(withSuccess(sfResponseAccounts, APPLICATION_JSON));
 
-        // Opportunity requests for each account.
-        expectSalesforceRequest(getAccountOpportunitySoql("001Q0000012gRPoIAM"))
-                .andRespond(withSuccess(sfResponseGeorgeMichaelOpportunities, APPLICATION_JSON));
-        expectSalesforceRequest(getAccountOpportunitySoql("001Q0000012gkPHIAY"))
-                .andRespond(withSuccess(sfResponseLeoDCaprioOpportunities, APPLICATION_JSON));
-        expectSalesforceRequest(getAccountOpportunitySoql("001Q0000012glcuIAA"))
-                .andRespond(withSuccess(sfResponseWordHowardOpportunities, APPLICATION_JSON));
+        // One opportunity request for all the accounts, ids sorted.
+        expectSalesforceRequest(getAccountOpportunitySoql("001Q0000012gRPoIAM", "001Q0000012gkPHIAY", "001Q0000012glcuIAA"))
+                .andRespond(withSuccess(sfResponseAccountsOpportunities, APPLICATION_JSON));
 
         testRequestCards(requestFile, resFile, lang);
      }
 
+    @Test
+    void testRequestCardRelatedAccountsFollowsNextRecords() throws Exception {
+        final String requestFile = "/connector/requests/request.json";
+        expectSalesforceRequest(getContactRequestSoql(requestFile))
+                .andRespond(withSuccess(sfResponseZeroRecords, APPLICATION_JSON));
+        expectSalesforceRequest(getAccountRequestSoql(requestFile))
+                .andRespond(withSuccess(sfResponseAccounts, APPLICATION_JSON));
+
+        // The opportunities come in two batches, the cards are the same as with one
+        expectSalesforceRequest(getAccountOpportunitySoql("001Q0000012gRPoIAM", "001Q0000012gkPHIAY", "001Q0000012glcuIAA"))
+                .andRespond(withSuccess(sfResponseAccountsOpportunitiesFirstBatch, APPLICATION_JSON));
+        mockBackend.expect(requestTo("/services/data/v44.0/query/01gD0000002HU6KIAW-2"))
+                .andExpect(method(GET))
+                .andExpect(header(AUTHORIZATION, "Bearer abc"))
+                .andRespond(withSuccess(sfResponseAccountsOpportunitiesLastBatch, APPLICATION_JSON));
+
+        testRequestCards(requestFile, "successRelatedAccounts.json", null);
+    }
+
+    @Test
+    void testSenderLookupsAreCached() throws Exception {
+        final String requestFile = "/connector/requests/request.json";
+        expectSalesforceRequest(getContactRequestSoql(requestFile))
+                .andRespond(withSuccess(sfResponseZeroRecords, APPLICATION_JSON));
+        expectSalesforceRequest(getAccountRequestSoql(requestFile))
+                .andRespond(withSuccess(sfResponseAccounts, APPLICATION_JSON));
+
+        // Opportunities are not cached
+        mockBackend.expect(twice(), requestTo(accountOpportunityUri()))
+                .andExpect(method(GET))
+                .andRespond(withSuccess(sfResponseAccountsOpportunities, APPLICATION_JSON));
+
+        testRequestCards(requestFile, "successRelatedAccounts.json", null);
+        testRequestCards(requestFile, "successRelatedAccounts.json", null);
+    }
+
+    @Test
+    void testAddContactInvalidatesCachedLookups() throws Exception {
+        final String requestFile = "/connector/requests/request.json";
+        // The sender is a contact once added, which Salesforce is asked about again
+        expectSalesforceRequest(getContactRequestSoql(requestFile))
+                .andRespond(withSuccess(sfResponseZeroRecords, APPLICATION_JSON));
+        expectSalesforceRequest(getContactRequestSoql(requestFile))
+                .andRespond(withSuccess(sfResponseContactExists, APPLICATION_JSON));
+
+        expectSalesforceRequest(getAccountRequestSoql(requestFile))
+                .andRespond(withSuccess(sfResponseAccounts, APPLICATION_JSON));
+        expectSalesforceRequest(getAccountOpportunitySoql("001Q0000012gRPoIAM", "001Q0000012gkPHIAY", "001Q0000012glcuIAA"))
+                .andRespond(withSuccess(sfResponseAccountsOpportunities, APPLICATION_JSON));
+        mockBackend.expect(requestTo(ADD_CONTACT_PATH))
+                .andExpect(method(HttpMethod.POST))
+                .andRespond(withSuccess(sfResponseContactCreated, APPLICATION_JSON));
+        expectSalesforceRequest(String.format(QUERY_FMT_CONTACT_OPPORTUNITY, "john.doe@abc.com"))
+                .andRespond(withSuccess(sfResponseZeroRecords, APPLICATION_JSON));
+
+        testRequestCards(requestFile, "successRelatedAccounts.json", null);
+
+        requestAddContact("abc", TRAVIS_ACCOUNT_ID, "/salesforce/request/contactJohnDoe.txt")
+                .expectStatus().isOk();
+
+        testRequestCards(requestFile, "successSenderDetails.json", null);
+    }
+
     @Test
     void testRequestCardNotAuthorized() throws Exception {
         mockBackend.expect(manyTimes(), requestTo(any(String.class)))
@@ -389,13 +449,20 @@ class SalesforceControllerTest extends ControllerTestsBase {
     }
 
     private ResponseActions expectSalesforceRequest(String soqlQuery) {
-        UriComponentsBuilder builder = UriComponentsBuilder.fromPath(SOQL_QUERY_PATH).queryParam("q", soqlQuery);
-        URI tmp = builder.build().toUri();
+        URI tmp = soqlQueryUri(soqlQuery);
         return mockBackend.expect(requestTo(tmp))
                 .andExpect(method(HttpMethod.GET))
                 .andExpect(header(HttpHeaders.AUTHORIZATION, "Bearer abc"));
     }
 
+    private URI soqlQueryUri(String soqlQuery) {
+        return UriComponentsBuilder.fromPath(SOQL_QUERY_PATH).queryParam("q", soqlQuery).build().toUri();
+    }
+
+    private URI accountOpportunityUri() {
+        return soqlQueryUri(getAccountOpportunitySoql("001Q0000012gRPoIAM", "001Q0000012gkPHIAY", "001Q0000012glcuIAA"));
+    }
+
     private String getContactRequestSoql(String filePath) throws IOException {
         DocumentContext ctx = JsonPath.parse(fromFile(filePath));
         return String.format(QUERY_FMT_CONTACT, senderEmail(ctx));
@@ -416,8 +483,8 @@ class SalesforceControllerTest extends ControllerTestsBase {
     }
 
 
-    // SOQL for finding list of Opportunities related to an account.
-    private String getAccountOpportunitySoql(String accountId) {
-        return String.format(QUERY_FMT_ACCOUNT_OPPORTUNITY, accountId);
+    // SOQL for finding list of Opportunities related to a list of accounts.
+    private String getAccountOpportunitySoql(String... accountIds) {
+        return String.format(QUERY_FMT_ACCOUNT_OPPORTUNITY, String.join("', '", accountIds));
     }
 }
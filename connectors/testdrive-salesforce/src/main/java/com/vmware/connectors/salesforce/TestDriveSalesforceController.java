@@ -15,6 +15,7 @@ import com.jayway.jsonpath.JsonPath;
 import com.jayway.jsonpath.Option;
 import com.vmware.connectors.common.payloads.request.CardRequest;
 import com.vmware.connectors.common.payloads.response.*;
+import com.vmware.connectors.common.template.SoqlQuery;
 import com.vmware.connectors.common.utils.CardTextAccessor;
 import com.vmware.connectors.common.utils.Reactive;
 import org.apache.commons.lang3.StringUtils;
@@ -30,6 +31,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import javax.validation.Valid;
@@ -39,7 +41,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
@@ -90,17 +91,17 @@ public class TestDriveSalesforceController {
 
     // Query format to list all opportunities related to a given sender and recipient
     @VisibleForTesting
-    static final String QUERY_FMT_RELATED_OPPORTUNITY_IDS =
+    static final SoqlQuery QUERY_RELATED_OPPORTUNITY_IDS = SoqlQuery.compile(
             "SELECT Opportunity.id FROM OpportunityContactRole " +
-                    "WHERE contact.email = '%s' AND Opportunity.StageName != 'Closed Won' " +
-                    "AND (Opportunity.Account.Owner.email = '%s' OR Opportunity.Owner.email = '%s')";
+                    "WHERE contact.email = ${sender} AND Opportunity.StageName != 'Closed Won' " +
+                    "AND (Opportunity.Account.Owner.email = ${user} OR Opportunity.Owner.email = ${user})");
 
     // Query everything needed for making Opportunity cards.
     @VisibleForTesting
-    static final String QUERY_FMT_OPPORTUNITY_INFO =
+    static final SoqlQuery QUERY_OPPORTUNITY_INFO = SoqlQuery.compile(
             "SELECT id, name, CloseDate, NextStep, StageName, Account.name, Account.Owner.Name, FORMAT(Opportunity.amount), " +
             "FORMAT(Opportunity.ExpectedRevenue), (SELECT User.Email from OpportunityTeamMembers), " +
-            "(SELECT InsertedBy.Name, Body FROM Feeds) FROM opportunity WHERE opportunity.id IN (%s)";
+            "(SELECT InsertedBy.Name, Body FROM Feeds) FROM opportunity WHERE opportunity.id IN (${ids})");
 
     // Endpoint URL templates for the three card actions
     private static final String URL_TEMPLATE_UPDATE_CLOSE_DATE = "/opportunity/{opportunityId}/closedate";
@@ -126,17 +127,21 @@ public class TestDriveSalesforceController {
 
     private final CardTextAccessor cardTextAccessor;
 
+    private final CardHashMode cardHashMode;
+
     private final ObjectMapper mapper = new ObjectMapper();
 
     @Autowired
     public TestDriveSalesforceController(
             WebClient rest,
             CardTextAccessor cardTextAccessor,
+            CardHashMode cardHashMode,
             @Value("${sf.soqlQueryPath}") String sfSoqlQueryPath,
             @Value("${sf.opportunityFieldsUpdatePath}") final String sfOpportunityFieldsUpdatePath) {
 
         this.rest = rest;
         this.cardTextAccessor = cardTextAccessor;
+        this.cardHashMode = cardHashMode;
         this.sfSoqlQueryPath = sfSoqlQueryPath;
         this.sfOpportunityFieldsUpdatePath = sfOpportunityFieldsUpdatePath;
     }
@@ -173,7 +178,7 @@ public class TestDriveSalesforceController {
 
         return queryRelatedOpportunityIDs(auth, baseUrl, user, sender)
                 .map(this::parseOpportunityIDs)
-                .flatMap(idsList -> queryOpportunityDetails(auth, baseUrl, idsList))
+                .flatMapMany(idsList -> queryOpportunityDetails(auth, baseUrl, idsList))
                 .flatMapIterable(this::parseOpportunityObjects)
                 .map(opportunity -> buildCardForRelatedOpportunity(routingPrefix, locale, opportunity))
                 .collectList()
@@ -182,8 +187,10 @@ public class TestDriveSalesforceController {
 
     // Get a list of relevant opportunity ID's
     private Mono<String> queryRelatedOpportunityIDs(String auth, String baseUrl, String userEmail, String senderEmail) {
-        String soql = String.format(QUERY_FMT_RELATED_OPPORTUNITY_IDS,
-                soqlEscape(senderEmail), soqlEscape(userEmail), soqlEscape(userEmail));
+        String soql = QUERY_RELATED_OPPORTUNITY_IDS.bind()
+                .string("sender", senderEmail)
+                .string("user", userEmail)
+                .build();
         return rest.get()
                 .uri(makeSoqlQueryUri(baseUrl, soql))
                 .header(AUTHORIZATION, auth)
@@ -191,40 +198,20 @@ public class TestDriveSalesforceController {
                 .bodyToMono(String.class);
     }
 
-    // Get the details of one or more Opportunities
-    private Mono<String> queryOpportunityDetails(String auth, String baseUrl, List<String> idsList) {
+    // Get the details of one or more Opportunities, over several queries if there are too many for one URI
+    private Flux<String> queryOpportunityDetails(String auth, String baseUrl, List<String> idsList) {
         if (CollectionUtils.isEmpty(idsList)) {
-            return Mono.just("");
+            return Flux.empty();
         }
-        String soql = String.format(QUERY_FMT_OPPORTUNITY_INFO, commaSeparatedListOfEscapedIds(idsList));
-        return rest.get()
-                .uri(makeSoqlQueryUri(baseUrl, soql))
-                .header(AUTHORIZATION, auth)
-                .retrieve()
-                .bodyToMono(String.class);
-    }
-
-    @VisibleForTesting
-    static String commaSeparatedListOfEscapedIds(List<String> idsList) {
-        return idsList.stream()
-                .map(id -> "'" + soqlEscape(id) + "'")
-                .collect(Collectors.joining(","));
-    }
-
-    /**
-     * Escape special characters to prevent user input from SOQL injection:
-     *
-     * https://developer.salesforce.com/page/Secure_Coding_SQL_Injection
-     * https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_quotedstringescapes.htm
-     * https://developer.salesforce.com/docs/atlas.en-us.soql_sosl.meta/soql_sosl/sforce_api_calls_soql_select_reservedcharacters.htm
-     *
-     * @param value the user input to escape
-     * @return the escaped string value that should be safe to string concat into a SOQL query
-     */
-    @VisibleForTesting
-    static String soqlEscape(String value) {
-        return value.replace("\\", "\\\\")
-                    .replace("\'", "\\\'");
+        List<String> queries = QUERY_OPPORTUNITY_INFO.bind()
+                .strings("ids", idsList)
+                .buildAll(SoqlQuery.DEFAULT_MAX_LENGTH);
+        return Flux.fromIterable(queries)
+                .concatMap(soql -> rest.get()
+                        .uri(makeSoqlQueryUri(baseUrl, soql))
+                        .header(AUTHORIZATION, auth)
+                        .retrieve()
+                        .bodyToMono(String.class));
     }
 
     // Take the JSON response from Salesforce and pull out all the opportunity IDs
@@ -251,7 +238,7 @@ public class TestDriveSalesforceController {
 
         addCommentsField(cardBodyBuilder, opportunity.getFeedEntries(), locale);
 
-        final Card.Builder cardBuilder = new Card.Builder()
+        final Card.Builder cardBuilder = new Card.Builder(cardHashMode)
                 .setTemplate(routingPrefix + TEMPLATE)
                 .setHeader(cardTextAccessor.getMessage("opportunity.oppheader", locale, opportunity.getName()),
                         cardTextAccessor.getMessage("opportunity.closedate", locale) + " " + opportunity.getCloseDate(),
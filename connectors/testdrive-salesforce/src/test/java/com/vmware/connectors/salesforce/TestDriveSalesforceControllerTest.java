@@ -30,8 +30,6 @@ import java.util.List;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static com.vmware.connectors.salesforce.TestDriveSalesforceController.commaSeparatedListOfEscapedIds;
-import static com.vmware.connectors.salesforce.TestDriveSalesforceController.soqlEscape;
 import static com.vmware.connectors.utils.IgnoredFieldsReplacer.HASH_PATTERN;
 import static org.hamcrest.CoreMatchers.any;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -295,13 +293,17 @@ class TestDriveSalesforceControllerTest extends ControllerTestsBase {
         DocumentContext ctx = JsonPath.parse(fromFile(requestBodyFilePath));
         String senderEmail = ctx.read("$.tokens.sender_email[0]");
         String userEmail = ctx.read("$.tokens.user_email[0]");
-        return String.format(TestDriveSalesforceController.QUERY_FMT_RELATED_OPPORTUNITY_IDS,
-                soqlEscape(senderEmail), soqlEscape(userEmail), soqlEscape(userEmail));
+        return TestDriveSalesforceController.QUERY_RELATED_OPPORTUNITY_IDS.bind()
+                .string("sender", senderEmail)
+                .string("user", userEmail)
+                .build();
     }
 
     private String getOpportunityDetailsSoql() throws IOException {
         List<String> oppIDs = JsonPath.read(fromFile(RESPONSE_OPPORTUNITY_IDS_PATH), "$.records[*].Opportunity.Id");
-        return String.format(TestDriveSalesforceController.QUERY_FMT_OPPORTUNITY_INFO, commaSeparatedListOfEscapedIds(oppIDs));
+        return TestDriveSalesforceController.QUERY_OPPORTUNITY_INFO.bind()
+                .strings("ids", oppIDs)
+                .build();
     }
 
 }